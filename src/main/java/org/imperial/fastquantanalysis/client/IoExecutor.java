@@ -0,0 +1,126 @@
+package org.imperial.fastquantanalysis.client;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor of blocking I/O, e.g. Polygon fetches.
+ * On a JDK with virtual threads every task gets its own virtual thread, so the number of calls in flight
+ * is bounded by the HTTP dispatcher and connection pool rather than by threads. On older JDKs, or with
+ * virtual threads disabled, tasks run on a bounded pool of platform threads instead.
+ * Virtual threads are looked up reflectively so the same build runs on both.
+ *
+ * @author Emil S. He
+ * @since 2025-04-26
+ */
+@Slf4j
+@Component
+public class IoExecutor implements Executor {
+
+    private final ExecutorService executorService;
+
+    /**
+     * True if tasks run on virtual threads
+     */
+    @Getter
+    private final boolean virtual;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public IoExecutor(@Value("${fast-quant.io.virtual-threads:true}") boolean virtualThreads,
+                      @Value("${fast-quant.io.pool-size:64}") int poolSize,
+                      MeterRegistry meterRegistry) {
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        this.virtual = virtualExecutor != null;
+        this.executorService = virtual ? virtualExecutor : newBoundedPool(poolSize);
+        log.info("Blocking I/O runs on {}", virtual ? "virtual threads" : "a pool of " + poolSize + " platform threads");
+
+        Gauge.builder("io.executor.tasks", inFlight, AtomicInteger::get)
+                .tag("mode", virtual ? "virtual" : "platform")
+                .description("Blocking I/O tasks submitted and not finished yet")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        inFlight.incrementAndGet();
+        try {
+            executorService.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, null if the JDK has no virtual threads
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invokeExact();
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (Throwable e) {
+            // e.g. virtual threads are still a preview feature of this JDK
+            log.warn("Virtual threads are unavailable: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Executor starting a thread per task, for callers that bound their own concurrency
+     * @param threadNamePrefix name prefix of platform threads, if the JDK has no virtual threads
+     * @return an executor on virtual threads, or an unbounded cached pool of daemon threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String threadNamePrefix) {
+        ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+        if (virtualExecutor != null) {
+            return virtualExecutor;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, threadNamePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static ExecutorService newBoundedPool(int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down I/O executor...");
+        executorService.shutdown();
+    }
+}
@@ -0,0 +1,121 @@
+package org.imperial.fastquantanalysis.client;
+
+import lombok.Getter;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.imperial.fastquantanalysis.constant.Sort;
+import org.imperial.fastquantanalysis.constant.Timespan;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.imperial.fastquantanalysis.market.AggregatesJsonDecoder;
+import org.imperial.fastquantanalysis.market.BarSeriesBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Client of the Polygon.io aggregates endpoint of one API key.
+ * Unlike the SDK, which materializes the whole response into DTOs, the body is streamed
+ * straight into primitive columns. Requests go through the same rate limit bucket as the
+ * SDK client of the key, and throttled requests are retried after the backoff of the bucket.
+ *
+ * @author Emil S. He
+ * @since 2025-04-28
+ */
+public class PolygonAggregatesClient {
+
+    private static final HttpUrl POLYGON_URL = HttpUrl.get("https://api.polygon.io");
+
+    private final String apiKey;
+
+    private final OkHttpClient okHttpClient;
+
+    /**
+     * Rate limit bucket of the API key
+     */
+    @Getter
+    private final PolygonRateLimiter.Bucket rateLimit;
+
+    private final HttpUrl baseUrl;
+
+    public PolygonAggregatesClient(String apiKey, OkHttpClient okHttpClient, PolygonRateLimiter.Bucket rateLimit) {
+        this(apiKey, okHttpClient, rateLimit, POLYGON_URL);
+    }
+
+    PolygonAggregatesClient(String apiKey, OkHttpClient okHttpClient,
+                            PolygonRateLimiter.Bucket rateLimit, HttpUrl baseUrl) {
+        this.apiKey = apiKey;
+        this.okHttpClient = okHttpClient;
+        this.rateLimit = rateLimit;
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * Get the aggregate bars of a ticker
+     * @param tickerName ticker name
+     * @param multiplier multiplier of the timespan
+     * @param timespan timespan
+     * @param from first day (yyyy-MM-dd) or first millisecond timestamp, inclusive
+     * @param to last day (yyyy-MM-dd) or last millisecond timestamp, inclusive
+     * @param unadjusted true if the bars are not adjusted for splits
+     * @param limit most base aggregates returned, at most 50,000
+     * @param sort sort, asc means from oldest to newest
+     * @return columns of the bars
+     */
+    public BarSeriesBuilder getAggregates(String tickerName, long multiplier, Timespan timespan,
+                                          String from, String to, boolean unadjusted, long limit, Sort sort) {
+        HttpUrl url = baseUrl.newBuilder()
+                .addPathSegments("v2/aggs/ticker")
+                .addPathSegment(tickerName)
+                .addPathSegment("range")
+                .addPathSegment(String.valueOf(multiplier))
+                .addPathSegment(timespan.getValue())
+                .addPathSegment(from)
+                .addPathSegment(to)
+                .addQueryParameter("adjusted", String.valueOf(!unadjusted))
+                .addQueryParameter("sort", sort.getValue())
+                .addQueryParameter("limit", String.valueOf(limit))
+                .addQueryParameter("apiKey", apiKey)
+                .build();
+        Request request = new Request.Builder().url(url).get().build();
+
+        int attempt = 0;
+        boolean probe = false;
+        try {
+            while (true) {
+                probe = rateLimit.acquire(probe);
+                try (Response response = okHttpClient.newCall(request).execute()) {
+                    if (response.code() == 429) {
+                        rateLimit.onThrottled(attempt,
+                                PolygonRateLimiter.parseRetryAfter(response.header("Retry-After")));
+                        if (attempt < rateLimit.getMaxRetries()) {
+                            attempt++;
+                            continue;
+                        }
+                        rateLimit.onFailure();
+                        throw new StrategyRunningException("Polygon.io is still throttling " + tickerName
+                                + " aggregates after " + attempt + " retries");
+                    }
+                    if (response.code() >= 500) {
+                        rateLimit.onFailure();
+                    } else {
+                        rateLimit.onSuccess();
+                    }
+                    ResponseBody body = response.body();
+                    if (!response.isSuccessful() || body == null) {
+                        throw new StrategyRunningException("Polygon.io responded " + response.code()
+                                + " to " + tickerName + " aggregates");
+                    }
+                    return AggregatesJsonDecoder.decode(body.byteStream());
+                } catch (IOException e) {
+                    rateLimit.onFailure();
+                    throw new UncheckedIOException("Failed to fetch " + tickerName + " aggregates from Polygon.io", e);
+                }
+            }
+        } finally {
+            rateLimit.release(probe);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.imperial.fastquantanalysis.client;
+
+import cn.hutool.cache.impl.LRUCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.polygon.kotlin.sdk.rest.PolygonRestClient;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of long-lived Polygon.io REST clients, one per API key.
+ * All clients share a single OkHttp connection pool and dispatcher, so consecutive
+ * backtests reuse kept-alive TLS connections instead of handshaking every time.
+ * The registry is bounded (LRU) and clients idle for too long are evicted and closed.
+ * Each key owns one rate limit bucket, shared by its SDK client and its aggregates client,
+ * so one user's bursts never slow down another's.
+ *
+ * @author Emil S. He
+ * @since 2025-04-20
+ */
+@Slf4j
+@Component
+public class PolygonClientRegistry {
+
+    /**
+     * The OkHttp client shared by every Polygon REST client
+     */
+    @Getter
+    private final OkHttpClient sharedOkHttpClient;
+
+    private final SharedDispatcherExecutor dispatcherExecutor = new SharedDispatcherExecutor();
+
+    private final PolygonRateLimiter rateLimiter;
+
+    private final LRUCache<String, Clients> clients;
+
+    private final ScheduledExecutorService pruneScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "polygon-client-registry-prune");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PolygonClientRegistry(@Value("${fast-quant.polygon.client.max-clients:256}") int maxClients,
+                                 @Value("${fast-quant.polygon.client.idle-timeout-minutes:30}") long idleTimeoutMinutes,
+                                 @Value("${fast-quant.polygon.client.max-idle-connections:32}") int maxIdleConnections,
+                                 @Value("${fast-quant.polygon.client.keep-alive-minutes:5}") long keepAliveMinutes,
+                                 @Value("${fast-quant.polygon.client.max-requests:64}") int maxRequests,
+                                 PolygonRateLimiter rateLimiter,
+                                 MeterRegistry meterRegistry) {
+        Dispatcher dispatcher = new Dispatcher(dispatcherExecutor);
+        dispatcher.setMaxRequests(maxRequests);
+        // Every request goes to api.polygon.io, so the default limit of 5 per host would be the bottleneck
+        dispatcher.setMaxRequestsPerHost(maxRequests);
+
+        ConnectionPool connectionPool = new ConnectionPool(maxIdleConnections, keepAliveMinutes, TimeUnit.MINUTES);
+
+        this.sharedOkHttpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .addInterceptor(chain -> {
+                    log.info("request: {}", chain.request().url().newBuilder().removeAllQueryParameters("apiKey").build());
+                    return chain.proceed(chain.request());
+                })
+                .build();
+        this.rateLimiter = rateLimiter;
+
+        long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+        this.clients = new LRUCache<>(maxClients, idleTimeoutMillis);
+        this.clients.setListener((apiKey, client) -> {
+            log.debug("Evicted idle Polygon client");
+            client.close();
+        });
+        pruneScheduler.scheduleWithFixedDelay(clients::prune, idleTimeoutMillis, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("polygon.http.connections", connectionPool, ConnectionPool::connectionCount)
+                .tag("state", "total")
+                .description("Connections held by the shared Polygon connection pool")
+                .register(meterRegistry);
+        Gauge.builder("polygon.http.connections", connectionPool, ConnectionPool::idleConnectionCount)
+                .tag("state", "idle")
+                .description("Connections held by the shared Polygon connection pool")
+                .register(meterRegistry);
+        Gauge.builder("polygon.http.calls", dispatcher, Dispatcher::runningCallsCount)
+                .tag("state", "running")
+                .description("Calls handled by the shared Polygon dispatcher")
+                .register(meterRegistry);
+        Gauge.builder("polygon.http.calls", dispatcher, Dispatcher::queuedCallsCount)
+                .tag("state", "queued")
+                .description("Calls handled by the shared Polygon dispatcher")
+                .register(meterRegistry);
+        Gauge.builder("polygon.clients", clients, LRUCache::size)
+                .description("Polygon REST clients currently cached, one per API key")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the Polygon REST client of an API key, creating it on first use
+     * @param polygonApiKey user's Polygon.io API key
+     * @return Polygon REST client sharing the common connection pool, rate limited on its own
+     */
+    public PolygonRestClient getClient(String polygonApiKey) {
+        return getClients(polygonApiKey).rest();
+    }
+
+    /**
+     * Get the client streaming the aggregates of an API key, creating it on first use
+     * @param polygonApiKey user's Polygon.io API key
+     * @return aggregates client sharing the common connection pool and the rate limit of the key
+     */
+    public PolygonAggregatesClient getAggregatesClient(String polygonApiKey) {
+        return getClients(polygonApiKey).aggregates();
+    }
+
+    private Clients getClients(String polygonApiKey) {
+        // Touching the entry resets its idle timeout
+        return clients.get(polygonApiKey, true, () -> {
+            PolygonRateLimiter.Bucket rateLimit = rateLimiter.newBucket();
+            SharedOkHttpClientProvider httpClients = new SharedOkHttpClientProvider(sharedOkHttpClient, rateLimit);
+            return new Clients(
+                    new PolygonRestClient(polygonApiKey, httpClients),
+                    new PolygonAggregatesClient(polygonApiKey, sharedOkHttpClient, rateLimit),
+                    httpClients);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down Polygon client registry...");
+        pruneScheduler.shutdownNow();
+        clients.forEach(Clients::close);
+        clients.clear();
+        dispatcherExecutor.close();
+        sharedOkHttpClient.connectionPool().evictAll();
+    }
+
+    private record Clients(PolygonRestClient rest, PolygonAggregatesClient aggregates,
+                           SharedOkHttpClientProvider httpClients) {
+
+        // Release the Ktor clients of the SDK; the OkHttp client is shared and stays open
+        void close() {
+            httpClients.close();
+        }
+    }
+
+    /**
+     * Thread pool of the shared dispatcher, as OkHttp's default one. A Ktor client shuts down the executor of
+     * its OkHttp client when it is closed, which here is every client's, so only the registry can shut it down
+     */
+    private static final class SharedDispatcherExecutor extends ThreadPoolExecutor {
+
+        private SharedDispatcherExecutor() {
+            super(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                Thread thread = new Thread(r, "polygon-okhttp-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            // Called by the Ktor clients of evicted API keys
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        void close() {
+            super.shutdown();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package org.imperial.fastquantanalysis.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rate limiting of Polygon.io requests, one {@link Bucket} per API key.
+ * A bucket is a token bucket handing out reservations in arrival order, so callers of a key wait their
+ * turn instead of racing. A 429 pauses the key for Retry-After, or an exponential backoff with jitter,
+ * and halves its rate; every success adds back a twentieth of the configured rate, so the rate settles
+ * just under the real quota. A circuit breaker stops calling a key that keeps failing and lets a single
+ * probe through once it has cooled down; the retries of a throttled probe are still the probe.
+ *
+ * @author Emil S. He
+ * @since 2025-04-26
+ */
+@Slf4j
+@Component
+public class PolygonRateLimiter {
+
+    private static final double MIN_RATE_FRACTION = 0.05;
+
+    private static final double RECOVERY_FRACTION = 0.05;
+
+    private final double requestsPerSecond;
+
+    private final int burst;
+
+    private final long maxWaitNanos;
+
+    private final int maxRetries;
+
+    private final long backoffBaseMillis;
+
+    private final long backoffMaxMillis;
+
+    private final int failureThreshold;
+
+    private final long openNanos;
+
+    private final Timer waits;
+
+    private final Counter throttled;
+
+    private final Counter rejected;
+
+    private final Counter breakerOpened;
+
+    public PolygonRateLimiter(@Value("${fast-quant.polygon.rate-limit.requests-per-minute:300}") double requestsPerMinute,
+                              @Value("${fast-quant.polygon.rate-limit.burst:10}") int burst,
+                              @Value("${fast-quant.polygon.rate-limit.max-wait-ms:60000}") long maxWaitMillis,
+                              @Value("${fast-quant.polygon.rate-limit.max-retries:4}") int maxRetries,
+                              @Value("${fast-quant.polygon.rate-limit.backoff-base-ms:500}") long backoffBaseMillis,
+                              @Value("${fast-quant.polygon.rate-limit.backoff-max-ms:30000}") long backoffMaxMillis,
+                              @Value("${fast-quant.polygon.rate-limit.breaker-failure-threshold:5}") int failureThreshold,
+                              @Value("${fast-quant.polygon.rate-limit.breaker-open-ms:30000}") long openMillis,
+                              MeterRegistry meterRegistry) {
+        if (requestsPerMinute <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst of the Polygon rate limiter must be positive");
+        }
+        this.requestsPerSecond = requestsPerMinute / 60.0;
+        this.burst = burst;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.maxRetries = maxRetries;
+        this.backoffBaseMillis = backoffBaseMillis;
+        this.backoffMaxMillis = backoffMaxMillis;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+
+        this.waits = Timer.builder("polygon.rate.limit.wait")
+                .description("Time Polygon requests waited for their API key's turn")
+                .register(meterRegistry);
+        this.throttled = Counter.builder("polygon.rate.limit.events")
+                .tag("event", "throttled")
+                .description("Responses 429 Too Many Requests from Polygon.io")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("polygon.rate.limit.events")
+                .tag("event", "rejected")
+                .description("Requests refused locally, over the longest wait or with the circuit open")
+                .register(meterRegistry);
+        this.breakerOpened = Counter.builder("polygon.rate.limit.events")
+                .tag("event", "breaker_opened")
+                .description("Times the circuit of an API key opened")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return a new bucket, full, for the client of one API key
+     */
+    public Bucket newBucket() {
+        return new Bucket();
+    }
+
+    /**
+     * Parse a Retry-After header
+     * @param retryAfter header value, delay in seconds
+     * @return delay in milliseconds, null if absent or not in seconds
+     */
+    public static Long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return null;
+        }
+        try {
+            long seconds = Long.parseLong(retryAfter.trim());
+            return seconds < 0 ? null : TimeUnit.SECONDS.toMillis(seconds);
+        } catch (NumberFormatException e) {
+            // An HTTP date, rare enough to fall back to the backoff
+            return null;
+        }
+    }
+
+    private enum CircuitState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Rate limit, backoff and circuit breaker of one API key
+     */
+    public final class Bucket {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // Guarded by lock. Negative tokens are reservations of callers still waiting
+        private double tokens = burst;
+        private double rate = requestsPerSecond;
+        private long refilledAt = System.nanoTime();
+        private long pausedUntil = refilledAt;
+        private int consecutiveFailures;
+        private CircuitState state = CircuitState.CLOSED;
+        private long openUntil;
+        private boolean probing;
+
+        private Bucket() {
+        }
+
+        /**
+         * Wait for the turn of the next request
+         * @return true if the request probes the half-open circuit, to be passed to its retries and {@link #release(boolean)}
+         * @throws StrategyRunningException if the circuit is open or the wait would be too long
+         * @throws CancellationException if interrupted while waiting
+         */
+        public boolean acquire() {
+            return acquire(false);
+        }
+
+        /**
+         * Wait for the turn of a request or of its retry
+         * @param probe what the first attempt of the request returned, false for a new request
+         * @return true if the request probes the half-open circuit
+         * @throws StrategyRunningException if the circuit is open or the wait would be too long
+         * @throws CancellationException if interrupted while waiting
+         */
+        public boolean acquire(boolean probe) {
+            long waitNanos;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                probe = checkCircuit(now, probe);
+                refill(now);
+                waitNanos = Math.max(pausedUntil - now, tokens >= 1 ? 0L : (long) ((1 - tokens) / rate * 1e9));
+                if (waitNanos > maxWaitNanos) {
+                    if (probe) {
+                        probing = false;
+                    }
+                    rejected.increment();
+                    throw new StrategyRunningException("Too many Polygon.io requests with this API key, retry in "
+                            + TimeUnit.NANOSECONDS.toSeconds(waitNanos) + " s.");
+                }
+                tokens -= 1;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                waits.record(waitNanos, TimeUnit.NANOSECONDS);
+                sleepNanos(waitNanos);
+                // A 429 of an earlier request may have paused the key while this one was waiting
+                long pause;
+                while ((pause = pausedFor()) > 0) {
+                    sleepNanos(pause);
+                }
+            } catch (CancellationException e) {
+                release(probe);
+                throw e;
+            }
+            return probe;
+        }
+
+        /**
+         * Give up the probe of a request that ends without {@link #onSuccess()} or {@link #onFailure()},
+         * e.g. interrupted or refused, so the next request probes instead. Does nothing once either was recorded
+         * @param probe what {@link #acquire(boolean)} last returned for the request
+         */
+        public void release(boolean probe) {
+            if (!probe) {
+                return;
+            }
+            lock.lock();
+            try {
+                if (state == CircuitState.HALF_OPEN) {
+                    probing = false;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Record a 429: pause the key and halve its rate
+         * @param attempt retries of the request so far
+         * @param retryAfterMillis delay asked by Polygon.io, null to back off exponentially
+         * @return pause in milliseconds
+         */
+        public long onThrottled(int attempt, Long retryAfterMillis) {
+            long delayMillis;
+            if (retryAfterMillis != null) {
+                delayMillis = retryAfterMillis;
+            } else {
+                long ceiling = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt, 20));
+                // Equal jitter: callers throttled together do not come back together
+                delayMillis = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+            }
+
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refill(now);
+                pausedUntil = Math.max(pausedUntil, now + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+                rate = Math.max(requestsPerSecond * MIN_RATE_FRACTION, rate / 2);
+                tokens = Math.min(tokens, 0);
+            } finally {
+                lock.unlock();
+            }
+            throttled.increment();
+            log.debug("Polygon.io throttled an API key, pausing {} ms (attempt {})", delayMillis, attempt);
+            return delayMillis;
+        }
+
+        /**
+         * Record a successful response
+         */
+        public void onSuccess() {
+            lock.lock();
+            try {
+                consecutiveFailures = 0;
+                state = CircuitState.CLOSED;
+                probing = false;
+                rate = Math.min(requestsPerSecond, rate + requestsPerSecond * RECOVERY_FRACTION);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Record a failed request: an I/O error, a server error or a 429 with no retries left
+         */
+        public void onFailure() {
+            lock.lock();
+            try {
+                consecutiveFailures++;
+                probing = false;
+                if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                    if (state != CircuitState.OPEN) {
+                        breakerOpened.increment();
+                        log.warn("Polygon.io keeps failing for an API key, pausing it for {} ms",
+                                TimeUnit.NANOSECONDS.toMillis(openNanos));
+                    }
+                    state = CircuitState.OPEN;
+                    openUntil = System.nanoTime() + openNanos;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return retries of a throttled request
+         */
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        /**
+         * @return current rate in requests per second, lower than configured after 429s
+         */
+        public double getRate() {
+            lock.lock();
+            try {
+                return rate;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return true if requests are refused without calling Polygon.io
+         */
+        public boolean isOpen() {
+            lock.lock();
+            try {
+                return state == CircuitState.OPEN && System.nanoTime() < openUntil;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Return true if the caller holds the probe of the half-open circuit
+        private boolean checkCircuit(long now, boolean probe) {
+            if (state == CircuitState.OPEN) {
+                if (now < openUntil) {
+                    rejected.increment();
+                    throw new StrategyRunningException("Polygon.io keeps failing for this API key, retry in "
+                            + Math.max(1, TimeUnit.NANOSECONDS.toSeconds(openUntil - now)) + " s.");
+                }
+                state = CircuitState.HALF_OPEN;
+            }
+            if (state != CircuitState.HALF_OPEN) {
+                return false;
+            }
+            if (probe && probing) {
+                // A retry of the probe, e.g. after a 429
+                return true;
+            }
+            if (probing) {
+                rejected.increment();
+                throw new StrategyRunningException("Polygon.io keeps failing for this API key, retry later.");
+            }
+            // This caller probes whether the key works again
+            probing = true;
+            return true;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * rate);
+            refilledAt = now;
+        }
+
+        private long pausedFor() {
+            lock.lock();
+            try {
+                return pausedUntil - System.nanoTime();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void sleepNanos(long nanos) {
+            if (nanos <= 0) {
+                return;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for Polygon.io rate limit");
+            }
+        }
+    }
+}
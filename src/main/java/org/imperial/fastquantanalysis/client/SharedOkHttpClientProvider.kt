@@ -0,0 +1,93 @@
+package org.imperial.fastquantanalysis.client
+
+import io.ktor.client.HttpClient
+import io.ktor.client.call.HttpClientCall
+import io.ktor.client.engine.okhttp.OkHttp
+import io.ktor.client.plugins.HttpSend
+import io.ktor.client.plugins.contentnegotiation.ContentNegotiation
+import io.ktor.client.plugins.plugin
+import io.ktor.http.HttpHeaders
+import io.ktor.http.HttpStatusCode
+import io.ktor.serialization.kotlinx.json.json
+import io.polygon.kotlin.sdk.HttpClientProvider
+import kotlinx.coroutines.cancel
+import kotlinx.serialization.json.Json
+import okhttp3.OkHttpClient
+import java.io.Closeable
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * HTTP client provider backed by one preconfigured OkHttp client, so that every
+ * Polygon REST client built from it shares the same connection pool and dispatcher.
+ * Requests go through the rate limit bucket of the API key, on the calling thread rather than
+ * on a dispatcher thread, and throttled requests are retried after the backoff of the bucket.
+ * Closing the provider closes the Ktor clients it built, e.g. when the client of an API key is evicted
+ *
+ * @author Emil S. He
+ * @since 2025-04-20
+ */
+class SharedOkHttpClientProvider(
+    private val okHttpClient: OkHttpClient,
+    private val rateLimit: PolygonRateLimiter.Bucket
+) : HttpClientProvider, Closeable {
+
+    private val clients = CopyOnWriteArrayList<HttpClient>()
+
+    override fun buildClient(): HttpClient {
+        val client = HttpClient(OkHttp) {
+            engine {
+                // Ktor derives per-request clients with newBuilder(), which keeps the pool and dispatcher
+                preconfigured = okHttpClient
+            }
+            install(ContentNegotiation) {
+                json(Json {
+                    isLenient = true
+                    ignoreUnknownKeys = true
+                })
+            }
+        }
+        client.plugin(HttpSend).intercept { request ->
+            var attempt = 0
+            var probe = false
+            var call: HttpClientCall
+            try {
+                while (true) {
+                    probe = rateLimit.acquire(probe)
+                    call = try {
+                        execute(request)
+                    } catch (e: Exception) {
+                        rateLimit.onFailure()
+                        throw e
+                    }
+                    val status = call.response.status
+                    if (status == HttpStatusCode.TooManyRequests) {
+                        rateLimit.onThrottled(attempt,
+                            PolygonRateLimiter.parseRetryAfter(call.response.headers[HttpHeaders.RetryAfter]))
+                        if (attempt < rateLimit.maxRetries) {
+                            attempt++
+                            call.response.cancel()
+                            continue
+                        }
+                        rateLimit.onFailure()
+                    } else if (status.value >= 500) {
+                        rateLimit.onFailure()
+                    } else {
+                        rateLimit.onSuccess()
+                    }
+                    break
+                }
+            } finally {
+                // A probe that ends without a response, e.g. refused or cancelled, lets the next request probe
+                rateLimit.release(probe)
+            }
+            call
+        }
+        clients.add(client)
+        return client
+    }
+
+    override fun close() {
+        clients.forEach { it.close() }
+        clients.clear()
+    }
+}
@@ -0,0 +1,15 @@
+package org.imperial.fastquantanalysis.constant;
+
+/**
+ * Priority of a backtest job; queued jobs of the same priority run in submission order
+ *
+ * @author Emil S. He
+ * @since 2025-04-26
+ */
+public enum JobPriority {
+
+    HIGH,
+    NORMAL,
+    LOW
+
+}
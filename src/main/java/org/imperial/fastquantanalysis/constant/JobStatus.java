@@ -0,0 +1,23 @@
+package org.imperial.fastquantanalysis.constant;
+
+/**
+ * Status of a backtest job
+ *
+ * @author Emil S. He
+ * @since 2025-04-26
+ */
+public enum JobStatus {
+
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED;
+
+    /**
+     * @return true if the job will not change any more
+     */
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+    }
+}
@@ -0,0 +1,52 @@
+package org.imperial.fastquantanalysis.constant;
+
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * Metrics a parameter sweep can be ranked by
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+public enum SweepMetric {
+
+    SHARPE_RATIO(QuantStrategy::getSharpeRatio, true),
+    SORTINO_RATIO(QuantStrategy::getSortinoRatio, true),
+    CALMAR_RATIO(QuantStrategy::getCalmarRatio, true),
+    CUMULATIVE_RETURN(QuantStrategy::getCumulativeReturn, true),
+    ANNUALIZED_RETURN(QuantStrategy::getAnnualizedReturn, true),
+    MAX_DRAWDOWN(QuantStrategy::getMaxDrawdown, false),
+    VOLATILITY(QuantStrategy::getVolatility, false),
+    WIN_RATE(QuantStrategy::getWinRate, true);
+
+    private final Function<QuantStrategy, Double> metric;
+    private final boolean higherIsBetter;
+
+    SweepMetric(Function<QuantStrategy, Double> metric, boolean higherIsBetter) {
+        this.metric = metric;
+        this.higherIsBetter = higherIsBetter;
+    }
+
+    public Double valueOf(QuantStrategy quantStrategy) {
+        return metric.apply(quantStrategy);
+    }
+
+    /**
+     * @return comparator putting the best result first, missing or NaN values last
+     */
+    public Comparator<QuantStrategy> bestFirst() {
+        return (a, b) -> {
+            Double valueA = valueOf(a);
+            Double valueB = valueOf(b);
+            boolean missingA = valueA == null || valueA.isNaN();
+            boolean missingB = valueB == null || valueB.isNaN();
+            if (missingA || missingB) {
+                return Boolean.compare(missingA, missingB);
+            }
+            return higherIsBetter ? Double.compare(valueB, valueA) : Double.compare(valueA, valueB);
+        };
+    }
+}
@@ -5,20 +5,57 @@ import lombok.extern.slf4j.Slf4j;
 import org.imperial.fastquantanalysis.constant.KafkaConstant;
 import org.imperial.fastquantanalysis.entity.QuantStrategy;
 import org.imperial.fastquantanalysis.service.IQuantAnalysisCryptoService;
-import org.springframework.kafka.annotation.KafkaHandler;
+import org.springframework.dao.DataAccessException;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Slf4j
 @Component
-@KafkaListener(topics = KafkaConstant.TOPIC_NAME, groupId = KafkaConstant.GROUP_ID)
 public class QuantStrategyConsumer {
 
     @Resource
     private IQuantAnalysisCryptoService quantAnalysisCryptoService;
 
-    @KafkaHandler
-    public void handleQuantStrategy(QuantStrategy quantStrategy) {
-        quantAnalysisCryptoService.save(quantStrategy);
+    /**
+     * Persist strategy results a poll at a time. A poll returns at most max-batch-size records and
+     * the broker holds the fetch for up to max-wait-ms until fetch-min-bytes are available,
+     * so bursts (e.g. sweeps) are written with a few multi-row upserts instead of one INSERT per record.
+     * The upsert is idempotent on strategy_id, thus a redelivered batch does not fail.
+     * One bad record fails a whole multi-row statement, so the poll is then written record by record:
+     * the records before the bad one are kept and the error handler retries from it, then skips it
+     * @param quantStrategies strategy results of one poll
+     * @throws BatchListenerFailedException with the index of the first record that cannot be persisted
+     */
+    @KafkaListener(topics = KafkaConstant.TOPIC_NAME, groupId = KafkaConstant.GROUP_ID, batch = "true",
+            properties = {
+                    "max.poll.records=${fast-quant.kafka.quant-strategy.max-batch-size:500}",
+                    "fetch.max.wait.ms=${fast-quant.kafka.quant-strategy.max-wait-ms:500}",
+                    "fetch.min.bytes=${fast-quant.kafka.quant-strategy.fetch-min-bytes:65536}"
+            })
+    public void handleQuantStrategies(List<QuantStrategy> quantStrategies) {
+        int rows;
+        try {
+            rows = quantAnalysisCryptoService.upsertBatch(quantStrategies);
+        } catch (DataAccessException e) {
+            log.warn("Failed to persist {} quant strategies at once, persisting them one by one", quantStrategies.size(), e);
+            rows = upsertOneByOne(quantStrategies);
+        }
+        log.debug("Persisted {} quant strategies ({} rows affected)", quantStrategies.size(), rows);
+    }
+
+    private int upsertOneByOne(List<QuantStrategy> quantStrategies) {
+        int rows = 0;
+        for (int i = 0; i < quantStrategies.size(); i++) {
+            try {
+                rows += quantAnalysisCryptoService.upsertBatch(List.of(quantStrategies.get(i)));
+            } catch (DataAccessException e) {
+                throw new BatchListenerFailedException(
+                        "Failed to persist quant strategy " + quantStrategies.get(i).getStrategyId(), e, i);
+            }
+        }
+        return rows;
     }
 }
@@ -1,9 +1,11 @@
 package org.imperial.fastquantanalysis.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.dto.CodeBacktestDTO;
 import org.imperial.fastquantanalysis.service.ICodeService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -49,4 +51,36 @@ public class CodeController {
     public ResponseEntity<?> runKotlinCode(@RequestBody String code) {
         return codeService.runKotlinCode(code);
     }
+
+    /**
+     * Backtest a customized Java bar strategy
+     * @param polygonApiKey User's polygon API key
+     * @param codeBacktestDTO Code snippet and the bars it runs on
+     * @return OK or fail message
+     * @postmantest untested
+     */
+    @PostMapping("/java/backtest")
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Backtest customized Java bar strategy")
+    public ResponseEntity<?> backtestJavaCode(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "Code snippet and the bars it runs on") @RequestBody CodeBacktestDTO codeBacktestDTO) {
+        return codeService.backtestJavaCode(polygonApiKey, codeBacktestDTO);
+    }
+
+    /**
+     * Backtest a customized Kotlin bar strategy
+     * @param polygonApiKey User's polygon API key
+     * @param codeBacktestDTO Code snippet and the bars it runs on
+     * @return OK or fail message
+     * @postmantest untested
+     */
+    @PostMapping("/kotlin/backtest")
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Backtest customized Kotlin bar strategy")
+    public ResponseEntity<?> backtestKotlinCode(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "Code snippet and the bars it runs on") @RequestBody CodeBacktestDTO codeBacktestDTO) {
+        return codeService.backtestKotlinCode(polygonApiKey, codeBacktestDTO);
+    }
 }
@@ -0,0 +1,217 @@
+package org.imperial.fastquantanalysis.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.constant.JobPriority;
+import org.imperial.fastquantanalysis.dto.CryptoAggregatesDTO;
+import org.imperial.fastquantanalysis.dto.CryptoAggregatesPairDTO;
+import org.imperial.fastquantanalysis.dto.StrategySweepDTO;
+import org.imperial.fastquantanalysis.dto.WalkForwardDTO;
+import org.imperial.fastquantanalysis.job.JobScheduler;
+import org.imperial.fastquantanalysis.service.IQuantAnalysisCryptoService;
+import org.imperial.fastquantanalysis.vo.JobVO;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Backtest job controller: the strategies of {@link QuantAnalysisCryptoController} submitted as jobs.
+ * A submission returns at once with the job ID; the result is polled or streamed with Server-Sent Events
+ *
+ * @author Emil S. He
+ * @since 2025-04-26
+ */
+@Slf4j
+@RestController
+@RequestMapping("/quant/analysis/crypto/jobs")
+@Tag(name = "Backtest Job Interface")
+public class JobController {
+
+    @Resource
+    private IQuantAnalysisCryptoService quantAnalysisCryptoService;
+
+    @Resource
+    private JobScheduler jobScheduler;
+
+    /**
+     * Submit a Donchian channel backtest
+     * @param polygonApiKey User's polygon API key
+     * @param cryptoAggregatesDTO DTO for carrying necessary information
+     * @param windowSize Window size
+     * @param priority Job priority, NORMAL by default
+     * @return State of the queued job
+     * @postmantest untested
+     */
+    @PostMapping("/donchian")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @Operation(summary = "Submit a Donchian channel backtest job")
+    public ResponseEntity<JobVO> donchian(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "DTO for carrying necessary information") @RequestBody CryptoAggregatesDTO cryptoAggregatesDTO,
+            @Parameter(name = "Window size") @RequestParam Integer windowSize,
+            @Parameter(name = "Job priority") @RequestParam(required = false) JobPriority priority) {
+        return accepted(jobScheduler.submit("donchian", priority,
+                () -> quantAnalysisCryptoService.donchian(polygonApiKey, cryptoAggregatesDTO, windowSize).getBody()));
+    }
+
+    /**
+     * Submit a pair trading backtest
+     * @param polygonApiKey User's polygon API key
+     * @param cryptoAggregatesPairDTO DTO for carrying necessary information, but in pairs
+     * @param windowSize Window size
+     * @param zScoreThreshold Threshold of z-score
+     * @param x Previous x days
+     * @param priority Job priority, NORMAL by default
+     * @return State of the queued job
+     * @postmantest untested
+     */
+    @PostMapping("/pair/trading")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @Operation(summary = "Submit a pair trading backtest job")
+    public ResponseEntity<JobVO> pairTrading(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "DTO for carrying necessary information") @RequestBody CryptoAggregatesPairDTO cryptoAggregatesPairDTO,
+            @Parameter(name = "Window size") @RequestParam Integer windowSize,
+            @Parameter(name = "Threshold of z-score") @RequestParam Double zScoreThreshold,
+            @Parameter(name = "Previous x days") @RequestParam Integer x,
+            @Parameter(name = "Job priority") @RequestParam(required = false) JobPriority priority) {
+        return accepted(jobScheduler.submit("pair_trading", priority,
+                () -> quantAnalysisCryptoService.pairTrading(polygonApiKey, cryptoAggregatesPairDTO,
+                        windowSize, zScoreThreshold, x).join().getBody()));
+    }
+
+    /**
+     * Submit an EMA with fixed percentage stop loss backtest
+     * @param polygonApiKey User's polygon API key
+     * @param cryptoAggregatesDTO DTO for carrying necessary information
+     * @param emaPeriod EMA window size
+     * @param stopLossPercentage Fixed percentage of stop loss
+     * @param priority Job priority, NORMAL by default
+     * @return State of the queued job
+     * @postmantest untested
+     */
+    @PostMapping("/ema/stop/loss/percentage")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @Operation(summary = "Submit an EMA with fixed percentage stop loss backtest job")
+    public ResponseEntity<JobVO> emaWithStopLossPercentage(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "DTO for carrying necessary information") @RequestBody CryptoAggregatesDTO cryptoAggregatesDTO,
+            @Parameter(name = "Window size, as know as EMA period") @RequestParam Integer emaPeriod,
+            @Parameter(name = "Fixed percentage of stop loss") @RequestParam Double stopLossPercentage,
+            @Parameter(name = "Job priority") @RequestParam(required = false) JobPriority priority) {
+        return accepted(jobScheduler.submit("ema_stop_loss_percentage", priority,
+                () -> quantAnalysisCryptoService.emaWithStopLossPercentage(polygonApiKey, cryptoAggregatesDTO,
+                        emaPeriod, stopLossPercentage).getBody()));
+    }
+
+    /**
+     * Submit an EMA with ATR stop loss backtest
+     * @param polygonApiKey User's polygon API key
+     * @param cryptoAggregatesDTO DTO for carrying necessary information
+     * @param emaPeriod EMA window size
+     * @param atrPeriod ATR window size
+     * @param atrMultiplier ATR multiplier
+     * @param priority Job priority, NORMAL by default
+     * @return State of the queued job
+     * @postmantest untested
+     */
+    @PostMapping("/ema/stop/loss/atr")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @Operation(summary = "Submit an EMA with ATR stop loss backtest job")
+    public ResponseEntity<JobVO> emaWithATRStopLoss(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "DTO for carrying necessary information") @RequestBody CryptoAggregatesDTO cryptoAggregatesDTO,
+            @Parameter(name = "EMA period") @RequestParam Integer emaPeriod,
+            @Parameter(name = "ATR period") @RequestParam Integer atrPeriod,
+            @Parameter(name = "ATR multiplier") @RequestParam Double atrMultiplier,
+            @Parameter(name = "Job priority") @RequestParam(required = false) JobPriority priority) {
+        return accepted(jobScheduler.submit("ema_stop_loss_atr", priority,
+                () -> quantAnalysisCryptoService.emaWithATRStopLoss(polygonApiKey, cryptoAggregatesDTO,
+                        emaPeriod, atrPeriod, atrMultiplier).getBody()));
+    }
+
+    /**
+     * Submit a parameter sweep, progress is reported per parameter set
+     * @param polygonApiKey User's polygon API key
+     * @param strategySweepDTO Strategy, bars and parameter ranges of the sweep
+     * @param priority Job priority, NORMAL by default
+     * @return State of the queued job
+     * @postmantest untested
+     */
+    @PostMapping("/sweep")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @Operation(summary = "Submit a parameter sweep job")
+    public ResponseEntity<JobVO> sweep(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "Strategy, bars and parameter ranges of the sweep") @RequestBody StrategySweepDTO strategySweepDTO,
+            @Parameter(name = "Job priority") @RequestParam(required = false) JobPriority priority) {
+        return accepted(jobScheduler.submit("sweep", priority,
+                () -> quantAnalysisCryptoService.sweep(polygonApiKey, strategySweepDTO).getBody()));
+    }
+
+    /**
+     * Submit a walk-forward optimization, progress is reported per fold
+     * @param polygonApiKey User's polygon API key
+     * @param walkForwardDTO Strategy, bars, parameter ranges and window sizes of the run
+     * @param priority Job priority, NORMAL by default
+     * @return State of the queued job
+     * @postmantest untested
+     */
+    @PostMapping("/walk/forward")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @Operation(summary = "Submit a walk-forward optimization job")
+    public ResponseEntity<JobVO> walkForward(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "Strategy, bars, parameter ranges and window sizes of the run") @RequestBody WalkForwardDTO walkForwardDTO,
+            @Parameter(name = "Job priority") @RequestParam(required = false) JobPriority priority) {
+        return accepted(jobScheduler.submit("walk_forward", priority,
+                () -> quantAnalysisCryptoService.walkForward(polygonApiKey, walkForwardDTO).getBody()));
+    }
+
+    /**
+     * Poll a job
+     * @param jobId Job ID
+     * @return State of the job, with its result once succeeded
+     * @postmantest untested
+     */
+    @GetMapping("/{jobId}")
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Get the state of a backtest job")
+    public ResponseEntity<JobVO> get(@Parameter(name = "Job ID") @PathVariable String jobId) {
+        return ResponseEntity.ok(jobScheduler.get(jobId));
+    }
+
+    /**
+     * Subscribe to the progress of a job, the stream ends when the job is finished
+     * @param jobId Job ID
+     * @return Server-Sent Events of the state of the job
+     * @postmantest untested
+     */
+    @GetMapping(value = "/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Subscribe to the progress of a backtest job")
+    public SseEmitter events(@Parameter(name = "Job ID") @PathVariable String jobId) {
+        return jobScheduler.subscribe(jobId);
+    }
+
+    /**
+     * Cancel a job
+     * @param jobId Job ID
+     * @return State of the job
+     * @postmantest untested
+     */
+    @DeleteMapping("/{jobId}")
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Cancel a backtest job")
+    public ResponseEntity<JobVO> cancel(@Parameter(name = "Job ID") @PathVariable String jobId) {
+        return ResponseEntity.ok(jobScheduler.cancel(jobId));
+    }
+
+    private static ResponseEntity<JobVO> accepted(JobVO job) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+}
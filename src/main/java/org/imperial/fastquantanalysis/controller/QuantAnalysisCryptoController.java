@@ -7,8 +7,12 @@ import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.imperial.fastquantanalysis.dto.CryptoAggregatesDTO;
 import org.imperial.fastquantanalysis.dto.CryptoAggregatesPairDTO;
+import org.imperial.fastquantanalysis.dto.StrategySweepDTO;
+import org.imperial.fastquantanalysis.dto.WalkForwardDTO;
 import org.imperial.fastquantanalysis.entity.QuantStrategy;
 import org.imperial.fastquantanalysis.service.IQuantAnalysisCryptoService;
+import org.imperial.fastquantanalysis.vo.SweepResultVO;
+import org.imperial.fastquantanalysis.vo.WalkForwardResultVO;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -111,4 +115,36 @@ public class QuantAnalysisCryptoController {
             @Parameter(name = "ATR multiplier") @RequestParam Double atrMultiplier) {
         return quantAnalysisCryptoService.emaWithATRStopLoss(polygonApiKey, cryptoAggregatesDTO, emaPeriod, atrPeriod, atrMultiplier);
     }
+
+    /**
+     * Run a built-in strategy over a grid of parameters in parallel, fetching the bars only once
+     * @param polygonApiKey User's polygon API key
+     * @param strategySweepDTO Strategy, bars and parameter ranges of the sweep
+     * @return Results ranked from best to worst
+     * @postmantest untested
+     */
+    @PostMapping("/sweep")
+    @ResponseStatus(value = HttpStatus.OK)
+    @Operation(summary = "Parameter sweep of a built-in strategy for crypto prices")
+    public ResponseEntity<SweepResultVO> sweep(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "Strategy, bars and parameter ranges of the sweep") @RequestBody StrategySweepDTO strategySweepDTO) {
+        return quantAnalysisCryptoService.sweep(polygonApiKey, strategySweepDTO);
+    }
+
+    /**
+     * Walk-forward optimization of a built-in strategy: optimize in-sample, evaluate out of sample, fold by fold
+     * @param polygonApiKey User's polygon API key
+     * @param walkForwardDTO Strategy, bars, parameter ranges and window sizes of the run
+     * @return Best parameters and out-of-sample results of every fold
+     * @postmantest untested
+     */
+    @PostMapping("/walk/forward")
+    @ResponseStatus(value = HttpStatus.OK)
+    @Operation(summary = "Walk-forward optimization of a built-in strategy for crypto prices")
+    public ResponseEntity<WalkForwardResultVO> walkForward(
+            @Parameter(name = "User's Polygon.io API key") @RequestParam("polygon_api_key") String polygonApiKey,
+            @Parameter(name = "Strategy, bars, parameter ranges and window sizes of the run") @RequestBody WalkForwardDTO walkForwardDTO) {
+        return quantAnalysisCryptoService.walkForward(polygonApiKey, walkForwardDTO);
+    }
 }
\ No newline at end of file
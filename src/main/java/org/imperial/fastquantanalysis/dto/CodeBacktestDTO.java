@@ -0,0 +1,25 @@
+package org.imperial.fastquantanalysis.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+/**
+ * Backtest of a bar strategy written by the user
+ *
+ * @author Emil S. He
+ * @since 2025-04-25
+ */
+@Data
+public class CodeBacktestDTO {
+
+    @Schema(description = "source of a public class UserStrategy implementing BarStrategy, " +
+            "or declaring a public method int onBar(BarSeries bars, int i)")
+    @NotBlank
+    private String code;
+
+    @Schema(description = "bars the strategy runs on")
+    @NotBlank
+    private CryptoAggregatesDTO aggregates;
+
+}
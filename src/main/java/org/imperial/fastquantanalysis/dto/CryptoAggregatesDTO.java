@@ -40,7 +40,7 @@ public class CryptoAggregatesDTO {
     private Boolean unadjusted; // default value: false
 
     @Schema(description = "the number of base aggregates queried to create the result")
-    private Long limit; // default value: 50000
+    private Long limit; // default value: every bar of the range
 
     @Schema(description = "asc will return results in ascending order (oldest at the top), " +
             "desc will return results in descending order (newest at the top)")
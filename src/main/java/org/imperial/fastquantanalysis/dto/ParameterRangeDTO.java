@@ -0,0 +1,29 @@
+package org.imperial.fastquantanalysis.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Values a strategy parameter takes in a sweep, either listed or as an inclusive range
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+@Data
+public class ParameterRangeDTO {
+
+    @Schema(description = "explicit values, takes precedence over from/to/step")
+    private List<Double> values;
+
+    @Schema(description = "first value of the range")
+    private Double from;
+
+    @Schema(description = "last value of the range (inclusive)")
+    private Double to;
+
+    @Schema(description = "step of the range")
+    private Double step; // default value: 1
+
+}
@@ -0,0 +1,40 @@
+package org.imperial.fastquantanalysis.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+import org.imperial.fastquantanalysis.constant.SweepMetric;
+
+import java.util.Map;
+
+/**
+ * Parameter sweep of a built-in strategy
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+@Data
+public class StrategySweepDTO {
+
+    @Schema(description = "strategy name, e.g. donchian_channel")
+    @NotBlank
+    private String strategyName;
+
+    @Schema(description = "bars the strategy runs on")
+    @NotBlank
+    private CryptoAggregatesDTO aggregates;
+
+    @Schema(description = "second ticker name, only for pair trading")
+    private String pairedTickerName;
+
+    @Schema(description = "values of every strategy parameter, keyed by parameter name")
+    @NotBlank
+    private Map<String, ParameterRangeDTO> parameters;
+
+    @Schema(description = "metric to rank results by")
+    private SweepMetric rankBy; // default value: SHARPE_RATIO
+
+    @Schema(description = "number of best results returned")
+    private Integer top; // default value: 50
+
+}
@@ -0,0 +1,48 @@
+package org.imperial.fastquantanalysis.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+import org.imperial.fastquantanalysis.constant.SweepMetric;
+
+import java.util.Map;
+
+/**
+ * Walk-forward optimization of a built-in strategy
+ *
+ * @author Emil S. He
+ * @since 2025-04-23
+ */
+@Data
+public class WalkForwardDTO {
+
+    @Schema(description = "strategy name, e.g. ema_with_atr_stop_loss")
+    @NotBlank
+    private String strategyName;
+
+    @Schema(description = "bars the strategy runs on")
+    @NotBlank
+    private CryptoAggregatesDTO aggregates;
+
+    @Schema(description = "second ticker name, only for pair trading")
+    private String pairedTickerName;
+
+    @Schema(description = "values of every strategy parameter tried in-sample, keyed by parameter name")
+    @NotBlank
+    private Map<String, ParameterRangeDTO> parameters;
+
+    @Schema(description = "number of bars parameters are optimized on")
+    @NotBlank
+    private Integer inSampleBars;
+
+    @Schema(description = "number of bars the optimized parameters are evaluated on")
+    @NotBlank
+    private Integer outOfSampleBars;
+
+    @Schema(description = "number of bars between the starts of consecutive folds")
+    private Integer stepBars; // default value: outOfSampleBars
+
+    @Schema(description = "metric parameters are optimized for")
+    private SweepMetric rankBy; // default value: SHARPE_RATIO
+
+}
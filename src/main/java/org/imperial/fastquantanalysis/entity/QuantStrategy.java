@@ -26,6 +26,16 @@ public class QuantStrategy {
                          Double annualizedReturn, Double cumulativeReturn,
                          Double maxDrawdown, Double volatility,
                          Double sharpeRatio, Integer tradeCount) {
+        this(strategyId, strategyName, startDate, endDate, annualizedReturn, cumulativeReturn,
+                maxDrawdown, volatility, sharpeRatio, null, null, tradeCount, null, null);
+    }
+
+    public QuantStrategy(String strategyId, String strategyName,
+                         LocalDateTime startDate, LocalDateTime endDate,
+                         Double annualizedReturn, Double cumulativeReturn,
+                         Double maxDrawdown, Double volatility,
+                         Double sharpeRatio, Double sortinoRatio, Double calmarRatio,
+                         Integer tradeCount, Double winRate, Double exposure) {
         this.strategyId = strategyId;
         this.strategyName = strategyName;
         this.startDate = startDate;
@@ -35,7 +45,11 @@ public class QuantStrategy {
         this.maxDrawdown = maxDrawdown;
         this.volatility = volatility;
         this.sharpeRatio = sharpeRatio;
+        this.sortinoRatio = sortinoRatio;
+        this.calmarRatio = calmarRatio;
         this.tradeCount = tradeCount;
+        this.winRate = winRate;
+        this.exposure = exposure;
     }
 
     // Basic info about strategy
@@ -69,7 +83,19 @@ public class QuantStrategy {
     @TableField("sharpe_ratio")
     private Double sharpeRatio;
 
+    @TableField("sortino_ratio")
+    private Double sortinoRatio;
+
+    @TableField("calmar_ratio")
+    private Double calmarRatio;
+
     // Statistics
     @TableField("trade_count")
     private Integer tradeCount;
+
+    @TableField("win_rate")
+    private Double winRate;
+
+    @TableField("exposure")
+    private Double exposure;
 }
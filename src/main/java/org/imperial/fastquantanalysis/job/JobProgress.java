@@ -0,0 +1,52 @@
+package org.imperial.fastquantanalysis.job;
+
+/**
+ * Progress reporting of the job running on the current thread.
+ * Code shared by synchronous requests and jobs calls {@link #current()}, which does nothing outside a job
+ *
+ * @author Emil S. He
+ * @since 2025-04-26
+ */
+public interface JobProgress {
+
+    JobProgress NONE = new JobProgress() {
+        @Override
+        public void update(double fraction, String message) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * @return progress of the job running on this thread, {@link #NONE} if there is none
+     */
+    static JobProgress current() {
+        return JobScheduler.currentProgress();
+    }
+
+    /**
+     * @param fraction fraction of the work done, 0 ~ 1
+     * @param message what is being done
+     */
+    void update(double fraction, String message);
+
+    /**
+     * @return true once the job is cancelled, long loops may stop early
+     */
+    boolean isCancelled();
+
+    /**
+     * Report a step of a loop, at most once per percent
+     * @param done steps done
+     * @param total total steps
+     * @param message what is being done
+     */
+    default void step(int done, int total, String message) {
+        if (done >= total || done * 100L / total != (done - 1) * 100L / total) {
+            update(total == 0 ? 1.0 : (double) done / total, message);
+        }
+    }
+}
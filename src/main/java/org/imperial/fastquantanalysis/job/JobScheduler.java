@@ -0,0 +1,398 @@
+package org.imperial.fastquantanalysis.job;
+
+import cn.hutool.core.util.IdUtil;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.constant.JobPriority;
+import org.imperial.fastquantanalysis.constant.JobStatus;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.imperial.fastquantanalysis.vo.JobVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs backtests submitted as jobs, so a request thread only waits for the submission.
+ * Jobs wait in a priority queue (then in submission order) for one of a fixed number of threads,
+ * which bounds backtest concurrency independently of the number of request threads.
+ * Clients poll the state of a job or subscribe to it with Server-Sent Events; finished jobs are kept
+ * for a while and then forgotten. Events are sent by separate threads, so a slow subscriber never holds up
+ * the backtest, and a subscriber that falls behind only receives the latest state.
+ *
+ * @author Emil S. He
+ * @since 2025-04-26
+ */
+@Slf4j
+@Component
+public class JobScheduler {
+
+    private static final ThreadLocal<Job> CURRENT = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "job-scheduler-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Sends the events of each job in order, one thread per job with events to send at most
+    private final ExecutorService notifier;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final int maxQueued;
+
+    private final long retentionMillis;
+
+    private final long sseTimeoutMillis;
+
+    public JobScheduler(@Value("${fast-quant.job.threads:4}") int threads,
+                        @Value("${fast-quant.job.max-queued:100}") int maxQueued,
+                        @Value("${fast-quant.job.retention-minutes:30}") long retentionMinutes,
+                        @Value("${fast-quant.job.sse-timeout-ms:600000}") long sseTimeoutMillis,
+                        MeterRegistry meterRegistry) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "backtest-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger notifierCount = new AtomicInteger();
+        this.notifier = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "backtest-job-events-" + notifierCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxQueued = maxQueued;
+        this.retentionMillis = TimeUnit.MINUTES.toMillis(retentionMinutes);
+        this.sseTimeoutMillis = sseTimeoutMillis;
+
+        long cleanIntervalMillis = Math.max(1000L, retentionMillis / 10);
+        cleaner.scheduleWithFixedDelay(this::forgetFinishedJobs, cleanIntervalMillis, cleanIntervalMillis, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("backtest.jobs", executor, e -> e.getQueue().size())
+                .tag("state", "queued")
+                .description("Backtest jobs by state")
+                .register(meterRegistry);
+        Gauge.builder("backtest.jobs", executor, ThreadPoolExecutor::getActiveCount)
+                .tag("state", "running")
+                .description("Backtest jobs by state")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a job
+     * @param type what the job runs, e.g. a strategy name
+     * @param priority priority, null for {@link JobPriority#NORMAL}
+     * @param work the backtest, its result is the result of the job
+     * @return state of the job
+     * @throws StrategyRunningException if too many jobs are waiting
+     */
+    public JobVO submit(String type, JobPriority priority, Callable<?> work) {
+        if (executor.getQueue().size() >= maxQueued) {
+            throw new StrategyRunningException("Too many backtest jobs waiting, please try again later.");
+        }
+        Job job = new Job(IdUtil.fastSimpleUUID(), type, priority == null ? JobPriority.NORMAL : priority,
+                sequence.getAndIncrement(), work);
+        jobs.put(job.id, job);
+        executor.execute(job);
+        log.debug("Queued job {} ({}, {})", job.id, type, job.priority);
+        return job.toVO();
+    }
+
+    /**
+     * @param jobId job ID
+     * @return state of the job
+     * @throws StrategyRunningException if there is no such job
+     */
+    public JobVO get(String jobId) {
+        return find(jobId).toVO();
+    }
+
+    /**
+     * Cancel a job: a queued job never runs, a running job is interrupted and its result discarded
+     * @param jobId job ID
+     * @return state of the job
+     * @throws StrategyRunningException if there is no such job
+     */
+    public JobVO cancel(String jobId) {
+        Job job = find(jobId);
+        if (executor.remove(job)) {
+            log.debug("Cancelled queued job {}", jobId);
+        }
+        job.cancel();
+        return job.toVO();
+    }
+
+    /**
+     * Subscribe to a job: the current state is sent right away, then every change of progress or status,
+     * under the event name of its status; changes made while an event is being sent are merged into the latest.
+     * The stream completes once the job is finished
+     * @param jobId job ID
+     * @return emitter of the events
+     * @throws StrategyRunningException if there is no such job
+     */
+    public SseEmitter subscribe(String jobId) {
+        return subscribe(jobId, new SseEmitter(sseTimeoutMillis));
+    }
+
+    SseEmitter subscribe(String jobId, SseEmitter emitter) {
+        return find(jobId).subscribe(emitter);
+    }
+
+    static JobProgress currentProgress() {
+        Job job = CURRENT.get();
+        return job == null ? JobProgress.NONE : job;
+    }
+
+    private Job find(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            throw new StrategyRunningException("Job " + jobId + " does not exist or has expired");
+        }
+        return job;
+    }
+
+    private void forgetFinishedJobs() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> job.isExpired(now));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down backtest job scheduler...");
+        cleaner.shutdownNow();
+        executor.shutdownNow();
+        notifier.shutdownNow();
+    }
+
+    /**
+     * A submitted backtest, ordered by priority then submission
+     */
+    private final class Job implements Runnable, Comparable<Job>, JobProgress {
+
+        private final String id;
+        private final String type;
+        private final JobPriority priority;
+        private final long sequence;
+        private final Callable<?> work;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+        // Written with the lock held, read without it by the workers of a sweep checking for cancellation
+        private volatile JobStatus status = JobStatus.QUEUED;
+
+        // Guarded by this
+        private double progress;
+        private String message = "Queued";
+        private Object result;
+        private String error;
+        private LocalDateTime startedAt;
+        private LocalDateTime finishedAt;
+        private long finishedAtMillis;
+        private Thread runner;
+        private final List<SseEmitter> joining = new ArrayList<>();
+        private JobVO pending;
+        private boolean changed;
+        private boolean publishing;
+
+        private Job(String id, String type, JobPriority priority, long sequence, Callable<?> work) {
+            this.id = id;
+            this.type = type;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (status != JobStatus.QUEUED) {
+                    return;
+                }
+                status = JobStatus.RUNNING;
+                message = "Running";
+                startedAt = LocalDateTime.now();
+                runner = Thread.currentThread();
+                publish();
+            }
+
+            CURRENT.set(this);
+            try {
+                Object value = work.call();
+                finish(JobStatus.SUCCEEDED, "Succeeded", value, null);
+            } catch (Exception e) {
+                log.warn("Job {} ({}) failed: {}", id, type, e.getMessage());
+                finish(JobStatus.FAILED, "Failed", null, e.getMessage() == null ? e.toString() : e.getMessage());
+            } catch (Throwable t) {
+                // An error, e.g. out of memory or a class missing from a strategy, must not leave the job running
+                log.error("Job {} ({}) failed", id, type, t);
+                finish(JobStatus.FAILED, "Failed", null, t.toString());
+                throw t;
+            } finally {
+                CURRENT.remove();
+                synchronized (this) {
+                    runner = null;
+                }
+                // A cancellation must not leak into the next job of this thread
+                Thread.interrupted();
+            }
+        }
+
+        @Override
+        public synchronized void update(double fraction, String message) {
+            if (status != JobStatus.RUNNING) {
+                return;
+            }
+            this.progress = Math.max(0.0, Math.min(1.0, fraction));
+            this.message = message;
+            publish();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return status == JobStatus.CANCELLED;
+        }
+
+        private synchronized void cancel() {
+            if (status.isFinished()) {
+                return;
+            }
+            if (runner != null) {
+                runner.interrupt();
+            }
+            finish(JobStatus.CANCELLED, "Cancelled", null, null);
+        }
+
+        private synchronized void finish(JobStatus status, String message, Object result, String error) {
+            // A cancelled job stays cancelled whatever its work returns afterwards
+            if (this.status.isFinished()) {
+                return;
+            }
+            this.status = status;
+            this.message = message;
+            this.result = result;
+            this.error = error;
+            if (status == JobStatus.SUCCEEDED) {
+                this.progress = 1.0;
+            }
+            this.finishedAt = LocalDateTime.now();
+            this.finishedAtMillis = System.currentTimeMillis();
+            publish();
+        }
+
+        private synchronized SseEmitter subscribe(SseEmitter emitter) {
+            emitter.onCompletion(() -> emitters.remove(emitter));
+            emitter.onTimeout(() -> emitters.remove(emitter));
+            emitter.onError(e -> emitters.remove(emitter));
+            // The current state is sent first, by the same thread as the changes after it
+            joining.add(emitter);
+            schedule();
+            return emitter;
+        }
+
+        // Called with the lock held: the state is snapshot here, in order, but sent by the notifier
+        private void publish() {
+            if (emitters.isEmpty() && joining.isEmpty()) {
+                return;
+            }
+            changed = true;
+            schedule();
+        }
+
+        // Called with the lock held. A change not sent yet is replaced by the newer one
+        private void schedule() {
+            pending = toVO();
+            if (!publishing) {
+                try {
+                    notifier.execute(this::drain);
+                    publishing = true;
+                } catch (RejectedExecutionException e) {
+                    // Shutting down, the subscribers are dropped with their connections
+                    pending = null;
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                JobVO state;
+                boolean sendToAll;
+                List<SseEmitter> joined;
+                synchronized (this) {
+                    if (pending == null) {
+                        publishing = false;
+                        return;
+                    }
+                    state = pending;
+                    sendToAll = changed;
+                    joined = List.copyOf(joining);
+                    pending = null;
+                    changed = false;
+                    joining.clear();
+                }
+                if (sendToAll) {
+                    for (SseEmitter emitter : emitters) {
+                        send(emitter, state);
+                    }
+                }
+                for (SseEmitter emitter : joined) {
+                    emitters.add(emitter);
+                    send(emitter, state);
+                }
+            }
+        }
+
+        private void send(SseEmitter emitter, JobVO state) {
+            try {
+                emitter.send(SseEmitter.event().id(id).name(state.getStatus().name().toLowerCase()).data(state));
+                if (state.getStatus().isFinished()) {
+                    emitter.complete();
+                    emitters.remove(emitter);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away
+                emitters.remove(emitter);
+            }
+        }
+
+        private synchronized boolean isExpired(long now) {
+            return status.isFinished() && now - finishedAtMillis > retentionMillis;
+        }
+
+        private synchronized JobVO toVO() {
+            return new JobVO(id, type, priority, status, progress, message, result, error,
+                    createdAt, startedAt, finishedAt);
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
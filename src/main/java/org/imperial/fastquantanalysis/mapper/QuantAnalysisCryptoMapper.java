@@ -1,8 +1,12 @@
 package org.imperial.fastquantanalysis.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
 import org.imperial.fastquantanalysis.entity.QuantStrategy;
 
+import java.util.List;
+
 /**
  * Quant analysis mapper interface
  *
@@ -11,4 +15,26 @@ import org.imperial.fastquantanalysis.entity.QuantStrategy;
  */
 public interface QuantAnalysisCryptoMapper extends BaseMapper<QuantStrategy> {
 
+    /**
+     * Insert strategies with one multi-row statement, overwriting rows whose strategy_id already exists
+     * @param quantStrategies strategies with distinct IDs
+     * @return affected rows (MySQL counts an updated row twice)
+     */
+    @Insert({"<script>",
+            "INSERT INTO quant_strategy (strategy_id, strategy_name, start_date, end_date,",
+            "annualized_return, cumulative_return, max_drawdown, volatility,",
+            "sharpe_ratio, sortino_ratio, calmar_ratio, trade_count, win_rate, exposure) VALUES",
+            "<foreach collection='quantStrategies' item='s' separator=','>",
+            "(#{s.strategyId}, #{s.strategyName}, #{s.startDate}, #{s.endDate},",
+            "#{s.annualizedReturn}, #{s.cumulativeReturn}, #{s.maxDrawdown}, #{s.volatility},",
+            "#{s.sharpeRatio}, #{s.sortinoRatio}, #{s.calmarRatio}, #{s.tradeCount}, #{s.winRate}, #{s.exposure})",
+            "</foreach>",
+            "ON DUPLICATE KEY UPDATE strategy_name = VALUES(strategy_name), start_date = VALUES(start_date),",
+            "end_date = VALUES(end_date), annualized_return = VALUES(annualized_return),",
+            "cumulative_return = VALUES(cumulative_return), max_drawdown = VALUES(max_drawdown),",
+            "volatility = VALUES(volatility), sharpe_ratio = VALUES(sharpe_ratio),",
+            "sortino_ratio = VALUES(sortino_ratio), calmar_ratio = VALUES(calmar_ratio),",
+            "trade_count = VALUES(trade_count), win_rate = VALUES(win_rate), exposure = VALUES(exposure)",
+            "</script>"})
+    int upsertBatch(@Param("quantStrategies") List<QuantStrategy> quantStrategies);
 }
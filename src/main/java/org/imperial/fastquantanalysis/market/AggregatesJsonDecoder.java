@@ -0,0 +1,102 @@
+package org.imperial.fastquantanalysis.market;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder of a Polygon.io aggregates response.
+ * Bars are read token by token straight into the primitive columns of a {@link BarSeriesBuilder},
+ * so no DTO, boxed number or copy of the whole body is kept while a page of 50,000 bars is decoded.
+ * Only the columns of a {@link BarSeries} are kept: VWAP, trade count and unknown fields are skipped,
+ * and so are bars without a timestamp, which cannot be placed in the series.
+ *
+ * @author Emil S. He
+ * @since 2025-04-28
+ */
+@Slf4j
+public final class AggregatesJsonDecoder {
+
+    // Thread safe, parsers are created per response; the caller owns the body
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+
+    private AggregatesJsonDecoder() {
+    }
+
+    /**
+     * Decode the bars of an aggregates response
+     * @param body response body, not closed
+     * @return columns of the bars, in the order of the response
+     * @throws IOException if the body cannot be read or is not valid JSON
+     */
+    public static BarSeriesBuilder decode(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Aggregates response is not a JSON object");
+            }
+            BarSeriesBuilder bars = null;
+            int resultsCount = 0;
+            int skipped = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("resultsCount".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    // Comes before the results, the columns are then allocated once
+                    resultsCount = (int) Math.min(parser.getLongValue(), BarFetchPlanner.PAGE_LIMIT);
+                } else if ("results".equals(field) && value == JsonToken.START_ARRAY) {
+                    bars = bars == null ? new BarSeriesBuilder(resultsCount) : bars;
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        if (!readBar(parser, bars)) {
+                            skipped++;
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (skipped > 0) {
+                log.warn("Skipped {} Polygon.io aggregates without a timestamp", skipped);
+            }
+            return bars == null ? new BarSeriesBuilder(0) : bars;
+        }
+    }
+
+    // Return false if the bar has no timestamp and was skipped
+    private static boolean readBar(JsonParser parser, BarSeriesBuilder bars) throws IOException {
+        boolean hasTimestamp = false;
+        long timestamp = 0L;
+        double open = Double.NaN, high = Double.NaN, low = Double.NaN, close = Double.NaN;
+        double volume = Double.NaN;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "t" -> {
+                    timestamp = parser.getLongValue();
+                    hasTimestamp = true;
+                }
+                case "o" -> open = parser.getDoubleValue();
+                case "h" -> high = parser.getDoubleValue();
+                case "l" -> low = parser.getDoubleValue();
+                case "c" -> close = parser.getDoubleValue();
+                case "v" -> volume = parser.getDoubleValue();
+                default -> parser.skipChildren();
+            }
+        }
+        if (!hasTimestamp) {
+            return false;
+        }
+        bars.add(timestamp, open, high, low, close, volume);
+        return true;
+    }
+}
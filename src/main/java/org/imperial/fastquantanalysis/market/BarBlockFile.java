@@ -0,0 +1,184 @@
+package org.imperial.fastquantanalysis.market;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * File of bars compressed in {@link GorillaCodec} blocks of at most {@link #BLOCK_BARS} bars, oldest first.
+ * The index of the blocks is kept by the caller, e.g. next to the coverage of the series, so a date
+ * sub-range is read by decoding only the blocks it overlaps. Blocks are only ever appended after a
+ * given block, so refreshing the latest bars rewrites the last block rather than the whole file.
+ *
+ * @author Emil S. He
+ * @since 2025-04-30
+ */
+public final class BarBlockFile {
+
+    /**
+     * Most bars of a block, e.g. about 17 hours of minute bars
+     */
+    public static final int BLOCK_BARS = 1024;
+
+    /**
+     * Index entry of a block
+     *
+     * @param offset offset of the block in the file
+     * @param length length of the block in bytes
+     * @param count number of bars of the block
+     * @param firstTimestamp timestamp of the first bar
+     * @param lastTimestamp timestamp of the last bar
+     * @param checksum CRC32 of the block, so a block left behind by an interrupted write is detected
+     */
+    public record Block(long offset, int length, int count, long firstTimestamp, long lastTimestamp, int checksum) {
+    }
+
+    private final Path file;
+
+    private final List<Block> blocks;
+
+    /**
+     * @param file file of the blocks
+     * @param blocks index of the blocks in the file
+     */
+    public BarBlockFile(Path file, List<Block> blocks) {
+        this.file = file;
+        this.blocks = new ArrayList<>(blocks);
+    }
+
+    /**
+     * @return index of the blocks, in timestamp order
+     */
+    public List<Block> getBlocks() {
+        return List.copyOf(blocks);
+    }
+
+    /**
+     * @return number of bars in the file
+     */
+    public int size() {
+        int size = 0;
+        for (Block block : blocks) {
+            size += block.count();
+        }
+        return size;
+    }
+
+    /**
+     * Decode the bars whose timestamp lies in [fromMillis, toMillis), reading only the blocks that overlap it
+     * @param fromMillis inclusive lower bound
+     * @param toMillis exclusive upper bound
+     * @return bars in ascending order
+     * @throws IOException if the file cannot be read or a block is corrupted
+     */
+    public BarSeries read(long fromMillis, long toMillis) throws IOException {
+        int first = firstBlockEndingAtOrAfter(fromMillis);
+        int last = first;
+        while (last < blocks.size() && blocks.get(last).firstTimestamp() < toMillis) {
+            last++;
+        }
+        if (first == last) {
+            return BarSeries.empty();
+        }
+
+        List<BarSeries> parts = new ArrayList<>(last - first);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = first; i < last; i++) {
+                parts.add(readBlock(channel, blocks.get(i)));
+            }
+        }
+        return BarSeries.concat(parts).slice(fromMillis, toMillis);
+    }
+
+    /**
+     * Replace the bars from a timestamp on: the blocks ending before it are kept, the others are
+     * dropped, and the bars given are appended in new blocks
+     * @param fromMillis first timestamp that may change
+     * @param tail every bar from the start of the first dropped block on, in ascending order,
+     *             i.e. the bars of {@link #readTail(long)} with the changes applied
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTail(long fromMillis, BarSeries tail) throws IOException {
+        int first = firstBlockEndingAtOrAfter(fromMillis);
+        long offset = first < blocks.size() ? blocks.get(first).offset()
+                : blocks.isEmpty() ? 0L : blocks.get(blocks.size() - 1).offset() + blocks.get(blocks.size() - 1).length();
+        blocks.subList(first, blocks.size()).clear();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.position(offset);
+            long[] timestamps = tail.getTimestamps();
+            for (int from = 0; from < tail.size(); from += BLOCK_BARS) {
+                int to = Math.min(tail.size(), from + BLOCK_BARS);
+                byte[] bytes = GorillaCodec.encode(tail, from, to);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                blocks.add(new Block(offset, bytes.length, to - from, timestamps[from], timestamps[to - 1], checksum(bytes)));
+                offset += bytes.length;
+            }
+            channel.truncate(offset);
+        }
+    }
+
+    /**
+     * Decode the bars that {@link #writeTail(long, BarSeries)} would drop
+     * @param fromMillis first timestamp that may change
+     * @return bars from the start of the block containing fromMillis on
+     * @throws IOException if the file cannot be read or a block is corrupted
+     */
+    public BarSeries readTail(long fromMillis) throws IOException {
+        int first = firstBlockEndingAtOrAfter(fromMillis);
+        if (first == blocks.size()) {
+            return BarSeries.empty();
+        }
+        return read(blocks.get(first).firstTimestamp(), Long.MAX_VALUE);
+    }
+
+    // The blocks are sorted and do not overlap, so their last timestamps are sorted too
+    private int firstBlockEndingAtOrAfter(long timestamp) {
+        int low = 0, high = blocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocks.get(mid).lastTimestamp() < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static BarSeries readBlock(FileChannel channel, Block block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(block.length());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, block.offset() + buffer.position()) < 0) {
+                throw new IOException("Bar file ends before the block at " + block.offset());
+            }
+        }
+        byte[] bytes = buffer.array();
+        if (checksum(bytes) != block.checksum()) {
+            throw new IOException("Corrupted block at " + block.offset());
+        }
+        try {
+            BarSeries bars = GorillaCodec.decode(bytes);
+            if (bars.size() != block.count()) {
+                throw new IOException("Block at " + block.offset() + " holds " + bars.size() + " bars, not " + block.count());
+            }
+            return bars;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted block at " + block.offset(), e);
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,196 @@
+package org.imperial.fastquantanalysis.market;
+
+import org.imperial.fastquantanalysis.constant.Timespan;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches long histories that do not fit in one Polygon.io response.
+ * The date range is split into chunks of whole days, aligned on multiples of the chunk length so the
+ * same days always fall in the same chunk, and sized to fill most of a page. Chunks are fetched
+ * concurrently, a bounded number at a time; a chunk whose page comes back full is followed by further
+ * pages starting after its last bar. Pages are joined in timestamp order and bars repeated at their
+ * boundaries are kept once.
+ *
+ * @author Emil S. He
+ * @since 2025-04-27
+ */
+public final class BarFetchPlanner {
+
+    /**
+     * Most base aggregates Polygon.io returns per request
+     */
+    public static final long PAGE_LIMIT = 50000L;
+
+    // Chunks are sized for 80% of a page, busy days of second bars can hold more than the average
+    private static final double FILL_FACTOR = 0.8;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    /**
+     * Fetch one page of bars, oldest first, with at most {@link #PAGE_LIMIT} base aggregates
+     */
+    @FunctionalInterface
+    public interface PageFetcher {
+        /**
+         * @param from first day (yyyy-MM-dd) or first millisecond timestamp of the page, inclusive
+         * @param to last day of the page, inclusive
+         * @return bars of the page
+         */
+        BarSeries fetch(String from, LocalDate to);
+    }
+
+    private BarFetchPlanner() {
+    }
+
+    /**
+     * Split the days [from, to] into chunks that each fit in a page
+     * @param timespan timespan of the bars
+     * @param from first day
+     * @param to last day
+     * @return [first day, last day] of every chunk, in order
+     */
+    public static List<LocalDate[]> plan(Timespan timespan, LocalDate from, LocalDate to) {
+        List<LocalDate[]> chunks = new ArrayList<>();
+        if (to.isBefore(from)) {
+            return chunks;
+        }
+        // The limit counts base aggregates, whatever the multiplier
+        long chunkDays = Math.max(1L, (long) (PAGE_LIMIT * FILL_FACTOR / baseAggregatesPerDay(timespan)));
+        long day = from.toEpochDay();
+        long lastDay = to.toEpochDay();
+        while (day <= lastDay) {
+            long chunkEnd = Math.min(lastDay, Math.floorDiv(day, chunkDays) * chunkDays + chunkDays - 1);
+            chunks.add(new LocalDate[]{LocalDate.ofEpochDay(day), LocalDate.ofEpochDay(chunkEnd)});
+            day = chunkEnd + 1;
+        }
+        return chunks;
+    }
+
+    /**
+     * Fetch every bar of the days [from, to]
+     * @param timespan timespan of the bars
+     * @param multiplier multiplier of the timespan
+     * @param from first day
+     * @param to last day
+     * @param fetcher fetcher of one page
+     * @param executor executor of the chunks
+     * @param maxConcurrency chunks fetched at the same time
+     * @return bars in ascending order
+     */
+    public static BarSeries fetch(Timespan timespan, long multiplier, LocalDate from, LocalDate to,
+                                  PageFetcher fetcher, Executor executor, int maxConcurrency) {
+        return fetch(timespan, multiplier, from, from.toString(), to, fetcher, executor, maxConcurrency);
+    }
+
+    /**
+     * Fetch every bar from a timestamp to the end of a day, e.g. the bars after the last one stored
+     * @param timespan timespan of the bars
+     * @param multiplier multiplier of the timespan
+     * @param fromMillis first timestamp, inclusive
+     * @param to last day
+     * @param fetcher fetcher of one page
+     * @param executor executor of the chunks
+     * @param maxConcurrency chunks fetched at the same time
+     * @return bars in ascending order
+     */
+    public static BarSeries fetch(Timespan timespan, long multiplier, long fromMillis, LocalDate to,
+                                  PageFetcher fetcher, Executor executor, int maxConcurrency) {
+        LocalDate from = LocalDate.ofEpochDay(Math.floorDiv(fromMillis, MILLIS_PER_DAY));
+        return fetch(timespan, multiplier, from, String.valueOf(fromMillis), to, fetcher, executor, maxConcurrency);
+    }
+
+    // The first chunk starts at firstPageFrom, a day or a timestamp within the day from
+    private static BarSeries fetch(Timespan timespan, long multiplier, LocalDate from, String firstPageFrom,
+                                   LocalDate to, PageFetcher fetcher, Executor executor, int maxConcurrency) {
+        List<LocalDate[]> chunks = plan(timespan, from, to);
+        if (chunks.size() <= 1 || maxConcurrency <= 1) {
+            List<BarSeries> parts = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                parts.add(fetchChunk(i == 0 ? firstPageFrom : chunks.get(i)[0].toString(), chunks.get(i)[1],
+                        multiplier, fetcher));
+            }
+            return BarSeries.concat(parts);
+        }
+
+        // A few workers take the chunks in order, so no more than maxConcurrency requests are in flight
+        BarSeries[] parts = new BarSeries[chunks.size()];
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < parts.length) {
+                try {
+                    parts[i] = fetchChunk(i == 0 ? firstPageFrom : chunks.get(i)[0].toString(), chunks.get(i)[1],
+                            multiplier, fetcher);
+                } catch (RuntimeException e) {
+                    // Stop handing out chunks, the result is lost anyway
+                    next.set(parts.length);
+                    throw e;
+                }
+            }
+        };
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(maxConcurrency, parts.length)];
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = CompletableFuture.runAsync(worker, executor);
+        }
+        try {
+            CompletableFuture.allOf(workers).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return BarSeries.concat(List.of(parts));
+    }
+
+    /**
+     * Fetch the days [from, to] page by page, until a page is not full
+     */
+    static BarSeries fetchChunk(LocalDate from, LocalDate to, long multiplier, PageFetcher fetcher) {
+        return fetchChunk(from.toString(), to, multiplier, fetcher);
+    }
+
+    private static BarSeries fetchChunk(String from, LocalDate to, long multiplier, PageFetcher fetcher) {
+        List<BarSeries> pages = new ArrayList<>();
+        String pageFrom = from;
+        long lastTimestamp = Long.MIN_VALUE;
+        long endMillis = (to.toEpochDay() + 1) * MILLIS_PER_DAY;
+        while (true) {
+            BarSeries page = fetcher.fetch(pageFrom, to);
+            if (page.isEmpty()) {
+                break;
+            }
+            pages.add(page);
+
+            long pageLast = page.getTimestamps()[page.size() - 1];
+            // Polygon.io counts the limit in bars or in base aggregates, either way this page may be cut short
+            boolean full = page.size() * Math.max(1L, multiplier) >= PAGE_LIMIT;
+            if (!full || pageLast <= lastTimestamp || pageLast + 1 >= endMillis) {
+                break;
+            }
+            lastTimestamp = pageLast;
+            pageFrom = String.valueOf(pageLast + 1);
+        }
+        return BarSeries.concat(pages);
+    }
+
+    private static double baseAggregatesPerDay(Timespan timespan) {
+        return switch (timespan) {
+            case SECOND -> 86_400.0;
+            case MINUTE -> 1_440.0;
+            case HOUR -> 24.0;
+            case DAY -> 1.0;
+            case WEEK -> 1.0 / 7;
+            case MONTH -> 1.0 / 28;
+            case QUARTER -> 1.0 / 90;
+            case YEAR -> 1.0 / 365;
+        };
+    }
+}
@@ -0,0 +1,164 @@
+package org.imperial.fastquantanalysis.market;
+
+import org.imperial.fastquantanalysis.constant.Timespan;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Derives coarser bars from finer ones, e.g. 5-minute, hourly or weekly bars from minute bars,
+ * so one download serves every timeframe of a backtest.
+ * Bars are grouped by session the way Polygon.io aggregates crypto: intraday and daily bars on UTC
+ * boundaries, weeks from Monday 00:00 UTC, months, quarters and years on calendar boundaries (UTC).
+ * A coarse bar opens at the first fine bar's open, closes at the last one's close, takes the highest
+ * high and lowest low, sums the volume and is stamped with the start of its period.
+ * Periods without any fine bar are left out, as Polygon.io does.
+ *
+ * @author Emil S. He
+ * @since 2025-04-29
+ */
+public final class BarResampler {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    // 1970-01-01 is a Thursday, the first Monday is 4 days later
+    private static final long FIRST_MONDAY_MILLIS = 4 * MILLIS_PER_DAY;
+
+    private BarResampler() {
+    }
+
+    /**
+     * @return true if every bar of (toMultiplier, toTimespan) is made of whole bars of (fromMultiplier, fromTimespan)
+     */
+    public static boolean canResample(long fromMultiplier, Timespan fromTimespan, long toMultiplier, Timespan toTimespan) {
+        if (fromMultiplier <= 0 || toMultiplier <= 0) {
+            return false;
+        }
+        if (fromMultiplier == toMultiplier && fromTimespan == toTimespan) {
+            return true;
+        }
+        Long fromMillis = fixedMillis(fromTimespan);
+        if (fromMillis == null) {
+            // Calendar periods of different lengths only nest in the same calendar unit
+            return false;
+        }
+        long from = fromMillis * fromMultiplier;
+        Long toMillis = fixedMillis(toTimespan);
+        if (toMillis == null) {
+            // Months, quarters and years start at midnight
+            return MILLIS_PER_DAY % from == 0;
+        }
+        long to = toMillis * toMultiplier;
+        long origin = toTimespan == Timespan.WEEK ? FIRST_MONDAY_MILLIS : 0L;
+        return to > from && to % from == 0 && origin % from == 0;
+    }
+
+    /**
+     * Resample bars into coarser bars
+     * @param bars bars in ascending order
+     * @param multiplier multiplier of the coarser bars
+     * @param timespan timespan of the coarser bars
+     * @return coarser bars in ascending order
+     */
+    public static BarSeries resample(BarSeries bars, long multiplier, Timespan timespan) {
+        if (multiplier <= 0) {
+            throw new IllegalArgumentException("Multiplier must be positive: " + multiplier);
+        }
+        int n = bars.size();
+        long[] timestamps = bars.getTimestamps();
+        double[] open = bars.getOpen();
+        double[] high = bars.getHigh();
+        double[] low = bars.getLow();
+        double[] close = bars.getClose();
+        double[] volume = bars.getVolume();
+
+        // At most one coarse bar per fine bar
+        long[] periodStart = new long[n];
+        double[] periodOpen = new double[n];
+        double[] periodHigh = new double[n];
+        double[] periodLow = new double[n];
+        double[] periodClose = new double[n];
+        double[] periodVolume = new double[n];
+
+        int k = -1;
+        long start = Long.MAX_VALUE, end = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            long timestamp = timestamps[i];
+            if (timestamp < start || timestamp >= end) {
+                // The period boundaries are only computed when a bar leaves the current one
+                start = periodStart(timestamp, multiplier, timespan);
+                end = nextPeriodStart(start, multiplier, timespan);
+                k++;
+                periodStart[k] = start;
+                periodOpen[k] = open[i];
+                periodHigh[k] = high[i];
+                periodLow[k] = low[i];
+                periodVolume[k] = 0;
+            } else {
+                periodHigh[k] = Math.max(periodHigh[k], high[i]);
+                periodLow[k] = Math.min(periodLow[k], low[i]);
+            }
+            periodClose[k] = close[i];
+            periodVolume[k] += volume[i];
+        }
+
+        int size = k + 1;
+        return new BarSeries(Arrays.copyOf(periodStart, size), Arrays.copyOf(periodOpen, size),
+                Arrays.copyOf(periodHigh, size), Arrays.copyOf(periodLow, size),
+                Arrays.copyOf(periodClose, size), Arrays.copyOf(periodVolume, size));
+    }
+
+    /**
+     * Start of the period containing a timestamp
+     * @param timestamp timestamp in milliseconds
+     * @param multiplier multiplier of the period
+     * @param timespan timespan of the period
+     * @return first millisecond of the period
+     */
+    public static long periodStart(long timestamp, long multiplier, Timespan timespan) {
+        Long unitMillis = fixedMillis(timespan);
+        if (unitMillis != null) {
+            long length = unitMillis * multiplier;
+            long origin = timespan == Timespan.WEEK ? FIRST_MONDAY_MILLIS : 0L;
+            return Math.floorDiv(timestamp - origin, length) * length + origin;
+        }
+        long months = monthsPerUnit(timespan) * multiplier;
+        LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC);
+        long month = Math.floorDiv(day.getYear() * 12L + day.getMonthValue() - 1, months) * months;
+        return LocalDate.of((int) Math.floorDiv(month, 12), (int) Math.floorMod(month, 12) + 1, 1)
+                .toEpochDay() * MILLIS_PER_DAY;
+    }
+
+    private static long nextPeriodStart(long start, long multiplier, Timespan timespan) {
+        Long unitMillis = fixedMillis(timespan);
+        if (unitMillis != null) {
+            return start + unitMillis * multiplier;
+        }
+        return LocalDate.ofEpochDay(Math.floorDiv(start, MILLIS_PER_DAY))
+                .plusMonths(monthsPerUnit(timespan) * multiplier)
+                .toEpochDay() * MILLIS_PER_DAY;
+    }
+
+    // Length of one unit, null for calendar units of varying length
+    private static Long fixedMillis(Timespan timespan) {
+        return switch (timespan) {
+            case SECOND -> 1_000L;
+            case MINUTE -> 60_000L;
+            case HOUR -> 3_600_000L;
+            case DAY -> MILLIS_PER_DAY;
+            case WEEK -> 7 * MILLIS_PER_DAY;
+            case MONTH, QUARTER, YEAR -> null;
+        };
+    }
+
+    private static long monthsPerUnit(Timespan timespan) {
+        return switch (timespan) {
+            case MONTH -> 1L;
+            case QUARTER -> 3L;
+            case YEAR -> 12L;
+            default -> throw new IllegalArgumentException("Not a calendar timespan: " + timespan);
+        };
+    }
+}
@@ -0,0 +1,241 @@
+package org.imperial.fastquantanalysis.market;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bars of one ticker stored column by column in primitive arrays, replacing the
+ * {@code List<List<Double>>} with magic indices used before. Bars keep the order
+ * they were requested in; series kept by the bar store are sorted by timestamp (oldest first).
+ *
+ * @author Emil S. He
+ * @since 2025-04-21
+ */
+public final class BarSeries {
+
+    private static final BarSeries EMPTY = new BarSeries(new long[0], new double[0], new double[0],
+            new double[0], new double[0], new double[0]);
+
+    private final long[] timestamps;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+
+    public BarSeries(long[] timestamps, double[] open, double[] high,
+                     double[] low, double[] close, double[] volume) {
+        int n = timestamps.length;
+        if (open.length != n || high.length != n || low.length != n || close.length != n || volume.length != n) {
+            throw new IllegalArgumentException("All bar columns must have the same length");
+        }
+        this.timestamps = timestamps;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+    }
+
+    public static BarSeries empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public boolean isEmpty() {
+        return timestamps.length == 0;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public double[] getOpen() {
+        return open;
+    }
+
+    public double[] getHigh() {
+        return high;
+    }
+
+    public double[] getLow() {
+        return low;
+    }
+
+    public double[] getClose() {
+        return close;
+    }
+
+    public double[] getVolume() {
+        return volume;
+    }
+
+    /**
+     * Bars whose timestamp lies in [fromMillis, toMillis)
+     * @param fromMillis inclusive lower bound
+     * @param toMillis exclusive upper bound
+     * @return sliced bar series
+     */
+    public BarSeries slice(long fromMillis, long toMillis) {
+        int from = lowerBound(fromMillis);
+        int to = lowerBound(toMillis);
+        return range(from, Math.max(from, to));
+    }
+
+    /**
+     * Bars at index [from, to)
+     * @param from inclusive start index
+     * @param to exclusive end index
+     * @return sub series
+     */
+    public BarSeries range(int from, int to) {
+        if (from == 0 && to == size()) {
+            return this;
+        }
+        return new BarSeries(
+                Arrays.copyOfRange(timestamps, from, to),
+                Arrays.copyOfRange(open, from, to),
+                Arrays.copyOfRange(high, from, to),
+                Arrays.copyOfRange(low, from, to),
+                Arrays.copyOfRange(close, from, to),
+                Arrays.copyOfRange(volume, from, to)
+        );
+    }
+
+    /**
+     * @return the same bars in reverse order
+     */
+    public BarSeries reversed() {
+        int n = size();
+        long[] reversedTimestamps = new long[n];
+        double[][] columns = {open, high, low, close, volume};
+        double[][] reversedColumns = new double[columns.length][n];
+        for (int i = 0; i < n; i++) {
+            reversedTimestamps[i] = timestamps[n - 1 - i];
+            for (int c = 0; c < columns.length; c++) {
+                reversedColumns[c][i] = columns[c][n - 1 - i];
+            }
+        }
+        return new BarSeries(reversedTimestamps, reversedColumns[0], reversedColumns[1],
+                reversedColumns[2], reversedColumns[3], reversedColumns[4]);
+    }
+
+    /**
+     * Merge two series in timestamp order. When both contain the same timestamp,
+     * the bar from {@code newer} wins.
+     * @param newer series whose bars take precedence
+     * @return merged series
+     */
+    public BarSeries merge(BarSeries newer) {
+        if (newer.isEmpty()) {
+            return this;
+        }
+        if (this.isEmpty()) {
+            return newer;
+        }
+
+        int capacity = this.size() + newer.size();
+        long[] mergedTimestamps = new long[capacity];
+        double[] mergedOpen = new double[capacity];
+        double[] mergedHigh = new double[capacity];
+        double[] mergedLow = new double[capacity];
+        double[] mergedClose = new double[capacity];
+        double[] mergedVolume = new double[capacity];
+
+        int i = 0, j = 0, k = 0;
+        while (i < this.size() || j < newer.size()) {
+            BarSeries source;
+            int index;
+            if (j >= newer.size() || (i < this.size() && this.timestamps[i] < newer.timestamps[j])) {
+                source = this;
+                index = i++;
+            } else {
+                if (i < this.size() && this.timestamps[i] == newer.timestamps[j]) {
+                    i++; // Duplicated bar, keep the newer one
+                }
+                source = newer;
+                index = j++;
+            }
+            mergedTimestamps[k] = source.timestamps[index];
+            mergedOpen[k] = source.open[index];
+            mergedHigh[k] = source.high[index];
+            mergedLow[k] = source.low[index];
+            mergedClose[k] = source.close[index];
+            mergedVolume[k] = source.volume[index];
+            k++;
+        }
+
+        return new BarSeries(mergedTimestamps, mergedOpen, mergedHigh, mergedLow, mergedClose, mergedVolume)
+                .range(0, k);
+    }
+
+    /**
+     * Join series that follow each other in time into one. A bar not later than the last bar kept,
+     * e.g. repeated at the boundary of two pages, is dropped.
+     * @param parts series in ascending order, each in ascending order
+     * @return joined series
+     */
+    public static BarSeries concat(List<BarSeries> parts) {
+        if (parts.isEmpty()) {
+            return EMPTY;
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+
+        int capacity = 0;
+        for (BarSeries part : parts) {
+            capacity += part.size();
+        }
+        long[] joinedTimestamps = new long[capacity];
+        double[][] joinedColumns = new double[5][capacity];
+
+        int k = 0;
+        for (BarSeries part : parts) {
+            double[][] columns = {part.open, part.high, part.low, part.close, part.volume};
+            // Skip the bars already covered by the previous parts, then copy the rest at once
+            int from = k == 0 ? 0 : part.lowerBound(joinedTimestamps[k - 1] + 1);
+            int length = part.size() - from;
+            if (length <= 0) {
+                continue;
+            }
+            System.arraycopy(part.timestamps, from, joinedTimestamps, k, length);
+            for (int c = 0; c < columns.length; c++) {
+                System.arraycopy(columns[c], from, joinedColumns[c], k, length);
+            }
+            k += length;
+        }
+
+        return new BarSeries(joinedTimestamps, joinedColumns[0], joinedColumns[1], joinedColumns[2],
+                joinedColumns[3], joinedColumns[4]).range(0, k);
+    }
+
+    // Index of the first bar whose timestamp >= target
+    private int lowerBound(long target) {
+        int low = 0, high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Average of open, high, low and close prices of every bar
+     * @return average bar prices
+     */
+    public double[] ohlcAverage() {
+        double[] average = new double[size()];
+        for (int i = 0; i < average.length; i++) {
+            average[i] = (open[i] + high[i] + low[i] + close[i]) / 4;
+        }
+        return average;
+    }
+}
@@ -0,0 +1,115 @@
+package org.imperial.fastquantanalysis.market;
+
+import java.util.Arrays;
+
+/**
+ * Growable primitive columns of bars, appended one bar at a time, e.g. while a response is decoded.
+ * A missing value is replaced with the previous bar's value; leading missing values
+ * take the first value present when the series is built.
+ *
+ * @author Emil S. He
+ * @since 2025-04-28
+ */
+public final class BarSeriesBuilder {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private long[] timestamps;
+    private double[] open;
+    private double[] high;
+    private double[] low;
+    private double[] close;
+    private double[] volume;
+    private int size;
+
+    public BarSeriesBuilder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity bars expected, the columns grow past it when needed
+     */
+    public BarSeriesBuilder(int capacity) {
+        int initial = Math.max(1, capacity);
+        timestamps = new long[initial];
+        open = new double[initial];
+        high = new double[initial];
+        low = new double[initial];
+        close = new double[initial];
+        volume = new double[initial];
+    }
+
+    /**
+     * Make room for at least {@code capacity} bars
+     * @param capacity bars expected in total
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= timestamps.length) {
+            return;
+        }
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        open = Arrays.copyOf(open, capacity);
+        high = Arrays.copyOf(high, capacity);
+        low = Arrays.copyOf(low, capacity);
+        close = Arrays.copyOf(close, capacity);
+        volume = Arrays.copyOf(volume, capacity);
+    }
+
+    /**
+     * Append a bar, NaN for a missing value
+     */
+    public void add(long timestamp, double open, double high, double low, double close, double volume) {
+        if (size == timestamps.length) {
+            ensureCapacity(size + (size >> 1) + 1);
+        }
+        int i = size;
+        this.timestamps[i] = timestamp;
+        this.open[i] = valueOrPrevious(open, this.open, i);
+        this.high[i] = valueOrPrevious(high, this.high, i);
+        this.low[i] = valueOrPrevious(low, this.low, i);
+        this.close[i] = valueOrPrevious(close, this.close, i);
+        this.volume[i] = valueOrPrevious(volume, this.volume, i);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return bar series of the bars added so far, in the order they were added
+     */
+    public BarSeries build() {
+        if (size == 0) {
+            return BarSeries.empty();
+        }
+        double[][] columns = {open, high, low, close, volume};
+        for (int c = 0; c < columns.length; c++) {
+            // Trim without a copy when the capacity was exact, e.g. sized from the results count
+            columns[c] = columns[c].length == size ? columns[c] : Arrays.copyOf(columns[c], size);
+            backfillLeadingNaN(columns[c]);
+        }
+        return new BarSeries(timestamps.length == size ? timestamps : Arrays.copyOf(timestamps, size),
+                columns[0], columns[1], columns[2], columns[3], columns[4]);
+    }
+
+    private static double valueOrPrevious(double value, double[] column, int index) {
+        if (!Double.isNaN(value)) {
+            return value;
+        }
+        return index > 0 ? column[index - 1] : Double.NaN;
+    }
+
+    private static void backfillLeadingNaN(double[] column) {
+        int firstPresent = 0;
+        while (firstPresent < column.length && Double.isNaN(column[firstPresent])) {
+            firstPresent++;
+        }
+        if (firstPresent == 0 || firstPresent == column.length) {
+            return;
+        }
+        for (int i = 0; i < firstPresent; i++) {
+            column[i] = column[firstPresent];
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.imperial.fastquantanalysis.market;
+
+import org.imperial.fastquantanalysis.constant.Timespan;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Identity of a locally stored bar series
+ *
+ * @param ticker ticker name
+ * @param multiplier the size of the timespan multiplier
+ * @param timespan timespan
+ * @param adjusted whether the results are adjusted for splits
+ * @author Emil S. He
+ * @since 2025-04-21
+ */
+public record BarSeriesKey(String ticker, long multiplier, Timespan timespan, boolean adjusted) {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Build the key of a Polygon.io aggregates request
+     * @param ticker ticker name
+     * @param multiplier multiplier, default value: 1
+     * @param timespan timespan
+     * @param unadjusted unadjusted, default value: false
+     * @return bar series key
+     */
+    public static BarSeriesKey of(String ticker, Long multiplier, Timespan timespan, Boolean unadjusted) {
+        return new BarSeriesKey(
+                ticker,
+                multiplier == null ? 1L : multiplier,
+                timespan,
+                unadjusted == null || !unadjusted
+        );
+    }
+
+    /**
+     * @return file name of this series, safe for any file system and distinct for distinct keys
+     */
+    public String fileName() {
+        return escape(ticker)
+                + "-" + multiplier
+                + "-" + timespan.getValue()
+                + "-" + (adjusted ? "adjusted" : "unadjusted");
+    }
+
+    // Every UTF-8 byte but upper case letters and digits becomes _XX, so that no two tickers share a name,
+    // even on a case-insensitive file system: X:BTC-USD is X_3ABTC_2DUSD and X:BTC_USD is X_3ABTC_5FUSD
+    private static String escape(String ticker) {
+        StringBuilder name = new StringBuilder(ticker.length() + 8);
+        for (byte b : ticker.getBytes(StandardCharsets.UTF_8)) {
+            if ((b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')) {
+                name.append((char) b);
+            } else {
+                name.append('_').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+            }
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,303 @@
+package org.imperial.fastquantanalysis.market;
+
+import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.constant.Timespan;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persistent local store of Polygon.io aggregates.
+ * Each series remembers which days it already covers, so a request only fetches
+ * the missing sub-ranges and stitches them together with the bars on disk.
+ * Days that have not finished yet (UTC) are never marked as covered. Instead the series remembers
+ * its latest bar, which may still be forming, and the next request fetches only from that bar on.
+ * Bars are compressed in blocks of a {@link BarBlockFile}, indexed in a small metadata file, so a request
+ * decodes only the blocks of its range and a refresh rewrites the last block rather than the whole history.
+ *
+ * @author Emil S. He
+ * @since 2025-04-21
+ */
+@Slf4j
+@Component
+public class BarStore {
+
+    private static final int MAGIC = 0x46514253; // FQBS
+    private static final int VERSION = 3;
+    private static final String BARS_SUFFIX = ".bars";
+    private static final String META_SUFFIX = ".meta";
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private static final long NO_FORMING_BAR = Long.MIN_VALUE;
+
+    private final Path directory;
+
+    private final Map<BarSeriesKey, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Fetch every bar of the days [from, to] from the remote source, oldest first,
+     * e.g. with {@link BarFetchPlanner} when they do not fit in one response
+     */
+    @FunctionalInterface
+    public interface BarFetcher {
+        BarSeries fetch(LocalDate from, LocalDate to);
+
+        /**
+         * Fetch every bar from a timestamp to the end of the day {@code to}, e.g. from the still-forming bar on.
+         * By default the whole first day is fetched and the earlier bars dropped
+         * @param fromMillis first timestamp, inclusive
+         * @param to last day
+         * @return bars in ascending order
+         */
+        default BarSeries fetchFrom(long fromMillis, LocalDate to) {
+            return fetch(LocalDate.ofEpochDay(Math.floorDiv(fromMillis, MILLIS_PER_DAY)), to)
+                    .slice(fromMillis, Long.MAX_VALUE);
+        }
+    }
+
+    // Blocks of the series, and the timestamp of its latest bar if the day of that bar has not finished
+    private record SeriesIndex(List<BarBlockFile.Block> blocks, long formingFrom) {
+    }
+
+    public BarStore(@Value("${fast-quant.bar-store.directory:data/bars}") String directory) throws IOException {
+        this.directory = Paths.get(directory);
+        Files.createDirectories(this.directory);
+    }
+
+    /**
+     * Only intraday and daily bars can be split into day ranges; coarser bars start before the requested day
+     * @param timespan timespan
+     * @return true if series of this timespan can be stored
+     */
+    public static boolean supports(Timespan timespan) {
+        return switch (timespan) {
+            case SECOND, MINUTE, HOUR, DAY -> true;
+            case WEEK, MONTH, QUARTER, YEAR -> false;
+        };
+    }
+
+    /**
+     * Get bars of the days [fromDate, toDate], fetching only the days not stored yet
+     * and, for an unfinished day, only the bars from the latest one stored on
+     * @param key series key
+     * @param fromDate from date
+     * @param toDate to date
+     * @param fetcher fetcher of missing ranges
+     * @return bars in ascending order
+     */
+    public BarSeries getBars(BarSeriesKey key, LocalDate fromDate, LocalDate toDate, BarFetcher fetcher) {
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            try {
+                return load(key, fromDate, toDate, fetcher);
+            } catch (IOException e) {
+                log.error("Failed to read bar file of {}, it will be fetched again", key, e);
+                forget(key);
+                return load(key, fromDate, toDate, fetcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read bar file of " + key, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get bars of the days [fromDate, toDate] only if they are all stored, without fetching anything
+     * @param key series key
+     * @param fromDate from date
+     * @param toDate to date
+     * @return bars in ascending order, null if some days are not stored
+     */
+    public BarSeries getStoredBars(BarSeriesKey key, LocalDate fromDate, LocalDate toDate) {
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            CoveredRanges coverage = new CoveredRanges();
+            SeriesIndex index = readIndex(key, coverage);
+            if (!coverage.missing(fromDate, toDate).isEmpty()) {
+                return null;
+            }
+            return new BarBlockFile(file(key, BARS_SUFFIX), index.blocks())
+                    .read(fromDate.toEpochDay() * MILLIS_PER_DAY, (toDate.toEpochDay() + 1) * MILLIS_PER_DAY);
+        } catch (IOException e) {
+            log.error("Failed to read bar file of {}, it will be fetched again", key, e);
+            forget(key);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private BarSeries load(BarSeriesKey key, LocalDate fromDate, LocalDate toDate, BarFetcher fetcher) throws IOException {
+        CoveredRanges coverage = new CoveredRanges();
+        SeriesIndex index = readIndex(key, coverage);
+        BarBlockFile file = new BarBlockFile(file(key, BARS_SUFFIX), index.blocks());
+        long fromMillis = fromDate.toEpochDay() * MILLIS_PER_DAY;
+        long toMillis = (toDate.toEpochDay() + 1) * MILLIS_PER_DAY;
+
+        List<LocalDate[]> missing = coverage.missing(fromDate, toDate);
+        if (missing.isEmpty()) {
+            log.debug("Bar store hit: {} {} ~ {}", key, fromDate, toDate);
+            return file.read(fromMillis, toMillis);
+        }
+
+        LocalDate lastFinishedDay = LocalDate.now(ZoneOffset.UTC).minusDays(1);
+        // Stored bars before the first timestamp fetched again are kept as they are on disk
+        long rewriteFrom = Long.MAX_VALUE;
+        List<BarSeries> fetched = new ArrayList<>(missing.size());
+        for (LocalDate[] gap : missing) {
+            long formingFrom = index.formingFrom();
+            BarSeries bars;
+            if (formingFrom >= gap[0].toEpochDay() * MILLIS_PER_DAY
+                    && formingFrom < (gap[1].toEpochDay() + 1) * MILLIS_PER_DAY) {
+                // The bars before the forming one are final, only it and the later ones are fetched
+                log.debug("Bar store refresh: {} {} ~ {}", key, Instant.ofEpochMilli(formingFrom), gap[1]);
+                bars = fetcher.fetchFrom(formingFrom, gap[1]);
+                rewriteFrom = Math.min(rewriteFrom, formingFrom);
+                LocalDate formingDay = LocalDate.ofEpochDay(Math.floorDiv(formingFrom, MILLIS_PER_DAY));
+                if (gap[0].isBefore(formingDay)) {
+                    // The days of the gap before the forming bar were never stored
+                    log.debug("Bar store miss: {} {} ~ {}", key, gap[0], formingDay.minusDays(1));
+                    bars = fetcher.fetch(gap[0], formingDay.minusDays(1)).merge(bars);
+                    rewriteFrom = Math.min(rewriteFrom, gap[0].toEpochDay() * MILLIS_PER_DAY);
+                }
+            } else {
+                log.debug("Bar store miss: {} {} ~ {}", key, gap[0], gap[1]);
+                bars = fetcher.fetch(gap[0], gap[1]);
+                rewriteFrom = Math.min(rewriteFrom, gap[0].toEpochDay() * MILLIS_PER_DAY);
+            }
+            if (!bars.isEmpty()) {
+                rewriteFrom = Math.min(rewriteFrom, bars.getTimestamps()[0]);
+            }
+            fetched.add(bars);
+
+            LocalDate coveredTo = gap[1].isAfter(lastFinishedDay) ? lastFinishedDay : gap[1];
+            coverage.add(gap[0], coveredTo);
+        }
+
+        // Only the blocks from the first timestamp fetched again on are decoded, merged and written again
+        BarSeries tail = file.readTail(rewriteFrom);
+        for (BarSeries bars : fetched) {
+            tail = tail.merge(bars);
+        }
+        long tailStart = tail.isEmpty() ? Long.MAX_VALUE : tail.getTimestamps()[0];
+        BarSeries head = file.read(fromMillis, Math.min(toMillis, tailStart));
+
+        long formingFrom = index.formingFrom();
+        if (!tail.isEmpty()) {
+            long last = tail.getTimestamps()[tail.size() - 1];
+            formingFrom = Math.floorDiv(last, MILLIS_PER_DAY) > lastFinishedDay.toEpochDay() ? last : NO_FORMING_BAR;
+        }
+        write(key, file, rewriteFrom, tail, coverage, formingFrom);
+
+        return BarSeries.concat(List.of(head, tail.slice(fromMillis, toMillis)));
+    }
+
+    private SeriesIndex readIndex(BarSeriesKey key, CoveredRanges coverage) {
+        Path metaFile = file(key, META_SUFFIX);
+        if (!Files.exists(metaFile)) {
+            return new SeriesIndex(List.of(), NO_FORMING_BAR);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(metaFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Ignoring bar file with unknown format: {}", metaFile);
+                return new SeriesIndex(List.of(), NO_FORMING_BAR);
+            }
+            int rangeCount = in.readInt();
+            for (int i = 0; i < rangeCount; i++) {
+                coverage.add(in.readLong(), in.readLong());
+            }
+            long formingFrom = in.readLong();
+            int blockCount = in.readInt();
+            List<BarBlockFile.Block> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                blocks.add(new BarBlockFile.Block(in.readLong(), in.readInt(), in.readInt(),
+                        in.readLong(), in.readLong(), in.readInt()));
+            }
+            return new SeriesIndex(blocks, formingFrom);
+        } catch (IOException e) {
+            log.error("Failed to read bar file {}, it will be fetched again", metaFile, e);
+            coverage.clear();
+            return new SeriesIndex(List.of(), NO_FORMING_BAR);
+        }
+    }
+
+    /**
+     * Write the blocks from rewriteFrom on, the blocks before are already on disk, then replace the metadata.
+     * A block left behind by a write that did not finish fails its checksum and the series is fetched again
+     */
+    private void write(BarSeriesKey key, BarBlockFile file, long rewriteFrom, BarSeries tail,
+                       CoveredRanges coverage, long formingFrom) {
+        Path metaFile = file(key, META_SUFFIX);
+        Path temp = file(key, META_SUFFIX + ".tmp");
+
+        try {
+            file.writeTail(rewriteFrom, tail);
+        } catch (IOException e) {
+            log.error("Failed to write bar file {}", file(key, BARS_SUFFIX), e);
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            List<long[]> ranges = coverage.asList();
+            out.writeInt(ranges.size());
+            for (long[] range : ranges) {
+                out.writeLong(range[0]);
+                out.writeLong(range[1]);
+            }
+            out.writeLong(formingFrom);
+
+            List<BarBlockFile.Block> blocks = file.getBlocks();
+            out.writeInt(blocks.size());
+            for (BarBlockFile.Block block : blocks) {
+                out.writeLong(block.offset());
+                out.writeInt(block.length());
+                out.writeInt(block.count());
+                out.writeLong(block.firstTimestamp());
+                out.writeLong(block.lastTimestamp());
+                out.writeInt(block.checksum());
+            }
+        } catch (IOException e) {
+            log.error("Failed to write bar file {}", metaFile, e);
+            return;
+        }
+
+        try {
+            Files.move(temp, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to replace bar file {}", metaFile, e);
+        }
+    }
+
+    // Drop the index of a series, its days are then fetched again
+    private void forget(BarSeriesKey key) {
+        try {
+            Files.deleteIfExists(file(key, META_SUFFIX));
+        } catch (IOException e) {
+            log.error("Failed to delete bar file {}", file(key, META_SUFFIX), e);
+        }
+    }
+
+    private Path file(BarSeriesKey key, String suffix) {
+        return directory.resolve(key.fileName() + suffix);
+    }
+}
@@ -0,0 +1,95 @@
+package org.imperial.fastquantanalysis.market;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sorted, non-overlapping inclusive day ranges already held by the bar store
+ *
+ * @author Emil S. He
+ * @since 2025-04-21
+ */
+public final class CoveredRanges {
+
+    // Pairs of [start epoch day, end epoch day], both inclusive, sorted by start
+    private final List<long[]> ranges = new ArrayList<>();
+
+    /**
+     * Mark [from, to] as covered, merging overlapping and adjacent ranges
+     * @param from inclusive start day
+     * @param to inclusive end day
+     */
+    public void add(LocalDate from, LocalDate to) {
+        add(from.toEpochDay(), to.toEpochDay());
+    }
+
+    public void add(long fromDay, long toDay) {
+        if (fromDay > toDay) {
+            return;
+        }
+
+        List<long[]> merged = new ArrayList<>(ranges.size() + 1);
+        long start = fromDay, end = toDay;
+        boolean inserted = false;
+        for (long[] range : ranges) {
+            if (range[1] + 1 < start) {
+                merged.add(range);
+            } else if (end + 1 < range[0]) {
+                if (!inserted) {
+                    merged.add(new long[]{start, end});
+                    inserted = true;
+                }
+                merged.add(range);
+            } else {
+                start = Math.min(start, range[0]);
+                end = Math.max(end, range[1]);
+            }
+        }
+        if (!inserted) {
+            merged.add(new long[]{start, end});
+        }
+
+        ranges.clear();
+        ranges.addAll(merged);
+    }
+
+    /**
+     * Sub-ranges of [from, to] that are not covered yet
+     * @param from inclusive start day
+     * @param to inclusive end day
+     * @return missing ranges as pairs of [start, end] days
+     */
+    public List<LocalDate[]> missing(LocalDate from, LocalDate to) {
+        List<LocalDate[]> missing = new ArrayList<>();
+        long cursor = from.toEpochDay();
+        long end = to.toEpochDay();
+
+        for (long[] range : ranges) {
+            if (range[1] < cursor) {
+                continue;
+            }
+            if (range[0] > end) {
+                break;
+            }
+            if (range[0] > cursor) {
+                missing.add(new LocalDate[]{LocalDate.ofEpochDay(cursor), LocalDate.ofEpochDay(range[0] - 1)});
+            }
+            cursor = range[1] + 1;
+        }
+        if (cursor <= end) {
+            missing.add(new LocalDate[]{LocalDate.ofEpochDay(cursor), LocalDate.ofEpochDay(end)});
+        }
+
+        return missing;
+    }
+
+    public void clear() {
+        ranges.clear();
+    }
+
+    public List<long[]> asList() {
+        return Collections.unmodifiableList(ranges);
+    }
+}
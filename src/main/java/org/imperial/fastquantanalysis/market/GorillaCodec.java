@@ -0,0 +1,236 @@
+package org.imperial.fastquantanalysis.market;
+
+import java.util.Arrays;
+
+/**
+ * Gorilla compression of a block of bars, after Facebook's in-memory time series database.
+ * Timestamps are stored as delta-of-deltas, so evenly spaced bars cost one bit each.
+ * Every price and volume column is stored as the XOR of each value with a prediction of it, keeping
+ * only the bits that changed: the previous value of the column, except for the open which is predicted
+ * by the previous close since markets trading around the clock open where they last closed.
+ * A value equal to its prediction costs one bit.
+ * Each block is self-contained and decoding restores the exact doubles, NaN included.
+ *
+ * @author Emil S. He
+ * @since 2025-04-30
+ */
+public final class GorillaCodec {
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * Encode the bars at index [from, to)
+     * @param bars bars in ascending order
+     * @param from inclusive start index
+     * @param to exclusive end index
+     * @return encoded block
+     */
+    public static byte[] encode(BarSeries bars, int from, int to) {
+        int n = to - from;
+        // Bars of a few significant digits rarely take more than 8 bytes for all their columns
+        BitWriter out = new BitWriter(16 + n * 8);
+        out.write(n, 32);
+        if (n == 0) {
+            return out.toByteArray();
+        }
+
+        long[] timestamps = bars.getTimestamps();
+        long previous = timestamps[from];
+        long previousDelta = 0;
+        out.write(previous, 64);
+        for (int i = from + 1; i < to; i++) {
+            long delta = timestamps[i] - previous;
+            long deltaOfDelta = delta - previousDelta;
+            if (deltaOfDelta == 0) {
+                out.write(0, 1);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                out.write(0b10, 2);
+                out.write(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                out.write(0b110, 3);
+                out.write(deltaOfDelta + 255, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                out.write(0b1110, 4);
+                out.write(deltaOfDelta + 2047, 12);
+            } else {
+                // Millisecond timestamps can jump by more than 32 bits, e.g. over a gap of a few weeks
+                out.write(0b1111, 4);
+                out.write(deltaOfDelta, 64);
+            }
+            previous = timestamps[i];
+            previousDelta = delta;
+        }
+
+        double[] close = bars.getClose();
+        encodeValues(out, bars.getOpen(), close, from, to);
+        for (double[] column : new double[][]{bars.getHigh(), bars.getLow(), close, bars.getVolume()}) {
+            encodeValues(out, column, column, from, to);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a block
+     * @param block encoded block
+     * @return bars of the block
+     */
+    public static BarSeries decode(byte[] block) {
+        BitReader in = new BitReader(block);
+        int n = (int) in.read(32);
+        if (n < 0) {
+            throw new IllegalArgumentException("Corrupted block of " + n + " bars");
+        }
+        if (n == 0) {
+            return BarSeries.empty();
+        }
+
+        long[] timestamps = new long[n];
+        timestamps[0] = in.read(64);
+        long delta = 0;
+        for (int i = 1; i < n; i++) {
+            long deltaOfDelta;
+            if (in.read(1) == 0) {
+                deltaOfDelta = 0;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.read(7) - 63;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.read(9) - 255;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.read(12) - 2047;
+            } else {
+                deltaOfDelta = in.read(64);
+            }
+            delta += deltaOfDelta;
+            timestamps[i] = timestamps[i - 1] + delta;
+        }
+
+        // The opens are decoded against the closes, which come later in the block
+        long[] openXors = new long[n];
+        long firstOpen = decodeXors(in, openXors);
+        double[] high = decodeValues(in, n);
+        double[] low = decodeValues(in, n);
+        double[] close = decodeValues(in, n);
+        double[] volume = decodeValues(in, n);
+        double[] open = new double[n];
+        open[0] = Double.longBitsToDouble(firstOpen);
+        for (int i = 1; i < n; i++) {
+            open[i] = Double.longBitsToDouble(Double.doubleToRawLongBits(close[i - 1]) ^ openXors[i]);
+        }
+        return new BarSeries(timestamps, open, high, low, close, volume);
+    }
+
+    // Each value is XORed with the previous value of the predictor column
+    private static void encodeValues(BitWriter out, double[] values, double[] predictor, int from, int to) {
+        out.write(Double.doubleToRawLongBits(values[from]), 64);
+        int previousLeading = -1, previousTrailing = 0;
+        for (int i = from + 1; i < to; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ Double.doubleToRawLongBits(predictor[i - 1]);
+            if (xor == 0) {
+                out.write(0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    // The changed bits fit in the window of the previous value
+                    out.write(0b10, 2);
+                    out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(meaningful - 1, 6);
+                    out.write(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+        }
+    }
+
+    private static double[] decodeValues(BitReader in, int n) {
+        long[] xors = new long[n];
+        long previous = decodeXors(in, xors);
+        double[] values = new double[n];
+        values[0] = Double.longBitsToDouble(previous);
+        for (int i = 1; i < n; i++) {
+            previous ^= xors[i];
+            values[i] = Double.longBitsToDouble(previous);
+        }
+        return values;
+    }
+
+    // Read the first value of a column, and the XOR of every other value with its prediction
+    private static long decodeXors(BitReader in, long[] xors) {
+        long first = in.read(64);
+        int leading = 0, trailing = 0;
+        for (int i = 1; i < xors.length; i++) {
+            if (in.read(1) != 0) {
+                if (in.read(1) != 0) {
+                    leading = (int) in.read(5);
+                    int meaningful = (int) in.read(6) + 1;
+                    trailing = 64 - leading - meaningful;
+                }
+                xors[i] = in.read(64 - leading - trailing) << trailing;
+            }
+        }
+        return first;
+    }
+
+    // Bits are written most significant first
+    private static final class BitWriter {
+
+        private byte[] bytes;
+        private long bitCount;
+
+        private BitWriter(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        // Write the lowest `bits` bits of value
+        private void write(long value, int bits) {
+            if (((bitCount + bits + 7) >>> 3) > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, (int) ((bitCount + bits + 7) >>> 3)));
+            }
+            while (bits > 0) {
+                int free = 8 - (int) (bitCount & 7);
+                int take = Math.min(free, bits);
+                int chunk = (int) (value >>> (bits - take)) & ((1 << take) - 1);
+                bytes[(int) (bitCount >>> 3)] |= (byte) (chunk << (free - take));
+                bitCount += take;
+                bits -= take;
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((bitCount + 7) >>> 3));
+        }
+    }
+
+    private static final class BitReader {
+
+        private final byte[] bytes;
+        private long position;
+
+        private BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private long read(int bits) {
+            if (position + bits > (long) bytes.length * 8) {
+                throw new IllegalArgumentException("Block ends before its last bar");
+            }
+            long value = 0;
+            while (bits > 0) {
+                int available = 8 - (int) (position & 7);
+                int take = Math.min(available, bits);
+                int chunk = ((bytes[(int) (position >>> 3)] & 0xFF) >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                position += take;
+                bits -= take;
+            }
+            return value;
+        }
+    }
+}
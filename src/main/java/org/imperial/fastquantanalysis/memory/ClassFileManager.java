@@ -1,13 +1,16 @@
 package org.imperial.fastquantanalysis.memory;
 
-import lombok.Getter;
-
 import javax.tools.*;
-import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-@Getter
+/**
+ * File manager keeping every class file javac emits (top-level, nested, anonymous and local classes)
+ * in memory instead of writing it to the output directory
+ */
 public class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
-    private InMemoryByteCode byteCode;
+
+    private final Map<String, InMemoryByteCode> byteCodes = new LinkedHashMap<>();
 
     public ClassFileManager(StandardJavaFileManager standardManager) {
         super(standardManager);
@@ -15,12 +18,18 @@ public class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFile
 
     @Override
     public JavaFileObject getJavaFileForOutput(Location location, String className,
-                                               JavaFileObject.Kind kind, FileObject sibling) throws IOException {
-        byteCode = new InMemoryByteCode(className, kind);
+                                               JavaFileObject.Kind kind, FileObject sibling) {
+        InMemoryByteCode byteCode = new InMemoryByteCode(className, kind);
+        byteCodes.put(className, byteCode);
         return byteCode;
     }
 
-    public InMemoryByteCode getByteCode() {
-        return byteCode;
+    /**
+     * @return byte code of every emitted class by binary name, e.g. {@code a.b.Outer$Inner}
+     */
+    public Map<String, byte[]> getClassBytes() {
+        Map<String, byte[]> classBytes = new LinkedHashMap<>();
+        byteCodes.forEach((className, byteCode) -> classBytes.put(className, byteCode.getBytes()));
+        return classBytes;
     }
 }
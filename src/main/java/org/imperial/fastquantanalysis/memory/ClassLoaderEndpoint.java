@@ -0,0 +1,42 @@
+package org.imperial.fastquantanalysis.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.vo.ClassLoaderStatsVO;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint /actuator/classloaders reporting the class loaders of user strategies and metaspace use.
+ * DELETE evicts every compiled strategy, releasing their class loaders.
+ *
+ * @author Emil S. He
+ * @since 2025-04-25
+ */
+@Slf4j
+@Component
+@Endpoint(id = "classloaders")
+public class ClassLoaderEndpoint {
+
+    private final ClassLoaderRegistry classLoaderRegistry;
+
+    private final CompiledClassCache compiledClassCache;
+
+    public ClassLoaderEndpoint(ClassLoaderRegistry classLoaderRegistry, CompiledClassCache compiledClassCache) {
+        this.classLoaderRegistry = classLoaderRegistry;
+        this.compiledClassCache = compiledClassCache;
+    }
+
+    @ReadOperation
+    public ClassLoaderStatsVO classLoaders() {
+        return classLoaderRegistry.stats();
+    }
+
+    @DeleteOperation
+    public ClassLoaderStatsVO releaseAll() {
+        int evicted = compiledClassCache.clear();
+        log.info("Evicted {} compiled user strategies", evicted);
+        return classLoaderRegistry.stats();
+    }
+}
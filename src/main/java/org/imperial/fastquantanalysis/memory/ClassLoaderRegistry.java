@@ -0,0 +1,149 @@
+package org.imperial.fastquantanalysis.memory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.vo.ClassLoaderStatsVO;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owner of the class loaders of compiled user strategies.
+ * Every loader is registered with the submission that created it and only referenced weakly from here;
+ * the compiled class cache holds the one strong reference. Releasing a submission drops that reference,
+ * after which the loader, its classes and their metaspace can be collected. A loader released long ago
+ * but never collected is still referenced from somewhere, i.e. a leak.
+ *
+ * @author Emil S. He
+ * @since 2025-04-25
+ */
+@Slf4j
+@Component
+public class ClassLoaderRegistry {
+
+    private final ReferenceQueue<ClassLoader> collected = new ReferenceQueue<>();
+
+    private final Set<LoaderReference> loaders = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong registeredCount = new AtomicLong();
+
+    private final AtomicLong unloadedCount = new AtomicLong();
+
+    private final ClassLoadingMXBean classLoadingMXBean = ManagementFactory.getClassLoadingMXBean();
+
+    private final MemoryPoolMXBean metaspace = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getName().equals("Metaspace"))
+            .findFirst()
+            .orElse(null);
+
+    /**
+     * Weak reference to a loader, with the submission owning it
+     */
+    private static final class LoaderReference extends WeakReference<ClassLoader> {
+        private final String owner;
+        private volatile long releasedAt; // 0 while in use
+
+        private LoaderReference(ClassLoader loader, String owner, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            this.owner = owner;
+        }
+
+        private boolean isReleased() {
+            return releasedAt != 0L;
+        }
+    }
+
+    public ClassLoaderRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("code.classloaders", this, registry -> registry.count(false))
+                .tag("state", "live")
+                .description("Class loaders of user strategies in use")
+                .register(meterRegistry);
+        Gauge.builder("code.classloaders", this, registry -> registry.count(true))
+                .tag("state", "released")
+                .description("Class loaders of user strategies released but not collected yet")
+                .register(meterRegistry);
+        FunctionCounter.builder("code.classloaders.unloaded", unloadedCount, AtomicLong::get)
+                .description("Class loaders of user strategies collected")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Track the class loader of a submission
+     * @param loader class loader
+     * @param owner submission owning the loader, e.g. the key of its source
+     */
+    public void register(ClassLoader loader, String owner) {
+        expunge();
+        LoaderReference reference = new LoaderReference(loader, owner, collected);
+        loaders.add(reference);
+        registeredCount.incrementAndGet();
+    }
+
+    /**
+     * Release the class loader of a submission: it is closed if it holds resources and is expected
+     * to be collected once the last run using its classes is over
+     * @param loader class loader
+     */
+    public void release(ClassLoader loader) {
+        expunge();
+        for (LoaderReference reference : loaders) {
+            if (reference.get() == loader && !reference.isReleased()) {
+                reference.releasedAt = System.currentTimeMillis();
+                log.debug("Released class loader of {}", reference.owner);
+            }
+        }
+        if (loader instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                log.warn("Failed to close class loader {}", loader, e);
+            }
+        }
+    }
+
+    public ClassLoaderStatsVO stats() {
+        expunge();
+        long oldestReleasedAt = loaders.stream()
+                .filter(LoaderReference::isReleased)
+                .mapToLong(reference -> reference.releasedAt)
+                .min()
+                .orElse(0L);
+        return new ClassLoaderStatsVO(
+                registeredCount.get(),
+                count(false),
+                count(true),
+                unloadedCount.get(),
+                oldestReleasedAt,
+                classLoadingMXBean.getLoadedClassCount(),
+                classLoadingMXBean.getUnloadedClassCount(),
+                metaspace != null ? metaspace.getUsage().getUsed() : -1L,
+                metaspace != null ? metaspace.getUsage().getCommitted() : -1L);
+    }
+
+    private long count(boolean released) {
+        expunge();
+        return loaders.stream().filter(reference -> reference.isReleased() == released).count();
+    }
+
+    // Forget loaders that have been collected
+    private void expunge() {
+        Reference<? extends ClassLoader> reference;
+        while ((reference = collected.poll()) != null) {
+            if (loaders.remove(reference)) {
+                unloadedCount.incrementAndGet();
+            }
+        }
+    }
+}
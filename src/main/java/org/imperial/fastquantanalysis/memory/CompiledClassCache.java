@@ -0,0 +1,114 @@
+package org.imperial.fastquantanalysis.memory;
+
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.crypto.digest.DigestUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Bounded LRU cache of compiled user strategies, keyed by a SHA-256 of the language, the compiler
+ * version, the class path and the source text, so resubmitting an unchanged strategy skips compilation.
+ * Concurrent requests for the same key compile once. The cache owns the class loader of every compiled
+ * submission: it registers the loader with the {@link ClassLoaderRegistry} and, on eviction, drops the only
+ * strong reference the application keeps to it and releases it, so the classes can be unloaded.
+ *
+ * @author Emil S. He
+ * @since 2025-04-24
+ */
+@Slf4j
+@Component
+public class CompiledClassCache {
+
+    /**
+     * Compile a source into its strategy class
+     */
+    @FunctionalInterface
+    public interface SourceCompiler {
+        Class<?> compile() throws Exception;
+    }
+
+    private final LRUCache<String, Class<?>> classes;
+
+    private final ClassLoaderRegistry classLoaderRegistry;
+
+    // Class path and JVM of this process, fixed for its lifetime
+    private final String environment = System.getProperty("java.version") + '\0' + System.getProperty("java.class.path");
+
+    public CompiledClassCache(@Value("${fast-quant.code.cache.max-entries:128}") int maxEntries,
+                              ClassLoaderRegistry classLoaderRegistry,
+                              MeterRegistry meterRegistry) {
+        this.classLoaderRegistry = classLoaderRegistry;
+        this.classes = new LRUCache<>(maxEntries);
+        this.classes.setListener((key, strategyClass) -> release(strategyClass));
+
+        Gauge.builder("code.compiled.cache.size", classes, LRUCache::size)
+                .description("Compiled user strategies currently cached")
+                .register(meterRegistry);
+        FunctionCounter.builder("code.compiled.cache.requests", classes, LRUCache::getHitCount)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("code.compiled.cache.requests", classes, LRUCache::getMissCount)
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the compiled class of a source, compiling it on a miss.
+     * A failed compilation is not cached
+     * @param language source language
+     * @param compilerVersion version of the compiler used
+     * @param sourceCode source code
+     * @param compiler compiler invoked on a miss
+     * @return compiled class
+     */
+    public Class<?> get(String language, String compilerVersion, String sourceCode, SourceCompiler compiler) {
+        String key = key(language, compilerVersion, sourceCode);
+        return classes.get(key, true, () -> {
+            log.debug("Compiled class cache miss: {} {}", language, key);
+            Class<?> strategyClass = compiler.compile();
+            if (ownsLoader(strategyClass)) {
+                classLoaderRegistry.register(strategyClass.getClassLoader(), language + ":" + key);
+            }
+            return strategyClass;
+        });
+    }
+
+    /**
+     * Evict every compiled class, releasing all class loaders of user strategies
+     * @return number of classes evicted
+     */
+    public int clear() {
+        // Removal notifies the listener, which releases the loader
+        List<String> keys = new ArrayList<>(classes.keySet());
+        keys.forEach(classes::remove);
+        return keys.size();
+    }
+
+    String key(String language, String compilerVersion, String sourceCode) {
+        return DigestUtil.sha256Hex(language + '\0' + compilerVersion + '\0' + environment + '\0' + sourceCode);
+    }
+
+    int size() {
+        return classes.size();
+    }
+
+    private void release(Class<?> strategyClass) {
+        if (ownsLoader(strategyClass)) {
+            classLoaderRegistry.release(strategyClass.getClassLoader());
+        }
+    }
+
+    // Classes of the application itself (or of the JDK) are never released
+    private boolean ownsLoader(Class<?> strategyClass) {
+        ClassLoader loader = strategyClass.getClassLoader();
+        return loader != null && loader != getClass().getClassLoader();
+    }
+}
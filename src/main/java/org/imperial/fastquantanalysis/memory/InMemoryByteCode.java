@@ -21,6 +21,6 @@ public class InMemoryByteCode extends SimpleJavaFileObject {
     }
 
     public byte[] getBytes() {
-        return outputStream.toByteArray();
+        return outputStream == null ? new byte[0] : outputStream.toByteArray();
     }
 }
@@ -1,21 +1,55 @@
 package org.imperial.fastquantanalysis.memory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Class loader of classes compiled in memory. Each compilation gets its own loader, so classes of
+ * different user strategies never clash and are unloaded together with their loader.
+ * Compiled classes are looked up before the parent, otherwise a class with the same name on the
+ * application class path (e.g. the sample UserStrategy) would shadow the user's class.
+ * The byte code of a class is dropped once the class is defined. Loaders are tracked by {@link ClassLoaderRegistry}.
+ */
 public class InMemoryClassLoader extends ClassLoader {
-    private final Map<String, byte[]> classes = new HashMap<>();
 
-    public void addClass(String name, byte[] bytes) {
-        classes.put(name, bytes);
+    static {
+        registerAsParallelCapable();
+    }
+
+    // Classes not defined yet
+    private final Map<String, byte[]> classes;
+
+    public InMemoryClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+        super(parent);
+        this.classes = new ConcurrentHashMap<>(classes);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!classes.containsKey(name)) {
+            // Also finds the classes this loader already defined
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null) {
+                loaded = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(loaded);
+            }
+            return loaded;
+        }
     }
 
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
         byte[] bytes = classes.get(name);
         if (bytes == null) {
-            return super.findClass(name);
+            throw new ClassNotFoundException(name);
         }
-        return defineClass(name, bytes, 0, bytes.length);
+        Class<?> defined = defineClass(name, bytes, 0, bytes.length);
+        classes.remove(name);
+        return defined;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,81 @@
+package org.imperial.fastquantanalysis.memory;
+
+import javax.tools.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a Java source held in a string without touching the file system:
+ * the source is read from memory, every class file is captured by {@link ClassFileManager}
+ * and the classes are defined by a fresh {@link InMemoryClassLoader}.
+ * The instance is thread safe, each call uses its own file manager.
+ */
+public class InMemoryJavaCompiler {
+
+    private final JavaCompiler compiler;
+
+    private final List<String> options;
+
+    private final ClassLoader parent;
+
+    /**
+     * @param classPath class path the source is compiled against
+     * @param parent parent of the class loaders of compiled classes
+     */
+    public InMemoryJavaCompiler(String classPath, ClassLoader parent) {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        this.options = List.of("-classpath", classPath);
+        this.parent = parent;
+    }
+
+    /**
+     * Compile a source file and load its classes
+     * @param simpleClassName name of the public top-level class, which is also the file name
+     * @param sourceCode source code, in any package
+     * @return the public top-level class, loaded by its own class loader
+     * @throws IllegalStateException if the JDK compiler is not available
+     * @throws IllegalArgumentException if the source does not compile or does not declare the class
+     */
+    public Class<?> compile(String simpleClassName, String sourceCode) {
+        if (compiler == null) {
+            throw new IllegalStateException("JDK compiler not available. Please check and refresh the page.");
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, byte[]> classBytes;
+        try (ClassFileManager fileManager = new ClassFileManager(
+                compiler.getStandardFileManager(diagnostics, null, null))) {
+            JavaCompiler.CompilationTask task = compiler.getTask(
+                    null,
+                    fileManager,
+                    diagnostics,
+                    options,
+                    null,
+                    List.of(new InMemoryJavaFileObject(simpleClassName, sourceCode))
+            );
+
+            if (!task.call()) {
+                StringBuilder errorMsg = new StringBuilder();
+                diagnostics.getDiagnostics().forEach(d -> errorMsg.append(d.toString()).append("\n"));
+                throw new IllegalArgumentException("Failed to compile: \n" + errorMsg);
+            }
+            classBytes = fileManager.getClassBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        String className = classBytes.keySet().stream()
+                .filter(name -> name.equals(simpleClassName) || name.endsWith("." + simpleClassName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Did not find class \"" + simpleClassName + "\"."));
+
+        try {
+            return new InMemoryClassLoader(parent, classBytes).loadClass(className);
+        } catch (ClassNotFoundException e) {
+            // Cannot happen, the class was just compiled
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.imperial.fastquantanalysis.memory;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.psi.PsiManager;
+import com.intellij.testFramework.LightVirtualFile;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSourceLocation;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinToJVMBytecodeCompiler;
+import org.jetbrains.kotlin.cli.jvm.config.JvmContentRootsKt;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.config.CommonConfigurationKeys;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.config.JVMConfigurationKeys;
+import org.jetbrains.kotlin.extensions.ProcessSourcesBeforeCompilingExtension;
+import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived Kotlin compiler running in process.
+ * Each concurrent compilation has a compiler environment of its own, created by its first compilation and
+ * kept alive afterwards: the jar file system, the JDK and the index of the class path roots are built once
+ * for a number of compilations, instead of on every request. A compilation only parses its source into
+ * an in-memory file, which the environment compiles in place of source roots. Class files are taken from
+ * the generation state in memory and loaded by an {@link InMemoryClassLoader}; nothing is written to disk.
+ * The number of concurrent compilations, thus of environments, is bounded.
+ *
+ * @author Emil S. He
+ * @since 2025-04-24
+ */
+@Slf4j
+@Component
+public class KotlinCompilerService {
+
+    private static final String MODULE_NAME = "user-strategy";
+
+    private static final String SOURCE_FILE_NAME = "UserStrategy.kt";
+
+    private static final String WARM_UP_SOURCE = "class WarmUp { fun run(): Double = listOf(1.0, 2.0).map { it * 2 }.sum() }";
+
+    // Keeps the shared application environment alive after the last project environment is disposed
+    private static final String KEEP_ALIVE_PROPERTY = "kotlin.environment.keepalive";
+
+    private final List<File> classPath;
+
+    private final File jdkHome = new File(System.getProperty("java.home"));
+
+    private final ClassLoader parent;
+
+    private final Semaphore permits;
+
+    // At most one per permit, since an environment compiles one source at a time
+    private final Queue<CompilerEnvironment> idleEnvironments = new ConcurrentLinkedQueue<>();
+
+    private final long acquireTimeoutSeconds;
+
+    private final int compilationsPerEnvironment;
+
+    private final boolean warmUp;
+
+    public KotlinCompilerService(@Value("${fast-quant.code.kotlin.max-concurrent-compilations:2}") int maxConcurrentCompilations,
+                                 @Value("${fast-quant.code.kotlin.acquire-timeout-seconds:30}") long acquireTimeoutSeconds,
+                                 @Value("${fast-quant.code.kotlin.compilations-per-environment:20}") int compilationsPerEnvironment,
+                                 @Value("${fast-quant.code.kotlin.warm-up:true}") boolean warmUp) {
+        this.classPath = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .filter(entry -> !entry.isBlank())
+                .map(File::new)
+                .toList();
+        this.parent = getClass().getClassLoader();
+        this.permits = new Semaphore(maxConcurrentCompilations, true);
+        this.acquireTimeoutSeconds = acquireTimeoutSeconds;
+        this.compilationsPerEnvironment = compilationsPerEnvironment;
+        this.warmUp = warmUp;
+
+        if (System.getProperty(KEEP_ALIVE_PROPERTY) == null) {
+            System.setProperty(KEEP_ALIVE_PROPERTY, "true");
+        }
+    }
+
+    /**
+     * Compile a trivial class in the background once the application is up, so the first user
+     * does not pay for loading the compiler classes and creating an environment
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!warmUp) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                compile("WarmUp", WARM_UP_SOURCE);
+                log.info("Kotlin compiler warmed up in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (Exception e) {
+                log.warn("Kotlin compiler warm-up failed", e);
+            }
+        }, "kotlin-compiler-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Compile a Kotlin source and load its classes
+     * @param className simple name of the class to load, e.g. UserStrategy, in any package
+     * @param sourceCode source code
+     * @return the class, loaded by its own class loader
+     * @throws IllegalArgumentException if the source does not compile or does not declare the class
+     * @throws IllegalStateException if the compiler stays busy for too long
+     */
+    public Class<?> compile(String className, String sourceCode) throws Exception {
+        if (!permits.tryAcquire(acquireTimeoutSeconds, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Too many Kotlin compilations in progress, please try again later.");
+        }
+        try {
+            Map<String, byte[]> classes = compileToMemory(sourceCode);
+            String binaryName = classes.keySet().stream()
+                    .filter(name -> name.equals(className) || name.endsWith("." + className))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Did not find class \"" + className + "\"."));
+            return new InMemoryClassLoader(parent, classes).loadClass(binaryName);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Map<String, byte[]> compileToMemory(String sourceCode) {
+        CompilerEnvironment environment = idleEnvironments.poll();
+        if (environment == null) {
+            environment = new CompilerEnvironment();
+        }
+        try {
+            Map<String, byte[]> classes = environment.compile(sourceCode);
+            release(environment);
+            return classes;
+        } catch (IllegalArgumentException e) {
+            // A source that does not compile leaves the environment as it was
+            release(environment);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            Disposer.dispose(environment.disposable);
+            throw e;
+        }
+    }
+
+    private void release(CompilerEnvironment environment) {
+        // Every analysis leaves the package part provider it created in the environment, which cannot remove it
+        if (++environment.compilations < compilationsPerEnvironment) {
+            idleEnvironments.offer(environment);
+        } else {
+            Disposer.dispose(environment.disposable);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        CompilerEnvironment environment;
+        while ((environment = idleEnvironments.poll()) != null) {
+            Disposer.dispose(environment.disposable);
+        }
+    }
+
+    /**
+     * Compiler environment of one compilation at a time, with the class path of the application and no source roots
+     */
+    private final class CompilerEnvironment implements ProcessSourcesBeforeCompilingExtension {
+
+        private final Disposable disposable = Disposer.newDisposable("kotlin-compiler-environment");
+
+        private final CompilationMessages messages = new CompilationMessages();
+
+        private final KotlinCoreEnvironment environment;
+
+        private KtFile sourceFile;
+
+        private int compilations;
+
+        private CompilerEnvironment() {
+            CompilerConfiguration configuration = new CompilerConfiguration();
+            configuration.put(CommonConfigurationKeys.MESSAGE_COLLECTOR_KEY, messages);
+            configuration.put(CommonConfigurationKeys.MODULE_NAME, MODULE_NAME);
+            configuration.put(JVMConfigurationKeys.JDK_HOME, jdkHome);
+            JvmContentRootsKt.addJvmClasspathRoots(configuration, classPath);
+            this.environment = KotlinCoreEnvironment.createForProduction(
+                    disposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+            // The files to compile are asked for through the extensions, which replace the empty source roots
+            ProcessSourcesBeforeCompilingExtension.Companion.registerExtension(environment.getProject(), this);
+        }
+
+        private Map<String, byte[]> compile(String sourceCode) {
+            messages.clear();
+            LightVirtualFile file = new LightVirtualFile(SOURCE_FILE_NAME, KotlinLanguage.INSTANCE, sourceCode);
+            sourceFile = (KtFile) PsiManager.getInstance(environment.getProject()).findFile(file);
+            try {
+                GenerationState state = KotlinToJVMBytecodeCompiler.INSTANCE.analyzeAndGenerate(environment);
+                if (state == null || messages.hasErrors()) {
+                    throw new IllegalArgumentException("Failed to compile: \n" + messages);
+                }
+
+                Map<String, byte[]> classes = new HashMap<>();
+                for (OutputFile outputFile : state.getFactory().asList()) {
+                    String path = outputFile.getRelativePath();
+                    if (path.endsWith(".class")) {
+                        classes.put(path.substring(0, path.length() - ".class".length()).replace('/', '.'),
+                                outputFile.asByteArray());
+                    }
+                }
+                return classes;
+            } finally {
+                sourceFile = null;
+            }
+        }
+
+        @Override
+        public Collection<KtFile> processSources(Collection<? extends KtFile> sources, CompilerConfiguration configuration) {
+            return sourceFile == null ? List.of() : List.of(sourceFile);
+        }
+    }
+
+    /**
+     * Errors and warnings of one compilation
+     */
+    private static final class CompilationMessages implements MessageCollector {
+
+        private final StringBuilder messages = new StringBuilder();
+
+        private boolean hasErrors;
+
+        @Override
+        public synchronized void clear() {
+            messages.setLength(0);
+            hasErrors = false;
+        }
+
+        @Override
+        public synchronized void report(CompilerMessageSeverity severity, String message,
+                                        CompilerMessageSourceLocation location) {
+            if (severity.isError()) {
+                hasErrors = true;
+            } else if (!severity.isWarning()) {
+                return;
+            }
+            if (location != null) {
+                messages.append(location.getPath()).append(':').append(location.getLine())
+                        .append(':').append(location.getColumn()).append(": ");
+            }
+            messages.append(severity.getPresentableName()).append(": ").append(message).append('\n');
+        }
+
+        @Override
+        public synchronized boolean hasErrors() {
+            return hasErrors;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return messages.toString();
+        }
+    }
+}
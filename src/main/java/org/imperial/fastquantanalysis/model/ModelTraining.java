@@ -7,6 +7,7 @@ import org.datavec.api.writable.Writable;
 import org.deeplearning4j.datasets.datavec.SequenceRecordReaderDataSetIterator;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.optimize.listeners.ScoreIterationListener;
+import org.imperial.fastquantanalysis.market.BarSeries;
 import org.imperial.fastquantanalysis.vo.TrainingResultVO;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
@@ -36,15 +37,15 @@ public class ModelTraining {
     /**
      * Train the model (and save to database)
      * @param windowSize window size
-     * @param dataList bar prices
+     * @param bars bars
      * @param modelProvider model
      * @param epochs epochs
      * @return Training result
      */
-    public TrainingResultVO train(int windowSize, List<List<Double>> dataList,
+    public TrainingResultVO train(int windowSize, BarSeries bars,
                               Supplier<MultiLayerNetwork> modelProvider, int epochs) {
         // Split the data
-        List<List<List<Writable>>> allData = buildSequenceData(windowSize, dataList);
+        List<List<List<Writable>>> allData = buildSequenceData(windowSize, bars);
         if (allData.size() <= windowSize) {
             log.info("All data's size {} should be larger than the indicated window size.", allData.size());
             return new TrainingResultVO(Collections.emptyList(), Double.NaN);
@@ -146,10 +147,12 @@ public class ModelTraining {
         return new TrainingResultVO(finalPredictionData, mse);
     }
 
-    private List<List<List<Writable>>> buildSequenceData(int windowSize, List<List<Double>> barPrices) {
+    private List<List<List<Writable>>> buildSequenceData(int windowSize, BarSeries bars) {
         List<List<List<Writable>>> data = new ArrayList<>();
+        double[] open = bars.getOpen();
+        double[] close = bars.getClose();
 
-        for (int i = 0; i < barPrices.get(0).size() - windowSize; i++) {
+        for (int i = 0; i < bars.size() - windowSize; i++) {
             List<List<Writable>> sequence = new ArrayList<>();
             int endIndex = i + windowSize;
 
@@ -157,11 +160,11 @@ public class ModelTraining {
                 List<Writable> features = new ArrayList<>();
 
                 // Open & close prices are used in features to predict the open price the next day
-                features.add(new DoubleWritable(barPrices.get(0).get(j))); // open
-                features.add(new DoubleWritable(barPrices.get(3).get(j))); // close
+                features.add(new DoubleWritable(open[j]));
+                features.add(new DoubleWritable(close[j]));
 
                 // Labels
-                features.add(new DoubleWritable(barPrices.get(0).get(j + 1))); // open
+                features.add(new DoubleWritable(open[j + 1]));
                 sequence.add(features);
             }
 
@@ -0,0 +1,408 @@
+package org.imperial.fastquantanalysis.sandbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor for user strategy code, so that an endless loop or a huge allocation in user code
+ * occupies one of a few dedicated threads instead of a request thread, and is stopped.
+ * <p>
+ * A watchdog checks every run against its wall clock, CPU time and allocation budgets. A run over budget
+ * is first interrupted (the bar engine stops at the next check, user code may check
+ * {@link Thread#isInterrupted()} too); if it is still running after the grace period its thread is stopped.
+ * Stopping a thread is the last resort: it is only reached by code that ignores interrupts.
+ * On JVMs that cannot stop threads (Java 20 on) the thread is retired instead: the caller gets its error,
+ * a new thread takes its place in the pool, and the run keeps its permit until the code returns, so that
+ * a thread spinning forever still counts against the capacity of the sandbox.
+ *
+ * @author Emil S. He
+ * @since 2025-04-25
+ */
+@Slf4j
+@Component
+public class StrategySandbox {
+
+    /**
+     * Budget a run went over
+     */
+    public enum Overrun {
+        WALL_CLOCK("wall clock time"),
+        CPU_TIME("CPU time"),
+        ALLOCATION("memory allocation");
+
+        private final String description;
+
+        Overrun(String description) {
+            this.description = description;
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    // One permit per thread and per queued run
+    private final Semaphore permits;
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "strategy-sandbox-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Set<Run<?>> runs = ConcurrentHashMap.newKeySet();
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    // Null when the JVM cannot account allocations per thread
+    private final com.sun.management.ThreadMXBean allocationMXBean;
+
+    private final long wallClockLimitNanos;
+
+    private final long cpuTimeLimitNanos;
+
+    private final long allocationLimitBytes;
+
+    private final long killGraceNanos;
+
+    private final boolean stopThreads;
+
+    // Threads of runs that ignored the interrupt and could not be stopped, still running
+    private final AtomicInteger retiredThreads = new AtomicInteger();
+
+    private final Counter completedRuns;
+
+    private final Counter failedRuns;
+
+    private final Counter rejectedRuns;
+
+    private final Map<Overrun, Counter> overruns = new EnumMap<>(Overrun.class);
+
+    public StrategySandbox(@Value("${fast-quant.code.sandbox.threads:2}") int threads,
+                           @Value("${fast-quant.code.sandbox.queue-capacity:8}") int queueCapacity,
+                           @Value("${fast-quant.code.sandbox.wall-clock-limit-ms:30000}") long wallClockLimitMillis,
+                           @Value("${fast-quant.code.sandbox.cpu-time-limit-ms:20000}") long cpuTimeLimitMillis,
+                           @Value("${fast-quant.code.sandbox.allocation-limit-mb:2048}") long allocationLimitMegabytes,
+                           @Value("${fast-quant.code.sandbox.kill-grace-ms:1000}") long killGraceMillis,
+                           @Value("${fast-quant.code.sandbox.watchdog-interval-ms:50}") long watchdogIntervalMillis,
+                           MeterRegistry meterRegistry) {
+        // Thread.stop throws UnsupportedOperationException from Java 20 on
+        this(threads, queueCapacity, wallClockLimitMillis, cpuTimeLimitMillis, allocationLimitMegabytes, killGraceMillis,
+                watchdogIntervalMillis, Runtime.version().feature() < 20, meterRegistry);
+    }
+
+    StrategySandbox(int threads, int queueCapacity, long wallClockLimitMillis, long cpuTimeLimitMillis,
+                    long allocationLimitMegabytes, long killGraceMillis, long watchdogIntervalMillis,
+                    boolean stopThreads, MeterRegistry meterRegistry) {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Admission is bounded by the permits, the queue itself never rejects
+        BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, r -> {
+            Thread thread = new Thread(r, "strategy-sandbox-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.permits = new Semaphore(threads + queueCapacity);
+
+        this.wallClockLimitNanos = TimeUnit.MILLISECONDS.toNanos(wallClockLimitMillis);
+        this.cpuTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(cpuTimeLimitMillis);
+        this.allocationLimitBytes = allocationLimitMegabytes * 1024 * 1024;
+        this.killGraceNanos = TimeUnit.MILLISECONDS.toNanos(killGraceMillis);
+        this.stopThreads = stopThreads;
+
+        if (threadMXBean.isThreadCpuTimeSupported() && !threadMXBean.isThreadCpuTimeEnabled()) {
+            threadMXBean.setThreadCpuTimeEnabled(true);
+        }
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean sunThreadMXBean
+                && sunThreadMXBean.isThreadAllocatedMemorySupported()) {
+            sunThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+            this.allocationMXBean = sunThreadMXBean;
+        } else {
+            log.warn("Allocation of user strategies cannot be accounted on this JVM");
+            this.allocationMXBean = null;
+        }
+
+        watchdog.scheduleWithFixedDelay(this::check, watchdogIntervalMillis, watchdogIntervalMillis, TimeUnit.MILLISECONDS);
+
+        this.completedRuns = runCounter(meterRegistry, "completed");
+        this.failedRuns = runCounter(meterRegistry, "failed");
+        this.rejectedRuns = runCounter(meterRegistry, "rejected");
+        for (Overrun overrun : Overrun.values()) {
+            overruns.put(overrun, runCounter(meterRegistry, overrun.name().toLowerCase()));
+        }
+        Gauge.builder("code.sandbox.active", runs, Set::size)
+                .description("User strategy runs in progress")
+                .register(meterRegistry);
+        Gauge.builder("code.sandbox.queued", queue, BlockingQueue::size)
+                .description("User strategy runs waiting for a sandbox thread")
+                .register(meterRegistry);
+        Gauge.builder("code.sandbox.retired", retiredThreads, AtomicInteger::get)
+                .description("Threads of user strategies that could not be stopped, still running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run user code on a sandbox thread and wait for it
+     * @param task user code
+     * @return result of the task
+     * @throws StrategyRunningException if all sandbox threads are busy or the run went over a budget
+     * @throws Exception thrown by the task
+     */
+    public <T> T run(Callable<T> task) throws Exception {
+        if (!permits.tryAcquire()) {
+            rejectedRuns.increment();
+            throw new StrategyRunningException("Too many user strategies running, please try again later.");
+        }
+        Run<T> run = new Run<>(task);
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            run.release();
+            throw new StrategyRunningException("User strategy sandbox is shut down.", e);
+        }
+
+        try {
+            // The watchdog ends the run well before this, unless the code survives being stopped
+            T result = run.get(2 * (wallClockLimitNanos + killGraceNanos), TimeUnit.NANOSECONDS);
+            completedRuns.increment();
+            return result;
+        } catch (ExecutionException | CancellationException e) {
+            if (run.overrun != null) {
+                throw overrunException(run.overrun);
+            }
+            failedRuns.increment();
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw new StrategyRunningException("User strategy failed: " + cause, cause);
+        } catch (TimeoutException e) {
+            log.error("User strategy on {} could not be stopped", run.thread);
+            throw overrunException(Overrun.WALL_CLOCK);
+        } catch (InterruptedException e) {
+            // The permit is returned when the run leaves its thread, or right away if it has not started
+            if (run.cancel(true) && run.thread == null) {
+                run.release();
+            }
+            Thread.currentThread().interrupt();
+            throw new StrategyRunningException("Interrupted while waiting for user strategy", e);
+        }
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        for (Run<?> run : runs) {
+            if (run.retired) {
+                continue;
+            }
+
+            if (run.overrun == null) {
+                Overrun overrun = run.overrun(now);
+                if (overrun != null) {
+                    // Set before the interrupt, which may end the run right away
+                    run.overrun = overrun;
+                    run.interruptedAt = now;
+                    overruns.get(overrun).increment();
+                    log.warn("User strategy on {} went over its {} budget, interrupting", run.threadName, overrun.description);
+                    run.interrupt();
+                }
+            } else if (!run.stopped && now - run.interruptedAt > killGraceNanos) {
+                run.stopped = true;
+                if (stopThreads && run.stop()) {
+                    log.warn("User strategy on {} ignored the interrupt, stopped the thread", run.threadName);
+                } else if (run.retire()) {
+                    log.error("User strategy on {} ignored the interrupt and cannot be stopped on this JVM, "
+                            + "retired the thread", run.threadName);
+                }
+            }
+        }
+    }
+
+    // A retired thread is replaced, so that runs queued behind it are still picked up
+    private synchronized void resizePool(int delta) {
+        int size = executor.getCorePoolSize() + delta;
+        if (delta > 0) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    private StrategyRunningException overrunException(Overrun overrun) {
+        return new StrategyRunningException("User strategy was stopped: it went over its " + overrun.description + " budget.");
+    }
+
+    private static Counter runCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("code.sandbox.runs")
+                .tag("result", result)
+                .description("User strategy runs by outcome")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * One run of user code, with the usage of its thread at the start.
+     * Its thread is only interrupted, stopped or retired under its lock while the run is still on it,
+     * so that the next run of the pooled thread is never hit
+     */
+    private final class Run<T> extends FutureTask<T> {
+
+        private volatile Thread thread;
+
+        private volatile String threadName;
+
+        private long startNanos;
+
+        private long startCpuTime;
+
+        private long startAllocatedBytes;
+
+        private volatile Overrun overrun;
+
+        private volatile long interruptedAt;
+
+        private volatile boolean stopped;
+
+        private volatile boolean retired;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Run(Callable<T> task) {
+            super(task);
+        }
+
+        // The permit is returned before the caller is woken up, so it can submit again right away
+        @Override
+        protected void set(T result) {
+            release();
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            release();
+            super.setException(t);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+
+        @Override
+        public void run() {
+            Thread current = Thread.currentThread();
+            startNanos = System.nanoTime();
+            startCpuTime = threadMXBean.getThreadCpuTime(current.getId());
+            startAllocatedBytes = allocationMXBean != null ? allocationMXBean.getThreadAllocatedBytes(current.getId()) : 0L;
+            threadName = current.getName();
+            thread = current;
+            runs.add(this);
+            try {
+                super.run();
+            } finally {
+                boolean wasRetired;
+                synchronized (this) {
+                    thread = null;
+                    wasRetired = retired;
+                }
+                runs.remove(this);
+                if (wasRetired) {
+                    retiredThreads.decrementAndGet();
+                    resizePool(-1);
+                }
+                // Cancelled runs are not set, e.g. retired ones, which held their permit until now
+                release();
+                // The pooled thread must not carry the interrupt to the next run
+                Thread.interrupted();
+            }
+        }
+
+        private synchronized void interrupt() {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        @SuppressWarnings({"deprecation", "removal"})
+        private synchronized boolean stop() {
+            if (thread == null) {
+                return false;
+            }
+            try {
+                thread.stop();
+                return true;
+            } catch (UnsupportedOperationException e) {
+                return false;
+            }
+        }
+
+        private boolean retire() {
+            synchronized (this) {
+                if (thread == null) {
+                    return false;
+                }
+                // Before the thread can leave the run and shrink the pool again
+                retired = true;
+                retiredThreads.incrementAndGet();
+                resizePool(1);
+            }
+            // Wakes the caller up, the permit stays taken until the code returns
+            cancel(false);
+            return true;
+        }
+
+        private Overrun overrun(long now) {
+            if (now - startNanos > wallClockLimitNanos) {
+                return Overrun.WALL_CLOCK;
+            }
+            Thread current = thread;
+            if (current == null) {
+                return null;
+            }
+            long cpuTime = threadMXBean.getThreadCpuTime(current.getId());
+            if (cpuTime >= 0 && startCpuTime >= 0 && cpuTime - startCpuTime > cpuTimeLimitNanos) {
+                return Overrun.CPU_TIME;
+            }
+            if (allocationMXBean != null
+                    && allocationMXBean.getThreadAllocatedBytes(current.getId()) - startAllocatedBytes > allocationLimitBytes) {
+                return Overrun.ALLOCATION;
+            }
+            return null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.imperial.fastquantanalysis.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import org.imperial.fastquantanalysis.dto.CodeBacktestDTO;
 import org.imperial.fastquantanalysis.entity.QuantStrategy;
 import org.springframework.http.ResponseEntity;
 
@@ -15,4 +16,8 @@ public interface ICodeService extends IService<QuantStrategy> {
     ResponseEntity<?> runJavaCode(String code);
 
     ResponseEntity<?> runKotlinCode(String code);
+
+    ResponseEntity<?> backtestJavaCode(String polygonApiKey, CodeBacktestDTO codeBacktestDTO);
+
+    ResponseEntity<?> backtestKotlinCode(String polygonApiKey, CodeBacktestDTO codeBacktestDTO);
 }
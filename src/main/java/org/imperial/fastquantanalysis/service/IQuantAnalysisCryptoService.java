@@ -3,9 +3,14 @@ package org.imperial.fastquantanalysis.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import org.imperial.fastquantanalysis.dto.CryptoAggregatesDTO;
 import org.imperial.fastquantanalysis.dto.CryptoAggregatesPairDTO;
+import org.imperial.fastquantanalysis.dto.StrategySweepDTO;
+import org.imperial.fastquantanalysis.dto.WalkForwardDTO;
 import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.imperial.fastquantanalysis.vo.SweepResultVO;
+import org.imperial.fastquantanalysis.vo.WalkForwardResultVO;
 import org.springframework.http.ResponseEntity;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -23,4 +28,10 @@ public interface IQuantAnalysisCryptoService extends IService<QuantStrategy> {
     ResponseEntity<QuantStrategy> emaWithStopLossPercentage(String polygonApiKey, CryptoAggregatesDTO cryptoAggregatesDTO, Integer emaPeriod, Double stopLossPercentage);
 
     ResponseEntity<QuantStrategy> emaWithATRStopLoss(String polygonApiKey, CryptoAggregatesDTO cryptoAggregatesDTO, Integer emaPeriod, Integer atrPeriod, Double atrMultiplier);
+
+    ResponseEntity<SweepResultVO> sweep(String polygonApiKey, StrategySweepDTO strategySweepDTO);
+
+    ResponseEntity<WalkForwardResultVO> walkForward(String polygonApiKey, WalkForwardDTO walkForwardDTO);
+
+    int upsertBatch(List<QuantStrategy> quantStrategies);
 }
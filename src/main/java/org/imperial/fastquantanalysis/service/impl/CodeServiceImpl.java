@@ -3,27 +3,30 @@ package org.imperial.fastquantanalysis.service.impl;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.client.PolygonClientRegistry;
+import org.imperial.fastquantanalysis.constant.Sort;
 import org.imperial.fastquantanalysis.constant.StrategyName;
+import org.imperial.fastquantanalysis.dto.CodeBacktestDTO;
+import org.imperial.fastquantanalysis.dto.CryptoAggregatesDTO;
 import org.imperial.fastquantanalysis.entity.QuantStrategy;
-import org.imperial.fastquantanalysis.exception.StrategyRunningException;
 import org.imperial.fastquantanalysis.mapper.CodeMapper;
-import org.imperial.fastquantanalysis.memory.InMemoryClassLoader;
-import org.imperial.fastquantanalysis.memory.InMemoryJavaFileObject;
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.imperial.fastquantanalysis.market.BarStore;
+import org.imperial.fastquantanalysis.memory.CompiledClassCache;
+import org.imperial.fastquantanalysis.memory.InMemoryJavaCompiler;
+import org.imperial.fastquantanalysis.memory.KotlinCompilerService;
+import org.imperial.fastquantanalysis.sandbox.StrategySandbox;
 import org.imperial.fastquantanalysis.service.ICodeService;
+import org.imperial.fastquantanalysis.strategy.Strategies;
+import org.imperial.fastquantanalysis.strategy.bar.BarStrategyBinder;
+import org.imperial.fastquantanalysis.util.PricesHttpClientUtil;
 import org.imperial.fastquantanalysis.util.RedisIdUtil;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.kotlin.cli.common.ExitCode;
-import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler;
+import org.jetbrains.kotlin.config.KotlinCompilerVersion;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import javax.tools.*;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
@@ -41,6 +44,29 @@ public class CodeServiceImpl extends ServiceImpl<CodeMapper, QuantStrategy> impl
     @Resource
     private RedisIdUtil redisIdUtil;
 
+    @Resource
+    private CompiledClassCache compiledClassCache;
+
+    @Resource
+    private KotlinCompilerService kotlinCompilerService;
+
+    @Resource
+    private Strategies strategies;
+
+    @Resource
+    private PolygonClientRegistry polygonClientRegistry;
+
+    @Resource
+    private BarStore barStore;
+
+    @Resource
+    private StrategySandbox strategySandbox;
+
+    private static final String JAVA_COMPILER_VERSION = System.getProperty("java.version");
+
+    private final InMemoryJavaCompiler javaCompiler =
+            new InMemoryJavaCompiler(System.getProperty("java.class.path"), getClass().getClassLoader());
+
     /**
      * Get customized Java code snippet from frontend and run
      * @param code Customized code snippet
@@ -49,7 +75,8 @@ public class CodeServiceImpl extends ServiceImpl<CodeMapper, QuantStrategy> impl
     @Override
     public ResponseEntity<?> runJavaCode(String code) {
         try {
-            Class<?> strategyClass = compileJavaSource(code);
+            Class<?> strategyClass = compiledClassCache.get("java", JAVA_COMPILER_VERSION, code,
+                    () -> compileJavaSource(code));
             return getResponseEntity(strategyClass);
 
         } catch (Exception e) {
@@ -66,7 +93,8 @@ public class CodeServiceImpl extends ServiceImpl<CodeMapper, QuantStrategy> impl
     @Override
     public ResponseEntity<?> runKotlinCode(String code) {
         try {
-            Class<?> strategyClass = compileKotlinSource(code);
+            Class<?> strategyClass = compiledClassCache.get("kotlin", KotlinCompilerVersion.VERSION, code,
+                    () -> compileKotlinSource(code));
             return getResponseEntity(strategyClass);
         } catch (Exception e) {
             log.error(e.getMessage());
@@ -75,22 +103,88 @@ public class CodeServiceImpl extends ServiceImpl<CodeMapper, QuantStrategy> impl
     }
 
     /**
-     * Helper method
+     * Backtest a customized Java bar strategy
+     * @param polygonApiKey user's Polygon.io API key
+     * @param codeBacktestDTO code snippet and the bars it runs on
+     * @return OK or fail message
+     */
+    @Override
+    public ResponseEntity<?> backtestJavaCode(String polygonApiKey, CodeBacktestDTO codeBacktestDTO) {
+        String code = codeBacktestDTO.getCode();
+        try {
+            Class<?> strategyClass = compiledClassCache.get("java", JAVA_COMPILER_VERSION, code,
+                    () -> compileJavaSource(code));
+            return backtest(polygonApiKey, codeBacktestDTO.getAggregates(), strategyClass);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return ResponseEntity.badRequest().body("Failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Backtest a customized Kotlin bar strategy
+     * @param polygonApiKey user's Polygon.io API key
+     * @param codeBacktestDTO code snippet and the bars it runs on
+     * @return OK or fail message
+     */
+    @Override
+    public ResponseEntity<?> backtestKotlinCode(String polygonApiKey, CodeBacktestDTO codeBacktestDTO) {
+        String code = codeBacktestDTO.getCode();
+        try {
+            Class<?> strategyClass = compiledClassCache.get("kotlin", KotlinCompilerVersion.VERSION, code,
+                    () -> compileKotlinSource(code));
+            return backtest(polygonApiKey, codeBacktestDTO.getAggregates(), strategyClass);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return ResponseEntity.badRequest().body("Failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bind the user class once, then let the engine drive it over the bars
+     * @param polygonApiKey user's Polygon.io API key
+     * @param aggregates bars the strategy runs on
+     * @param strategyClass compiled user class
+     * @return OK with the metrics of the run
+     * @throws Exception thrown by user code, or StrategyRunningException if it cannot be run
+     */
+    private ResponseEntity<?> backtest(String polygonApiKey, CryptoAggregatesDTO aggregates,
+                                       Class<?> strategyClass) throws Exception {
+        if (!BarStrategyBinder.isBarStrategy(strategyClass)) {
+            return ResponseEntity.badRequest().body("Did not find \"onBar\" method.");
+        }
+
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
+                aggregates.getTickerName(), aggregates.getMultiplier(),
+                aggregates.getTimespan(), aggregates.getFromDate(), aggregates.getToDate(),
+                aggregates.getUnadjusted(), aggregates.getLimit(), aggregates.getSort(),
+                polygonClientRegistry.getAggregatesClient(polygonApiKey),
+                barStore
+        );
+        // Strategies always see the oldest bar first
+        if (aggregates.getSort() == Sort.DESC) {
+            bars = bars.reversed();
+        }
+
+        BarSeries chronologicalBars = bars;
+        // The constructor and every callback of the user class run in the sandbox
+        QuantStrategy quantStrategy = strategySandbox.run(() ->
+                strategies.barStrategy(chronologicalBars, BarStrategyBinder.bind(strategyClass)));
+        quantStrategy.setStartDate(aggregates.getFromDate().atStartOfDay());
+        quantStrategy.setEndDate(aggregates.getToDate().atStartOfDay());
+        this.save(quantStrategy);
+
+        return ResponseEntity.ok(quantStrategy);
+    }
+
+    /**
+     * Helper method, user code runs in the sandbox
      * @param strategyClass Strategy class byte code
      * @return OK or fail message
-     * @throws InstantiationException Instantiation exception
-     * @throws IllegalAccessException Illegal access exception
-     * @throws InvocationTargetException Invocation target exception
-     * @throws NoSuchMethodException No such method exception
-     * @throws StrategyRunningException Strategy running exception
+     * @throws Exception thrown by user code, or StrategyRunningException if it cannot be run
      */
     @NotNull
-    private ResponseEntity<?> getResponseEntity(Class<?> strategyClass)
-            throws InstantiationException, IllegalAccessException,
-            InvocationTargetException, NoSuchMethodException,
-            StrategyRunningException {
-        Object instance = strategyClass.getDeclaredConstructor().newInstance();
-
+    private ResponseEntity<?> getResponseEntity(Class<?> strategyClass) throws Exception {
         List<Method> strategyMethods = Arrays.stream(strategyClass.getDeclaredMethods())
                 .filter(m -> m.getName().equals("runStrategy"))
                 .filter(m -> m.getParameterCount() == 1 && m.getParameterTypes()[0].equals(QuantStrategy.class))
@@ -107,13 +201,17 @@ public class CodeServiceImpl extends ServiceImpl<CodeMapper, QuantStrategy> impl
         originalStrategy.setStartDate(LocalDateTime.now());
         originalStrategy.setEndDate(LocalDateTime.now());
 
-        QuantStrategy finalStrategy = originalStrategy;
-        for (Method m : strategyMethods) {
-            QuantStrategy temp = (QuantStrategy) m.invoke(instance, finalStrategy);
-            if (temp != null) {
-                finalStrategy = mergeStrategy(finalStrategy, temp);
+        QuantStrategy finalStrategy = strategySandbox.run(() -> {
+            Object instance = strategyClass.getDeclaredConstructor().newInstance();
+            QuantStrategy strategy = originalStrategy;
+            for (Method m : strategyMethods) {
+                QuantStrategy temp = (QuantStrategy) m.invoke(instance, strategy);
+                if (temp != null) {
+                    strategy = mergeStrategy(strategy, temp);
+                }
             }
-        }
+            return strategy;
+        });
 
         fillMissingFields(finalStrategy);
         this.save(finalStrategy);
@@ -122,66 +220,11 @@ public class CodeServiceImpl extends ServiceImpl<CodeMapper, QuantStrategy> impl
     }
 
     private Class<?> compileJavaSource(String sourceCode) {
-        Class<?> userStrategy = null;
-        try {
-            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            if (compiler == null) {
-                throw new IllegalStateException("JDK compiler not available. Please check and refresh the page.");
-            }
-
-            InMemoryJavaFileObject fileObject = new InMemoryJavaFileObject("UserStrategy", sourceCode);
-            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-            StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
-            List<String> optionList = Arrays.asList("-classpath", System.getProperty("java.class.path"));
-            JavaCompiler.CompilationTask task = compiler.getTask(
-                    null,
-                    standardFileManager,
-                    diagnostics,
-                    optionList,
-                    null,
-                    List.of(fileObject)
-            );
-
-            boolean success = task.call();
-            if (!success) {
-                StringBuilder errorMsg = new StringBuilder();
-                diagnostics.getDiagnostics().forEach(d -> errorMsg.append(d.toString()).append("\n"));
-                throw new IllegalArgumentException("Failed to compile: \n" + errorMsg);
-            }
-
-            InMemoryClassLoader classLoader = new InMemoryClassLoader();
-            userStrategy = classLoader.loadClass("org.imperial.fastquantanalysis.strategy.UserStrategy");
-        } catch (ClassNotFoundException e) {
-            log.error("Failed to compile Java source: ", e);
-        }
-        
-        return userStrategy;
+        return javaCompiler.compile("UserStrategy", sourceCode);
     }
 
     private Class<?> compileKotlinSource(String sourceCode) throws Exception {
-        Path tempDir = Files.createTempDirectory("kotlinCompile");
-        Path sourceFile = tempDir.resolve("UserStrategy.kt");
-        Files.writeString(sourceFile, sourceCode);
-
-        // Build Kotlin compiler parameters: compile the current file,
-        // -d specify the compilation output directory,
-        // and set the classpath to the current JVM classpath.
-        String[] args = new String[]{
-                sourceFile.toAbsolutePath().toString(),
-                "-d", tempDir.toAbsolutePath().toString(),
-                "-classpath", System.getProperty("java.class.path")
-        };
-
-        K2JVMCompiler compiler = new K2JVMCompiler();
-        ExitCode exitCode = compiler.exec(System.err, args);
-        if (exitCode != ExitCode.OK) {
-            throw new IllegalArgumentException("Kotlin compilation failed with exit code: " + exitCode);
-        }
-
-        URL[] urls = new URL[]{tempDir.toUri().toURL()};
-        try (URLClassLoader classLoader = new URLClassLoader(urls, this.getClass().getClassLoader())) {
-            return classLoader.loadClass("UserStrategy");
-        }
+        return kotlinCompilerService.compile("UserStrategy", sourceCode);
     }
 
     private QuantStrategy mergeStrategy(QuantStrategy original, QuantStrategy additional) {
@@ -203,6 +246,18 @@ public class CodeServiceImpl extends ServiceImpl<CodeMapper, QuantStrategy> impl
         if (additional.getTradeCount() != null) {
             original.setTradeCount(additional.getTradeCount());
         }
+        if (additional.getSortinoRatio() != null) {
+            original.setSortinoRatio(additional.getSortinoRatio());
+        }
+        if (additional.getCalmarRatio() != null) {
+            original.setCalmarRatio(additional.getCalmarRatio());
+        }
+        if (additional.getWinRate() != null) {
+            original.setWinRate(additional.getWinRate());
+        }
+        if (additional.getExposure() != null) {
+            original.setExposure(additional.getExposure());
+        }
         return original;
     }
 
@@ -225,5 +280,17 @@ public class CodeServiceImpl extends ServiceImpl<CodeMapper, QuantStrategy> impl
         if (strategy.getTradeCount() == null) {
             strategy.setTradeCount(0);
         }
+        if (strategy.getSortinoRatio() == null) {
+            strategy.setSortinoRatio(0.0);
+        }
+        if (strategy.getCalmarRatio() == null) {
+            strategy.setCalmarRatio(0.0);
+        }
+        if (strategy.getWinRate() == null) {
+            strategy.setWinRate(0.0);
+        }
+        if (strategy.getExposure() == null) {
+            strategy.setExposure(0.0);
+        }
     }
 }
@@ -1,12 +1,14 @@
 package org.imperial.fastquantanalysis.service.impl;
 
-import io.polygon.kotlin.sdk.HttpClientProvider;
-import io.polygon.kotlin.sdk.rest.PolygonRestClient;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.imperial.fastquantanalysis.client.PolygonAggregatesClient;
+import org.imperial.fastquantanalysis.client.PolygonClientRegistry;
 import org.imperial.fastquantanalysis.constant.ModelKind;
 import org.imperial.fastquantanalysis.dto.CryptoAggregatesDTO;
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.imperial.fastquantanalysis.market.BarStore;
 import org.imperial.fastquantanalysis.model.ModelConfig;
 import org.imperial.fastquantanalysis.model.ModelTraining;
 import org.imperial.fastquantanalysis.service.IModelTrainingService;
@@ -17,7 +19,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collections;
-import java.util.List;
 import java.util.Optional;
 import java.util.function.Supplier;
 
@@ -37,6 +38,12 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
     @Resource
     private ModelConfig modelConfig;
 
+    @Resource
+    private PolygonClientRegistry polygonClientRegistry;
+
+    @Resource
+    private BarStore barStore;
+
     /**
      * Train default deep learning models, most parameters have been fixed
      * @param polygonApiKey User's polygon API key
@@ -54,13 +61,9 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
                                                        CryptoAggregatesDTO cryptoAggregatesDTO,
                                                        ModelKind modelKind, int windowSize, int epochs,
                                                        int inputSize, int outPutSize) {
-        HttpClientProvider okHttpClientProvider = PricesHttpClientUtil.getOkHttpClientProvider();
-        PolygonRestClient polygonRestClient = new PolygonRestClient(
-                polygonApiKey,
-                okHttpClientProvider
-        );
+        PolygonAggregatesClient polygonClient = polygonClientRegistry.getAggregatesClient(polygonApiKey);
 
-        List<List<Double>> barPrices = PricesHttpClientUtil.getBarPrices(
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
                 cryptoAggregatesDTO.getTickerName(),
                 cryptoAggregatesDTO.getMultiplier(),
                 cryptoAggregatesDTO.getTimespan(),
@@ -69,7 +72,8 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
                 cryptoAggregatesDTO.getUnadjusted(),
                 cryptoAggregatesDTO.getLimit(),
                 cryptoAggregatesDTO.getSort(),
-                polygonRestClient
+                polygonClient,
+                barStore
         );
 
         Supplier<MultiLayerNetwork> modelProvider = switch (modelKind) {
@@ -78,7 +82,7 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
             case CNN_RNN_HYBRID -> () -> modelConfig.getCNNRNNHybridDefaultModel(inputSize);
         };
 
-        return ResponseEntity.ok(modelTraining.train(windowSize, barPrices, modelProvider, epochs));
+        return ResponseEntity.ok(modelTraining.train(windowSize, bars, modelProvider, epochs));
     }
 
     /**
@@ -103,13 +107,9 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
                                                                  ModelKind modelKind, long seed, double learningRate,
                                                                  double momentum, double dropoutRate, int windowSize,
                                                                  int epochs, int inputSize, int outPutSize) {
-        HttpClientProvider okHttpClientProvider = PricesHttpClientUtil.getOkHttpClientProvider();
-        PolygonRestClient polygonRestClient = new PolygonRestClient(
-                polygonApiKey,
-                okHttpClientProvider
-        );
+        PolygonAggregatesClient polygonClient = polygonClientRegistry.getAggregatesClient(polygonApiKey);
 
-        List<List<Double>> barPrices = PricesHttpClientUtil.getBarPrices(
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
                 cryptoAggregatesDTO.getTickerName(),
                 cryptoAggregatesDTO.getMultiplier(),
                 cryptoAggregatesDTO.getTimespan(),
@@ -118,7 +118,8 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
                 cryptoAggregatesDTO.getUnadjusted(),
                 cryptoAggregatesDTO.getLimit(),
                 cryptoAggregatesDTO.getSort(),
-                polygonRestClient
+                polygonClient,
+                barStore
         );
 
         Optional<Supplier<MultiLayerNetwork>> safeModelProvider = switch (modelKind) {
@@ -134,7 +135,7 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
             return ResponseEntity.badRequest().body(new TrainingResultVO(Collections.emptyList(), Double.NaN));
         }
 
-        return ResponseEntity.ok(modelTraining.train(windowSize, barPrices, safeModelProvider.get(), epochs));
+        return ResponseEntity.ok(modelTraining.train(windowSize, bars, safeModelProvider.get(), epochs));
     }
 
     /**
@@ -168,13 +169,9 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
                                                               double momentum, double dropoutRate,
                                                               int timeSteps, int epochs, int outPutSize,
                                                               int windowSize) {
-        HttpClientProvider okHttpClientProvider = PricesHttpClientUtil.getOkHttpClientProvider();
-        PolygonRestClient polygonRestClient = new PolygonRestClient(
-                polygonApiKey,
-                okHttpClientProvider
-        );
+        PolygonAggregatesClient polygonClient = polygonClientRegistry.getAggregatesClient(polygonApiKey);
 
-        List<List<Double>> barPrices = PricesHttpClientUtil.getBarPrices(
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
                 cryptoAggregatesDTO.getTickerName(),
                 cryptoAggregatesDTO.getMultiplier(),
                 cryptoAggregatesDTO.getTimespan(),
@@ -183,7 +180,8 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
                 cryptoAggregatesDTO.getUnadjusted(),
                 cryptoAggregatesDTO.getLimit(),
                 cryptoAggregatesDTO.getSort(),
-                polygonRestClient
+                polygonClient,
+                barStore
         );
 
         Optional<Supplier<MultiLayerNetwork>> safeModelProvider = switch (modelKind) {
@@ -197,6 +195,6 @@ public class ModelTrainingServiceImpl implements IModelTrainingService {
             return ResponseEntity.badRequest().body(new TrainingResultVO(Collections.emptyList(), Double.NaN));
         }
 
-        return ResponseEntity.ok(modelTraining.train(windowSize, barPrices, safeModelProvider.get(), epochs));
+        return ResponseEntity.ok(modelTraining.train(windowSize, bars, safeModelProvider.get(), epochs));
     }
 }
\ No newline at end of file
@@ -1,31 +1,44 @@
 package org.imperial.fastquantanalysis.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import io.polygon.kotlin.sdk.HttpClientProvider;
-import io.polygon.kotlin.sdk.rest.PolygonRestClient;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.imperial.fastquantanalysis.annotation.AsyncTimed;
+import org.imperial.fastquantanalysis.client.IoExecutor;
+import org.imperial.fastquantanalysis.client.PolygonAggregatesClient;
+import org.imperial.fastquantanalysis.client.PolygonClientRegistry;
 import org.imperial.fastquantanalysis.constant.KafkaConstant;
 import org.imperial.fastquantanalysis.constant.Sort;
+import org.imperial.fastquantanalysis.constant.SweepMetric;
 import org.imperial.fastquantanalysis.constant.Timespan;
 import org.imperial.fastquantanalysis.dto.CryptoAggregatesDTO;
 import org.imperial.fastquantanalysis.dto.CryptoAggregatesPairDTO;
+import org.imperial.fastquantanalysis.dto.StrategySweepDTO;
+import org.imperial.fastquantanalysis.dto.WalkForwardDTO;
 import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
 import org.imperial.fastquantanalysis.mapper.QuantAnalysisCryptoMapper;
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.imperial.fastquantanalysis.market.BarStore;
 import org.imperial.fastquantanalysis.service.IQuantAnalysisCryptoService;
 import org.imperial.fastquantanalysis.strategy.Strategies;
+import org.imperial.fastquantanalysis.strategy.sweep.ParameterSweeper;
+import org.imperial.fastquantanalysis.strategy.sweep.SweepInput;
+import org.imperial.fastquantanalysis.strategy.sweep.SweepableStrategy;
+import org.imperial.fastquantanalysis.strategy.sweep.WalkForwardEngine;
 import org.imperial.fastquantanalysis.util.PricesHttpClientUtil;
+import org.imperial.fastquantanalysis.vo.SweepResultVO;
+import org.imperial.fastquantanalysis.vo.WalkForwardResultVO;
 import org.springframework.http.ResponseEntity;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.IntStream;
 
 /**
  * Quant analysis service implementation class
@@ -43,14 +56,26 @@ public class QuantAnalysisCryptoServiceImpl extends ServiceImpl<QuantAnalysisCry
     @Resource
     private KafkaTemplate<String, QuantStrategy> kafkaTemplate;
 
-    private static final ExecutorService executorService = Executors.newFixedThreadPool(10);
+    @Resource
+    private PolygonClientRegistry polygonClientRegistry;
+
+    @Resource
+    private BarStore barStore;
+
+    @Resource
+    private ParameterSweeper parameterSweeper;
+
+    @Resource
+    private WalkForwardEngine walkForwardEngine;
+
+    @Resource
+    private IoExecutor ioExecutor;
+
+    private static final int DEFAULT_SWEEP_TOP = 50;
+
+    // Rows per INSERT statement, keeps statements well below max_allowed_packet
+    private static final int UPSERT_CHUNK_SIZE = 1000;
 
-    static {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            log.info("Shutting down executor service...");
-            executorService.shutdown();
-        }));
-    }
 
     /**
      * Donchian channel strategy for crypto
@@ -70,20 +95,17 @@ public class QuantAnalysisCryptoServiceImpl extends ServiceImpl<QuantAnalysisCry
         Boolean unadjusted = cryptoAggregatesDTO.getUnadjusted();
         Long limit = cryptoAggregatesDTO.getLimit();
 
-        HttpClientProvider okHttpClientProvider = PricesHttpClientUtil.getOkHttpClientProvider();
-        PolygonRestClient polygonRestClient = new PolygonRestClient(
-                polygonApiKey,
-                okHttpClientProvider
-        );
+        PolygonAggregatesClient polygonClient = polygonClientRegistry.getAggregatesClient(polygonApiKey);
 
-        List<Double> closePrices = PricesHttpClientUtil.getClosePrices(
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
                 tickerName, multiplier,
                 timespan, fromDate, toDate,
                 unadjusted, limit, sort,
-                polygonRestClient
+                polygonClient,
+                barStore
         );
 
-        QuantStrategy quantStrategy = strategies.donchianChannel(closePrices, windowSize);
+        QuantStrategy quantStrategy = strategies.donchianChannel(bars.getClose(), windowSize);
         quantStrategy.setStartDate(fromDate.atStartOfDay());
         quantStrategy.setEndDate(toDate.atStartOfDay());
 
@@ -105,10 +127,10 @@ public class QuantAnalysisCryptoServiceImpl extends ServiceImpl<QuantAnalysisCry
     @Override
     public CompletableFuture<ResponseEntity<QuantStrategy>> pairTrading(String polygonApiKey, CryptoAggregatesPairDTO cryptoAggregatesPairDTO,
                                                             Integer windowSize, Double zScoreThreshold, Integer x) {
-        PolygonRestClient polygonRestClient = new PolygonRestClient(polygonApiKey, PricesHttpClientUtil.getOkHttpClientProvider());
+        PolygonAggregatesClient polygonClient = polygonClientRegistry.getAggregatesClient(polygonApiKey);
 
-        CompletableFuture<List<List<Double>>> future1 = CompletableFuture.supplyAsync(() ->
-                PricesHttpClientUtil.getBarPrices(
+        CompletableFuture<BarSeries> future1 = CompletableFuture.supplyAsync(() ->
+                PricesHttpClientUtil.getBarSeries(
                         cryptoAggregatesPairDTO.getTickerName1(),
                         cryptoAggregatesPairDTO.getMultiplier(),
                         cryptoAggregatesPairDTO.getTimespan(),
@@ -117,12 +139,13 @@ public class QuantAnalysisCryptoServiceImpl extends ServiceImpl<QuantAnalysisCry
                         cryptoAggregatesPairDTO.getUnadjusted(),
                         cryptoAggregatesPairDTO.getLimit(),
                         cryptoAggregatesPairDTO.getSort(),
-                        polygonRestClient),
-                executorService
+                        polygonClient,
+                        barStore),
+                ioExecutor
         );
 
-        CompletableFuture<List<List<Double>>> future2 = CompletableFuture.supplyAsync(() ->
-                PricesHttpClientUtil.getBarPrices(
+        CompletableFuture<BarSeries> future2 = CompletableFuture.supplyAsync(() ->
+                PricesHttpClientUtil.getBarSeries(
                         cryptoAggregatesPairDTO.getTickerName2(),
                         cryptoAggregatesPairDTO.getMultiplier(),
                         cryptoAggregatesPairDTO.getTimespan(),
@@ -131,27 +154,21 @@ public class QuantAnalysisCryptoServiceImpl extends ServiceImpl<QuantAnalysisCry
                         cryptoAggregatesPairDTO.getUnadjusted(),
                         cryptoAggregatesPairDTO.getLimit(),
                         cryptoAggregatesPairDTO.getSort(),
-                        polygonRestClient),
-                executorService
+                        polygonClient,
+                        barStore),
+                ioExecutor
         );
 
-        return future1.thenCombineAsync(future2, (barPrices1, barPrices2) -> {
-            List<Double> avgBarPrice1 = IntStream.range(0, barPrices1.get(0).size())
-                    .mapToDouble(i -> barPrices1.stream().mapToDouble(list -> list.get(i)).average().orElse(0))
-                    .boxed().toList();
-
-            List<Double> avgBarPrice2 = IntStream.range(0, barPrices2.get(0).size())
-                    .mapToDouble(i -> barPrices2.stream().mapToDouble(list -> list.get(i)).average().orElse(0))
-                    .boxed().toList();
-
-            QuantStrategy quantStrategy = strategies.pairTrading(avgBarPrice1, avgBarPrice2, windowSize, zScoreThreshold, x);
+        return future1.thenCombineAsync(future2, (bars1, bars2) -> {
+            QuantStrategy quantStrategy = strategies.pairTrading(bars1.ohlcAverage(), bars2.ohlcAverage(),
+                    windowSize, zScoreThreshold, x);
             quantStrategy.setStartDate(cryptoAggregatesPairDTO.getFromDate().atStartOfDay());
             quantStrategy.setEndDate(cryptoAggregatesPairDTO.getToDate().atStartOfDay());
 
             kafkaTemplate.send(KafkaConstant.TOPIC_NAME, quantStrategy);
 
             return ResponseEntity.ok(quantStrategy);
-        }, executorService);
+        }, ioExecutor);
     }
 
     /**
@@ -174,27 +191,18 @@ public class QuantAnalysisCryptoServiceImpl extends ServiceImpl<QuantAnalysisCry
         Boolean unadjusted = cryptoAggregatesDTO.getUnadjusted();
         Long limit = cryptoAggregatesDTO.getLimit();
 
-        HttpClientProvider okHttpClientProvider = PricesHttpClientUtil.getOkHttpClientProvider();
-        PolygonRestClient polygonRestClient = new PolygonRestClient(
-                polygonApiKey,
-                okHttpClientProvider
-        );
+        PolygonAggregatesClient polygonClient = polygonClientRegistry.getAggregatesClient(polygonApiKey);
 
-        List<List<Double>> barPrices = PricesHttpClientUtil.getBarPrices(
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
                 tickerName, multiplier,
                 timespan, fromDate, toDate,
                 unadjusted, limit, sort,
-                polygonRestClient
+                polygonClient,
+                barStore
         );
-        List<Double> closePrices = barPrices.get(3);
-        List<Double> avgBarPrice = IntStream.range(0, barPrices.get(0).size())
-                .mapToDouble(i -> barPrices.stream()
-                        .mapToDouble(list ->
-                                list.get(i)).average().orElse(0))
-                .boxed()
-                .toList();
-
-        QuantStrategy quantStrategy = strategies.emaWithStopLossPercentage(closePrices, avgBarPrice, emaPeriod, stopLossPercentage);
+
+        QuantStrategy quantStrategy = strategies.emaWithStopLossPercentage(bars.getClose(), bars.ohlcAverage(),
+                emaPeriod, stopLossPercentage);
         quantStrategy.setStartDate(fromDate.atStartOfDay());
         quantStrategy.setEndDate(toDate.atStartOfDay());
 
@@ -216,20 +224,17 @@ public class QuantAnalysisCryptoServiceImpl extends ServiceImpl<QuantAnalysisCry
         Boolean unadjusted = cryptoAggregatesDTO.getUnadjusted();
         Long limit = cryptoAggregatesDTO.getLimit();
 
-        HttpClientProvider okHttpClientProvider = PricesHttpClientUtil.getOkHttpClientProvider();
-        PolygonRestClient polygonRestClient = new PolygonRestClient(
-                polygonApiKey,
-                okHttpClientProvider
-        );
+        PolygonAggregatesClient polygonClient = polygonClientRegistry.getAggregatesClient(polygonApiKey);
 
-        List<List<Double>> barPrices = PricesHttpClientUtil.getBarPrices(
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
                 tickerName, multiplier,
                 timespan, fromDate, toDate,
                 unadjusted, limit, sort,
-                polygonRestClient
+                polygonClient,
+                barStore
         );
 
-        QuantStrategy quantStrategy = strategies.emaWithATRStopLoss(barPrices, emaPeriod, atrPeriod, atrMultiplier);
+        QuantStrategy quantStrategy = strategies.emaWithATRStopLoss(bars, emaPeriod, atrPeriod, atrMultiplier);
         quantStrategy.setStartDate(fromDate.atStartOfDay());
         quantStrategy.setEndDate(toDate.atStartOfDay());
 
@@ -237,4 +242,113 @@ public class QuantAnalysisCryptoServiceImpl extends ServiceImpl<QuantAnalysisCry
 
         return ResponseEntity.ok(quantStrategy);
     }
+
+    /**
+     * Parameter sweep of a built-in strategy. Bars are fetched once and every parameter set
+     * is evaluated in parallel; results are ranked but not persisted
+     * @param polygonApiKey User's polygon API key
+     * @param strategySweepDTO Strategy, bars and parameter ranges of the sweep
+     * @return Results ranked from best to worst
+     */
+    @Override
+    public ResponseEntity<SweepResultVO> sweep(String polygonApiKey, StrategySweepDTO strategySweepDTO) {
+        SweepableStrategy strategy = SweepableStrategy.of(strategySweepDTO.getStrategyName());
+        CryptoAggregatesDTO aggregates = strategySweepDTO.getAggregates();
+        if (aggregates == null || strategySweepDTO.getParameters() == null) {
+            throw new StrategyRunningException("A sweep needs aggregates and parameters");
+        }
+
+        SweepInput input = fetchSweepInput(polygonApiKey, strategy, aggregates, strategySweepDTO.getPairedTickerName(), false);
+        SweepMetric rankBy = strategySweepDTO.getRankBy() == null ? SweepMetric.SHARPE_RATIO : strategySweepDTO.getRankBy();
+        int top = strategySweepDTO.getTop() == null ? DEFAULT_SWEEP_TOP : strategySweepDTO.getTop();
+
+        SweepResultVO result = parameterSweeper.sweep(strategy, input, strategySweepDTO.getParameters(), rankBy, top);
+        result.getEntries().forEach(entry -> {
+            entry.getResult().setStartDate(aggregates.getFromDate().atStartOfDay());
+            entry.getResult().setEndDate(aggregates.getToDate().atStartOfDay());
+        });
+
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Walk-forward optimization of a built-in strategy. Bars are fetched once and shared by all folds,
+     * which run concurrently; results are not persisted
+     * @param polygonApiKey User's polygon API key
+     * @param walkForwardDTO Strategy, bars, parameter ranges and window sizes of the run
+     * @return Best parameters and out-of-sample results of every fold
+     */
+    @Override
+    public ResponseEntity<WalkForwardResultVO> walkForward(String polygonApiKey, WalkForwardDTO walkForwardDTO) {
+        SweepableStrategy strategy = SweepableStrategy.of(walkForwardDTO.getStrategyName());
+        CryptoAggregatesDTO aggregates = walkForwardDTO.getAggregates();
+        if (aggregates == null || walkForwardDTO.getParameters() == null
+                || walkForwardDTO.getInSampleBars() == null || walkForwardDTO.getOutOfSampleBars() == null) {
+            throw new StrategyRunningException("A walk-forward run needs aggregates, parameters and window sizes");
+        }
+
+        // Folds walk forward in time whatever order the bars were requested in
+        SweepInput input = fetchSweepInput(polygonApiKey, strategy, aggregates, walkForwardDTO.getPairedTickerName(), true);
+        SweepMetric rankBy = walkForwardDTO.getRankBy() == null ? SweepMetric.SHARPE_RATIO : walkForwardDTO.getRankBy();
+        int stepBars = walkForwardDTO.getStepBars() == null ? walkForwardDTO.getOutOfSampleBars() : walkForwardDTO.getStepBars();
+
+        return ResponseEntity.ok(walkForwardEngine.run(strategy, input, walkForwardDTO.getParameters(),
+                walkForwardDTO.getInSampleBars(), walkForwardDTO.getOutOfSampleBars(), stepBars, rankBy));
+    }
+
+    /**
+     * Insert or overwrite strategies by strategy_id with multi-row statements.
+     * Within the same list the last strategy of an ID wins
+     * @param quantStrategies strategies to persist
+     * @return affected rows
+     */
+    @Override
+    public int upsertBatch(List<QuantStrategy> quantStrategies) {
+        if (quantStrategies.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, QuantStrategy> distinct = new LinkedHashMap<>();
+        for (QuantStrategy quantStrategy : quantStrategies) {
+            distinct.put(quantStrategy.getStrategyId(), quantStrategy);
+        }
+        List<QuantStrategy> rows = new ArrayList<>(distinct.values());
+
+        int affected = 0;
+        for (int from = 0; from < rows.size(); from += UPSERT_CHUNK_SIZE) {
+            affected += baseMapper.upsertBatch(rows.subList(from, Math.min(rows.size(), from + UPSERT_CHUNK_SIZE)));
+        }
+        return affected;
+    }
+
+    private SweepInput fetchSweepInput(String polygonApiKey, SweepableStrategy strategy, CryptoAggregatesDTO aggregates,
+                                       String pairedTickerName, boolean chronological) {
+        if (strategy.isPaired() && pairedTickerName == null) {
+            throw new StrategyRunningException(strategy.getStrategyName() + " needs a paired ticker name");
+        }
+
+        PolygonAggregatesClient polygonClient = polygonClientRegistry.getAggregatesClient(polygonApiKey);
+        boolean reverse = chronological && aggregates.getSort() == Sort.DESC;
+
+        CompletableFuture<BarSeries> barsFuture = CompletableFuture.supplyAsync(() ->
+                fetchBars(aggregates, aggregates.getTickerName(), polygonClient, reverse), ioExecutor);
+        CompletableFuture<BarSeries> pairedBarsFuture = strategy.isPaired()
+                ? CompletableFuture.supplyAsync(() ->
+                        fetchBars(aggregates, pairedTickerName, polygonClient, reverse), ioExecutor)
+                : CompletableFuture.completedFuture(null);
+
+        return SweepInput.of(barsFuture.join(), pairedBarsFuture.join());
+    }
+
+    private BarSeries fetchBars(CryptoAggregatesDTO aggregates, String tickerName,
+                                PolygonAggregatesClient polygonClient, boolean reverse) {
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
+                tickerName, aggregates.getMultiplier(),
+                aggregates.getTimespan(), aggregates.getFromDate(), aggregates.getToDate(),
+                aggregates.getUnadjusted(), aggregates.getLimit(), aggregates.getSort(),
+                polygonClient,
+                barStore
+        );
+        return reverse ? bars.reversed() : bars;
+    }
 }
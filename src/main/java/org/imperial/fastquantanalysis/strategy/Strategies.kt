@@ -3,13 +3,19 @@ package org.imperial.fastquantanalysis.strategy
 import jakarta.annotation.Resource
 import org.imperial.fastquantanalysis.constant.StrategyName
 import org.imperial.fastquantanalysis.entity.QuantStrategy
+import org.imperial.fastquantanalysis.market.BarSeries
+import org.imperial.fastquantanalysis.strategy.bar.BarStrategy
+import org.imperial.fastquantanalysis.strategy.indicator.Indicators
+import org.imperial.fastquantanalysis.strategy.indicator.RollingMoments
+import org.imperial.fastquantanalysis.strategy.indicator.RollingStatistics
+import org.imperial.fastquantanalysis.strategy.indicator.SlidingWindow
+import org.imperial.fastquantanalysis.strategy.metrics.PerformanceAccumulator
 import org.imperial.fastquantanalysis.util.RedisIdUtil
 import org.springframework.stereotype.Component
 import java.time.LocalDateTime
-import kotlin.math.abs
+import java.util.concurrent.CancellationException
 import kotlin.math.max
-import kotlin.math.pow
-import kotlin.math.sqrt
+import kotlin.math.min
 
 /**
  * All crypto strategies
@@ -24,11 +30,27 @@ class Strategies (
 ) {
     /**
      * Donchian channel strategy
-     * @param prices prices (usually close prices) list
+     * @param prices prices (usually close prices)
      * @param lookback window size
      * @return QuantStrategy object
      */
-    fun donchianChannel(prices: MutableList<Double>, lookback: Int = 20): QuantStrategy {
+    fun donchianChannel(prices: DoubleArray, lookback: Int = 20): QuantStrategy =
+        donchianChannel(prices, SlidingWindow.max(prices, lookback), SlidingWindow.min(prices, lookback),
+            lookback, 0, prices.size)
+
+    /**
+     * Donchian channel strategy on the bars [from, to), with bands computed beforehand
+     * so that several runs over the same prices can share them
+     * @param prices prices (usually close prices)
+     * @param upperBands highest price of the lookback window ending at every bar
+     * @param lowerBands lowest price of the lookback window ending at every bar
+     * @param lookback window size
+     * @param from first bar traded
+     * @param to end of the bars traded (exclusive)
+     * @return QuantStrategy object
+     */
+    fun donchianChannel(prices: DoubleArray, upperBands: DoubleArray, lowerBands: DoubleArray,
+                        lookback: Int, from: Int, to: Int): QuantStrategy {
         val strategyId: String = redisIdUtil.nextId(StrategyName.DONCHIAN_CHANNEL)
         val strategyName: String = StrategyName.DONCHIAN_CHANNEL
         val startDate: LocalDateTime = LocalDateTime.now()
@@ -36,22 +58,17 @@ class Strategies (
 
         var position: Int = 0 // 0: short; 1: long
         var entryPrice: Double = 0.0
-        var cumulativeReturn: Double = 1.0
-        var peak: Double = cumulativeReturn // Peak of cumulative return, to calculate max drawdown
-        var maxDrawdown: Double = 0.0
+        var capital: Double = 1.0 // Capital realized by closed trades
         var tradeCount: Int = 0
+        val performance = PerformanceAccumulator()
 
-        val returns = mutableListOf<Double>()
-
-        for (i in lookback until prices.size) {
-            val window: MutableList<Double> = prices.subList(i - lookback, i)
-            val upperBand: Double = window.maxOrNull() ?: prices[i]
-            val lowerBand: Double = window.minOrNull() ?: prices[i]
+        // Bands of bar i come from the previous lookback bars, i.e. the window ending at i - 1
+        val startIndex: Int = max(from, lookback)
+        for (i in startIndex until to) {
+            val upperBand: Double = upperBands[i - 1]
+            val lowerBand: Double = lowerBands[i - 1]
             val currentPrice: Double = prices[i]
-            val previousPrice: Double = prices[i - 1]
-
-            val dailyReturn: Double = (currentPrice / previousPrice) - 1
-            returns.add(dailyReturn)
+            val wasLong: Boolean = position == 1
 
             // Signal
             if (position == 0 && currentPrice > upperBand) {
@@ -62,108 +79,68 @@ class Strategies (
             } else if (position == 1 && currentPrice < lowerBand) {
                 // Close long
                 val tradeReturn: Double = currentPrice / entryPrice
-                cumulativeReturn *= tradeReturn
+                capital *= tradeReturn
+                performance.onTradeClosed(tradeReturn - 1)
                 position = 0
             }
 
-            // Update cumulative return peak and calculate max drawdown
-            if (cumulativeReturn > peak) {
-                peak = cumulativeReturn
-            }
-            val drawdown: Double = (peak - cumulativeReturn) / peak
-            if (drawdown > maxDrawdown) {
-                maxDrawdown = drawdown
-            }
+            // Equity is marked to market while the position is held
+            val equity: Double = if (position == 1) capital * currentPrice / entryPrice else capital
+            performance.onBar(equity, wasLong)
         }
 
         // If the position is still held at the end of the data, the position is closed
+        // (the last bar is already marked at this price)
         if (position == 1) {
-            val tradeReturn: Double = prices.last() / entryPrice
-            cumulativeReturn *= tradeReturn
-            position = 0
+            performance.onTradeClosed(prices[to - 1] / entryPrice - 1)
         }
 
-        // Calculate volatility
-        val meanReturn: Double = if (returns.isNotEmpty()) returns.average() else 0.0
-        val variance: Double = returns.fold(0.0) {acc, r -> acc + (r - meanReturn) * (r - meanReturn)} / returns.size
-        val volatility: Double = sqrt(variance)
-
-        // Sharpe ratio
-        // Risk free rate = 0
-        val sharpeRatio: Double = if (volatility != 0.0) meanReturn / volatility else 0.0
-
-        // Annualized return
-        val tradingDays: Double = (prices.size - lookback).toDouble()
-        val annualizedReturn: Double = cumulativeReturn.pow(365.0 / tradingDays) - 1
-
-        return QuantStrategy(
-            strategyId,
-            strategyName,
-            startDate,
-            endDate,
-            annualizedReturn,
-            cumulativeReturn,
-            maxDrawdown,
-            volatility,
-            sharpeRatio,
-            tradeCount
-        )
+        return performance.toQuantStrategy(strategyId, strategyName, startDate, endDate, tradeCount)
     }
 
     /**
      * Pair trading strategy
-     * @param barPrices1 price list for crypto 1
-     * @param barPrices2 price list for crypto 2
+     * @param barPrices1 prices for crypto 1
+     * @param barPrices2 prices for crypto 2
      * @param window window size
      * @param zScoreThreshold z-score threshold
      * @param x previous x days
      * @return QuantStrategy object
      */
-    fun pairTrading(barPrices1: MutableList<Double>, barPrices2: MutableList<Double>,
+    fun pairTrading(barPrices1: DoubleArray, barPrices2: DoubleArray,
                     window: Int, zScoreThreshold: Double, x: Int): QuantStrategy {
         val strategyId: String = redisIdUtil.nextId(StrategyName.PAIR_TRADING)
         val strategyName: String = StrategyName.PAIR_TRADING
         val startDate: LocalDateTime = LocalDateTime.now()
         val endDate: LocalDateTime = LocalDateTime.now()
 
-        val n: Int = barPrices1.size
+        // Only bars present in both series can be paired
+        val n: Int = min(barPrices1.size, barPrices2.size)
         // x cannot be larger than the number of total days
         if (x > n) {
-            return QuantStrategy(
-                strategyId,
-                strategyName,
-                startDate,
-                endDate,
-                0.0,
-                0.0,
-                0.0,
-                0.0,
-                0.0,
-                0
-            )
+            return PerformanceAccumulator().toQuantStrategy(strategyId, strategyName, startDate, endDate, 0)
         }
 
-        val beta: Double = calculateBeta(barPrices1, barPrices2)
-        val spread: MutableList<Double> = MutableList(n) { Double.NaN }
-
+        // Hedge ratio over the whole sample: beta = Cov(crypto2, crypto1) / Var(crypto2)
+        val sampleMoments = RollingMoments()
         for (i in 0 until n) {
-            spread[i] = barPrices1[i] - beta * barPrices2[i]
+            sampleMoments.add(barPrices2[i], barPrices1[i])
         }
+        val beta: Double = sampleMoments.beta()
+        val spread: DoubleArray = DoubleArray(n) { i -> barPrices1[i] - beta * barPrices2[i] }
 
-        val rollMean: MutableList<Double> = rollingMean(spread, window)
-        val rollStd: MutableList<Double> = rollingStd(spread, rollMean, window)
+        val rollMean: DoubleArray = RollingStatistics.mean(spread, window)
+        val rollStd: DoubleArray = RollingStatistics.std(spread, window)
 
-        val signal: MutableList<Int> = MutableList(n) { 0 }
-        val zScore: MutableList<Double> = MutableList(n) { Double.NaN }
+        val signal: IntArray = IntArray(n)
         for (i in 0 until n) {
             if (i < window - 1 || rollStd[i].isNaN() || rollStd[i] == 0.0) {
-                zScore[i] = Double.NaN
                 signal[i] = 0
             } else {
-                zScore[i] = (spread[i] - rollMean[i]) / rollStd[i]
+                val zScore: Double = (spread[i] - rollMean[i]) / rollStd[i]
                 signal[i] = when {
-                    zScore[i] > zScoreThreshold -> -1
-                    zScore[i] < -zScoreThreshold -> 1
+                    zScore > zScoreThreshold -> -1
+                    zScore < -zScoreThreshold -> 1
                     else -> 0
                 }
             }
@@ -171,107 +148,92 @@ class Strategies (
 
         // Strategy return = position * (spread[t] - spread[t - x]
         // Previous x day's signal is used for current day's position
-        val strategyReturns: MutableList<Double> = MutableList(n) { 0.0 }
+        val strategyReturns: DoubleArray = DoubleArray(n)
         for (i in x until n) {
             strategyReturns[i] = spread[i - x] * spread[i] - spread[i - x]
         }
 
-        // Equity curve, starting money: 1.0 (this is to get the percentage)
-        val equityCurve = MutableList(n) { 1.0 }
-        for (i in 1 until n) {
-            equityCurve[i] = equityCurve[i - 1] * (1 + strategyReturns[i])
-        }
-
-        // Cumulative return = final equity - 1
-        val cumulativeReturn = if (equityCurve.last().isInfinite()) 0.0 else equityCurve.last() - 1
-
-        // Max drawdown
-        var peak = equityCurve[0]
-        var maxDrawdown = 0.0
-        for (e in equityCurve) {
-            if (e > peak) {
-                peak = e
-            }
-            val drawdown = (peak - e) / peak
-            if (drawdown > maxDrawdown) {
-                maxDrawdown = drawdown
-            }
-        }
-
-        // Volatility
-        // Number of trading days: 365
-        val dailyReturns = strategyReturns.drop(1) // Remove the first meaningless 0 gain
-        val avgDailyReturn = dailyReturns.average()
-        val dailyVol = sqrt(dailyReturns.map { (it - avgDailyReturn).pow(2) }.average())
-        val annualizedVolatility = dailyVol * sqrt(365.0)
-        val annualizedReturn = if (equityCurve.last().isInfinite()) 0.0 else equityCurve.last().pow(365.0 / (n - 1)) - 1
-
-        // Sharpe ratio
-        // Risk free rate = 0
-        val sharpeRatio = if (annualizedVolatility != 0.0) annualizedReturn / annualizedVolatility else 0.0
-
-        // Trading count
+        // Equity starts with 1.0 (this is to get the percentage), the first bar has no return
+        val performance = PerformanceAccumulator()
+        var equity: Double = 1.0
+        var entryEquity: Double = equity
         var tradeCount = 0
         for (i in 1 until n) {
             if (signal[i] != signal[i - 1] && signal[i] != 0) {
                 tradeCount++
             }
-        }
 
-        return QuantStrategy(
-            strategyId,
-            strategyName,
-            startDate,
-            endDate,
-            annualizedReturn,
-            cumulativeReturn,
-            maxDrawdown,
-            annualizedVolatility,
-            sharpeRatio,
-            tradeCount
-        )
+            // Position of bar i comes from the signal x bars earlier
+            val previousPosition: Int = if (i - 1 >= x) signal[i - 1 - x] else 0
+            val position: Int = if (i >= x) signal[i - x] else 0
+            if (position != previousPosition) {
+                if (previousPosition != 0) {
+                    performance.onTradeClosed(equity / entryEquity - 1)
+                }
+                entryEquity = equity
+            }
+            equity *= 1 + strategyReturns[i]
+            performance.onBar(equity, position != 0)
+        }
+        if (n > x && signal[n - 1 - x] != 0) {
+            performance.onTradeClosed(equity / entryEquity - 1)
+        }
 
+        return performance.toQuantStrategy(strategyId, strategyName, startDate, endDate, tradeCount)
     }
 
     /**
      * EMA with fixed percentage stop loss
-     * @param closePrices close price list
-     * @param avgBarPrices average bar price list
+     * @param closePrices close prices
+     * @param avgBarPrices average bar prices
      * @param emaPeriod EMA window size
      * @param stopLossPercent percentage of stop loss
      * @return QuantStrategy object
      */
-    fun emaWithStopLossPercentage(closePrices: List<Double>, avgBarPrices: List<Double>,
-                                  emaPeriod: Int, stopLossPercent: Double): QuantStrategy {
+    fun emaWithStopLossPercentage(closePrices: DoubleArray, avgBarPrices: DoubleArray,
+                                  emaPeriod: Int, stopLossPercent: Double): QuantStrategy =
+        emaWithStopLossPercentage(avgBarPrices, Indicators.ema(closePrices, emaPeriod), // Calculate EMA using close prices
+            emaPeriod, stopLossPercent, 0, avgBarPrices.size)
+
+    /**
+     * EMA with fixed percentage stop loss on the bars [from, to), with the EMA computed beforehand
+     * @param avgBarPrices average bar prices
+     * @param ema EMA of close prices, aligned with the bars
+     * @param emaPeriod EMA window size
+     * @param stopLossPercent percentage of stop loss
+     * @param from first bar traded
+     * @param to end of the bars traded (exclusive)
+     * @return QuantStrategy object
+     */
+    fun emaWithStopLossPercentage(avgBarPrices: DoubleArray, ema: DoubleArray, emaPeriod: Int,
+                                  stopLossPercent: Double, from: Int, to: Int): QuantStrategy {
         val strategyId: String = redisIdUtil.nextId(StrategyName.EMA_WITH_STOP_LOSS_PERCENTAGE)
         val strategyName: String = StrategyName.EMA_WITH_STOP_LOSS_PERCENTAGE
         val startDate: LocalDateTime = LocalDateTime.now()
         val endDate: LocalDateTime = LocalDateTime.now()
 
         val initialCapital: Double = 1.0
-        val tradingDaysPerYear: Int = 365
+        val performance = PerformanceAccumulator(initialCapital)
 
-        val ema = calculateEMA(closePrices, emaPeriod) // Calculate EMA using close prices
         var tradeCount: Int = 0
-        val equityCurve: MutableList<Double> = mutableListOf(initialCapital)
         var isHolding: Boolean = false
         var entryPrice: Double = 0.0
         var stopLossPrice: Double = 0.0
         var currentCapital: Double = initialCapital
+        var entryCapital: Double = initialCapital
         var sharesHeld: Double = 0.0
 
-        for (i in emaPeriod until avgBarPrices.size) {
+        // Signals of bar i use the EMA up to the previous bar
+        for (i in max(from, emaPeriod) until to) {
             val price = avgBarPrices[i]
-            val currentEMA = ema[i - emaPeriod]
+            val currentEMA = ema[i - 1]
             val prevPrice = avgBarPrices[i - 1]
-            val prevEMA = if (i > emaPeriod) ema[i - emaPeriod - 1] else 0.0
+            val prevEMA = if (i > emaPeriod) ema[i - 2] else 0.0
 
             if (isHolding) {
                 currentCapital = sharesHeld * price
-                equityCurve.add(currentCapital)
-            } else {
-                equityCurve.add(currentCapital)
             }
+            performance.onBar(currentCapital, isHolding)
 
             if (!isHolding) {
                 // Buying condition: price crossing above EMA
@@ -280,6 +242,7 @@ class Strategies (
                     entryPrice = price
                     stopLossPrice = entryPrice * (1 - stopLossPercent / 100)
                     sharesHeld = currentCapital / price
+                    entryCapital = currentCapital
                     tradeCount++
                 }
             } else {
@@ -287,132 +250,87 @@ class Strategies (
                 if (price <= stopLossPrice) {
                     isHolding = false
                     currentCapital = sharesHeld * price
+                    performance.onTradeClosed(currentCapital / entryCapital - 1)
                     tradeCount++
                 } else if (prevPrice > prevEMA && price < currentEMA) {
                     // Selling condition: price crossing under EMA
                     isHolding = false
                     currentCapital = sharesHeld * price
+                    performance.onTradeClosed(currentCapital / entryCapital - 1)
                     tradeCount++
                 }
             }
         }
 
-        // Size of equity curve cannot be less than 2
-        if (equityCurve.size < 2) {
-            return QuantStrategy(
-                strategyId,
-                strategyName,
-                startDate,
-                endDate,
-                0.0,
-                0.0,
-                0.0,
-                0.0,
-                0.0,
-                0
-            )
+        // A position still held at the end of the data counts as closed at the last price
+        if (isHolding) {
+            performance.onTradeClosed(currentCapital / entryCapital - 1)
         }
 
-        val cumulativeReturn = (equityCurve.last() / initialCapital) - 1.0
-        val totalDays = equityCurve.size - 1
-        val annualizedReturn = if (totalDays > 0) {
-            (1 + cumulativeReturn).pow(tradingDaysPerYear.toDouble() / totalDays) - 1
-        } else 0.0
-
-        var peak = equityCurve[0]
-        var maxDrawdown = 0.0
-        for (value in equityCurve) {
-            if (value > peak) peak = value
-            val drawdown = (peak - value) / peak
-            if (drawdown > maxDrawdown) maxDrawdown = drawdown
-        }
-
-        val returns = equityCurve.zipWithNext().map { (prev, curr) -> (curr - prev) / prev }
-
-        val meanReturn = returns.average()
-        val variance = returns.map { (it - meanReturn).pow(2) }.average()
-        val annualizedVolatility = sqrt(variance * tradingDaysPerYear)
-
-        // Risk free rate = 0
-        val sharpeRatio = if (annualizedVolatility != 0.0) {
-            annualizedReturn / annualizedVolatility
-        } else 0.0
-
-        return QuantStrategy(
-            strategyId,
-            strategyName,
-            startDate,
-            endDate,
-            annualizedReturn,
-            cumulativeReturn,
-            maxDrawdown,
-            annualizedVolatility,
-            sharpeRatio,
-            tradeCount
-        )
+        return performance.toQuantStrategy(strategyId, strategyName, startDate, endDate, tradeCount)
     }
 
     /**
      * EMA with dynamic stop loss strategy using ATR for crypto prices
-     * @param barPrices bar price list
+     * @param bars bars
      * @param emaPeriod EMA window size
      * @param atrPeriod ATR window size
      * @param atrMultiplier ATR multiplier
      * @return QuantStrategy object
      */
-    fun emaWithATRStopLoss(barPrices: List<List<Double>>,
+    fun emaWithATRStopLoss(bars: BarSeries,
                            emaPeriod: Int, atrPeriod: Int,
-                           atrMultiplier: Double): QuantStrategy {
+                           atrMultiplier: Double): QuantStrategy =
+        emaWithATRStopLoss(bars.close, Indicators.ema(bars.close, emaPeriod), Indicators.atr(bars, atrPeriod),
+            emaPeriod, atrPeriod, atrMultiplier, 0, bars.size())
+
+    /**
+     * EMA with dynamic stop loss strategy using ATR on the bars [from, to), with the indicators computed beforehand
+     * @param closePrices close prices
+     * @param ema EMA of close prices, aligned with the bars
+     * @param atr ATR, aligned with the bars
+     * @param emaPeriod EMA window size
+     * @param atrPeriod ATR window size
+     * @param atrMultiplier ATR multiplier
+     * @param from first bar traded
+     * @param to end of the bars traded (exclusive)
+     * @return QuantStrategy object
+     */
+    fun emaWithATRStopLoss(closePrices: DoubleArray, ema: DoubleArray, atr: DoubleArray,
+                           emaPeriod: Int, atrPeriod: Int, atrMultiplier: Double,
+                           from: Int, to: Int): QuantStrategy {
         val strategyId: String = redisIdUtil.nextId(StrategyName.EMA_WITH_ATR_STOP_LOSS)
         val strategyName: String = StrategyName.EMA_WITH_ATR_STOP_LOSS
         val startDate: LocalDateTime = LocalDateTime.now()
         val endDate: LocalDateTime = LocalDateTime.now()
 
-        val ema = calculateEMA(barPrices[3], emaPeriod)
-        val atr = calculateATR(barPrices, atrPeriod)
         var tradeCount: Int = 0
         val initialCapital: Double = 1.0
-        val tradingDaysPerYear: Int = 365
-        val equityCurve: MutableList<Double> = mutableListOf(initialCapital)
+        val performance = PerformanceAccumulator(initialCapital)
         var isHolding: Boolean = false
         var entryPrice: Double = 0.0
         var stopLossPrice: Double = 0.0
         var currentCapital: Double = initialCapital
+        var entryCapital: Double = initialCapital
         var sharesHeld: Double = 0.0
 
-        val startIndex = max(emaPeriod, atrPeriod + 1) // ATR need n + 1 days
-        if (barPrices[0].size < startIndex + 1) return QuantStrategy(
-            strategyId,
-            strategyName,
-            startDate,
-            endDate,
-            0.0,
-            0.0,
-            0.0,
-            0.0,
-            0.0,
-            0
-        )
-
-        for (i in startIndex until barPrices[3].size) {
-            val currentClosePrice = barPrices[3][i]
-
-            // EMA index alignment
-            val emaIndex = i - emaPeriod
-            val currentEMA = ema[emaIndex]
-            val prevEMA = ema[emaIndex - 1]
-            val prevClose = barPrices[3][i - 1]
-
-            // ATR index alignment
-            val atrIndex = i - (atrPeriod + 1)
-            val currentATR = atr[atrIndex]
+        // ATR needs n + 1 days, and the crossover check needs the previous EMA
+        val startIndex = max(from, max(emaPeriod + 1, atrPeriod + 1))
+
+        // Signals of bar i use the indicators up to the previous bar
+        for (i in startIndex until to) {
+            val currentClosePrice = closePrices[i]
+
+            val currentEMA = ema[i - 1]
+            val prevEMA = ema[i - 2]
+            val prevClose = closePrices[i - 1]
+
+            val currentATR = atr[i - 1]
 
             if (isHolding) {
                 currentCapital = sharesHeld * currentClosePrice
-                equityCurve.add(currentCapital)
-            } else {
-                equityCurve.add(currentCapital)
             }
+            performance.onBar(currentCapital, isHolding)
 
             if (!isHolding) {
                 // Buying condition: close price cross over EMA
@@ -421,6 +339,7 @@ class Strategies (
                     entryPrice = currentClosePrice
                     stopLossPrice = entryPrice - currentATR * atrMultiplier
                     sharesHeld = currentCapital / currentATR
+                    entryCapital = currentCapital
                     tradeCount++
                 }
             } else {
@@ -428,155 +347,94 @@ class Strategies (
                 if (currentClosePrice <= stopLossPrice) {
                     isHolding = false
                     currentCapital = sharesHeld * currentClosePrice
+                    performance.onTradeClosed(currentCapital / entryCapital - 1)
                     tradeCount++
                 } else if (prevClose > prevEMA && currentClosePrice < currentEMA) {
                     isHolding = false
                     currentCapital = sharesHeld * currentClosePrice
+                    performance.onTradeClosed(currentCapital / entryCapital - 1)
                     tradeCount++
                 }
             }
         }
 
-        val cumulativeReturn = (equityCurve.last() / initialCapital) - 1.0
-        val totalDays = equityCurve.size - 1
-        val annualizedReturn = if (totalDays > 0) {
-            (1 + cumulativeReturn).pow(tradingDaysPerYear.toDouble() / totalDays) - 1
-        } else 0.0
-
-        var peak = equityCurve[0]
-        var maxDrawdown = 0.0
-        for (value in equityCurve) {
-            if (value > peak) peak = value
-            val drawdown = (peak - value) / peak
-            if (drawdown > maxDrawdown) maxDrawdown = drawdown
-        }
-
-        val returns = equityCurve.zipWithNext().map { (prev, curr) -> (curr - prev) / prev }
-
-        val meanReturn = returns.average()
-        val variance = returns.map { (it - meanReturn).pow(2) }.average()
-        val annualizedVolatility = sqrt(variance * tradingDaysPerYear)
-
-        // Risk free rate = 0
-        val sharpeRatio = if (annualizedVolatility != 0.0) {
-            annualizedReturn / annualizedVolatility
-        } else 0.0
-
-        return QuantStrategy(
-            strategyId,
-            strategyName,
-            startDate,
-            endDate,
-            annualizedReturn,
-            cumulativeReturn,
-            maxDrawdown,
-            annualizedVolatility,
-            sharpeRatio,
-            tradeCount
-        )
-    }
-
-    // Close price list should be used to calculate EMA
-    private fun calculateEMA(prices: List<Double>, period: Int): List<Double> {
-        if (prices.size < period) return emptyList()
-        val ema = mutableListOf<Double>()
-        val sma = prices.take(period).average()
-        ema.add(sma)
-        val k = 2.0 / (period + 1)
-        for (i in period until prices.size) {
-            ema.add(prices[i] * k + ema.last() * (1 - k))
-        }
-        return ema
-    }
-
-    private fun calculateATR(barPrices: List<List<Double>>, period: Int): List<Double> {
-        if (barPrices.size < period + 1) return emptyList()
-        val trueRanges = mutableListOf<Double>()
-
-        for (i in 1 until barPrices.size) {
-            val prevClose = barPrices[3][i - 1] // close price in previous day
-            val currentHigh = barPrices[1][i] // current high price
-            val currentLow = barPrices[2][i] // current low price
-            val tr = maxOf(
-                currentHigh - currentLow,
-                abs(currentHigh - prevClose),
-                abs(currentLow - prevClose)
-            )
-            trueRanges.add(tr)
-        }
-
-        // ATR
-        val atr = mutableListOf<Double>()
-        atr.add(trueRanges.take(period).average())
-        for (i in period until trueRanges.size) {
-            atr.add((atr.last() * (period - 1) + trueRanges[i]) / period)
+        // A position still held at the end of the data counts as closed at the last price
+        if (isHolding) {
+            performance.onTradeClosed(currentCapital / entryCapital - 1)
         }
 
-        return atr
+        return performance.toQuantStrategy(strategyId, strategyName, startDate, endDate, tradeCount)
     }
 
-    private fun mean(prices: MutableList<Double>): Double {
-        return prices.average();
-    }
-
-    private fun std(prices: MutableList<Double>, mean: Double): Double {
-        var sum = 0.0
-        for (price in prices) {
-            sum += (price - mean).pow(2.0)
-        }
-        return sqrt(sum / mean)
-    }
-
-    // beta = Cov(crypto2, crypto1) / Var(crypto2)
-    private fun calculateBeta(barPrices1: MutableList<Double>, barPrices2: MutableList<Double>): Double {
-        val n = barPrices1.size
-        val mean1 = mean(barPrices1)
-        val mean2 = mean(barPrices2)
-        var cov = 0.0
-        var variance = 0.0
+    /**
+     * Backtest a user strategy on close prices
+     * @param bars bars, oldest first
+     * @param strategy user strategy, see [BarStrategy]
+     * @return QuantStrategy object
+     */
+    fun barStrategy(bars: BarSeries, strategy: BarStrategy): QuantStrategy =
+        barStrategy(bars, strategy, 0, bars.size())
 
-        for (i in 0 until n) {
-            cov += (barPrices2[i] - mean2) * (barPrices1[i] - mean1)
-            variance += (barPrices2[i] - mean2).pow(2.0)
-        }
+    /**
+     * Backtest a user strategy on the bars [from, to).
+     * The position chosen at the close of a bar earns the close-to-close return of the next bar,
+     * long or short; the signal of the last bar is never asked for since nothing could be traded on it
+     * @param bars bars, oldest first
+     * @param strategy user strategy, see [BarStrategy]
+     * @param from first bar traded
+     * @param to end of the bars traded (exclusive)
+     * @return QuantStrategy object
+     */
+    fun barStrategy(bars: BarSeries, strategy: BarStrategy, from: Int, to: Int): QuantStrategy {
+        val strategyId: String = redisIdUtil.nextId(StrategyName.CUSTOMIZED_STRATEGY)
+        val strategyName: String = StrategyName.CUSTOMIZED_STRATEGY
+        val startDate: LocalDateTime = LocalDateTime.now()
+        val endDate: LocalDateTime = LocalDateTime.now()
 
-        return cov / variance
-    }
+        val closePrices: DoubleArray = bars.close
+        val performance = PerformanceAccumulator()
+        var position: Int = BarStrategy.FLAT
+        var equity: Double = 1.0
+        var entryEquity: Double = equity
+        var tradeCount: Int = 0
 
-    private fun rollingMean(barPrices: MutableList<Double>, window: Int): MutableList<Double> {
-        val n = barPrices.size
-        val rollMean = MutableList(n) { Double.NaN }
+        strategy.onStart(bars)
+        for (i in from until to) {
+            // User code runs in the sandbox, which interrupts it when it is over budget
+            if (i and INTERRUPT_CHECK_MASK == 0 && Thread.currentThread().isInterrupted) {
+                throw CancellationException("Backtest interrupted at bar $i")
+            }
+            if (i > from) {
+                equity *= 1 + position * (closePrices[i] / closePrices[i - 1] - 1)
+                performance.onBar(equity, position != BarStrategy.FLAT)
+            }
+            if (i == to - 1) {
+                break
+            }
 
-        for (i in barPrices.indices) {
-            if (i >= window - 1) {
-                var sum = 0.0
-                for (j in i - window + 1..i) {
-                    sum += barPrices[j]
+            val target: Int = Integer.signum(strategy.onBar(bars, i))
+            if (target != position) {
+                if (position != BarStrategy.FLAT) {
+                    performance.onTradeClosed(equity / entryEquity - 1)
                 }
-
-                rollMean[i] = sum / window
+                if (target != BarStrategy.FLAT) {
+                    entryEquity = equity
+                    tradeCount++
+                }
+                position = target
             }
         }
 
-        return rollMean
-    }
-
-    private fun rollingStd(barPrices: MutableList<Double>,
-                           rollMean:MutableList<Double>, window: Int): MutableList<Double> {
-        val n = barPrices.size
-        val rollStd = MutableList(n) { Double.NaN }
-
-        for (i in barPrices.indices) {
-            if (i >= window - 1) {
-                var sum = 0.0
-                for (j in i - window + 1..i) {
-                    sum += (barPrices[j] - rollMean[i]).pow(2.0)
-                }
-
-                rollStd[i] = sqrt(sum / window)
-            }
+        // A position still held at the end of the data counts as closed at the last price
+        if (position != BarStrategy.FLAT) {
+            performance.onTradeClosed(equity / entryEquity - 1)
         }
 
-        return rollStd
+        return performance.toQuantStrategy(strategyId, strategyName, startDate, endDate, tradeCount)
+    }
+
+    companion object {
+        // Interrupts are checked once every 1024 bars
+        private const val INTERRUPT_CHECK_MASK: Int = 1023
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package org.imperial.fastquantanalysis.strategy.bar;
+
+import org.imperial.fastquantanalysis.market.BarSeries;
+
+/**
+ * Strategy written by a user, driven bar by bar by the backtest engine.
+ * The strategy only decides which position to hold; the engine simulates the trades and computes
+ * the metrics the same way as for the built-in strategies.
+ * <p>
+ * User code may implement this interface, or simply declare public methods with the same signatures
+ * ({@code int onBar(BarSeries, int)} and optionally {@code void onStart(BarSeries)}),
+ * see {@link BarStrategyBinder}.
+ *
+ * @author Emil S. He
+ * @since 2025-04-25
+ */
+@FunctionalInterface
+public interface BarStrategy {
+
+    int LONG = 1;
+
+    int FLAT = 0;
+
+    int SHORT = -1;
+
+    /**
+     * Called once before the first bar, e.g. to compute indicators over the whole series
+     * @param bars bars of the backtest, oldest first
+     */
+    default void onStart(BarSeries bars) {
+    }
+
+    /**
+     * Decide the position held after the close of bar i.
+     * Only bars up to i should be looked at, the position earns the return of the next bar
+     * @param bars bars of the backtest, oldest first
+     * @param i index of the bar that just closed
+     * @return {@link #LONG}, {@link #FLAT} or {@link #SHORT}; any other value is reduced to its sign
+     */
+    int onBar(BarSeries bars, int i);
+}
@@ -0,0 +1,171 @@
+package org.imperial.fastquantanalysis.strategy.bar;
+
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.imperial.fastquantanalysis.memory.InMemoryClassLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Turns a compiled user class into a {@link BarStrategy}, once per run rather than once per bar.
+ * A class implementing the interface is used as is. Otherwise its public onBar method is bound with
+ * {@link java.lang.invoke.LambdaMetafactory}, so the engine calls it like any interface method,
+ * without the boxing and access checks of {@link Method#invoke} that the JIT cannot see through.
+ *
+ * @author Emil S. He
+ * @since 2025-04-25
+ */
+public final class BarStrategyBinder {
+
+    private static final String BRIDGE_NAME = BarStrategyBridge.class.getName();
+
+    private static final byte[] BRIDGE_BYTES = readBridge();
+
+    // One bridge per user class, only reachable from the class itself, so it never keeps the class loaded
+    private static final ClassValue<Function<Object, BarStrategy>> BRIDGES = new ClassValue<>() {
+        @Override
+        protected Function<Object, BarStrategy> computeValue(Class<?> strategyClass) {
+            return bridge(strategyClass.getClassLoader());
+        }
+    };
+
+    private BarStrategyBinder() {
+    }
+
+    /**
+     * @param strategyClass compiled user class
+     * @return true if the class implements {@link BarStrategy} or declares a matching onBar method
+     */
+    public static boolean isBarStrategy(Class<?> strategyClass) {
+        return BarStrategy.class.isAssignableFrom(strategyClass) || findOnBar(strategyClass) != null;
+    }
+
+    /**
+     * Instantiate a user class with its no-arg constructor and bind it
+     * @param strategyClass compiled user class
+     * @return bar strategy
+     * @throws StrategyRunningException if the class is not a bar strategy or cannot be instantiated
+     */
+    public static BarStrategy bind(Class<?> strategyClass) {
+        if (!BarStrategy.class.isAssignableFrom(strategyClass) && findOnBar(strategyClass) == null) {
+            throw new StrategyRunningException("Did not find public method \"int onBar(BarSeries, int)\" in "
+                    + strategyClass.getName() + ".");
+        }
+
+        Object instance;
+        try {
+            instance = strategyClass.getDeclaredConstructor().newInstance();
+        } catch (InvocationTargetException e) {
+            throw new StrategyRunningException("Failed to create " + strategyClass.getName()
+                    + ": " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new StrategyRunningException("Failed to create " + strategyClass.getName()
+                    + ", a public no-arg constructor is needed.", e);
+        }
+        return bind(instance);
+    }
+
+    /**
+     * Bind an instance of a user class
+     * @param instance user object
+     * @return bar strategy
+     */
+    public static BarStrategy bind(Object instance) {
+        if (instance instanceof BarStrategy barStrategy) {
+            return barStrategy;
+        }
+
+        Class<?> strategyClass = instance.getClass();
+        if (findOnBar(strategyClass) == null) {
+            throw new StrategyRunningException("Did not find public method \"int onBar(BarSeries, int)\" in "
+                    + strategyClass.getName() + ".");
+        }
+        BarStrategy onBar = BRIDGES.get(strategyClass).apply(instance);
+
+        Method onStart = findOnStart(strategyClass);
+        if (onStart == null) {
+            return onBar;
+        }
+        try {
+            return new StartingBarStrategy(onBar, MethodHandles.publicLookup().unreflect(onStart).bindTo(instance));
+        } catch (IllegalAccessException e) {
+            throw new StrategyRunningException("Cannot access onStart of " + strategyClass.getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, BarStrategy> bridge(ClassLoader userClassLoader) {
+        // A fresh copy of the bridge, defined next to the user class
+        ClassLoader bridgeLoader = new InMemoryClassLoader(userClassLoader, Map.of(BRIDGE_NAME, BRIDGE_BYTES));
+        try {
+            return (Function<Object, BarStrategy>) bridgeLoader.loadClass(BRIDGE_NAME)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to define bar strategy bridge", e);
+        }
+    }
+
+    private static Method findOnBar(Class<?> strategyClass) {
+        if (!Modifier.isPublic(strategyClass.getModifiers())) {
+            return null;
+        }
+        try {
+            Method method = strategyClass.getMethod("onBar", BarSeries.class, int.class);
+            return method.getReturnType() == int.class && !Modifier.isStatic(method.getModifiers()) ? method : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Method findOnStart(Class<?> strategyClass) {
+        try {
+            Method method = strategyClass.getMethod("onStart", BarSeries.class);
+            return !Modifier.isStatic(method.getModifiers()) ? method : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static byte[] readBridge() {
+        try (InputStream in = BarStrategyBridge.class.getResourceAsStream(
+                BarStrategyBridge.class.getSimpleName() + ".class")) {
+            if (in == null) {
+                throw new IllegalStateException("Class file of " + BRIDGE_NAME + " not found");
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Bound onBar of a user object that also declares onStart
+     */
+    private record StartingBarStrategy(BarStrategy onBar, MethodHandle onStart) implements BarStrategy {
+
+        @Override
+        public void onStart(BarSeries bars) {
+            try {
+                onStart.invoke(bars);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new StrategyRunningException("onStart failed: " + e, e);
+            }
+        }
+
+        @Override
+        public int onBar(BarSeries bars, int i) {
+            return onBar.onBar(bars, i);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.imperial.fastquantanalysis.strategy.bar;
+
+import org.imperial.fastquantanalysis.market.BarSeries;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Function;
+
+/**
+ * Spins a {@link BarStrategy} around the onBar method of a user object with {@link LambdaMetafactory}.
+ * The metafactory needs a caller with full privilege access that can see the user class, which code of
+ * the application class loader is not. {@link BarStrategyBinder} therefore defines a copy of this class
+ * in a child loader of the user class and only talks to it through {@link Function}.
+ * A bridge serves a single user class; the lambda factory is spun on the first call and reused.
+ *
+ * @author Emil S. He
+ * @since 2025-04-25
+ */
+public final class BarStrategyBridge implements Function<Object, BarStrategy> {
+
+    static final MethodType ON_BAR = MethodType.methodType(int.class, BarSeries.class, int.class);
+
+    // (user object) -> BarStrategy
+    private volatile MethodHandle factory;
+
+    @Override
+    public BarStrategy apply(Object instance) {
+        Class<?> strategyClass = instance.getClass();
+        try {
+            MethodHandle currentFactory = factory;
+            if (currentFactory == null) {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle onBar = lookup.findVirtual(strategyClass, "onBar", ON_BAR);
+                CallSite callSite = LambdaMetafactory.metafactory(lookup, "onBar",
+                        MethodType.methodType(BarStrategy.class, strategyClass), ON_BAR, onBar, ON_BAR);
+                currentFactory = callSite.getTarget().asType(MethodType.methodType(BarStrategy.class, Object.class));
+                factory = currentFactory;
+            }
+            return (BarStrategy) currentFactory.invokeExact(instance);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to bind onBar of " + strategyClass.getName(), e);
+        }
+    }
+}
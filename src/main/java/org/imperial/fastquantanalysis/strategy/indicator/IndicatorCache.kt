@@ -0,0 +1,48 @@
+package org.imperial.fastquantanalysis.strategy.indicator
+
+import org.imperial.fastquantanalysis.market.BarSeries
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Indicators of one bar series, each computed once and shared by every evaluation that needs it,
+ * e.g. all parameter sets of a sweep or all folds of a walk-forward run.
+ * Safe to use from several threads; a value being computed blocks only the threads asking for the same one.
+ *
+ * @author Emil S. He
+ * @since 2025-04-23
+ */
+class IndicatorCache(val bars: BarSeries) {
+
+    val ohlcAverage: DoubleArray by lazy { bars.ohlcAverage() }
+
+    private val emas = ConcurrentHashMap<Int, DoubleArray>()
+    private val atrs = ConcurrentHashMap<Int, DoubleArray>()
+    private val highestCloses = ConcurrentHashMap<Int, DoubleArray>()
+    private val lowestCloses = ConcurrentHashMap<Int, DoubleArray>()
+
+    /**
+     * @param period EMA period
+     * @return EMA of close prices, see [Indicators.ema]
+     */
+    fun ema(period: Int): DoubleArray = emas.computeIfAbsent(period) { Indicators.ema(bars.close, it) }
+
+    /**
+     * @param period ATR period
+     * @return ATR, see [Indicators.atr]
+     */
+    fun atr(period: Int): DoubleArray = atrs.computeIfAbsent(period) { Indicators.atr(bars, it) }
+
+    /**
+     * @param window window size
+     * @return highest close of the window ending at every bar
+     */
+    fun highestClose(window: Int): DoubleArray =
+        highestCloses.computeIfAbsent(window) { SlidingWindow.max(bars.close, it) }
+
+    /**
+     * @param window window size
+     * @return lowest close of the window ending at every bar
+     */
+    fun lowestClose(window: Int): DoubleArray =
+        lowestCloses.computeIfAbsent(window) { SlidingWindow.min(bars.close, it) }
+}
@@ -0,0 +1,73 @@
+package org.imperial.fastquantanalysis.strategy.indicator
+
+import org.imperial.fastquantanalysis.market.BarSeries
+import kotlin.math.abs
+
+/**
+ * Recursive price indicators. Every result has one value per bar, aligned with the bars,
+ * and holds NaN until the indicator is defined.
+ *
+ * @author Emil S. He
+ * @since 2025-04-23
+ */
+object Indicators {
+
+    /**
+     * Exponential moving average seeded with the simple average of the first period
+     * @param prices prices (usually close prices)
+     * @param period EMA period
+     * @return EMA of every bar, defined from bar period - 1
+     */
+    @JvmStatic
+    fun ema(prices: DoubleArray, period: Int): DoubleArray {
+        require(period > 0) { "EMA period must be positive" }
+        val ema = DoubleArray(prices.size) { Double.NaN }
+        if (prices.size < period) return ema
+
+        var sma = 0.0
+        for (i in 0 until period) {
+            sma += prices[i]
+        }
+        ema[period - 1] = sma / period
+        val k = 2.0 / (period + 1)
+        for (i in period until prices.size) {
+            ema[i] = prices[i] * k + ema[i - 1] * (1 - k)
+        }
+        return ema
+    }
+
+    /**
+     * Average true range with Wilder's smoothing
+     * @param bars bars
+     * @param period ATR period
+     * @return ATR of every bar, defined from bar period (the first true range needs a previous close)
+     */
+    @JvmStatic
+    fun atr(bars: BarSeries, period: Int): DoubleArray {
+        require(period > 0) { "ATR period must be positive" }
+        val n = bars.size()
+        val atr = DoubleArray(n) { Double.NaN }
+        if (n < period + 1) return atr
+
+        val high = bars.high
+        val low = bars.low
+        val close = bars.close
+
+        var sum = 0.0
+        for (i in 1..n - 1) {
+            val prevClose = close[i - 1] // close price in previous bar
+            val tr = maxOf(
+                high[i] - low[i],
+                abs(high[i] - prevClose),
+                abs(low[i] - prevClose)
+            )
+            if (i <= period) {
+                sum += tr
+                if (i == period) atr[i] = sum / period
+            } else {
+                atr[i] = (atr[i - 1] * (period - 1) + tr) / period
+            }
+        }
+        return atr
+    }
+}
@@ -0,0 +1,109 @@
+package org.imperial.fastquantanalysis.strategy.indicator
+
+import kotlin.math.sqrt
+
+/**
+ * Mean, variance and covariance of a window of (x, y) pairs that values enter and leave one at a time.
+ * Updates follow Welford's algorithm in both directions, so each update is O(1) and the
+ * second moments do not suffer from the cancellation of the sum-of-squares formula.
+ * Values are shifted by the first pair seen, which keeps prices far from zero accurate as the window slides.
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+class RollingMoments {
+
+    var count: Int = 0
+        private set
+
+    val meanX: Double
+        get() = shiftX + shiftedMeanX
+
+    val meanY: Double
+        get() = shiftY + shiftedMeanY
+
+    private var shiftX: Double = 0.0
+    private var shiftY: Double = 0.0
+    private var shiftedMeanX: Double = 0.0
+    private var shiftedMeanY: Double = 0.0
+
+    // Sums of squared / cross deviations from the current means
+    private var m2X: Double = 0.0
+    private var m2Y: Double = 0.0
+    private var coMoment: Double = 0.0
+
+    fun add(x: Double, y: Double) {
+        if (count == 0) {
+            shiftX = x
+            shiftY = y
+        }
+        val sx = x - shiftX
+        val sy = y - shiftY
+        count++
+        val dx = sx - shiftedMeanX
+        shiftedMeanX += dx / count
+        val dy = sy - shiftedMeanY
+        shiftedMeanY += dy / count
+        m2X += dx * (sx - shiftedMeanX)
+        m2Y += dy * (sy - shiftedMeanY)
+        coMoment += dx * (sy - shiftedMeanY)
+    }
+
+    fun remove(x: Double, y: Double) {
+        if (count <= 1) {
+            clear()
+            return
+        }
+        val sx = x - shiftX
+        val sy = y - shiftY
+        val oldMeanX = shiftedMeanX
+        val oldMeanY = shiftedMeanY
+        count--
+        shiftedMeanX -= (sx - shiftedMeanX) / count
+        shiftedMeanY -= (sy - shiftedMeanY) / count
+        m2X = maxOf(0.0, m2X - (sx - shiftedMeanX) * (sx - oldMeanX))
+        m2Y = maxOf(0.0, m2Y - (sy - shiftedMeanY) * (sy - oldMeanY))
+        coMoment -= (sx - shiftedMeanX) * (sy - oldMeanY)
+    }
+
+    /**
+     * Slide the window by one pair
+     */
+    fun replace(oldX: Double, oldY: Double, newX: Double, newY: Double) {
+        remove(oldX, oldY)
+        add(newX, newY)
+    }
+
+    fun clear() {
+        count = 0
+        shiftX = 0.0
+        shiftY = 0.0
+        shiftedMeanX = 0.0
+        shiftedMeanY = 0.0
+        m2X = 0.0
+        m2Y = 0.0
+        coMoment = 0.0
+    }
+
+    /**
+     * Population variance of x
+     */
+    fun varianceX(): Double = if (count > 0) m2X / count else Double.NaN
+
+    /**
+     * Population variance of y
+     */
+    fun varianceY(): Double = if (count > 0) m2Y / count else Double.NaN
+
+    fun stdX(): Double = sqrt(varianceX())
+
+    /**
+     * Population covariance of x and y
+     */
+    fun covariance(): Double = if (count > 0) coMoment / count else Double.NaN
+
+    /**
+     * Regression slope of y on x, i.e. Cov(x, y) / Var(x)
+     */
+    fun beta(): Double = coMoment / m2X
+}
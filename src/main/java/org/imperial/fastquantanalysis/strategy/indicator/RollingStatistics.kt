@@ -0,0 +1,116 @@
+package org.imperial.fastquantanalysis.strategy.indicator
+
+/**
+ * Rolling window kernels over primitive arrays, each O(1) per bar.
+ * Every result has the length of its input and holds NaN before the first full window.
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+object RollingStatistics {
+
+    /**
+     * Sliding sum with Kahan compensation, so adding and subtracting for the whole series does not drift
+     * @param values values
+     * @param window window size
+     * @return sum of every window
+     */
+    @JvmStatic
+    fun sum(values: DoubleArray, window: Int): DoubleArray {
+        require(window > 0) { "Window size must be positive" }
+        val result = DoubleArray(values.size) { Double.NaN }
+        var sum = 0.0
+        var compensation = 0.0
+
+        for (i in values.indices) {
+            var delta = values[i]
+            if (i >= window) {
+                delta -= values[i - window]
+            }
+            val y = delta - compensation
+            val t = sum + y
+            compensation = (t - sum) - y
+            sum = t
+
+            if (i >= window - 1) {
+                result[i] = sum
+            }
+        }
+
+        return result
+    }
+
+    /**
+     * @param values values
+     * @param window window size
+     * @return mean of every window
+     */
+    @JvmStatic
+    fun mean(values: DoubleArray, window: Int): DoubleArray {
+        val result = sum(values, window)
+        for (i in result.indices) {
+            result[i] /= window
+        }
+        return result
+    }
+
+    /**
+     * @param values values
+     * @param window window size
+     * @return population variance of every window
+     */
+    @JvmStatic
+    fun variance(values: DoubleArray, window: Int): DoubleArray =
+        rolling(values, values, window) { it.varianceX() }
+
+    /**
+     * @param values values
+     * @param window window size
+     * @return population standard deviation of every window
+     */
+    @JvmStatic
+    fun std(values: DoubleArray, window: Int): DoubleArray =
+        rolling(values, values, window) { it.stdX() }
+
+    /**
+     * @param x first series
+     * @param y second series, as long as x
+     * @param window window size
+     * @return population covariance of every window
+     */
+    @JvmStatic
+    fun covariance(x: DoubleArray, y: DoubleArray, window: Int): DoubleArray =
+        rolling(x, y, window) { it.covariance() }
+
+    /**
+     * Rolling hedge ratio of y against x
+     * @param x explanatory series
+     * @param y dependent series, as long as x
+     * @param window window size
+     * @return Cov(x, y) / Var(x) of every window
+     */
+    @JvmStatic
+    fun beta(x: DoubleArray, y: DoubleArray, window: Int): DoubleArray =
+        rolling(x, y, window) { it.beta() }
+
+    private inline fun rolling(x: DoubleArray, y: DoubleArray, window: Int,
+                               statistic: (RollingMoments) -> Double): DoubleArray {
+        require(window > 0) { "Window size must be positive" }
+        require(x.size == y.size) { "Both series must have the same length" }
+        val result = DoubleArray(x.size) { Double.NaN }
+        val moments = RollingMoments()
+
+        for (i in x.indices) {
+            if (i >= window) {
+                moments.replace(x[i - window], y[i - window], x[i], y[i])
+            } else {
+                moments.add(x[i], y[i])
+            }
+            if (i >= window - 1) {
+                result[i] = statistic(moments)
+            }
+        }
+
+        return result
+    }
+}
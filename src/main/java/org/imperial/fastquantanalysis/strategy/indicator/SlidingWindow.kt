@@ -0,0 +1,68 @@
+package org.imperial.fastquantanalysis.strategy.indicator
+
+/**
+ * Sliding window maximum and minimum over primitive arrays.
+ * A monotonic deque of indices keeps the candidates of the current window, so every
+ * value is pushed and popped at most once and the cost is O(n) whatever the window size.
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+object SlidingWindow {
+
+    /**
+     * Maximum of every window
+     * @param values values
+     * @param window window size
+     * @return result[i] = max(values[i - window + 1..i]), NaN before the first full window
+     */
+    @JvmStatic
+    fun max(values: DoubleArray, window: Int): DoubleArray = extreme(values, window, true)
+
+    /**
+     * Minimum of every window
+     * @param values values
+     * @param window window size
+     * @return result[i] = min(values[i - window + 1..i]), NaN before the first full window
+     */
+    @JvmStatic
+    fun min(values: DoubleArray, window: Int): DoubleArray = extreme(values, window, false)
+
+    private fun extreme(values: DoubleArray, window: Int, isMax: Boolean): DoubleArray {
+        require(window > 0) { "Window size must be positive" }
+        val n = values.size
+        val result = DoubleArray(n) { Double.NaN }
+
+        // Ring buffer of indices; values at these indices are monotonic from head to tail
+        val deque = IntArray(minOf(window, n) + 1)
+        var head = 0
+        var size = 0
+
+        for (i in 0 until n) {
+            // Drop the index that has left the window
+            if (size > 0 && deque[head] <= i - window) {
+                head = (head + 1) % deque.size
+                size--
+            }
+
+            // Drop candidates the new value dominates
+            val value = values[i]
+            while (size > 0) {
+                val tail = deque[(head + size - 1) % deque.size]
+                if (if (isMax) values[tail] <= value else values[tail] >= value) {
+                    size--
+                } else {
+                    break
+                }
+            }
+            deque[(head + size) % deque.size] = i
+            size++
+
+            if (i >= window - 1) {
+                result[i] = values[deque[head]]
+            }
+        }
+
+        return result
+    }
+}
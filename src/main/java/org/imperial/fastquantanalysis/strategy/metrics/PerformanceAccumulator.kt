@@ -0,0 +1,169 @@
+package org.imperial.fastquantanalysis.strategy.metrics
+
+import org.imperial.fastquantanalysis.entity.QuantStrategy
+import java.time.LocalDateTime
+import kotlin.math.min
+import kotlin.math.pow
+import kotlin.math.sqrt
+
+/**
+ * Performance metrics of a backtest updated one bar at a time.
+ * Feed it the equity at the end of every bar (and the return of every closed trade);
+ * drawdown, Welford variance of the bar returns and downside deviation are kept in a few fields,
+ * so a run is measured in the same pass that simulates it, without an equity curve or temporary lists.
+ * Built-in strategies use it, and strategies compiled from user code can use it the same way
+ * and return [toQuantStrategy].
+ *
+ * Risk free rate is 0; returns, volatility and downside deviation are annualized with [periodsPerYear].
+ *
+ * @author Emil S. He
+ * @since 2025-04-23
+ */
+class PerformanceAccumulator @JvmOverloads constructor(
+    private val initialEquity: Double = 1.0,
+    private val periodsPerYear: Int = 365
+) {
+
+    /**
+     * Number of bars seen
+     */
+    var bars: Int = 0
+        private set
+
+    /**
+     * Equity at the end of the last bar
+     */
+    var equity: Double = initialEquity
+        private set
+
+    var maxDrawdown: Double = 0.0
+        private set
+
+    var closedTrades: Int = 0
+        private set
+
+    private var peak: Double = initialEquity
+    private var barsInPosition: Int = 0
+    private var winningTrades: Int = 0
+
+    // Welford mean and sum of squared deviations of bar returns
+    private var meanReturn: Double = 0.0
+    private var m2: Double = 0.0
+    // Sum of squared negative bar returns
+    private var downsideSquares: Double = 0.0
+
+    /**
+     * Record the end of a bar
+     * @param equity equity at the end of the bar
+     * @param inPosition whether the return of this bar was earned holding a position
+     */
+    fun onBar(equity: Double, inPosition: Boolean) {
+        val barReturn = equity / this.equity - 1
+        this.equity = equity
+        bars++
+        if (inPosition) {
+            barsInPosition++
+        }
+
+        val delta = barReturn - meanReturn
+        meanReturn += delta / bars
+        m2 += delta * (barReturn - meanReturn)
+        val downside = min(barReturn, 0.0)
+        downsideSquares += downside * downside
+
+        if (equity > peak) {
+            peak = equity
+        }
+        val drawdown = (peak - equity) / peak
+        if (drawdown > maxDrawdown) {
+            maxDrawdown = drawdown
+        }
+    }
+
+    /**
+     * Record a closed trade
+     * @param tradeReturn return of the trade, e.g. exit equity / entry equity - 1
+     */
+    fun onTradeClosed(tradeReturn: Double) {
+        closedTrades++
+        if (tradeReturn > 0) {
+            winningTrades++
+        }
+    }
+
+    fun reset() {
+        bars = 0
+        equity = initialEquity
+        maxDrawdown = 0.0
+        closedTrades = 0
+        peak = initialEquity
+        barsInPosition = 0
+        winningTrades = 0
+        meanReturn = 0.0
+        m2 = 0.0
+        downsideSquares = 0.0
+    }
+
+    /**
+     * Final equity / initial equity - 1, 0 if the equity is no longer finite
+     */
+    val cumulativeReturn: Double
+        get() = if (equity.isFinite()) equity / initialEquity - 1 else 0.0
+
+    val annualizedReturn: Double
+        get() {
+            if (bars == 0 || !equity.isFinite()) {
+                return 0.0
+            }
+            return (equity / initialEquity).pow(periodsPerYear.toDouble() / bars) - 1
+        }
+
+    /**
+     * Annualized population standard deviation of bar returns
+     */
+    val volatility: Double
+        get() = if (bars > 0) sqrt(m2 / bars * periodsPerYear) else 0.0
+
+    /**
+     * Annualized root mean square of the negative bar returns
+     */
+    val downsideDeviation: Double
+        get() = if (bars > 0) sqrt(downsideSquares / bars * periodsPerYear) else 0.0
+
+    val sharpeRatio: Double
+        get() = ratio(annualizedReturn, volatility)
+
+    val sortinoRatio: Double
+        get() = ratio(annualizedReturn, downsideDeviation)
+
+    val calmarRatio: Double
+        get() = ratio(annualizedReturn, maxDrawdown)
+
+    /**
+     * Fraction of closed trades with a positive return
+     */
+    val winRate: Double
+        get() = if (closedTrades > 0) winningTrades.toDouble() / closedTrades else 0.0
+
+    /**
+     * Fraction of bars spent holding a position
+     */
+    val exposure: Double
+        get() = if (bars > 0) barsInPosition.toDouble() / bars else 0.0
+
+    fun toQuantStrategy(strategyId: String?, strategyName: String?,
+                        startDate: LocalDateTime?, endDate: LocalDateTime?, tradeCount: Int?): QuantStrategy =
+        QuantStrategy(strategyId, strategyName, startDate, endDate,
+            annualizedReturn, cumulativeReturn, maxDrawdown, volatility,
+            sharpeRatio, sortinoRatio, calmarRatio, tradeCount, winRate, exposure)
+
+    /**
+     * Metrics only, e.g. to be returned by the runStrategy method of a user strategy,
+     * whose non-null fields are merged into the strategy being run
+     * @return QuantStrategy object without id, name, dates and trade count
+     */
+    fun toQuantStrategy(): QuantStrategy = toQuantStrategy(null, null, null, null, null)
+
+    private fun ratio(numerator: Double, denominator: Double): Double =
+        if (denominator != 0.0 && denominator.isFinite() && numerator.isFinite()) numerator / denominator else 0.0
+}
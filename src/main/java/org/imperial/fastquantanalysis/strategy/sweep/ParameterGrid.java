@@ -0,0 +1,92 @@
+package org.imperial.fastquantanalysis.strategy.sweep;
+
+import org.imperial.fastquantanalysis.dto.ParameterRangeDTO;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cartesian product of parameter ranges
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+public final class ParameterGrid {
+
+    private ParameterGrid() {}
+
+    /**
+     * Expand the ranges of the given parameters into every combination
+     * @param parameterNames parameters in the order they vary (the last one varies fastest)
+     * @param ranges range of every parameter
+     * @param maxCombinations upper bound on the grid size
+     * @return all parameter sets
+     */
+    public static List<Map<String, Double>> expand(List<String> parameterNames,
+                                                   Map<String, ParameterRangeDTO> ranges,
+                                                   int maxCombinations) {
+        List<double[]> values = new ArrayList<>(parameterNames.size());
+        long combinations = 1;
+        for (String name : parameterNames) {
+            ParameterRangeDTO range = ranges.get(name);
+            if (range == null) {
+                throw new StrategyRunningException("Missing values of parameter " + name);
+            }
+            double[] parameterValues = valuesOf(name, range, maxCombinations);
+            combinations *= parameterValues.length;
+            if (combinations > maxCombinations) {
+                throw new StrategyRunningException("Parameter grid exceeds " + maxCombinations + " combinations");
+            }
+            values.add(parameterValues);
+        }
+
+        List<Map<String, Double>> grid = new ArrayList<>((int) combinations);
+        int[] cursor = new int[parameterNames.size()];
+        for (long k = 0; k < combinations; k++) {
+            Map<String, Double> parameters = new LinkedHashMap<>();
+            for (int p = 0; p < cursor.length; p++) {
+                parameters.put(parameterNames.get(p), values.get(p)[cursor[p]]);
+            }
+            grid.add(parameters);
+
+            // Advance like an odometer
+            for (int p = cursor.length - 1; p >= 0; p--) {
+                if (++cursor[p] < values.get(p).length) {
+                    break;
+                }
+                cursor[p] = 0;
+            }
+        }
+        return grid;
+    }
+
+    private static double[] valuesOf(String name, ParameterRangeDTO range, int maxCombinations) {
+        if (range.getValues() != null && !range.getValues().isEmpty()) {
+            return range.getValues().stream().mapToDouble(Double::doubleValue).toArray();
+        }
+        if (range.getFrom() == null || range.getTo() == null) {
+            throw new StrategyRunningException("Parameter " + name + " needs either values or from and to");
+        }
+
+        double from = range.getFrom();
+        double to = range.getTo();
+        double step = range.getStep() == null ? 1 : range.getStep();
+        if (step <= 0 || to < from) {
+            throw new StrategyRunningException("Invalid range of parameter " + name);
+        }
+
+        // Tolerate rounding, e.g. 0.1 to 0.3 by 0.1 has three values
+        long count = (long) Math.floor((to - from) / step + 1e-9) + 1;
+        if (count > maxCombinations) {
+            throw new StrategyRunningException("Parameter grid exceeds " + maxCombinations + " combinations");
+        }
+        double[] values = new double[(int) count];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from + i * step;
+        }
+        return values;
+    }
+}
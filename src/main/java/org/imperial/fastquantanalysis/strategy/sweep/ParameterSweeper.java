@@ -0,0 +1,135 @@
+package org.imperial.fastquantanalysis.strategy.sweep;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.constant.SweepMetric;
+import org.imperial.fastquantanalysis.dto.ParameterRangeDTO;
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.imperial.fastquantanalysis.job.JobProgress;
+import org.imperial.fastquantanalysis.strategy.Strategies;
+import org.imperial.fastquantanalysis.vo.SweepEntryVO;
+import org.imperial.fastquantanalysis.vo.SweepResultVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates a built-in strategy over a parameter grid in parallel.
+ * The bars are fetched once by the caller and shared read-only by every evaluation;
+ * evaluations run on a dedicated fork-join pool so a large sweep cannot starve the common pool.
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+@Slf4j
+@Component
+public class ParameterSweeper {
+
+    private final Strategies strategies;
+
+    private final ForkJoinPool pool;
+
+    private final int maxCombinations;
+
+    public ParameterSweeper(Strategies strategies,
+                            @Value("${fast-quant.sweep.parallelism:0}") int parallelism,
+                            @Value("${fast-quant.sweep.max-combinations:10000}") int maxCombinations) {
+        this.strategies = strategies;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.maxCombinations = maxCombinations;
+    }
+
+    /**
+     * Run every parameter set of the grid and rank the results
+     * @param strategy strategy to sweep
+     * @param input bars shared by every run
+     * @param ranges values of every parameter
+     * @param rankBy ranking metric
+     * @param top number of best results returned
+     * @return ranked results
+     */
+    public SweepResultVO sweep(SweepableStrategy strategy, SweepInput input,
+                               Map<String, ParameterRangeDTO> ranges, SweepMetric rankBy, int top) {
+        List<Map<String, Double>> grid = expandGrid(strategy, ranges);
+
+        // Captured here, the pool threads do not run the job themselves
+        JobProgress progress = JobProgress.current();
+        AtomicInteger done = new AtomicInteger();
+
+        long startTime = System.currentTimeMillis();
+        List<SweepEntryVO> evaluated = pool.submit(() -> grid.parallelStream()
+                .map(parameters -> {
+                    if (progress.isCancelled()) {
+                        return null;
+                    }
+                    SweepEntryVO entry = evaluate(strategy, input, parameters, 0, input.bars().size());
+                    progress.step(done.incrementAndGet(), grid.size(), "Evaluated parameter sets");
+                    return entry;
+                })
+                .filter(Objects::nonNull)
+                .toList()
+        ).join();
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+        log.info("Swept {} parameter sets of {} in {} ms", grid.size(), strategy.getStrategyName(), elapsedMillis);
+
+        Comparator<QuantStrategy> bestFirst = rankBy.bestFirst();
+        List<SweepEntryVO> ranked = new ArrayList<>(evaluated);
+        ranked.sort((a, b) -> bestFirst.compare(a.getResult(), b.getResult()));
+
+        List<SweepEntryVO> entries = ranked.subList(0, Math.min(top, ranked.size()));
+        for (int i = 0; i < entries.size(); i++) {
+            entries.get(i).setRank(i + 1);
+        }
+
+        return new SweepResultVO(strategy.getStrategyName(), rankBy, evaluated.size(),
+                grid.size() - evaluated.size(), elapsedMillis, new ArrayList<>(entries));
+    }
+
+    /**
+     * Check the parameter names and expand their ranges
+     * @param strategy strategy to sweep
+     * @param ranges values of every parameter
+     * @return all parameter sets
+     */
+    List<Map<String, Double>> expandGrid(SweepableStrategy strategy, Map<String, ParameterRangeDTO> ranges) {
+        for (String name : ranges.keySet()) {
+            if (!strategy.getParameterNames().contains(name)) {
+                throw new StrategyRunningException("Unknown parameter " + name + " of " + strategy.getStrategyName()
+                        + ", expected: " + strategy.getParameterNames());
+            }
+        }
+        return ParameterGrid.expand(strategy.getParameterNames(), ranges, maxCombinations);
+    }
+
+    /**
+     * Run one parameter set on the bars [from, to)
+     * @return the result, null if the run failed
+     */
+    SweepEntryVO evaluate(SweepableStrategy strategy, SweepInput input, Map<String, Double> parameters, int from, int to) {
+        try {
+            return new SweepEntryVO(0, parameters, strategy.run(strategies, input, parameters, from, to));
+        } catch (RuntimeException e) {
+            // e.g. a window longer than the bars, the rest of the grid is still worth ranking
+            log.debug("Parameter set {} of {} failed: {}", parameters, strategy.getStrategyName(), e.getMessage());
+            return null;
+        }
+    }
+
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down parameter sweep pool...");
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,23 @@
+package org.imperial.fastquantanalysis.strategy.sweep;
+
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.imperial.fastquantanalysis.strategy.indicator.IndicatorCache;
+
+/**
+ * Bars shared by every evaluation of a sweep or a walk-forward run, with their indicators computed once
+ * @param indicators bars of the ticker and their indicators
+ * @param pairedAverage OHLC average of the second ticker, null unless pair trading
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+public record SweepInput(IndicatorCache indicators, double[] pairedAverage) {
+
+    public static SweepInput of(BarSeries bars, BarSeries pairedBars) {
+        return new SweepInput(new IndicatorCache(bars), pairedBars == null ? null : pairedBars.ohlcAverage());
+    }
+
+    public BarSeries bars() {
+        return indicators.getBars();
+    }
+}
@@ -0,0 +1,125 @@
+package org.imperial.fastquantanalysis.strategy.sweep;
+
+import org.imperial.fastquantanalysis.constant.StrategyName;
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.imperial.fastquantanalysis.strategy.Strategies;
+import org.imperial.fastquantanalysis.strategy.indicator.IndicatorCache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Built-in strategies that can be swept, with the names of their parameters
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+public enum SweepableStrategy {
+
+    DONCHIAN_CHANNEL(StrategyName.DONCHIAN_CHANNEL, false, "windowSize") {
+        @Override
+        public QuantStrategy run(Strategies strategies, SweepInput input, Map<String, Double> parameters,
+                                 int from, int to) {
+            int windowSize = intParameter(parameters, "windowSize");
+            IndicatorCache indicators = input.indicators();
+            return strategies.donchianChannel(input.bars().getClose(),
+                    indicators.highestClose(windowSize), indicators.lowestClose(windowSize),
+                    windowSize, from, to);
+        }
+    },
+
+    PAIR_TRADING(StrategyName.PAIR_TRADING, true, "windowSize", "zScoreThreshold", "x") {
+        @Override
+        public QuantStrategy run(Strategies strategies, SweepInput input, Map<String, Double> parameters,
+                                 int from, int to) {
+            // The hedge ratio is estimated on the bars traded, so the strategy runs on slices
+            int end = Math.min(to, input.pairedAverage().length);
+            return strategies.pairTrading(
+                    Arrays.copyOfRange(input.indicators().getOhlcAverage(), from, end),
+                    Arrays.copyOfRange(input.pairedAverage(), from, end),
+                    intParameter(parameters, "windowSize"),
+                    parameters.get("zScoreThreshold"),
+                    intParameter(parameters, "x"));
+        }
+    },
+
+    EMA_WITH_STOP_LOSS_PERCENTAGE(StrategyName.EMA_WITH_STOP_LOSS_PERCENTAGE, false, "emaPeriod", "stopLossPercentage") {
+        @Override
+        public QuantStrategy run(Strategies strategies, SweepInput input, Map<String, Double> parameters,
+                                 int from, int to) {
+            int emaPeriod = intParameter(parameters, "emaPeriod");
+            IndicatorCache indicators = input.indicators();
+            return strategies.emaWithStopLossPercentage(indicators.getOhlcAverage(), indicators.ema(emaPeriod),
+                    emaPeriod, parameters.get("stopLossPercentage"), from, to);
+        }
+    },
+
+    EMA_WITH_ATR_STOP_LOSS(StrategyName.EMA_WITH_ATR_STOP_LOSS, false, "emaPeriod", "atrPeriod", "atrMultiplier") {
+        @Override
+        public QuantStrategy run(Strategies strategies, SweepInput input, Map<String, Double> parameters,
+                                 int from, int to) {
+            int emaPeriod = intParameter(parameters, "emaPeriod");
+            int atrPeriod = intParameter(parameters, "atrPeriod");
+            IndicatorCache indicators = input.indicators();
+            return strategies.emaWithATRStopLoss(input.bars().getClose(),
+                    indicators.ema(emaPeriod), indicators.atr(atrPeriod),
+                    emaPeriod, atrPeriod, parameters.get("atrMultiplier"), from, to);
+        }
+    };
+
+    private final String strategyName;
+    private final boolean paired;
+    private final List<String> parameterNames;
+
+    SweepableStrategy(String strategyName, boolean paired, String... parameterNames) {
+        this.strategyName = strategyName;
+        this.paired = paired;
+        this.parameterNames = List.of(parameterNames);
+    }
+
+    /**
+     * Run the strategy with one parameter set on the bars [from, to).
+     * Indicators come from the input, so they are computed once for all runs
+     * @param strategies built-in strategies
+     * @param input bars of the sweep
+     * @param parameters value of every parameter
+     * @param from first bar traded
+     * @param to end of the bars traded (exclusive)
+     * @return QuantStrategy object
+     */
+    public abstract QuantStrategy run(Strategies strategies, SweepInput input, Map<String, Double> parameters,
+                                      int from, int to);
+
+    public String getStrategyName() {
+        return strategyName;
+    }
+
+    /**
+     * @return true if the strategy needs bars of a second ticker
+     */
+    public boolean isPaired() {
+        return paired;
+    }
+
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * @param strategyName strategy name, see {@link StrategyName}
+     * @return the sweepable strategy
+     */
+    public static SweepableStrategy of(String strategyName) {
+        return Arrays.stream(values())
+                .filter(strategy -> strategy.strategyName.equals(strategyName))
+                .findFirst()
+                .orElseThrow(() -> new StrategyRunningException("Strategy " + strategyName + " cannot be swept, supported: "
+                        + Arrays.stream(values()).map(SweepableStrategy::getStrategyName).toList()));
+    }
+
+    private static int intParameter(Map<String, Double> parameters, String name) {
+        return (int) Math.round(parameters.get(name));
+    }
+}
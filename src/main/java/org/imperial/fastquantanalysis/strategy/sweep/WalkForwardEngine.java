@@ -0,0 +1,130 @@
+package org.imperial.fastquantanalysis.strategy.sweep;
+
+import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.constant.SweepMetric;
+import org.imperial.fastquantanalysis.dto.ParameterRangeDTO;
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.imperial.fastquantanalysis.job.JobProgress;
+import org.imperial.fastquantanalysis.vo.SweepEntryVO;
+import org.imperial.fastquantanalysis.vo.WalkForwardFoldVO;
+import org.imperial.fastquantanalysis.vo.WalkForwardResultVO;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Walk-forward optimization. The bars are split into rolling folds of an in-sample window followed
+ * by an out-of-sample window; each fold picks the best parameter set in-sample and trades it out of sample.
+ * Folds run concurrently on the sweep pool and read the same series and the same indicator cache,
+ * so an EMA or ATR of a given period is computed once for the whole run, not once per fold.
+ * Indicators at the start of a window are warmed up by the bars before it, which never looks ahead.
+ *
+ * @author Emil S. He
+ * @since 2025-04-23
+ */
+@Slf4j
+@Component
+public class WalkForwardEngine {
+
+    private final ParameterSweeper parameterSweeper;
+
+    public WalkForwardEngine(ParameterSweeper parameterSweeper) {
+        this.parameterSweeper = parameterSweeper;
+    }
+
+    /**
+     * Run a walk-forward optimization
+     * @param strategy strategy to optimize
+     * @param input bars shared by every fold
+     * @param ranges values of every parameter tried in-sample
+     * @param inSampleBars number of bars parameters are optimized on
+     * @param outOfSampleBars number of bars the best parameters are evaluated on
+     * @param stepBars number of bars between the starts of consecutive folds
+     * @param rankBy metric parameters are optimized for
+     * @return best parameters and results of every fold
+     */
+    public WalkForwardResultVO run(SweepableStrategy strategy, SweepInput input, Map<String, ParameterRangeDTO> ranges,
+                                   int inSampleBars, int outOfSampleBars, int stepBars, SweepMetric rankBy) {
+        if (inSampleBars <= 0 || outOfSampleBars <= 0 || stepBars <= 0) {
+            throw new StrategyRunningException("Window sizes and step of a walk-forward run must be positive");
+        }
+        int n = input.bars().size();
+        int foldCount = n < inSampleBars + outOfSampleBars ? 0 : (n - inSampleBars - outOfSampleBars) / stepBars + 1;
+        if (foldCount == 0) {
+            throw new StrategyRunningException("Only " + n + " bars, a fold needs " + (inSampleBars + outOfSampleBars));
+        }
+        List<Map<String, Double>> grid = parameterSweeper.expandGrid(strategy, ranges);
+        Comparator<QuantStrategy> bestFirst = rankBy.bestFirst();
+
+        JobProgress progress = JobProgress.current();
+        AtomicInteger done = new AtomicInteger();
+
+        long startTime = System.currentTimeMillis();
+        List<WalkForwardFoldVO> folds = parameterSweeper.getPool().submit(() -> IntStream.range(0, foldCount)
+                .parallel()
+                .mapToObj(fold -> {
+                    if (progress.isCancelled()) {
+                        return new WalkForwardFoldVO(fold, null, null, null);
+                    }
+                    int inSampleFrom = fold * stepBars;
+                    int inSampleTo = inSampleFrom + inSampleBars;
+                    WalkForwardFoldVO result = runFold(fold, strategy, input, grid, bestFirst,
+                            inSampleFrom, inSampleTo, inSampleTo + outOfSampleBars);
+                    progress.step(done.incrementAndGet(), foldCount, "Walked folds");
+                    return result;
+                })
+                .toList()
+        ).join();
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+        log.info("Walked {} folds of {} with {} parameter sets in {} ms",
+                foldCount, strategy.getStrategyName(), grid.size(), elapsedMillis);
+
+        double outOfSampleEquity = 1.0;
+        for (WalkForwardFoldVO fold : folds) {
+            if (fold.getOutOfSample() != null && fold.getOutOfSample().getCumulativeReturn() != null) {
+                outOfSampleEquity *= 1 + fold.getOutOfSample().getCumulativeReturn();
+            }
+        }
+
+        return new WalkForwardResultVO(strategy.getStrategyName(), rankBy, foldCount * (grid.size() + 1),
+                elapsedMillis, outOfSampleEquity - 1, folds);
+    }
+
+    private WalkForwardFoldVO runFold(int fold, SweepableStrategy strategy, SweepInput input,
+                                      List<Map<String, Double>> grid, Comparator<QuantStrategy> bestFirst,
+                                      int inSampleFrom, int inSampleTo, int outOfSampleTo) {
+        SweepEntryVO best = grid.parallelStream()
+                .map(parameters -> parameterSweeper.evaluate(strategy, input, parameters, inSampleFrom, inSampleTo))
+                .filter(Objects::nonNull)
+                .min((a, b) -> bestFirst.compare(a.getResult(), b.getResult()))
+                .orElse(null);
+        if (best == null) {
+            log.debug("No parameter set of {} succeeded in fold {}", strategy.getStrategyName(), fold);
+            return new WalkForwardFoldVO(fold, null, null, null);
+        }
+
+        SweepEntryVO outOfSample = parameterSweeper.evaluate(strategy, input, best.getParameters(),
+                inSampleTo, outOfSampleTo);
+
+        long[] timestamps = input.bars().getTimestamps();
+        stampDates(best.getResult(), timestamps[inSampleFrom], timestamps[inSampleTo - 1]);
+        if (outOfSample != null) {
+            stampDates(outOfSample.getResult(), timestamps[inSampleTo], timestamps[outOfSampleTo - 1]);
+        }
+        return new WalkForwardFoldVO(fold, best.getParameters(), best.getResult(),
+                outOfSample == null ? null : outOfSample.getResult());
+    }
+
+    private static void stampDates(QuantStrategy quantStrategy, long fromMillis, long toMillis) {
+        quantStrategy.setStartDate(LocalDateTime.ofEpochSecond(Math.floorDiv(fromMillis, 1000), 0, ZoneOffset.UTC));
+        quantStrategy.setEndDate(LocalDateTime.ofEpochSecond(Math.floorDiv(toMillis, 1000), 0, ZoneOffset.UTC));
+    }
+}
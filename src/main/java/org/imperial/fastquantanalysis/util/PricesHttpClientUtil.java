@@ -2,25 +2,30 @@ package org.imperial.fastquantanalysis.util;
 
 import io.polygon.kotlin.sdk.DefaultOkHttpClientProvider;
 import io.polygon.kotlin.sdk.HttpClientProvider;
-import io.polygon.kotlin.sdk.rest.AggregateDTO;
-import io.polygon.kotlin.sdk.rest.AggregatesDTO;
 import io.polygon.kotlin.sdk.rest.AggregatesParameters;
-import io.polygon.kotlin.sdk.rest.PolygonRestClient;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
 import okhttp3.Response;
+import org.imperial.fastquantanalysis.client.IoExecutor;
+import org.imperial.fastquantanalysis.client.PolygonAggregatesClient;
+import org.imperial.fastquantanalysis.client.PolygonRateLimiter;
 import org.imperial.fastquantanalysis.constant.Sort;
 import org.imperial.fastquantanalysis.constant.Timespan;
 import org.imperial.fastquantanalysis.factory.AggregatesParametersFactory;
+import org.imperial.fastquantanalysis.market.BarFetchPlanner;
+import org.imperial.fastquantanalysis.market.BarResampler;
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.imperial.fastquantanalysis.market.BarSeriesKey;
+import org.imperial.fastquantanalysis.market.BarStore;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Various methods about getting crypto prices
@@ -31,8 +36,25 @@ import java.util.stream.Collectors;
 @Slf4j
 public class PricesHttpClientUtil {
 
+    // Keyed by every parameter of the request, the API key aside: bars do not depend on who asks.
+    // Failures, which may depend on the key, are not shared
+    private static final SingleFlight<AggregatesParameters, BarSeries> AGGREGATES_IN_FLIGHT =
+            new SingleFlight<>("polygon.aggregates", Metrics.globalRegistry);
+
+    // Chunks of one fetch requested at the same time; the rate limit of the API key applies on top
+    private static final int MAX_CONCURRENT_CHUNKS = 4;
+
+    private static final ExecutorService CHUNK_EXECUTOR = IoExecutor.newThreadPerTaskExecutor("polygon-chunk-");
+
+    // Stored series that coarser bars are resampled from, coarsest first since they are the cheapest to resample
+    private static final List<Timespan> RESAMPLE_BASES = List.of(Timespan.DAY, Timespan.HOUR, Timespan.MINUTE, Timespan.SECOND);
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
     /**
-     * Get the link object to Polygon.io
+     * Get the link object to Polygon.io.
+     * Every call builds a new OkHttp client with its own connection pool, so services should
+     * obtain clients from {@link org.imperial.fastquantanalysis.client.PolygonClientRegistry} instead
      * @return HTTP client provider (the link object)
      */
     public static HttpClientProvider getOkHttpClientProvider() {
@@ -59,114 +81,61 @@ public class PricesHttpClientUtil {
     }
 
     /**
-     * Get crypto close prices
-     * @param tickerName ticker name
-     * @param multiplier multiplier, default value: 1
-     * @param timespan timespan
-     * @param fromDate from date
-     * @param toDate to date
-     * @param unadjusted unadjusted, default value: false
-     * @param limit number of queries, default value: 50000
-     * @param sort sort, asc means from oldest to newest
-     * @param polygonClient polygon client
-     * @return list of crypto close prices
+     * Get a standalone aggregates client, for scripts and tests running outside the application context.
+     * It has its own OkHttp client and rate limit bucket with the default limits, so services should
+     * obtain clients from {@link org.imperial.fastquantanalysis.client.PolygonClientRegistry} instead
+     * @param apiKey Polygon.io API key
+     * @return aggregates client
      */
-    public static List<Double> getClosePrices(String tickerName, Long multiplier,
-                                              Timespan timespan, LocalDate fromDate,
-                                              LocalDate toDate, Boolean unadjusted,
-                                              Long limit, Sort sort,
-                                              PolygonRestClient polygonClient) {
-        log.info("{} Close", tickerName);
-        AggregatesParameters idxParams = AggregatesParametersFactory.create(
-                tickerName,
-                multiplier,
-                timespan.getValue(),
-                fromDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
-                toDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
-                unadjusted,
-                limit,
-                sort.getValue()
-        );
-
-        AggregatesDTO aggregatesBlocking = polygonClient.getAggregatesBlocking(idxParams);
-        List<Double> closePrices = new ArrayList<>();
-        aggregatesBlocking.getResults().forEach(aggregateDTO -> {
-            closePrices.add(aggregateDTO.getClose());
-        });
-
-        replaceNullWithPrevious(closePrices);
-        log.info("Close prices: {}", closePrices);
-
-        return closePrices;
+    public static PolygonAggregatesClient getAggregatesClient(String apiKey) {
+        PolygonRateLimiter rateLimiter = new PolygonRateLimiter(300, 10, 60_000, 4, 500,
+                30_000, 5, 30_000, Metrics.globalRegistry);
+        return new PolygonAggregatesClient(apiKey, new OkHttpClient(), rateLimiter.newBucket());
     }
 
     /**
-     * Get crypto bar prices and volume, which contains open, close, high, low prices
-     * and transaction volume
+     * Get crypto bars, which contain open, high, low, close prices, volume and timestamps
      * @param tickerName ticker name
      * @param multiplier multiplier, default value: 1
      * @param timespan timespan
      * @param fromDate from date
      * @param toDate to date
      * @param unadjusted unadjusted, default value: false
-     * @param limit number of queries, default value: 50000
+     * @param limit most bars returned, null for every bar of the range
      * @param sort sort, asc means from oldest to newest
      * @param polygonClient polygon client
-     * @return The list of 4 price lists and volume list
+     * @return bar series
      */
-    public static List<List<Double>> getBarPricesAndVolume(String tickerName, Long multiplier,
+    public static BarSeries getBarSeries(String tickerName, Long multiplier,
                                          Timespan timespan, LocalDate fromDate,
                                          LocalDate toDate, Boolean unadjusted,
                                          Long limit, Sort sort,
-                                         PolygonRestClient polygonClient) {
-        log.info("{} Bar Prices & Volume", tickerName);
-        AggregatesParameters idxParams = AggregatesParametersFactory.create(
-                tickerName,
-                multiplier,
-                timespan.getValue(),
-                fromDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
-                toDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
-                unadjusted,
-                limit,
-                sort.getValue()
-        );
-
-        AggregatesDTO aggregatesBlocking = polygonClient.getAggregatesBlocking(idxParams);
-        List<AggregateDTO> results = aggregatesBlocking.getResults();
-
-        List<List<Double>> barPricesWithVolume = Arrays.asList(
-                results.stream().map(AggregateDTO::getOpen).collect(Collectors.toList()), // 0: open
-                results.stream().map(AggregateDTO::getHigh).collect(Collectors.toList()), // 1: high
-                results.stream().map(AggregateDTO::getLow).collect(Collectors.toList()), // 2: low
-                results.stream().map(AggregateDTO::getClose).collect(Collectors.toList()), // 3: close
-                results.stream().map(AggregateDTO::getVolume).collect(Collectors.toList()) // 4: volume
-
-        );
-
-        barPricesWithVolume.forEach(PricesHttpClientUtil::replaceNullWithPrevious);
-
-        return barPricesWithVolume;
+                                         PolygonAggregatesClient polygonClient) {
+        return getBarSeries(tickerName, multiplier, timespan, fromDate, toDate,
+                unadjusted, limit, sort, polygonClient, null);
     }
 
     /**
-     * Get crypto bar prices without volume, which contains open, close, high, and low prices
+     * Get crypto bars, served from the local bar store when possible
      * @param tickerName ticker name
      * @param multiplier multiplier, default value: 1
      * @param timespan timespan
      * @param fromDate from date
      * @param toDate to date
      * @param unadjusted unadjusted, default value: false
-     * @param limit number of queries, default value: 50000
+     * @param limit most bars returned, null for every bar of the range
      * @param sort sort, asc means from oldest to newest
      * @param polygonClient polygon client
-     * @return The list of 4 price lists
+     * @param barStore local bar store, null to always fetch from Polygon.io
+     * @return bar series
      */
-    public static List<List<Double>> getBarPrices(String tickerName, Long multiplier,
-                                                  Timespan timespan, LocalDate fromDate,
-                                                  LocalDate toDate, Boolean unadjusted,
-                                                  Long limit, Sort sort,
-                                                  PolygonRestClient polygonClient) {
-        log.info("{} Bar", tickerName);
+    public static BarSeries getBarSeries(String tickerName, Long multiplier,
+                                         Timespan timespan, LocalDate fromDate,
+                                         LocalDate toDate, Boolean unadjusted,
+                                         Long limit, Sort sort,
+                                         PolygonAggregatesClient polygonClient, BarStore barStore) {
+        log.info("{} Bars", tickerName);
+        // Only the key of the request: bars are fetched page by page, whatever the limit
         AggregatesParameters idxParams = AggregatesParametersFactory.create(
                 tickerName,
                 multiplier,
@@ -174,38 +143,113 @@ public class PricesHttpClientUtil {
                 fromDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
                 toDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
                 unadjusted,
-                limit,
+                limit == null ? Long.MAX_VALUE : limit,
                 sort.getValue()
         );
 
-        AggregatesDTO aggregatesBlocking = polygonClient.getAggregatesBlocking(idxParams);
-        List<AggregateDTO> results = aggregatesBlocking.getResults();
-
-        List<List<Double>> barPrices = Arrays.asList(
-                results.stream().map(AggregateDTO::getOpen).collect(Collectors.toList()), // 0: open prices
-                results.stream().map(AggregateDTO::getHigh).collect(Collectors.toList()), // 1: high prices
-                results.stream().map(AggregateDTO::getLow).collect(Collectors.toList()), // 2: low prices
-                results.stream().map(AggregateDTO::getClose).collect(Collectors.toList()) // 3: close prices
-        );
-
-        barPrices.forEach(PricesHttpClientUtil::replaceNullWithPrevious);
+        // Identical requests in flight, e.g. several users backtesting the same range, share one fetch
+        return AGGREGATES_IN_FLIGHT.execute(idxParams, () -> {
+            // Bars already stored for the whole range, possibly finer ones resampled, save downloading this timeframe
+            BarSeries bars = barStore == null ? null
+                    : storedOrResampled(tickerName, multiplier, timespan, fromDate, toDate, unadjusted, barStore);
+            if (bars == null && barStore != null && BarStore.supports(timespan)) {
+                bars = barStore.getBars(
+                        BarSeriesKey.of(tickerName, multiplier, timespan, unadjusted),
+                        fromDate,
+                        toDate,
+                        new BarStore.BarFetcher() {
+                            @Override
+                            public BarSeries fetch(LocalDate from, LocalDate to) {
+                                return fetchAll(tickerName, multiplier, timespan, from, to, unadjusted, polygonClient);
+                            }
+
+                            @Override
+                            public BarSeries fetchFrom(long fromMillis, LocalDate to) {
+                                // Refresh of a series: only the bars from its latest one on
+                                return BarFetchPlanner.fetch(timespan, multiplier == null ? 1L : multiplier,
+                                        fromMillis, to, pageFetcher(tickerName, multiplier, timespan, unadjusted, polygonClient),
+                                        CHUNK_EXECUTOR, MAX_CONCURRENT_CHUNKS);
+                            }
+                        }
+                );
+            } else if (bars == null) {
+                bars = fetchAll(tickerName, multiplier, timespan, fromDate, toDate, unadjusted, polygonClient);
+            }
 
-        return barPrices;
+            // Limit and sort are applied to the complete bars the same way Polygon.io applies them
+            int n = (int) Math.min(bars.size(), limit == null ? Long.MAX_VALUE : limit);
+            return sort == Sort.DESC
+                    ? bars.range(bars.size() - n, bars.size()).reversed()
+                    : bars.range(0, n);
+        });
     }
 
-    private static void replaceNullWithPrevious(List<Double> list) {
-        if (list.isEmpty() || list.size() == 1) {
-            return;
-        }
-
-        if (list.get(0) == null) {
-            list.set(0, list.get(1));
+    /**
+     * Get the requested bars from the store without fetching: the series itself if it covers the whole range,
+     * otherwise the coarsest stored series that covers it and nests in the requested bars, resampled
+     * @return bars in ascending order, null if no stored series can serve the range
+     */
+    private static BarSeries storedOrResampled(String tickerName, Long multiplier,
+                                            Timespan timespan, LocalDate fromDate,
+                                            LocalDate toDate, Boolean unadjusted,
+                                            BarStore barStore) {
+        if (BarStore.supports(timespan)) {
+            BarSeries stored = barStore.getStoredBars(
+                    BarSeriesKey.of(tickerName, multiplier, timespan, unadjusted), fromDate, toDate);
+            if (stored != null) {
+                return stored;
+            }
         }
 
-        for (int i = 1; i < list.size(); i++) {
-            if (list.get(i) == null) {
-                list.set(i, list.get(i - 1));
+        long targetMultiplier = multiplier == null ? 1L : multiplier;
+        // Weeks, months, quarters and years are complete from the start of the period containing fromDate
+        LocalDate periodFrom = LocalDate.ofEpochDay(Math.floorDiv(
+                BarResampler.periodStart(fromDate.toEpochDay() * MILLIS_PER_DAY, targetMultiplier, timespan),
+                MILLIS_PER_DAY));
+        for (Timespan base : RESAMPLE_BASES) {
+            if ((base == timespan && targetMultiplier == 1L)
+                    || !BarResampler.canResample(1L, base, targetMultiplier, timespan)) {
+                continue;
+            }
+            BarSeries stored = barStore.getStoredBars(
+                    BarSeriesKey.of(tickerName, 1L, base, unadjusted), periodFrom, toDate);
+            if (stored != null) {
+                log.debug("{} {} {} bars resampled from stored {} bars", tickerName, targetMultiplier, timespan, base);
+                return BarResampler.resample(stored, targetMultiplier, timespan);
             }
         }
+        return null;
+    }
+
+    /**
+     * Fetch every bar of the days [fromDate, toDate] in ascending order, in concurrent chunks
+     * and pages when they do not fit in one Polygon.io response
+     */
+    private static BarSeries fetchAll(String tickerName, Long multiplier,
+                                      Timespan timespan, LocalDate fromDate,
+                                      LocalDate toDate, Boolean unadjusted,
+                                      PolygonAggregatesClient polygonClient) {
+        return BarFetchPlanner.fetch(timespan, multiplier == null ? 1L : multiplier, fromDate, toDate,
+                pageFetcher(tickerName, multiplier, timespan, unadjusted, polygonClient),
+                CHUNK_EXECUTOR, MAX_CONCURRENT_CHUNKS);
+    }
+
+    /**
+     * Fetcher of one page of bars in ascending order.
+     * Pages are streamed into primitive columns rather than decoded into the SDK's DTOs
+     */
+    private static BarFetchPlanner.PageFetcher pageFetcher(String tickerName, Long multiplier,
+                                                           Timespan timespan, Boolean unadjusted,
+                                                           PolygonAggregatesClient polygonClient) {
+        return (from, to) -> polygonClient.getAggregates(
+                tickerName,
+                multiplier == null ? 1L : multiplier,
+                timespan,
+                from,
+                to.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+                Boolean.TRUE.equals(unadjusted),
+                BarFetchPlanner.PAGE_LIMIT,
+                Sort.ASC
+        ).build();
     }
 }
@@ -1,16 +1,26 @@
 package org.imperial.fastquantanalysis.util;
 
-import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Globally unique ID generator
+ * Globally unique ID generator.
+ * IDs are (seconds since BEGIN_TIMESTAMP) << 32 | count, where count comes from a per-second Redis counter.
+ * Instead of one INCR per ID, a block of counts is leased with a single INCRBY and handed out locally,
+ * so Redis is only called once per block, or when the second changes.
  *
  * @author Emil S. He
  * @since 2025-03-17
@@ -24,18 +34,110 @@ public class RedisIdUtil {
     private static final long BEGIN_TIMESTAMP = 1739232000L;
     private static final int COUNT_BIT = 32;
 
-    @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Reserve a block of counts and make sure the key of the second does not live forever
+    private static final RedisScript<Long> LEASE_SCRIPT = new DefaultRedisScript<>(
+            "local last = redis.call('INCRBY', KEYS[1], ARGV[1]) " +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+                    "return last",
+            Long.class);
+
+    // Stale leases are dropped when there are more prefixes than this (user IDs use the email as prefix)
+    private static final int MAX_IDLE_PREFIXES = 1024;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final int leaseSize;
+
+    private final long leaseTtlSeconds;
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    // Renewals of the same prefix are serialized on one of these locks.
+    // Not monitors: a virtual thread blocked on Redis inside synchronized would pin its carrier thread
+    private final ReentrantLock[] renewLocks = new ReentrantLock[64];
+
+    /**
+     * Counts [next, last] of one second leased from Redis
+     */
+    private static final class Lease {
+        private final long second;
+        private final AtomicLong next;
+        private final long last;
+
+        private Lease(long second, long first, long last) {
+            this.second = second;
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
+    }
+
+    public RedisIdUtil(StringRedisTemplate stringRedisTemplate,
+                       @Value("${fast-quant.id.lease-size:1000}") int leaseSize,
+                       @Value("${fast-quant.id.lease-ttl-seconds:3600}") long leaseTtlSeconds) {
+        if (leaseSize < 1) {
+            throw new IllegalArgumentException("Lease size must be positive");
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.leaseSize = leaseSize;
+        this.leaseTtlSeconds = leaseTtlSeconds;
+        for (int i = 0; i < renewLocks.length; i++) {
+            renewLocks[i] = new ReentrantLock();
+        }
+    }
 
     public String nextId(String keyPrefix) {
         LocalDateTime now = LocalDateTime.now();
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
-        long timestamp = nowSecond -  BEGIN_TIMESTAMP;
+        long timestamp = nowSecond - BEGIN_TIMESTAMP;
 
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        long count = nextCount(keyPrefix, now, nowSecond);
         long result = timestamp << COUNT_BIT | count;
 
         return String.valueOf(result);
     }
+
+    private long nextCount(String keyPrefix, LocalDateTime now, long nowSecond) {
+        Lease lease = leases.get(keyPrefix);
+        if (lease != null && lease.second == nowSecond) {
+            long count = lease.next.getAndIncrement();
+            if (count <= lease.last) {
+                return count;
+            }
+        }
+
+        // Lease is missing, exhausted or from an earlier second: one thread per prefix renews it
+        ReentrantLock renewLock = renewLocks[(keyPrefix.hashCode() & 0x7fffffff) % renewLocks.length];
+        renewLock.lock();
+        try {
+            lease = leases.get(keyPrefix);
+            if (lease != null && lease.second == nowSecond) {
+                long count = lease.next.getAndIncrement();
+                if (count <= lease.last) {
+                    return count;
+                }
+            }
+
+            String key = "icr:" + keyPrefix + ":" + now.format(DATE_FORMATTER);
+            Long last = stringRedisTemplate.execute(LEASE_SCRIPT, List.of(key),
+                    String.valueOf(leaseSize), String.valueOf(leaseTtlSeconds));
+            if (last == null) {
+                throw new IllegalStateException("Failed to lease IDs from Redis for key " + key);
+            }
+
+            long first = last - leaseSize + 1;
+            if (leases.size() >= MAX_IDLE_PREFIXES) {
+                leases.values().removeIf(stale -> stale.second < nowSecond);
+            }
+            // The first count of the block is taken by this call;
+            // a caller still in the previous second must not replace a newer lease
+            if (lease == null || lease.second <= nowSecond) {
+                leases.put(keyPrefix, new Lease(nowSecond, first + 1, last));
+            }
+            return first;
+        } finally {
+            renewLock.unlock();
+        }
+    }
 }
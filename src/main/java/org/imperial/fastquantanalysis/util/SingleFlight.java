@@ -0,0 +1,110 @@
+package org.imperial.fastquantanalysis.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, further calls for the same key
+ * wait for it and share its result instead of running again.
+ * Only results are shared: a failure may belong to the caller that ran, e.g. its API key refused or its job
+ * cancelled, so the waiting calls then run again themselves, still coalesced with one another.
+ * Nothing is cached: the key is forgotten as soon as the call finishes, so the next call runs again.
+ * Results are shared between callers and must not be modified.
+ *
+ * @author Emil S. He
+ * @since 2025-04-26
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+
+    private final Counter coalesced;
+
+    /**
+     * @param name name of the calls, tag of the metrics
+     * @param meterRegistry registry of the metrics
+     */
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.leaders = Counter.builder("singleflight.calls")
+                .tag("name", name)
+                .tag("result", "executed")
+                .description("Calls that ran themselves")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("singleflight.calls")
+                .tag("name", name)
+                .tag("result", "coalesced")
+                .description("Calls that shared the result of an identical call in flight")
+                .register(meterRegistry);
+        Gauge.builder("singleflight.in.flight", inFlight, Map::size)
+                .tag("name", name)
+                .description("Distinct calls in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a call, or join the identical call in flight
+     * @param key identity of the call
+     * @param call the call, run on the calling thread if no identical call is in flight or the one joined failed
+     * @return result of the call
+     * @throws CancellationException if interrupted while waiting for an identical call
+     */
+    public V execute(K key, Supplier<V> call) {
+        while (true) {
+            CompletableFuture<V> own = new CompletableFuture<>();
+            CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+            if (running == null) {
+                return run(key, own, call);
+            }
+
+            coalesced.increment();
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for an identical call");
+            } catch (ExecutionException | CancellationException e) {
+                // The failure is the other caller's, e.g. its job cancelled: this call runs again or joins another that does
+            }
+        }
+    }
+
+    private V run(K key, CompletableFuture<V> own, Supplier<V> call) {
+        leaders.increment();
+        V value;
+        try {
+            value = call.get();
+        } catch (RuntimeException | Error e) {
+            // Forgotten first, so that the calls running again do not find the failed one
+            inFlight.remove(key, own);
+            own.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, own);
+        own.complete(value);
+        return value;
+    }
+
+    /**
+     * @return number of calls that ran themselves
+     */
+    public long getExecutedCount() {
+        return (long) leaders.count();
+    }
+
+    /**
+     * @return number of calls that shared the result of another
+     */
+    public long getCoalescedCount() {
+        return (long) coalesced.count();
+    }
+}
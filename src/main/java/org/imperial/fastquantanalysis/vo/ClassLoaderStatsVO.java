@@ -0,0 +1,27 @@
+package org.imperial.fastquantanalysis.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Class loaders of compiled user strategies and metaspace use
+ *
+ * @author Emil S. He
+ * @since 2025-04-25
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ClassLoaderStatsVO {
+
+    private long registered; // since startup
+    private long live;
+    private long released; // released but not collected yet
+    private long unloaded;
+    private long oldestReleasedAt; // epoch millis, 0 if none
+    private int loadedClasses;
+    private long unloadedClasses;
+    private long metaspaceUsedBytes; // -1 if unknown
+    private long metaspaceCommittedBytes; // -1 if unknown
+}
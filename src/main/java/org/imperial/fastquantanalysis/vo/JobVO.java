@@ -0,0 +1,33 @@
+package org.imperial.fastquantanalysis.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.imperial.fastquantanalysis.constant.JobPriority;
+import org.imperial.fastquantanalysis.constant.JobStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * State of a backtest job
+ *
+ * @author Emil S. He
+ * @since 2025-04-26
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class JobVO {
+
+    private String jobId;
+    private String type;
+    private JobPriority priority;
+    private JobStatus status;
+    private double progress; // 0 ~ 1
+    private String message;
+    private Object result; // response of the synchronous endpoint, once succeeded
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,24 @@
+package org.imperial.fastquantanalysis.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+
+import java.util.Map;
+
+/**
+ * One parameter set of a sweep and its result
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SweepEntryVO {
+
+    private int rank;
+    private Map<String, Double> parameters;
+    private QuantStrategy result;
+}
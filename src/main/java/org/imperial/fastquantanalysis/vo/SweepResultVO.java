@@ -0,0 +1,27 @@
+package org.imperial.fastquantanalysis.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.imperial.fastquantanalysis.constant.SweepMetric;
+
+import java.util.List;
+
+/**
+ * Ranked results of a parameter sweep
+ *
+ * @author Emil S. He
+ * @since 2025-04-22
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SweepResultVO {
+
+    private String strategyName;
+    private SweepMetric rankBy;
+    private int evaluated;
+    private int failed;
+    private long elapsedMillis;
+    private List<SweepEntryVO> entries;
+}
@@ -0,0 +1,25 @@
+package org.imperial.fastquantanalysis.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+
+import java.util.Map;
+
+/**
+ * One fold of a walk-forward run: the best in-sample parameters and how they did out of sample
+ *
+ * @author Emil S. He
+ * @since 2025-04-23
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalkForwardFoldVO {
+
+    private int fold;
+    private Map<String, Double> bestParameters;
+    private QuantStrategy inSample;
+    private QuantStrategy outOfSample;
+}
@@ -0,0 +1,28 @@
+package org.imperial.fastquantanalysis.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.imperial.fastquantanalysis.constant.SweepMetric;
+
+import java.util.List;
+
+/**
+ * Results of a walk-forward run
+ *
+ * @author Emil S. He
+ * @since 2025-04-23
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalkForwardResultVO {
+
+    private String strategyName;
+    private SweepMetric rankBy;
+    private int evaluated;
+    private long elapsedMillis;
+    // Out-of-sample cumulative returns of all folds compounded
+    private double outOfSampleCumulativeReturn;
+    private List<WalkForwardFoldVO> folds;
+}
@@ -0,0 +1,7 @@
+USE fast_quant_analysis;
+
+ALTER TABLE quant_strategy
+    ADD COLUMN sortino_ratio DOUBLE DEFAULT NULL AFTER sharpe_ratio,
+    ADD COLUMN calmar_ratio DOUBLE DEFAULT NULL AFTER sortino_ratio,
+    ADD COLUMN win_rate DOUBLE DEFAULT NULL AFTER trade_count,
+    ADD COLUMN exposure DOUBLE DEFAULT NULL AFTER win_rate;
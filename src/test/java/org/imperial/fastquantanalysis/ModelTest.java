@@ -1,11 +1,11 @@
 package org.imperial.fastquantanalysis;
 
-import io.polygon.kotlin.sdk.HttpClientProvider;
-import io.polygon.kotlin.sdk.rest.PolygonRestClient;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.imperial.fastquantanalysis.client.PolygonClientRegistry;
 import org.imperial.fastquantanalysis.constant.Sort;
 import org.imperial.fastquantanalysis.constant.Timespan;
+import org.imperial.fastquantanalysis.market.BarSeries;
 import org.imperial.fastquantanalysis.model.ModelConfig;
 import org.imperial.fastquantanalysis.model.ModelTraining;
 import org.imperial.fastquantanalysis.util.PricesHttpClientUtil;
@@ -14,7 +14,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.time.LocalDate;
-import java.util.List;
+import java.util.Arrays;
 
 import static org.imperial.fastquantanalysis.constant.PolygonConstant.POLYGON_API_KEY;
 
@@ -28,15 +28,12 @@ public class ModelTest {
     @Resource
     private ModelConfig modelConfig;
 
+    @Resource
+    private PolygonClientRegistry polygonClientRegistry;
+
     @Test
     void testLSTMModel() {
-        HttpClientProvider okHttpClientProvider = PricesHttpClientUtil.getOkHttpClientProvider();
-        PolygonRestClient polygonClient = new PolygonRestClient(
-                POLYGON_API_KEY,
-                okHttpClientProvider
-        );
-
-        List<List<Double>> barPrices = PricesHttpClientUtil.getBarPrices(
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
                 "X:BTCUSD",
                 null,
                 Timespan.DAY,
@@ -45,14 +42,14 @@ public class ModelTest {
                 null,
                 null,
                 Sort.ASC,
-                polygonClient
+                polygonClientRegistry.getAggregatesClient(POLYGON_API_KEY)
         );
 
-        System.out.println(barPrices);
+        System.out.println(Arrays.toString(bars.getClose()));
 
         TrainingResultVO trainingResultVO = modelTraining.train(
                 22,
-                barPrices,
+                bars,
                 () -> modelConfig.getLSTMRNNDefaultModel(2, 1),
                 5);
 
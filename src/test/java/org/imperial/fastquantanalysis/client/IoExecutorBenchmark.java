@@ -0,0 +1,64 @@
+package org.imperial.fastquantanalysis.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+/**
+ * 500 concurrent pair trading requests, each fetching two tickers from a Polygon answering in 100 ms.
+ * Compares the former fixed pool of 10 threads with the I/O executor, on a platform pool and on
+ * virtual threads (Java 21+ only). Run on the JDK to compare, e.g. 17 then 21
+ */
+public class IoExecutorBenchmark {
+
+    private static final int REQUESTS = 500;
+
+    private static final long LATENCY_MILLIS = 100;
+
+    public static void main(String[] args) {
+        ExecutorService fixedPool = Executors.newFixedThreadPool(10);
+        run("fixed pool of 10 (before)", fixedPool);
+        fixedPool.shutdown();
+
+        IoExecutor platform = new IoExecutor(false, 64, new SimpleMeterRegistry());
+        run("platform pool of 64", platform);
+        platform.shutdown();
+
+        IoExecutor virtual = new IoExecutor(true, 64, new SimpleMeterRegistry());
+        if (virtual.isVirtual()) {
+            run("virtual threads", virtual);
+        } else {
+            System.out.println("virtual threads: unavailable on Java " + Runtime.version().feature());
+        }
+        virtual.shutdown();
+    }
+
+    private static void run(String name, Executor executor) {
+        for (int round = 0; round < 3; round++) {
+            long startTime = System.nanoTime();
+            CompletableFuture<?>[] requests = IntStream.range(0, REQUESTS)
+                    .mapToObj(i -> fetch(executor).thenCombine(fetch(executor), Long::sum))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(requests).join();
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.printf("%s: %d requests in %.2f s, %.0f requests/s%n",
+                    name, REQUESTS, seconds, REQUESTS / seconds);
+        }
+    }
+
+    // A blocking HTTP call
+    private static CompletableFuture<Long> fetch(Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return LATENCY_MILLIS;
+        }, executor);
+    }
+}
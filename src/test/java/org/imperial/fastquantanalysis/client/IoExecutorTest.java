@@ -0,0 +1,67 @@
+package org.imperial.fastquantanalysis.client;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IoExecutorTest {
+
+    @Test
+    void testVirtualThreadsAreUsedWhenTheJdkHasThem() throws Exception {
+        IoExecutor ioExecutor = new IoExecutor(true, 4, new SimpleMeterRegistry());
+        try {
+            assertEquals(Runtime.version().feature() >= 21, ioExecutor.isVirtual());
+            assertEquals("fetched", CompletableFuture.supplyAsync(() -> "fetched", ioExecutor)
+                    .get(5, TimeUnit.SECONDS));
+        } finally {
+            ioExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void testFallbackPoolBoundsBlockingCalls() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        IoExecutor ioExecutor = new IoExecutor(false, 4, meterRegistry);
+        try {
+            assertFalse(ioExecutor.isVirtual());
+
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            Set<String> threadNames = ConcurrentHashMap.newKeySet();
+            CompletableFuture<?>[] fetches = IntStream.range(0, 20)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        threadNames.add(Thread.currentThread().getName());
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                    }, ioExecutor))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(fetches).get(5, TimeUnit.SECONDS);
+
+            assertTrue(maxRunning.get() <= 4);
+            assertTrue(threadNames.stream().allMatch(name -> name.startsWith("io-")));
+            // A task is counted down after it completed its future, so the gauge may lag slightly behind
+            Gauge tasks = meterRegistry.get("io.executor.tasks").tag("mode", "platform").gauge();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (tasks.value() != 0.0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(0.0, tasks.value());
+        } finally {
+            ioExecutor.shutdown();
+        }
+    }
+}
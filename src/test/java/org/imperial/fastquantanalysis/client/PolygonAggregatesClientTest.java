@@ -0,0 +1,96 @@
+package org.imperial.fastquantanalysis.client;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import org.imperial.fastquantanalysis.constant.Sort;
+import org.imperial.fastquantanalysis.constant.Timespan;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PolygonAggregatesClientTest {
+
+    private static final String PAGE = """
+            {"ticker":"X:BTCUSD","resultsCount":2,"results":[
+              {"v":1,"vw":100.5,"o":100,"c":101,"h":102,"l":99,"t":1704067200000,"n":3},
+              {"v":2,"vw":101.5,"o":101,"c":102,"h":103,"l":100,"t":1704153600000,"n":4}
+            ],"status":"OK"}
+            """;
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger throttled = new AtomicInteger();
+
+    private HttpServer server;
+
+    private PolygonAggregatesClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestURI().toString());
+            byte[] body;
+            if (throttled.getAndDecrement() > 0) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                body = "{\"status\":\"ERROR\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(429, body.length);
+            } else {
+                body = PAGE.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+            }
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        PolygonRateLimiter rateLimiter = new PolygonRateLimiter(6000, 10, 1000, 2, 10, 100, 5, 1000,
+                new SimpleMeterRegistry());
+        client = new PolygonAggregatesClient("key", new OkHttpClient(), rateLimiter.newBucket(),
+                HttpUrl.get("http://127.0.0.1:" + server.getAddress().getPort()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testPageIsStreamedIntoColumns() {
+        BarSeries bars = client.getAggregates("X:BTCUSD", 1, Timespan.DAY, "2024-01-01", "2024-01-02",
+                false, 50000, Sort.ASC).build();
+
+        assertEquals(2, bars.size());
+        assertArrayEquals(new double[]{101, 102}, bars.getClose());
+        assertEquals(1, requests.size());
+        assertEquals("/v2/aggs/ticker/X:BTCUSD/range/1/day/2024-01-01/2024-01-02"
+                + "?adjusted=true&sort=asc&limit=50000&apiKey=key", requests.get(0));
+    }
+
+    @Test
+    void testThrottledRequestsAreRetriedThenGiveUp() {
+        throttled.set(2);
+        assertEquals(2, client.getAggregates("X:BTCUSD", 1, Timespan.DAY, "2024-01-01", "2024-01-02",
+                false, 50000, Sort.ASC).size());
+        assertEquals(3, requests.size());
+
+        throttled.set(3);
+        assertThrows(StrategyRunningException.class, () -> client.getAggregates("X:BTCUSD", 1, Timespan.DAY,
+                "2024-01-01", "2024-01-02", false, 50000, Sort.ASC));
+    }
+}
@@ -0,0 +1,73 @@
+package org.imperial.fastquantanalysis.client;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PolygonClientRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final PolygonRateLimiter rateLimiter =
+            new PolygonRateLimiter(6000, 10, 1000, 2, 10, 100, 5, 1000, meterRegistry);
+
+    @Test
+    void testClosingTheClientOfOneKeyKeepsTheSharedClientOpen() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        PolygonClientRegistry registry = new PolygonClientRegistry(1, 30, 4, 5, 8, rateLimiter, meterRegistry);
+        try {
+            OkHttpClient shared = registry.getSharedOkHttpClient();
+            SharedOkHttpClientProvider provider = new SharedOkHttpClientProvider(shared, rateLimiter.newBucket());
+            provider.buildClient();
+            provider.close();
+
+            // What the Ktor OkHttp engine does to the OkHttp client it derived when it is closed
+            shared.newBuilder().build().dispatcher().executorService().shutdown();
+            assertFalse(shared.dispatcher().executorService().isShutdown());
+
+            // Asynchronous calls of the other keys still run on the shared dispatcher
+            CompletableFuture<Integer> code = new CompletableFuture<>();
+            shared.newCall(new Request.Builder().url(url).build())
+                    .enqueue(new Callback() {
+                        @Override
+                        public void onFailure(Call call, IOException e) {
+                            code.completeExceptionally(e);
+                        }
+
+                        @Override
+                        public void onResponse(Call call, Response response) {
+                            response.close();
+                            code.complete(response.code());
+                        }
+                    });
+            assertEquals(204, code.get(5, TimeUnit.SECONDS));
+
+            // Another key evicts the first one, whose clients are closed
+            assertNotNull(registry.getClient("first"));
+            assertNotNull(registry.getClient("second"));
+            assertEquals(1.0, meterRegistry.get("polygon.clients").gauge().value());
+        } finally {
+            registry.shutdown();
+            server.stop(0);
+        }
+        assertTrue(registry.getSharedOkHttpClient().dispatcher().executorService().isShutdown());
+    }
+}
@@ -0,0 +1,151 @@
+package org.imperial.fastquantanalysis.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PolygonRateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // 1200 requests per minute (20/s), burst of 2, 1 s longest wait, 2 retries, 3 failures open for 200 ms
+    private final PolygonRateLimiter rateLimiter =
+            new PolygonRateLimiter(1200, 2, 1000, 2, 40, 1000, 3, 200, meterRegistry);
+
+    @Test
+    void testBurstThenRateInArrivalOrder() throws Exception {
+        PolygonRateLimiter.Bucket bucket = rateLimiter.newBucket();
+        long start = System.nanoTime();
+        bucket.acquire();
+        bucket.acquire();
+        assertTrue(elapsedMillis(start) < 40, "the burst does not wait");
+
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        List<Thread> callers = IntStream.range(0, 4)
+                .mapToObj(i -> {
+                    Thread thread = new Thread(() -> {
+                        bucket.acquire();
+                        order.add(i);
+                    });
+                    thread.start();
+                    sleep(15);
+                    return thread;
+                })
+                .toList();
+        for (Thread caller : callers) {
+            caller.join(5000);
+        }
+        // 4 more requests at 20/s
+        assertTrue(elapsedMillis(start) >= 180);
+        assertEquals(List.of(0, 1, 2, 3), order);
+
+        // A fresh bucket of another key is not slowed down
+        long other = System.nanoTime();
+        rateLimiter.newBucket().acquire();
+        assertTrue(elapsedMillis(other) < 40);
+    }
+
+    @Test
+    void testThrottlingPausesAndSlowsDownUntilSuccessesRecover() {
+        PolygonRateLimiter.Bucket bucket = rateLimiter.newBucket();
+        assertEquals(20.0, bucket.getRate(), 1e-9);
+
+        assertEquals(0L, bucket.onThrottled(0, PolygonRateLimiter.parseRetryAfter("0")));
+        long backoff = bucket.onThrottled(1, null);
+        // 40 ms doubled once, with equal jitter
+        assertTrue(backoff >= 40 && backoff <= 80, "backoff " + backoff);
+        assertEquals(5.0, bucket.getRate(), 1e-9);
+
+        long start = System.nanoTime();
+        bucket.acquire();
+        assertTrue(elapsedMillis(start) >= backoff - 5, "waits out the pause");
+
+        for (int i = 0; i < 30; i++) {
+            bucket.onSuccess();
+        }
+        assertEquals(20.0, bucket.getRate(), 1e-9);
+        assertEquals(2.0, meterRegistry.get("polygon.rate.limit.events").tag("event", "throttled").counter().count());
+    }
+
+    @Test
+    void testCircuitOpensThenLetsOneProbeThrough() throws Exception {
+        PolygonRateLimiter.Bucket bucket = rateLimiter.newBucket();
+        bucket.onFailure();
+        bucket.onFailure();
+        assertFalse(bucket.isOpen());
+        bucket.onFailure();
+        assertTrue(bucket.isOpen());
+        assertThrows(StrategyRunningException.class, bucket::acquire);
+
+        Thread.sleep(250);
+        bucket.acquire();
+        // Only one probe while half open
+        assertThrows(StrategyRunningException.class, bucket::acquire);
+        bucket.onFailure();
+        assertTrue(bucket.isOpen(), "a failed probe opens the circuit again");
+
+        Thread.sleep(250);
+        bucket.acquire();
+        bucket.onSuccess();
+        assertFalse(bucket.isOpen());
+        bucket.acquire();
+        assertEquals(2.0, meterRegistry.get("polygon.rate.limit.events").tag("event", "breaker_opened").counter().count());
+    }
+
+    @Test
+    void testThrottledProbeRetriesAndAbandonedProbeIsReleased() throws Exception {
+        PolygonRateLimiter.Bucket bucket = rateLimiter.newBucket();
+        for (int i = 0; i < 3; i++) {
+            bucket.onFailure();
+        }
+        Thread.sleep(250);
+
+        // A 429 on the probe: its retry goes through, other requests still wait for the outcome
+        boolean probe = bucket.acquire();
+        assertTrue(probe);
+        bucket.onThrottled(0, 0L);
+        assertThrows(StrategyRunningException.class, bucket::acquire);
+        assertTrue(bucket.acquire(probe));
+        bucket.onSuccess();
+        assertFalse(bucket.acquire());
+
+        for (int i = 0; i < 3; i++) {
+            bucket.onFailure();
+        }
+        Thread.sleep(250);
+
+        // A probe ending without a response, e.g. cancelled, lets the next request probe
+        probe = bucket.acquire();
+        bucket.release(probe);
+        assertTrue(bucket.acquire());
+        assertThrows(StrategyRunningException.class, bucket::acquire);
+    }
+
+    @Test
+    void testRequestsOverTheLongestWaitAreRefused() {
+        PolygonRateLimiter.Bucket bucket = rateLimiter.newBucket();
+        bucket.onThrottled(0, TimeUnit.SECONDS.toMillis(5));
+        assertThrows(StrategyRunningException.class, bucket::acquire);
+        assertNull(PolygonRateLimiter.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertEquals(3000L, PolygonRateLimiter.parseRetryAfter(" 3 "));
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
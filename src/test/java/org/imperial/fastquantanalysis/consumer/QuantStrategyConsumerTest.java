@@ -0,0 +1,67 @@
+package org.imperial.fastquantanalysis.consumer;
+
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.imperial.fastquantanalysis.service.IQuantAnalysisCryptoService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+
+public class QuantStrategyConsumerTest {
+
+    private final List<String> persisted = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    private QuantStrategyConsumer consumer() {
+        IQuantAnalysisCryptoService service = Mockito.mock(IQuantAnalysisCryptoService.class);
+        // Like the multi-row statement: a strategy without a name fails every row of it
+        Mockito.when(service.upsertBatch(anyList())).thenAnswer(invocation -> {
+            List<QuantStrategy> rows = invocation.getArgument(0);
+            if (rows.stream().anyMatch(row -> row.getStrategyName() == null)) {
+                throw new DataIntegrityViolationException("Column 'strategy_name' cannot be null");
+            }
+            rows.forEach(row -> persisted.add(row.getStrategyId()));
+            return rows.size();
+        });
+        QuantStrategyConsumer consumer = new QuantStrategyConsumer();
+        ReflectionTestUtils.setField(consumer, "quantAnalysisCryptoService", service);
+        return consumer;
+    }
+
+    @Test
+    void testBatchIsPersistedWithOneStatement() {
+        consumer().handleQuantStrategies(strategies(5, -1));
+
+        assertEquals(List.of("0", "1", "2", "3", "4"), persisted);
+    }
+
+    @Test
+    void testBadRecordIsReportedAfterTheRecordsBeforeIt() {
+        BatchListenerFailedException e = assertThrows(BatchListenerFailedException.class,
+                () -> consumer().handleQuantStrategies(strategies(5, 3)));
+
+        // The error handler commits the first three and retries from the bad one
+        assertEquals(3, e.getIndex());
+        assertInstanceOf(DataIntegrityViolationException.class, e.getCause());
+        assertEquals(List.of("0", "1", "2"), persisted);
+    }
+
+    private static List<QuantStrategy> strategies(int n, int badIndex) {
+        return IntStream.range(0, n)
+                .mapToObj(i -> {
+                    QuantStrategy quantStrategy = new QuantStrategy();
+                    quantStrategy.setStrategyId(String.valueOf(i));
+                    quantStrategy.setStrategyName(i == badIndex ? null : "Bollinger Bands");
+                    return quantStrategy;
+                })
+                .toList();
+    }
+}
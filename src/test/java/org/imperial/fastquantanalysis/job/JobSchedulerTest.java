@@ -0,0 +1,189 @@
+package org.imperial.fastquantanalysis.job;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.imperial.fastquantanalysis.constant.JobPriority;
+import org.imperial.fastquantanalysis.constant.JobStatus;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.imperial.fastquantanalysis.vo.JobVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JobSchedulerTest {
+
+    // One thread, so queued jobs wait behind the running one
+    private final JobScheduler scheduler = new JobScheduler(1, 3, 30, 1000, new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testQueuedJobsRunByPriorityThenSubmission() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        JobVO blocker = scheduler.submit("blocker", null, () -> release.await(5, TimeUnit.SECONDS));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        JobVO low = scheduler.submit("low", JobPriority.LOW, () -> order.add("low"));
+        JobVO normal = scheduler.submit("normal", JobPriority.NORMAL, () -> order.add("normal"));
+        JobVO high = scheduler.submit("high", JobPriority.HIGH, () -> order.add("high"));
+        assertEquals(JobStatus.QUEUED, scheduler.get(low.getJobId()).getStatus());
+
+        // The queue holds 3 jobs at most
+        assertThrows(StrategyRunningException.class, () -> scheduler.submit("rejected", null, () -> null));
+
+        release.countDown();
+        awaitFinished(blocker.getJobId());
+        awaitFinished(low.getJobId());
+        awaitFinished(normal.getJobId());
+        awaitFinished(high.getJobId());
+        assertEquals(List.of("high", "normal", "low"), order);
+    }
+
+    @Test
+    void testProgressAndResultAreVisibleWhileAndAfterRunning() throws Exception {
+        CountDownLatch halfway = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        JobVO submitted = scheduler.submit("sweep", null, () -> {
+            JobProgress.current().update(0.5, "Half way");
+            halfway.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 42;
+        });
+        assertEquals(JobPriority.NORMAL, submitted.getPriority());
+
+        assertTrue(halfway.await(5, TimeUnit.SECONDS));
+        JobVO running = scheduler.get(submitted.getJobId());
+        assertEquals(JobStatus.RUNNING, running.getStatus());
+        assertEquals(0.5, running.getProgress());
+        assertEquals("Half way", running.getMessage());
+        assertNotNull(running.getStartedAt());
+
+        release.countDown();
+        JobVO finished = awaitFinished(submitted.getJobId());
+        assertEquals(JobStatus.SUCCEEDED, finished.getStatus());
+        assertEquals(1.0, finished.getProgress());
+        assertEquals(42, finished.getResult());
+
+        // Outside a job progress goes nowhere
+        assertSame(JobProgress.NONE, JobProgress.current());
+        assertThrows(StrategyRunningException.class, () -> scheduler.get("unknown"));
+    }
+
+    @Test
+    void testCancelledJobsStopOrNeverRun() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        JobVO running = scheduler.submit("running", null, () -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return "too late";
+        });
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        JobVO queued = scheduler.submit("queued", null, () -> queuedRan.getAndSet(true));
+        JobVO failing = scheduler.submit("failing", null, () -> {
+            throw new IllegalStateException("no bars");
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(JobStatus.CANCELLED, scheduler.cancel(queued.getJobId()).getStatus());
+        assertEquals(JobStatus.CANCELLED, scheduler.cancel(running.getJobId()).getStatus());
+
+        JobVO failed = awaitFinished(failing.getJobId());
+        assertEquals(JobStatus.FAILED, failed.getStatus());
+        assertEquals("no bars", failed.getError());
+
+        assertTrue(interrupted.get());
+        assertFalse(queuedRan.get());
+        JobVO cancelled = scheduler.get(running.getJobId());
+        assertEquals(JobStatus.CANCELLED, cancelled.getStatus());
+        assertNull(cancelled.getResult());
+    }
+
+    @Test
+    void testJobThrowingAnErrorFails() throws Exception {
+        JobVO failing = scheduler.submit("failing", null, () -> {
+            throw new NoClassDefFoundError("UserStrategy");
+        });
+
+        JobVO failed = awaitFinished(failing.getJobId());
+        assertEquals(JobStatus.FAILED, failed.getStatus());
+        assertEquals("java.lang.NoClassDefFoundError: UserStrategy", failed.getError());
+
+        // The thread that died of it is replaced
+        JobVO next = scheduler.submit("next", null, () -> "next");
+        assertEquals("next", awaitFinished(next.getJobId()).getResult());
+    }
+
+    @Test
+    void testStalledSubscriberDoesNotHoldUpTheJob() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch unstall = new CountDownLatch(1);
+        List<String> events = new CopyOnWriteArrayList<>();
+        JobVO submitted = scheduler.submit("sweep", null, () -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            for (int i = 1; i <= 100; i++) {
+                JobProgress.current().update(i / 100.0, "Step " + i);
+                assertFalse(JobProgress.current().isCancelled());
+            }
+            return "done";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // A client that stops reading: every send blocks until it is unstalled
+        scheduler.subscribe(submitted.getJobId(), new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                try {
+                    unstall.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                StringBuilder event = new StringBuilder();
+                builder.build().forEach(part -> event.append(part.getData()));
+                events.add(event.toString());
+            }
+        });
+        release.countDown();
+
+        JobVO finished = awaitFinished(submitted.getJobId());
+        assertEquals("done", finished.getResult());
+        assertTrue(events.isEmpty());
+
+        // Once unstalled the client catches up with the latest state rather than every step
+        unstall.countDown();
+        for (int i = 0; i < 500 && events.stream().noneMatch(event -> event.contains("succeeded")); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(events.stream().anyMatch(event -> event.contains("succeeded")));
+        assertTrue(events.size() <= 3, events.size() + " events");
+    }
+
+    private JobVO awaitFinished(String jobId) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            JobVO job = scheduler.get(jobId);
+            if (job.getStatus().isFinished()) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        fail("job " + jobId + " did not finish");
+        return null;
+    }
+}
@@ -0,0 +1,68 @@
+package org.imperial.fastquantanalysis.market;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AggregatesJsonDecoderTest {
+
+    @Test
+    void testBarsAreDecodedIntoColumns() throws IOException {
+        String json = """
+                {"ticker":"X:BTCUSD","queryCount":4,"resultsCount":4,"adjusted":true,
+                 "results":[
+                   {"v":12.5,"vw":100.2,"o":100,"c":101,"h":102,"l":99,"t":1704067200000,"n":42},
+                   {"v":3,"o":101,"c":null,"h":103,"l":100,"t":1704067260000,"extra":{"nested":[1,2]}},
+                   {"v":5,"o":90,"c":90,"h":90,"l":90,"t":null},
+                   {"v":7,"vw":104,"o":102,"c":104,"h":105,"l":101.5,"t":1704067320000,"n":8}
+                 ],
+                 "status":"OK","request_id":"abc","count":3}
+                """;
+        BarSeries bars = AggregatesJsonDecoder.decode(stream(json)).build();
+
+        // The bar without a timestamp is skipped
+        assertEquals(3, bars.size());
+        assertArrayEquals(new long[]{1704067200000L, 1704067260000L, 1704067320000L}, bars.getTimestamps());
+        assertArrayEquals(new double[]{100, 101, 102}, bars.getOpen());
+        assertArrayEquals(new double[]{102, 103, 105}, bars.getHigh());
+        assertArrayEquals(new double[]{99, 100, 101.5}, bars.getLow());
+        // A missing close takes the previous bar's
+        assertArrayEquals(new double[]{101, 101, 104}, bars.getClose());
+        assertArrayEquals(new double[]{12.5, 3, 7}, bars.getVolume());
+    }
+
+    @Test
+    void testColumnsGrowPastTheResultsCountAndLeadingGapsAreBackfilled() throws IOException {
+        StringBuilder json = new StringBuilder("{\"resultsCount\":1,\"results\":[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"t\":").append(i * 60_000L)
+                    .append(i < 2 ? "" : ",\"o\":" + i)
+                    .append(",\"h\":").append(i).append(",\"l\":").append(i)
+                    .append(",\"c\":").append(i).append(",\"v\":1}");
+        }
+        json.append("]}");
+
+        BarSeries bars = AggregatesJsonDecoder.decode(stream(json.toString())).build();
+        assertEquals(1000, bars.size());
+        assertEquals(999 * 60_000L, bars.getTimestamps()[999]);
+        assertEquals(2.0, bars.getOpen()[0]);
+        assertEquals(2.0, bars.getOpen()[1]);
+        assertEquals(999.0, bars.getClose()[999]);
+    }
+
+    @Test
+    void testResponseWithoutResultsIsEmpty() throws IOException {
+        assertTrue(AggregatesJsonDecoder.decode(stream("{\"status\":\"OK\",\"resultsCount\":0}")).build().isEmpty());
+        assertThrows(IOException.class, () -> AggregatesJsonDecoder.decode(stream("[]")));
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
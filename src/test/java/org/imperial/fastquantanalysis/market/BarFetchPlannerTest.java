@@ -0,0 +1,161 @@
+package org.imperial.fastquantanalysis.market;
+
+import org.imperial.fastquantanalysis.constant.Timespan;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BarFetchPlannerTest {
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    @Test
+    void testChunksAreAlignedAndFitInAPage() {
+        // 27 days of minute bars fill 80% of a page
+        List<LocalDate[]> chunks = BarFetchPlanner.plan(Timespan.MINUTE, LocalDate.of(2023, 1, 1), LocalDate.of(2024, 12, 31));
+        assertEquals(LocalDate.of(2023, 1, 1), chunks.get(0)[0]);
+        assertEquals(LocalDate.of(2024, 12, 31), chunks.get(chunks.size() - 1)[1]);
+        for (int i = 0; i < chunks.size(); i++) {
+            LocalDate[] chunk = chunks.get(i);
+            assertTrue(chunk[1].toEpochDay() - chunk[0].toEpochDay() < 27);
+            if (i > 0) {
+                assertEquals(chunks.get(i - 1)[1].plusDays(1), chunk[0]);
+                assertEquals(0, chunk[0].toEpochDay() % 27, "chunks start on multiples of their length");
+            }
+        }
+
+        // The same days fall in the same chunk whatever the requested range
+        List<LocalDate[]> shifted = BarFetchPlanner.plan(Timespan.MINUTE, LocalDate.of(2023, 3, 1), LocalDate.of(2023, 6, 30));
+        assertTrue(chunks.stream().anyMatch(chunk -> Arrays.equals(chunk, shifted.get(1))));
+
+        assertEquals(1, BarFetchPlanner.plan(Timespan.DAY, LocalDate.of(2000, 1, 1), LocalDate.of(2024, 12, 31)).size());
+        assertEquals(3, BarFetchPlanner.plan(Timespan.SECOND, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 3)).size());
+    }
+
+    @Test
+    void testLongHistoryIsCompleteWithBoundedConcurrency() {
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        BarFetchPlanner.PageFetcher polygon = (from, to) -> {
+            requests.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(2);
+                return minuteBars(from, to);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        };
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            LocalDate from = LocalDate.of(2024, 1, 1);
+            LocalDate to = LocalDate.of(2024, 6, 30);
+            BarSeries bars = BarFetchPlanner.fetch(Timespan.MINUTE, 1, from, to, polygon, executor, 3);
+
+            long days = to.toEpochDay() - from.toEpochDay() + 1;
+            assertEquals(days * 1440, bars.size());
+            long[] timestamps = bars.getTimestamps();
+            assertEquals(from.toEpochDay() * MILLIS_PER_DAY, timestamps[0]);
+            for (int i = 1; i < timestamps.length; i++) {
+                assertEquals(MILLIS_PER_MINUTE, timestamps[i] - timestamps[i - 1]);
+            }
+            assertTrue(maxInFlight.get() <= 3);
+            assertEquals(BarFetchPlanner.plan(Timespan.MINUTE, from, to).size(), requests.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testFullPagesAreFollowedAndBoundaryBarsKeptOnce() {
+        // 2 days of second bars: 172,800 bars, four pages
+        AtomicInteger requests = new AtomicInteger();
+        LocalDate day = LocalDate.of(2024, 1, 1);
+        BarSeries bars = BarFetchPlanner.fetchChunk(day, day.plusDays(1), 1, (from, to) -> {
+            requests.incrementAndGet();
+            long start = from.contains("-") ? LocalDate.parse(from).toEpochDay() * MILLIS_PER_DAY : Long.parseLong(from);
+            // The page repeats the last bar of the previous one
+            return bars(Math.max(day.toEpochDay() * MILLIS_PER_DAY, Math.floorDiv(start - 1, 1000) * 1000), 1000,
+                    (to.toEpochDay() + 1) * MILLIS_PER_DAY);
+        });
+
+        assertEquals(172_800, bars.size());
+        assertEquals(4, requests.get());
+        long[] timestamps = bars.getTimestamps();
+        for (int i = 1; i < timestamps.length; i++) {
+            assertEquals(1000, timestamps[i] - timestamps[i - 1]);
+        }
+    }
+
+    @Test
+    void testFetchFromATimestampStartsTheFirstChunkThere() {
+        List<String> pageFroms = new CopyOnWriteArrayList<>();
+        long from = LocalDate.of(2024, 2, 10).toEpochDay() * MILLIS_PER_DAY + 600 * MILLIS_PER_MINUTE;
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            BarSeries bars = BarFetchPlanner.fetch(Timespan.MINUTE, 1, from, LocalDate.of(2024, 2, 12), (pageFrom, to) -> {
+                pageFroms.add(pageFrom);
+                return minuteBars(pageFrom, to);
+            }, executor, 2);
+
+            assertEquals(from, bars.getTimestamps()[0]);
+            assertEquals(840 + 2 * 1440, bars.size());
+            // The 27-day chunks are split at 2024-02-11
+            assertTrue(pageFroms.containsAll(List.of(String.valueOf(from), "2024-02-11")));
+            assertEquals(2, pageFroms.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testFailedChunkFailsTheFetch() {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            AtomicInteger requests = new AtomicInteger();
+            assertThrows(IllegalStateException.class, () -> BarFetchPlanner.fetch(Timespan.MINUTE, 1,
+                    LocalDate.of(2020, 1, 1), LocalDate.of(2024, 12, 31), (from, to) -> {
+                        if (requests.incrementAndGet() == 2) {
+                            throw new IllegalStateException("429");
+                        }
+                        return BarSeries.empty();
+                    }, executor, 2));
+            // The remaining chunks are not requested
+            assertTrue(requests.get() < BarFetchPlanner.plan(Timespan.MINUTE,
+                    LocalDate.of(2020, 1, 1), LocalDate.of(2024, 12, 31)).size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Minute bars of a Polygon.io page: from a day or a timestamp to the end of a day, at most a page
+    private static BarSeries minuteBars(String from, LocalDate to) {
+        long start = from.contains("-") ? LocalDate.parse(from).toEpochDay() * MILLIS_PER_DAY : Long.parseLong(from);
+        return bars(start, MILLIS_PER_MINUTE, (to.toEpochDay() + 1) * MILLIS_PER_DAY);
+    }
+
+    private static BarSeries bars(long start, long step, long end) {
+        int n = (int) Math.min(BarFetchPlanner.PAGE_LIMIT, (end - start + step - 1) / step);
+        long[] timestamps = new long[n];
+        double[] prices = new double[n];
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = start + i * step;
+            prices[i] = 100 + i % 10;
+        }
+        return new BarSeries(timestamps, prices, prices, prices, prices, prices);
+    }
+}
@@ -0,0 +1,111 @@
+package org.imperial.fastquantanalysis.market;
+
+import org.imperial.fastquantanalysis.constant.Timespan;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BarResamplerTest {
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testMinuteBarsAreAggregatedIntoFiveMinuteBars() {
+        // Minutes 0-6 and 12, minutes 7-11 have no trades
+        long day = LocalDate.of(2024, 1, 1).toEpochDay() * MILLIS_PER_DAY;
+        long[] timestamps = new long[8];
+        for (int i = 0; i < 7; i++) {
+            timestamps[i] = day + i * MILLIS_PER_MINUTE;
+        }
+        timestamps[7] = day + 12 * MILLIS_PER_MINUTE;
+        BarSeries minutes = new BarSeries(timestamps,
+                new double[]{10, 11, 12, 13, 14, 15, 16, 17},
+                new double[]{11, 15, 13, 14, 15, 16, 20, 18},
+                new double[]{9, 10, 8, 12, 13, 14, 15, 16},
+                new double[]{11, 12, 13, 14, 15, 16, 17, 18},
+                new double[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        BarSeries fiveMinutes = BarResampler.resample(minutes, 5, Timespan.MINUTE);
+
+        assertArrayEquals(new long[]{day, day + 5 * MILLIS_PER_MINUTE, day + 10 * MILLIS_PER_MINUTE},
+                fiveMinutes.getTimestamps());
+        assertArrayEquals(new double[]{10, 15, 17}, fiveMinutes.getOpen());
+        assertArrayEquals(new double[]{15, 20, 18}, fiveMinutes.getHigh());
+        assertArrayEquals(new double[]{8, 14, 16}, fiveMinutes.getLow());
+        assertArrayEquals(new double[]{15, 17, 18}, fiveMinutes.getClose());
+        assertArrayEquals(new double[]{15, 13, 8}, fiveMinutes.getVolume());
+    }
+
+    @Test
+    void testSessionsFollowCalendarBoundaries() {
+        // 2024-01-01 is a Monday, 2024 is a leap year
+        LocalDate first = LocalDate.of(2023, 12, 30);
+        int days = 100;
+        long[] timestamps = new long[days];
+        double[] prices = new double[days];
+        for (int i = 0; i < days; i++) {
+            timestamps[i] = first.plusDays(i).toEpochDay() * MILLIS_PER_DAY;
+            prices[i] = i;
+        }
+        BarSeries daily = new BarSeries(timestamps, prices, prices, prices, prices, prices);
+
+        BarSeries weekly = BarResampler.resample(daily, 1, Timespan.WEEK);
+        assertEquals(LocalDate.of(2023, 12, 25).toEpochDay() * MILLIS_PER_DAY, weekly.getTimestamps()[0]);
+        assertEquals(LocalDate.of(2024, 1, 1).toEpochDay() * MILLIS_PER_DAY, weekly.getTimestamps()[1]);
+        assertEquals(1.0, weekly.getClose()[0]);
+        assertEquals(2.0, weekly.getOpen()[1]);
+        assertEquals(7 * 2 + 21, weekly.getVolume()[1]);
+
+        BarSeries monthly = BarResampler.resample(daily, 1, Timespan.MONTH);
+        assertEquals(5, monthly.size());
+        assertEquals(LocalDate.of(2024, 2, 1).toEpochDay() * MILLIS_PER_DAY, monthly.getTimestamps()[2]);
+        assertEquals(2 + 31 + 28, monthly.getClose()[2]);
+
+        BarSeries quarterly = BarResampler.resample(daily, 1, Timespan.QUARTER);
+        assertEquals(LocalDate.of(2024, 4, 1).toEpochDay() * MILLIS_PER_DAY, quarterly.getTimestamps()[2]);
+
+        BarSeries fourHourly = BarResampler.resample(daily, 4, Timespan.HOUR);
+        assertArrayEquals(daily.getTimestamps(), fourHourly.getTimestamps());
+    }
+
+    @Test
+    void testOnlyNestedTimeframesCanBeResampled() {
+        assertTrue(BarResampler.canResample(1, Timespan.MINUTE, 5, Timespan.MINUTE));
+        assertTrue(BarResampler.canResample(1, Timespan.MINUTE, 4, Timespan.HOUR));
+        assertTrue(BarResampler.canResample(1, Timespan.HOUR, 1, Timespan.WEEK));
+        assertTrue(BarResampler.canResample(1, Timespan.DAY, 1, Timespan.YEAR));
+        assertFalse(BarResampler.canResample(7, Timespan.MINUTE, 1, Timespan.HOUR));
+        assertFalse(BarResampler.canResample(1, Timespan.HOUR, 1, Timespan.MINUTE));
+        assertFalse(BarResampler.canResample(2, Timespan.DAY, 1, Timespan.WEEK));
+        assertFalse(BarResampler.canResample(1, Timespan.WEEK, 1, Timespan.MONTH));
+    }
+
+    @Test
+    void testStoredBarsAreServedOnlyWhenCovered() throws IOException {
+        BarSeriesKey key = new BarSeriesKey("X:BTCUSD", 1, Timespan.DAY, true);
+        BarStore barStore = new BarStore(directory.toString());
+        barStore.getBars(key, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), (from, to) -> {
+            int n = (int) (to.toEpochDay() - from.toEpochDay() + 1);
+            long[] timestamps = new long[n];
+            double[] prices = new double[n];
+            for (int i = 0; i < n; i++) {
+                timestamps[i] = (from.toEpochDay() + i) * MILLIS_PER_DAY;
+                prices[i] = 100;
+            }
+            return new BarSeries(timestamps, prices, prices, prices, prices, prices);
+        });
+
+        assertEquals(10, barStore.getStoredBars(key, LocalDate.of(2024, 1, 5), LocalDate.of(2024, 1, 14)).size());
+        assertNull(barStore.getStoredBars(key, LocalDate.of(2024, 1, 25), LocalDate.of(2024, 2, 5)));
+    }
+}
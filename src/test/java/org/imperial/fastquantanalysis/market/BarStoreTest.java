@@ -0,0 +1,222 @@
+package org.imperial.fastquantanalysis.market;
+
+import org.imperial.fastquantanalysis.constant.Timespan;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BarStoreTest {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    private static final BarSeriesKey KEY = new BarSeriesKey("X:BTCUSD", 1, Timespan.DAY, true);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testOnlyMissingRangesAreFetched() throws IOException {
+        List<LocalDate[]> fetched = new ArrayList<>();
+        BarStore.BarFetcher fetcher = (from, to) -> {
+            fetched.add(new LocalDate[]{from, to});
+            return dailyBars(from, to);
+        };
+
+        BarStore barStore = new BarStore(directory.toString());
+        BarSeries first = barStore.getBars(KEY, LocalDate.of(2024, 1, 10), LocalDate.of(2024, 1, 20), fetcher);
+        assertEquals(11, first.size());
+        assertEquals(1, fetched.size());
+
+        // A new store instance reads the covered ranges back from disk
+        BarStore reopened = new BarStore(directory.toString());
+        BarSeries second = reopened.getBars(KEY, LocalDate.of(2024, 1, 5), LocalDate.of(2024, 1, 25), fetcher);
+        assertEquals(21, second.size());
+        assertEquals(3, fetched.size());
+        assertEquals(LocalDate.of(2024, 1, 5), fetched.get(1)[0]);
+        assertEquals(LocalDate.of(2024, 1, 9), fetched.get(1)[1]);
+        assertEquals(LocalDate.of(2024, 1, 21), fetched.get(2)[0]);
+        assertEquals(LocalDate.of(2024, 1, 25), fetched.get(2)[1]);
+
+        BarSeries third = reopened.getBars(KEY, LocalDate.of(2024, 1, 12), LocalDate.of(2024, 1, 14), fetcher);
+        assertEquals(3, third.size());
+        assertEquals(3, fetched.size());
+        assertEquals(LocalDate.of(2024, 1, 12).toEpochDay() * MILLIS_PER_DAY, third.getTimestamps()[0]);
+    }
+
+    @Test
+    void testUnfinishedDaysAreFetchedAgain() throws IOException {
+        List<LocalDate[]> fetched = new ArrayList<>();
+        BarStore.BarFetcher fetcher = (from, to) -> {
+            fetched.add(new LocalDate[]{from, to});
+            return dailyBars(from, to);
+        };
+
+        LocalDate today = LocalDate.now(java.time.ZoneOffset.UTC);
+        BarStore barStore = new BarStore(directory.toString());
+        barStore.getBars(KEY, today.minusDays(5), today, fetcher);
+        barStore.getBars(KEY, today.minusDays(5), today, fetcher);
+
+        assertEquals(2, fetched.size());
+        assertEquals(today, fetched.get(1)[0]);
+        assertEquals(today, fetched.get(1)[1]);
+    }
+
+    @Test
+    void testFormingBarIsRefreshedAndNewBarsAppended() throws IOException {
+        // Two days and more of minute bars fill a few blocks
+        BarSeriesKey minutes = new BarSeriesKey("X:BTCUSD", 1, Timespan.MINUTE, true);
+        long currentMinute = Math.floorDiv(System.currentTimeMillis(), MILLIS_PER_MINUTE) * MILLIS_PER_MINUTE;
+        List<Long> refreshedFrom = new ArrayList<>();
+        BarStore.BarFetcher fetcher = new BarStore.BarFetcher() {
+            @Override
+            public BarSeries fetch(LocalDate from, LocalDate to) {
+                return minuteBars(from.toEpochDay() * MILLIS_PER_DAY, currentMinute, 100);
+            }
+
+            @Override
+            public BarSeries fetchFrom(long fromMillis, LocalDate to) {
+                refreshedFrom.add(fromMillis);
+                // The forming bar has moved on and a new one has started
+                return minuteBars(fromMillis, currentMinute + MILLIS_PER_MINUTE, 200);
+            }
+        };
+
+        LocalDate today = LocalDate.now(java.time.ZoneOffset.UTC);
+        BarStore barStore = new BarStore(directory.toString());
+        BarSeries first = barStore.getBars(minutes, today.minusDays(2), today, fetcher);
+        Path file = directory.resolve(minutes.fileName() + ".bars");
+        byte[] before = Files.readAllBytes(file);
+
+        BarSeries second = new BarStore(directory.toString()).getBars(minutes, today.minusDays(2), today.plusDays(1), fetcher);
+
+        assertEquals(List.of(currentMinute), refreshedFrom);
+        assertEquals(first.size() + 1, second.size());
+        assertEquals(200, second.getClose()[first.size() - 1]);
+        assertEquals(100, second.getClose()[first.size() - 2]);
+        assertArrayEquals(first.getTimestamps(), Arrays.copyOf(second.getTimestamps(), first.size()));
+
+        // Only the last block is written again, the blocks before it stay as they were
+        byte[] after = Files.readAllBytes(file);
+        int fullBlocks = (first.size() - 1) / BarBlockFile.BLOCK_BARS;
+        assertTrue(fullBlocks >= 2);
+        int lastBlockOffset = 0;
+        for (int i = 0; i < before.length && i < after.length && before[i] == after[i]; i++) {
+            lastBlockOffset = i + 1;
+        }
+        assertTrue(lastBlockOffset >= before.length * fullBlocks / (fullBlocks + 1) - 16,
+                "rewritten from byte " + lastBlockOffset + " of " + before.length);
+        // Evenly spaced bars of repeated prices compress far below 48 bytes each
+        assertTrue(after.length < second.size() * 4);
+    }
+
+    @Test
+    void testDaysBeforeFormingBarAreFetched() throws IOException {
+        BarSeriesKey hours = new BarSeriesKey("X:BTCUSD", 1, Timespan.HOUR, true);
+        long currentHour = Math.floorDiv(System.currentTimeMillis(), MILLIS_PER_HOUR) * MILLIS_PER_HOUR;
+        List<LocalDate[]> fetched = new ArrayList<>();
+        List<Long> refreshedFrom = new ArrayList<>();
+        BarStore.BarFetcher fetcher = new BarStore.BarFetcher() {
+            @Override
+            public BarSeries fetch(LocalDate from, LocalDate to) {
+                fetched.add(new LocalDate[]{from, to});
+                long last = Math.min(currentHour, (to.toEpochDay() + 1) * MILLIS_PER_DAY - MILLIS_PER_HOUR);
+                return bars(from.toEpochDay() * MILLIS_PER_DAY, last, MILLIS_PER_HOUR, 100);
+            }
+
+            @Override
+            public BarSeries fetchFrom(long fromMillis, LocalDate to) {
+                refreshedFrom.add(fromMillis);
+                return bars(fromMillis, currentHour, MILLIS_PER_HOUR, 200);
+            }
+        };
+
+        LocalDate today = LocalDate.now(java.time.ZoneOffset.UTC);
+        BarStore barStore = new BarStore(directory.toString());
+        BarSeries first = barStore.getBars(hours, today, today, fetcher);
+        // The gap starts days before the forming bar
+        BarSeries second = barStore.getBars(hours, today.minusDays(5), today, fetcher);
+
+        assertEquals(List.of(currentHour), refreshedFrom);
+        assertEquals(2, fetched.size());
+        assertEquals(today.minusDays(5), fetched.get(1)[0]);
+        assertEquals(today.minusDays(1), fetched.get(1)[1]);
+        assertEquals(5 * 24 + first.size(), second.size());
+        assertEquals(today.minusDays(5).toEpochDay() * MILLIS_PER_DAY, second.getTimestamps()[0]);
+
+        BarSeries stored = barStore.getStoredBars(hours, today.minusDays(5), today.minusDays(1));
+        assertNotNull(stored);
+        assertEquals(5 * 24, stored.size());
+    }
+
+    @Test
+    void testTickersDifferingOnlyInPunctuationAreStoredApart() throws IOException {
+        BarSeriesKey dash = new BarSeriesKey("X:BTC-USD", 1, Timespan.DAY, true);
+        BarSeriesKey underscore = new BarSeriesKey("X:BTC_USD", 1, Timespan.DAY, true);
+        BarSeriesKey lowerCase = new BarSeriesKey("X:btc-usd", 1, Timespan.DAY, true);
+        assertNotEquals(dash.fileName(), underscore.fileName());
+        assertNotEquals(dash.fileName().toLowerCase(), lowerCase.fileName().toLowerCase());
+        assertTrue(dash.fileName().matches("[A-Za-z0-9_-]+"));
+
+        LocalDate day = LocalDate.of(2024, 1, 10);
+        BarStore barStore = new BarStore(directory.toString());
+        barStore.getBars(dash, day, day, (from, to) -> dailyBars(from, to));
+        List<LocalDate[]> fetched = new ArrayList<>();
+        barStore.getBars(underscore, day, day, (from, to) -> {
+            fetched.add(new LocalDate[]{from, to});
+            return dailyBars(from, to);
+        });
+        assertEquals(1, fetched.size(), "another ticker is not served from the first one's file");
+    }
+
+    @Test
+    void testMergeKeepsNewerBars() {
+        BarSeries older = new BarSeries(new long[]{1, 2, 3}, new double[]{1, 1, 1}, new double[]{1, 1, 1},
+                new double[]{1, 1, 1}, new double[]{1, 1, 1}, new double[]{1, 1, 1});
+        BarSeries newer = new BarSeries(new long[]{3, 4}, new double[]{2, 2}, new double[]{2, 2},
+                new double[]{2, 2}, new double[]{2, 2}, new double[]{2, 2});
+
+        BarSeries merged = older.merge(newer);
+
+        assertArrayEquals(new long[]{1, 2, 3, 4}, merged.getTimestamps());
+        assertArrayEquals(new double[]{1, 1, 2, 2}, merged.getClose());
+    }
+
+    private static BarSeries minuteBars(long fromMillis, long lastMillis, double price) {
+        return bars(fromMillis, lastMillis, MILLIS_PER_MINUTE, price);
+    }
+
+    private static BarSeries bars(long fromMillis, long lastMillis, long stepMillis, double price) {
+        int n = (int) ((lastMillis - fromMillis) / stepMillis + 1);
+        long[] timestamps = new long[n];
+        double[] prices = new double[n];
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = fromMillis + i * stepMillis;
+            prices[i] = price;
+        }
+        return new BarSeries(timestamps, prices, prices, prices, prices, prices);
+    }
+
+    private static BarSeries dailyBars(LocalDate from, LocalDate to) {
+        int n = (int) (to.toEpochDay() - from.toEpochDay() + 1);
+        long[] timestamps = new long[n];
+        double[] prices = new double[n];
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = (from.toEpochDay() + i) * MILLIS_PER_DAY;
+            prices[i] = 100 + i;
+        }
+        return new BarSeries(timestamps, prices, prices.clone(), prices.clone(), prices.clone(), prices.clone());
+    }
+}
@@ -0,0 +1,83 @@
+package org.imperial.fastquantanalysis.market;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A year of minute bars (525,600 bars) in blocks of {@link BarBlockFile#BLOCK_BARS}.
+ * Compares the size and decode speed of the former raw layout (a long and five doubles per bar)
+ * with the Gorilla blocks, and the cost of decoding a single day out of the year
+ */
+public class GorillaCodecBenchmark {
+
+    private static final int BARS = 365 * 24 * 60;
+
+    private static final int RAW_BAR_BYTES = 48;
+
+    public static void main(String[] args) {
+        BarSeries bars = GorillaCodecTest.randomWalk(BARS, 42);
+        int blockCount = (BARS + BarBlockFile.BLOCK_BARS - 1) / BarBlockFile.BLOCK_BARS;
+        byte[][] blocks = new byte[blockCount][];
+
+        for (int round = 0; round < 5; round++) {
+            long startTime = System.nanoTime();
+            long size = 0;
+            for (int b = 0; b < blockCount; b++) {
+                int from = b * BarBlockFile.BLOCK_BARS;
+                blocks[b] = GorillaCodec.encode(bars, from, Math.min(BARS, from + BarBlockFile.BLOCK_BARS));
+                size += blocks[b].length;
+            }
+            double encodeSeconds = (System.nanoTime() - startTime) / 1e9;
+
+            startTime = System.nanoTime();
+            long checksum = 0;
+            for (byte[] block : blocks) {
+                checksum += GorillaCodec.decode(block).size();
+            }
+            double decodeSeconds = (System.nanoTime() - startTime) / 1e9;
+
+            byte[] raw = toRaw(bars);
+            startTime = System.nanoTime();
+            checksum += fromRaw(raw).size();
+            double rawSeconds = (System.nanoTime() - startTime) / 1e9;
+
+            // One day is at most two blocks
+            startTime = System.nanoTime();
+            int day = blockCount / 2;
+            checksum += BarSeries.concat(List.of(GorillaCodec.decode(blocks[day]),
+                    GorillaCodec.decode(blocks[day + 1]))).size();
+            double daySeconds = (System.nanoTime() - startTime) / 1e9;
+
+            System.out.printf("gorilla: %.1f MB (%.1f bytes/bar, %.2fx smaller than raw %.1f MB)%n",
+                    size / 1e6, (double) size / BARS, (double) BARS * RAW_BAR_BYTES / size, BARS * RAW_BAR_BYTES / 1e6);
+            System.out.printf("  encode %.0f bars/s, decode %.0f bars/s (%.0f MB/s of bars), raw decode %.0f bars/s%n",
+                    BARS / encodeSeconds, BARS / decodeSeconds, BARS * RAW_BAR_BYTES / decodeSeconds / 1e6, BARS / rawSeconds);
+            System.out.printf("  one day out of the year in %.3f ms (check %d)%n", daySeconds * 1e3, checksum);
+        }
+    }
+
+    private static byte[] toRaw(BarSeries bars) {
+        ByteBuffer buffer = ByteBuffer.allocate(bars.size() * RAW_BAR_BYTES);
+        for (int i = 0; i < bars.size(); i++) {
+            buffer.putLong(bars.getTimestamps()[i]).putDouble(bars.getOpen()[i]).putDouble(bars.getHigh()[i])
+                    .putDouble(bars.getLow()[i]).putDouble(bars.getClose()[i]).putDouble(bars.getVolume()[i]);
+        }
+        return buffer.array();
+    }
+
+    private static BarSeries fromRaw(byte[] raw) {
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        int n = raw.length / RAW_BAR_BYTES;
+        long[] timestamps = new long[n];
+        double[] open = new double[n], high = new double[n], low = new double[n], close = new double[n], volume = new double[n];
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = buffer.getLong();
+            open[i] = buffer.getDouble();
+            high[i] = buffer.getDouble();
+            low[i] = buffer.getDouble();
+            close[i] = buffer.getDouble();
+            volume[i] = buffer.getDouble();
+        }
+        return new BarSeries(timestamps, open, high, low, close, volume);
+    }
+}
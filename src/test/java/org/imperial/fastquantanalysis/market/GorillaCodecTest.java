@@ -0,0 +1,135 @@
+package org.imperial.fastquantanalysis.market;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GorillaCodecTest {
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testBlocksRoundTripExactly() {
+        // Irregular gaps, negative and special values
+        long[] timestamps = {0, 60_000, 120_000, 120_001, 180_000, 5_000_000_000L, 5_000_060_000L, -1 + Long.MAX_VALUE / 2};
+        double[] open = {1.5, 1.5, -2.25, Double.NaN, 0.0, -0.0, Double.MAX_VALUE, Double.MIN_VALUE};
+        double[] high = {27_123.45, 27_130.01, 27_128.9, 27_140.0, 27_140.0, 27_139.99, 1e-9, Double.POSITIVE_INFINITY};
+        double[] low = {1, 2, 3, 4, 5, 6, 7, 8};
+        double[] close = {0.1, 0.2, 0.30000000000000004, 0.4, 0.5, 0.6, 0.7, 0.8};
+        double[] volume = {0, 0, 0, 0, 1e12, 0, 0, 3.14159};
+        BarSeries bars = new BarSeries(timestamps, open, high, low, close, volume);
+
+        BarSeries decoded = GorillaCodec.decode(GorillaCodec.encode(bars, 0, bars.size()));
+        assertArrayEquals(timestamps, decoded.getTimestamps());
+        for (int i = 0; i < bars.size(); i++) {
+            assertEquals(Double.doubleToRawLongBits(open[i]), Double.doubleToRawLongBits(decoded.getOpen()[i]));
+        }
+        assertArrayEquals(high, decoded.getHigh());
+        assertArrayEquals(low, decoded.getLow());
+        assertArrayEquals(close, decoded.getClose());
+        assertArrayEquals(volume, decoded.getVolume());
+
+        BarSeries middle = GorillaCodec.decode(GorillaCodec.encode(bars, 2, 5));
+        assertArrayEquals(new long[]{120_000, 120_001, 180_000}, middle.getTimestamps());
+        assertTrue(GorillaCodec.decode(GorillaCodec.encode(bars, 3, 3)).isEmpty());
+    }
+
+    @Test
+    void testMinuteBarsCompressWell() {
+        BarSeries bars = randomWalk(10_000, 42);
+        byte[] block = GorillaCodec.encode(bars, 0, bars.size());
+
+        assertArrayEquals(bars.getClose(), GorillaCodec.decode(block).getClose());
+        // 48 bytes per bar as raw longs and doubles; random cents leave most mantissa bits changing,
+        // so real quotes with repeated prices compress better than this
+        assertTrue(block.length < bars.size() * 48 * 2 / 3, "compressed to " + block.length + " bytes");
+    }
+
+    @Test
+    void testSubRangeDecodesOnlyItsBlocks() throws IOException {
+        Path file = directory.resolve("bars");
+        BarSeries bars = randomWalk(5 * BarBlockFile.BLOCK_BARS + 100, 7);
+        BarBlockFile blockFile = new BarBlockFile(file, List.of());
+        blockFile.writeTail(Long.MIN_VALUE, bars);
+        assertEquals(6, blockFile.getBlocks().size());
+        assertEquals(bars.size(), blockFile.size());
+
+        // Corrupt every block but the third: a range inside it is still read
+        byte[] bytes = Files.readAllBytes(file);
+        BarBlockFile.Block third = blockFile.getBlocks().get(2);
+        for (int i = 0; i < bytes.length; i++) {
+            if (i < third.offset() || i >= third.offset() + third.length()) {
+                bytes[i] = (byte) ~bytes[i];
+            }
+        }
+        Files.write(file, bytes);
+
+        long from = third.firstTimestamp() + 10 * MILLIS_PER_MINUTE;
+        long to = third.lastTimestamp();
+        BarSeries range = new BarBlockFile(file, blockFile.getBlocks()).read(from, to);
+        assertEquals(bars.slice(from, to).size(), range.size());
+        assertArrayEquals(bars.slice(from, to).getClose(), range.getClose());
+
+        assertThrows(IOException.class, () -> new BarBlockFile(file, blockFile.getBlocks())
+                .read(bars.getTimestamps()[0], to));
+    }
+
+    @Test
+    void testTailIsReplacedFromItsBlock() throws IOException {
+        Path file = directory.resolve("bars");
+        BarSeries bars = randomWalk(3 * BarBlockFile.BLOCK_BARS + 10, 3);
+        BarBlockFile blockFile = new BarBlockFile(file, List.of());
+        blockFile.writeTail(Long.MIN_VALUE, bars);
+        List<BarBlockFile.Block> before = blockFile.getBlocks();
+
+        long last = bars.getTimestamps()[bars.size() - 1];
+        BarSeries tail = blockFile.readTail(last);
+        assertEquals(10, tail.size());
+
+        BarSeries appended = randomWalk(2, 5);
+        BarSeries shifted = new BarSeries(new long[]{last, last + MILLIS_PER_MINUTE}, appended.getOpen(),
+                appended.getHigh(), appended.getLow(), appended.getClose(), appended.getVolume());
+        blockFile.writeTail(last, tail.merge(shifted));
+
+        assertEquals(before.subList(0, 3), blockFile.getBlocks().subList(0, 3));
+        BarSeries all = blockFile.read(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(bars.size() + 1, all.size());
+        assertEquals(shifted.getClose()[0], all.getClose()[bars.size() - 1]);
+        assertEquals(before.get(3).offset() + blockFile.getBlocks().get(3).length(), Files.size(file));
+    }
+
+    // Minute bars of a random walk, prices rounded to cents like exchange quotes
+    static BarSeries randomWalk(int n, long seed) {
+        Random random = new Random(seed);
+        long[] timestamps = new long[n];
+        double[] open = new double[n];
+        double[] high = new double[n];
+        double[] low = new double[n];
+        double[] close = new double[n];
+        double[] volume = new double[n];
+        double price = 27_000;
+        long timestamp = 1_704_067_200_000L;
+        for (int i = 0; i < n; i++) {
+            // An exchange outage now and then
+            timestamp += random.nextInt(500) == 0 ? 17 * MILLIS_PER_MINUTE : MILLIS_PER_MINUTE;
+            timestamps[i] = timestamp;
+            open[i] = price;
+            price = Math.round((price + random.nextGaussian() * 5) * 100) / 100.0;
+            close[i] = price;
+            high[i] = Math.round((Math.max(open[i], close[i]) + random.nextDouble() * 3) * 100) / 100.0;
+            low[i] = Math.round((Math.min(open[i], close[i]) - random.nextDouble() * 3) * 100) / 100.0;
+            volume[i] = Math.round(random.nextDouble() * 50_000) / 1000.0;
+        }
+        return new BarSeries(timestamps, open, high, low, close, volume);
+    }
+}
@@ -0,0 +1,61 @@
+package org.imperial.fastquantanalysis.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.imperial.fastquantanalysis.vo.ClassLoaderStatsVO;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClassLoaderRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ClassLoaderRegistry registry = new ClassLoaderRegistry(meterRegistry);
+
+    private final CompiledClassCache cache = new CompiledClassCache(1, registry, meterRegistry);
+
+    private final InMemoryJavaCompiler compiler =
+            new InMemoryJavaCompiler(System.getProperty("java.class.path"), getClass().getClassLoader());
+
+    @Test
+    void testEvictedLoaderIsReleasedAndUnloaded() throws Exception {
+        WeakReference<ClassLoader> first = compileAndForget("public class UserStrategy { int a; }");
+        assertEquals(1, registry.stats().getLive());
+
+        // The cache holds one class, the second submission evicts the first
+        WeakReference<ClassLoader> second = compileAndForget("public class UserStrategy { int b; }");
+        ClassLoaderStatsVO stats = registry.stats();
+        assertEquals(2, stats.getRegistered());
+        assertEquals(1, stats.getLive());
+        assertEquals(1, stats.getReleased() + stats.getUnloaded());
+        assertTrue(stats.getMetaspaceUsedBytes() > 0);
+
+        awaitCollected(first);
+        assertEquals(1, registry.stats().getUnloaded());
+        assertNotNull(second.get());
+
+        assertEquals(1, cache.clear());
+        awaitCollected(second);
+        stats = registry.stats();
+        assertEquals(0, stats.getLive());
+        assertEquals(0, stats.getReleased());
+        assertEquals(2, stats.getUnloaded());
+        assertEquals(2.0, meterRegistry.get("code.classloaders.unloaded").functionCounter().count());
+    }
+
+    private WeakReference<ClassLoader> compileAndForget(String source) {
+        Class<?> strategyClass = cache.get("java", "17", source, () -> compiler.compile("UserStrategy", source));
+        assertInstanceOf(InMemoryClassLoader.class, strategyClass.getClassLoader());
+        return new WeakReference<>(strategyClass.getClassLoader());
+    }
+
+    private static void awaitCollected(WeakReference<ClassLoader> loader) throws InterruptedException {
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(loader.get(), "class loader is still reachable");
+    }
+}
@@ -0,0 +1,67 @@
+package org.imperial.fastquantanalysis.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledClassCacheTest {
+
+    private final AtomicInteger compilations = new AtomicInteger();
+
+    private static CompiledClassCache cache(int maxEntries) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new CompiledClassCache(maxEntries, new ClassLoaderRegistry(meterRegistry), meterRegistry);
+    }
+
+    private Class<?> compile(Class<?> result) {
+        compilations.incrementAndGet();
+        return result;
+    }
+
+    @Test
+    void testUnchangedSourceIsCompiledOnce() {
+        CompiledClassCache cache = cache(8);
+
+        Class<?> first = cache.get("java", "21", "class A {}", () -> compile(String.class));
+        Class<?> second = cache.get("java", "21", "class A {}", () -> compile(Integer.class));
+        assertSame(first, second);
+        assertEquals(1, compilations.get());
+
+        // Any part of the key changing is a different class
+        cache.get("java", "21", "class A { }", () -> compile(Long.class));
+        cache.get("java", "17", "class A {}", () -> compile(Long.class));
+        cache.get("kotlin", "21", "class A {}", () -> compile(Long.class));
+        assertEquals(4, compilations.get());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        CompiledClassCache cache = cache(2);
+
+        cache.get("java", "21", "a", () -> compile(String.class));
+        cache.get("java", "21", "b", () -> compile(String.class));
+        cache.get("java", "21", "a", () -> compile(String.class));
+        cache.get("java", "21", "c", () -> compile(String.class));
+        assertEquals(2, cache.size());
+        assertEquals(3, compilations.get());
+
+        cache.get("java", "21", "a", () -> compile(String.class));
+        assertEquals(3, compilations.get());
+        cache.get("java", "21", "b", () -> compile(String.class));
+        assertEquals(4, compilations.get());
+    }
+
+    @Test
+    void testFailedCompilationIsNotCached() {
+        CompiledClassCache cache = cache(8);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.get("java", "21", "broken", () -> {
+            throw new IllegalArgumentException("Failed to compile");
+        }));
+        assertEquals(0, cache.size());
+        assertSame(String.class, cache.get("java", "21", "broken", () -> compile(String.class)));
+    }
+}
@@ -0,0 +1,74 @@
+package org.imperial.fastquantanalysis.memory;
+
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryJavaCompilerTest {
+
+    private static final String SOURCE = """
+            package org.imperial.fastquantanalysis.strategy;
+
+            import org.imperial.fastquantanalysis.entity.QuantStrategy;
+            import java.util.function.Supplier;
+
+            public class UserStrategy {
+
+                static class Counter {
+                    int tradeCount = 3;
+                }
+
+                public QuantStrategy runStrategy(QuantStrategy strategy) {
+                    Supplier<Double> sharpe = new Supplier<>() {
+                        @Override
+                        public Double get() {
+                            return 1.5;
+                        }
+                    };
+                    strategy.setSharpeRatio(sharpe.get());
+                    strategy.setTradeCount(new Counter().tradeCount);
+                    return strategy;
+                }
+            }
+            """;
+
+    private final InMemoryJavaCompiler compiler =
+            new InMemoryJavaCompiler(System.getProperty("java.class.path"), getClass().getClassLoader());
+
+    @Test
+    void testNestedAndAnonymousClassesAreLoadedFromMemory() throws Exception {
+        Class<?> strategyClass = compiler.compile("UserStrategy", SOURCE);
+
+        // The sample UserStrategy on the class path must not shadow the compiled one
+        assertInstanceOf(InMemoryClassLoader.class, strategyClass.getClassLoader());
+        Method runStrategy = strategyClass.getMethod("runStrategy", QuantStrategy.class);
+        QuantStrategy result = (QuantStrategy) runStrategy.invoke(
+                strategyClass.getDeclaredConstructor().newInstance(), new QuantStrategy());
+
+        assertEquals(1.5, result.getSharpeRatio());
+        assertEquals(3, result.getTradeCount());
+    }
+
+    @Test
+    void testEveryCompilationHasItsOwnClassLoader() {
+        Class<?> first = compiler.compile("UserStrategy", SOURCE);
+        Class<?> second = compiler.compile("UserStrategy", SOURCE);
+
+        assertEquals(first.getName(), second.getName());
+        assertNotSame(first, second);
+    }
+
+    @Test
+    void testCompilationErrorsAreReported() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> compiler.compile("UserStrategy", "public class UserStrategy { int x = ; }"));
+        assertTrue(e.getMessage().startsWith("Failed to compile"));
+
+        e = assertThrows(IllegalArgumentException.class,
+                () -> compiler.compile("UserStrategy", "class Other { }"));
+        assertTrue(e.getMessage().startsWith("Did not find class"));
+    }
+}
@@ -0,0 +1,71 @@
+package org.imperial.fastquantanalysis.memory;
+
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KotlinCompilerServiceTest {
+
+    private static final String SOURCE = """
+            import org.imperial.fastquantanalysis.entity.QuantStrategy
+
+            class UserStrategy {
+                fun runStrategy(strategy: QuantStrategy): QuantStrategy {
+                    val returns = listOf(0.01, -0.02, 0.03)
+                    strategy.sharpeRatio = returns.map { it * 100 }.sum()
+                    strategy.tradeCount = returns.count { it > 0 }
+                    return strategy
+                }
+            }
+            """;
+
+    private static KotlinCompilerService compilerService;
+
+    @BeforeAll
+    static void setUp() {
+        compilerService = new KotlinCompilerService(1, 60, 2, false);
+    }
+
+    @Test
+    void testSourceIsCompiledAndLoadedFromMemory() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Class<?> strategyClass = compilerService.compile("UserStrategy", SOURCE);
+
+            assertInstanceOf(InMemoryClassLoader.class, strategyClass.getClassLoader());
+            Method runStrategy = strategyClass.getMethod("runStrategy", QuantStrategy.class);
+            QuantStrategy result = (QuantStrategy) runStrategy.invoke(
+                    strategyClass.getDeclaredConstructor().newInstance(), new QuantStrategy());
+            assertEquals(2.0, result.getSharpeRatio(), 1e-9);
+            assertEquals(2, result.getTradeCount());
+        }
+    }
+
+    @Test
+    void testCompilationErrorsAreReported() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> compilerService.compile("UserStrategy", "class UserStrategy { val x: Int = \"text\" }"));
+        assertTrue(e.getMessage().contains("error"), e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class,
+                () -> compilerService.compile("UserStrategy", "class Other"));
+        assertTrue(e.getMessage().startsWith("Did not find class"));
+    }
+
+    @Test
+    void testEnvironmentIsReusedForAnotherSource() throws Exception {
+        assertThrows(IllegalArgumentException.class,
+                () -> compilerService.compile("UserStrategy", "class UserStrategy { fun value(): Int = \"text\" }"));
+
+        // Only the source of each compilation is compiled, not the ones before it in the same environment
+        for (int value = 1; value <= 2; value++) {
+            Class<?> strategyClass = compilerService.compile("UserStrategy",
+                    "class UserStrategy { fun value(): Int = " + value + " }");
+            Object result = strategyClass.getMethod("value").invoke(strategyClass.getDeclaredConstructor().newInstance());
+            assertEquals(value, result);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import okhttp3.Response;
 import org.imperial.fastquantanalysis.constant.Sort;
 import org.imperial.fastquantanalysis.constant.Timespan;
 import org.imperial.fastquantanalysis.factory.AggregatesParametersFactory;
+import org.imperial.fastquantanalysis.market.BarSeries;
 import org.imperial.fastquantanalysis.util.PricesHttpClientUtil;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
@@ -17,6 +18,7 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.imperial.fastquantanalysis.constant.PolygonConstant.POLYGON_API_KEY;
@@ -29,7 +31,7 @@ public class JavaCryptoGettingPriceRestApiTest {
                 okHttpClientProvider
         );
 
-//        List<Double> closePrices = PricesHttpClientUtil.getClosePrices(
+//        double[] closePrices = PricesHttpClientUtil.getBarSeries(
 //                "X:BTCUSD",
 //                null,
 //                Timespan.DAY,
@@ -38,10 +40,10 @@ public class JavaCryptoGettingPriceRestApiTest {
 //                null,
 //                null,
 //                Sort.ASC,
-//                polygonClient
-//        );
+//                PricesHttpClientUtil.getAggregatesClient(POLYGON_API_KEY)
+//        ).getClose();
 
-        List<List<Double>> barPrices = PricesHttpClientUtil.getBarPrices(
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
                 "X:ETHUSD", // X:BTCUSD
                 null,
                 Timespan.DAY,
@@ -50,10 +52,12 @@ public class JavaCryptoGettingPriceRestApiTest {
                 null,
                 null,
                 Sort.ASC,
-                polygonClient
+                PricesHttpClientUtil.getAggregatesClient(POLYGON_API_KEY)
         );
 
-        barPrices.forEach(System.out::println);
+        for (double[] column : new double[][]{bars.getOpen(), bars.getHigh(), bars.getLow(), bars.getClose()}) {
+            System.out.println(Arrays.toString(column));
+        }
     }
 
     public static List<Double> getClosePrices(PolygonRestClient polygonClient) {
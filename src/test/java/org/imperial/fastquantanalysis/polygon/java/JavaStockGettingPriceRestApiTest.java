@@ -8,10 +8,12 @@ import io.polygon.kotlin.sdk.rest.PolygonRestClient;
 import org.imperial.fastquantanalysis.constant.PolygonConstant;
 import org.imperial.fastquantanalysis.constant.Sort;
 import org.imperial.fastquantanalysis.constant.Timespan;
+import org.imperial.fastquantanalysis.market.BarSeries;
 import org.imperial.fastquantanalysis.util.PricesHttpClientUtil;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class JavaStockGettingPriceRestApiTest {
@@ -24,7 +26,7 @@ public class JavaStockGettingPriceRestApiTest {
                 okHttpClientProvider);
 
 
-        List<List<Double>> barPrices = PricesHttpClientUtil.getBarPrices(
+        BarSeries bars = PricesHttpClientUtil.getBarSeries(
                 "RDFN",
                 null,
                 Timespan.DAY,
@@ -33,22 +35,14 @@ public class JavaStockGettingPriceRestApiTest {
                 null,
                 null,
                 Sort.ASC,
-                polygonClient
+                PricesHttpClientUtil.getAggregatesClient(polygonApiKey)
         );
         System.out.println("Bar Prices:");
-        System.out.println(barPrices); // 5 entries?
-
-        List<Double> closePrices = PricesHttpClientUtil.getClosePrices("RDFN",
-                null,
-                Timespan.DAY,
-                LocalDate.of(2025, 2, 3),
-                LocalDate.of(2025, 2, 7),
-                null,
-                null,
-                Sort.ASC,
-                polygonClient);
-        System.out.println("Close Prices:");
-        System.out.println(closePrices);
+        System.out.println(Arrays.toString(bars.getTimestamps())); // 5 entries?
+        System.out.println(Arrays.toString(bars.getOpen()));
+        System.out.println(Arrays.toString(bars.getHigh()));
+        System.out.println(Arrays.toString(bars.getLow()));
+        System.out.println(Arrays.toString(bars.getClose()));
 
         System.out.println("Aggregate Prices in DTO:");
         List<AggregateDTO> aggregateDTOS = stockAggregateBarsClosingPrice(polygonClient);
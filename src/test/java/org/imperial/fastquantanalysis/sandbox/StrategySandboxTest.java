@@ -0,0 +1,154 @@
+package org.imperial.fastquantanalysis.sandbox;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class StrategySandboxTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // One thread, no queue, 5 s wall clock, 300 ms CPU, 64 MB allocation
+    private final StrategySandbox sandbox = new StrategySandbox(1, 0, 5000, 300, 64, 200, 10, meterRegistry);
+
+    private volatile long blackhole;
+
+    @AfterEach
+    void tearDown() {
+        sandbox.shutdown();
+    }
+
+    @Test
+    void testResultsAndExceptionsOfUserCodePassThrough() throws Exception {
+        assertEquals(42, sandbox.run(() -> 42));
+        assertThrows(IllegalArgumentException.class, () -> sandbox.run(() -> {
+            throw new IllegalArgumentException("bad parameter");
+        }));
+
+        assertEquals(1.0, runs("completed"));
+        assertEquals(1.0, runs("failed"));
+    }
+
+    @Test
+    void testLoopIgnoringInterruptsIsStopped() throws Exception {
+        assumeTrue(Runtime.version().feature() < 20, "Thread.stop is not supported");
+        StrategySandbox stopping = new StrategySandbox(1, 0, 5000, 300, 64, 200, 10, true, meterRegistry);
+        try {
+            StrategyRunningException e = assertThrows(StrategyRunningException.class, () -> stopping.run(() -> {
+                while (true) {
+                    blackhole++;
+                }
+            }));
+            assertTrue(e.getMessage().contains("CPU time"), e.getMessage());
+            assertEquals(1.0, runs("cpu_time"));
+
+            // The stopped run has left its thread
+            assertEquals("next", stopping.run(() -> "next"));
+        } finally {
+            stopping.shutdown();
+        }
+    }
+
+    @Test
+    void testLoopThatCannotBeStoppedKeepsItsPermit() throws Exception {
+        // As on Java 20 on
+        MeterRegistry registry = new SimpleMeterRegistry();
+        StrategySandbox retiring = new StrategySandbox(1, 1, 5000, 300, 64, 200, 10, false, registry);
+        AtomicBoolean spinning = new AtomicBoolean(true);
+        try {
+            long start = System.nanoTime();
+            StrategyRunningException e = assertThrows(StrategyRunningException.class, () -> retiring.run(() -> {
+                while (spinning.get()) {
+                    blackhole++;
+                }
+                return "done";
+            }));
+            assertTrue(e.getMessage().contains("CPU time"), e.getMessage());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000, "the caller is not kept waiting");
+            assertEquals(1.0, registry.get("code.sandbox.retired").gauge().value());
+
+            // A new thread runs the next strategy, the spinning one still takes a permit
+            assertEquals("next", retiring.run(() -> "next"));
+            CountDownLatch release = new CountDownLatch(1);
+            ExecutorService caller = Executors.newSingleThreadExecutor();
+            try {
+                Future<Boolean> busy = caller.submit(() -> retiring.run(() -> release.await(5, TimeUnit.SECONDS)));
+                awaitActive(registry, 2);
+                assertThrows(StrategyRunningException.class, () -> retiring.run(() -> 1));
+                release.countDown();
+                assertTrue(busy.get(5, TimeUnit.SECONDS));
+            } finally {
+                caller.shutdownNow();
+            }
+
+            // Its permit and thread are given back once the code returns
+            spinning.set(false);
+            for (int i = 0; i < 500 && registry.get("code.sandbox.retired").gauge().value() > 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(0.0, registry.get("code.sandbox.retired").gauge().value());
+            assertEquals(1, retiring.run(() -> 1));
+        } finally {
+            spinning.set(false);
+            retiring.shutdown();
+        }
+    }
+
+    @Test
+    void testAllocationOverrunIsInterrupted() {
+        StrategyRunningException e = assertThrows(StrategyRunningException.class, () -> sandbox.run(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                blackhole += new byte[1 << 20].length;
+                Thread.sleep(1);
+            }
+            throw new InterruptedException();
+        }));
+        assertTrue(e.getMessage().contains("memory allocation"), e.getMessage());
+        assertEquals(1.0, runs("allocation"));
+    }
+
+    @Test
+    void testRunsAreRejectedWhenEveryThreadIsBusy() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> busy = caller.submit(() -> sandbox.run(() -> {
+                started.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            }));
+            started.await();
+
+            assertThrows(StrategyRunningException.class, () -> sandbox.run(() -> 1));
+            assertEquals(1.0, runs("rejected"));
+
+            release.countDown();
+            assertTrue(busy.get());
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    private static void awaitActive(MeterRegistry registry, int active) throws InterruptedException {
+        for (int i = 0; i < 500 && registry.get("code.sandbox.active").gauge().value() < active; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(active, registry.get("code.sandbox.active").gauge().value());
+    }
+
+    private double runs(String result) {
+        return meterRegistry.get("code.sandbox.runs").tag("result", result).counter().count();
+    }
+}
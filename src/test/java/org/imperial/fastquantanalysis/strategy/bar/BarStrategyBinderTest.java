@@ -0,0 +1,100 @@
+package org.imperial.fastquantanalysis.strategy.bar;
+
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.imperial.fastquantanalysis.memory.InMemoryJavaCompiler;
+import org.imperial.fastquantanalysis.strategy.Strategies;
+import org.imperial.fastquantanalysis.util.RedisIdUtil;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class BarStrategyBinderTest {
+
+    // Does not implement BarStrategy, only declares methods with the same signatures
+    private static final String SOURCE = """
+            import org.imperial.fastquantanalysis.market.BarSeries;
+
+            public class UserStrategy {
+
+                private double[] close;
+
+                public void onStart(BarSeries bars) {
+                    close = bars.getClose();
+                }
+
+                public int onBar(BarSeries bars, int i) {
+                    return i > 0 && close[i] > close[i - 1] ? 1 : 0;
+                }
+            }
+            """;
+
+    private static final BarSeries BARS = bars(1, 2, 4, 2, 3, 6);
+
+    private final InMemoryJavaCompiler compiler =
+            new InMemoryJavaCompiler(System.getProperty("java.class.path"), getClass().getClassLoader());
+
+    @Test
+    void testOnBarIsBoundWithoutImplementingTheInterface() {
+        Class<?> strategyClass = compiler.compile("UserStrategy", SOURCE);
+        assertTrue(BarStrategyBinder.isBarStrategy(strategyClass));
+
+        BarStrategy strategy = BarStrategyBinder.bind(strategyClass);
+        assertFalse(strategyClass.isInstance(strategy));
+
+        strategy.onStart(BARS);
+        int[] signals = new int[BARS.size()];
+        for (int i = 0; i < signals.length; i++) {
+            signals[i] = strategy.onBar(BARS, i);
+        }
+        assertArrayEquals(new int[]{0, 1, 1, 0, 1, 1}, signals);
+    }
+
+    @Test
+    void testEngineTradesTheSignals() {
+        RedisIdUtil redisIdUtil = Mockito.mock(RedisIdUtil.class);
+        Mockito.when(redisIdUtil.nextId(anyString())).thenReturn("1");
+        Strategies strategies = new Strategies(redisIdUtil);
+
+        // Long from the close of bar 1 to the end: 2 -> 4 -> 2, flat, then long 3 -> 6
+        BarStrategy strategy = BarStrategyBinder.bind(compiler.compile("UserStrategy", SOURCE));
+        QuantStrategy result = strategies.barStrategy(BARS, strategy);
+
+        assertEquals(2, result.getTradeCount());
+        assertEquals(2.0 / 2 * 6 / 3 - 1, result.getCumulativeReturn(), 1e-12);
+        assertEquals(0.5, result.getMaxDrawdown(), 1e-12);
+        assertEquals(0.5, result.getWinRate(), 1e-12);
+        assertEquals(0.6, result.getExposure(), 1e-12);
+
+        // A short position earns the opposite of the price move
+        QuantStrategy alwaysShort = strategies.barStrategy(bars(4, 2, 1), (bars, i) -> BarStrategy.SHORT);
+        assertEquals(1, alwaysShort.getTradeCount());
+        assertEquals(1.5 * 1.5 - 1, alwaysShort.getCumulativeReturn(), 1e-12);
+    }
+
+    @Test
+    void testClassWithoutOnBarIsRejected() {
+        Class<?> strategyClass = compiler.compile("UserStrategy", """
+                public class UserStrategy {
+                    public double onBar(BarSeries bars) {
+                        return 0;
+                    }
+                    static class BarSeries {}
+                }
+                """);
+
+        assertFalse(BarStrategyBinder.isBarStrategy(strategyClass));
+        assertThrows(StrategyRunningException.class, () -> BarStrategyBinder.bind(strategyClass));
+    }
+
+    private static BarSeries bars(double... close) {
+        long[] timestamps = new long[close.length];
+        for (int i = 0; i < close.length; i++) {
+            timestamps[i] = i * 60_000L;
+        }
+        return new BarSeries(timestamps, close, close, close, close, new double[close.length]);
+    }
+}
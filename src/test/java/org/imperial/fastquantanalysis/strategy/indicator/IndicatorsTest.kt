@@ -0,0 +1,61 @@
+package org.imperial.fastquantanalysis.strategy.indicator
+
+import org.imperial.fastquantanalysis.market.BarSeries
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import kotlin.math.abs
+import kotlin.random.Random
+
+class IndicatorsTest {
+
+    private val random = Random(42)
+    private val close = DoubleArray(300) { 100.0 + random.nextDouble(-5.0, 5.0) }
+    private val bars = BarSeries(
+        LongArray(close.size) { it.toLong() },
+        close.copyOf(),
+        DoubleArray(close.size) { close[it] + random.nextDouble(0.0, 2.0) },
+        DoubleArray(close.size) { close[it] - random.nextDouble(0.0, 2.0) },
+        close,
+        DoubleArray(close.size) { 1.0 }
+    )
+
+    @Test
+    fun testEmaIsAlignedWithBars() {
+        val period = 10
+        val ema = Indicators.ema(close, period)
+
+        assertTrue(ema.take(period - 1).all { it.isNaN() })
+        var expected = close.take(period).average()
+        assertEquals(expected, ema[period - 1], 1e-12)
+        for (i in period until close.size) {
+            expected = close[i] * 2.0 / (period + 1) + expected * (1 - 2.0 / (period + 1))
+            assertEquals(expected, ema[i], 1e-9)
+        }
+    }
+
+    @Test
+    fun testAtrIsAlignedWithBars() {
+        val period = 14
+        val atr = Indicators.atr(bars, period)
+        val trueRange = { i: Int ->
+            maxOf(bars.high[i] - bars.low[i], abs(bars.high[i] - close[i - 1]), abs(bars.low[i] - close[i - 1]))
+        }
+
+        assertTrue(atr.take(period).all { it.isNaN() })
+        var expected = (1..period).sumOf(trueRange) / period
+        assertEquals(expected, atr[period], 1e-12)
+        for (i in period + 1 until close.size) {
+            expected = (expected * (period - 1) + trueRange(i)) / period
+            assertEquals(expected, atr[i], 1e-9)
+        }
+    }
+
+    @Test
+    fun testCacheComputesEachIndicatorOnce() {
+        val indicators = IndicatorCache(bars)
+        assertTrue(indicators.ema(20) === indicators.ema(20))
+        assertTrue(indicators.atr(14) === indicators.atr(14))
+        assertTrue(indicators.highestClose(20) === indicators.highestClose(20))
+    }
+}
@@ -0,0 +1,70 @@
+package org.imperial.fastquantanalysis.strategy.indicator
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import kotlin.math.abs
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+class RollingStatisticsTest {
+
+    private val random = Random(42)
+
+    // Large level with small moves, where the sum-of-squares formula loses every significant digit
+    private val x = DoubleArray(5_000) { 1_000_000.0 + random.nextDouble(-1.0, 1.0) }
+    private val y = DoubleArray(5_000) { i -> 0.5 * x[i] + random.nextDouble(-0.1, 0.1) }
+
+    @Test
+    fun testMeanAndVarianceMatchTwoPass() {
+        for (window in intArrayOf(1, 20, 500)) {
+            val mean = RollingStatistics.mean(x, window)
+            val variance = RollingStatistics.variance(x, window)
+            val std = RollingStatistics.std(x, window)
+
+            assertTrue(mean.take(window - 1).all { it.isNaN() })
+            for (i in window - 1 until x.size) {
+                val slice = x.copyOfRange(i - window + 1, i + 1)
+                val expectedMean = slice.average()
+                val expectedVariance = slice.sumOf { (it - expectedMean) * (it - expectedMean) } / window
+                assertClose(expectedMean, mean[i])
+                assertClose(expectedVariance, variance[i])
+                assertClose(sqrt(expectedVariance), std[i])
+            }
+        }
+    }
+
+    @Test
+    fun testCovarianceAndBetaMatchTwoPass() {
+        val window = 250
+        val covariance = RollingStatistics.covariance(x, y, window)
+        val beta = RollingStatistics.beta(x, y, window)
+
+        for (i in window - 1 until x.size) {
+            val sliceX = x.copyOfRange(i - window + 1, i + 1)
+            val sliceY = y.copyOfRange(i - window + 1, i + 1)
+            val meanX = sliceX.average()
+            val meanY = sliceY.average()
+            var expectedCovariance = 0.0
+            var expectedVariance = 0.0
+            for (j in 0 until window) {
+                expectedCovariance += (sliceX[j] - meanX) * (sliceY[j] - meanY)
+                expectedVariance += (sliceX[j] - meanX) * (sliceX[j] - meanX)
+            }
+            assertClose(expectedCovariance / window, covariance[i])
+            assertClose(expectedCovariance / expectedVariance, beta[i])
+        }
+    }
+
+    @Test
+    fun testSumDoesNotDrift() {
+        val values = DoubleArray(100_000) { if (it % 2 == 0) 1e8 else 1e-8 }
+        val sum = RollingStatistics.sum(values, 2)
+        assertEquals(1e8 + 1e-8, sum.last(), 1e-7)
+    }
+
+    private fun assertClose(expected: Double, actual: Double) {
+        val tolerance = 1e-9 * maxOf(1.0, abs(expected))
+        assertEquals(expected, actual, tolerance)
+    }
+}
@@ -0,0 +1,50 @@
+package org.imperial.fastquantanalysis.strategy.indicator
+
+import kotlin.random.Random
+
+/**
+ * Compares the monotonic deque with the subList max/min scan the Donchian channel used before,
+ * on 50,000 synthetic minute bars
+ */
+fun main() {
+    val random = Random(7)
+    var price = 100.0
+    val prices = DoubleArray(50_000) {
+        price *= 1 + random.nextDouble(-0.001, 0.001)
+        price
+    }
+    val boxedPrices: MutableList<Double> = prices.toMutableList()
+
+    for (lookback in intArrayOf(20, 200, 2_000)) {
+        val naiveMillis = measure {
+            var checksum = 0.0
+            for (i in lookback until boxedPrices.size) {
+                val window = boxedPrices.subList(i - lookback, i)
+                checksum += window.maxOrNull()!! - window.minOrNull()!!
+            }
+            checksum
+        }
+        val dequeMillis = measure {
+            val upper = SlidingWindow.max(prices, lookback)
+            val lower = SlidingWindow.min(prices, lookback)
+            var checksum = 0.0
+            for (i in lookback until prices.size) {
+                checksum += upper[i - 1] - lower[i - 1]
+            }
+            checksum
+        }
+        println("lookback %5d: subList %9.3f ms, deque %7.3f ms, speedup %.1fx"
+            .format(lookback, naiveMillis, dequeMillis, naiveMillis / dequeMillis))
+    }
+}
+
+private fun measure(block: () -> Double): Double {
+    var sink = 0.0
+    repeat(5) { sink += block() } // Warm up
+    val rounds = 10
+    val start = System.nanoTime()
+    repeat(rounds) { sink += block() }
+    val elapsed = (System.nanoTime() - start) / 1e6 / rounds
+    if (sink == 42.0) println(sink) // Keep the results alive
+    return elapsed
+}
@@ -0,0 +1,32 @@
+package org.imperial.fastquantanalysis.strategy.indicator
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+
+class SlidingWindowTest {
+
+    @Test
+    fun testMatchesNaiveWindow() {
+        val random = Random(42)
+        // Plenty of repeated values to exercise ties
+        val values = DoubleArray(2_000) { (random.nextInt(50) + 100).toDouble() }
+
+        for (window in intArrayOf(1, 2, 7, 20, 200, 2_000)) {
+            assertArrayEquals(naive(values, window) { it.max() }, SlidingWindow.max(values, window), 0.0)
+            assertArrayEquals(naive(values, window) { it.min() }, SlidingWindow.min(values, window), 0.0)
+        }
+    }
+
+    @Test
+    fun testWindowLargerThanValues() {
+        val result = SlidingWindow.max(doubleArrayOf(1.0, 2.0, 3.0), 5)
+        assertTrue(result.all { it.isNaN() })
+    }
+
+    private fun naive(values: DoubleArray, window: Int, extreme: (DoubleArray) -> Double): DoubleArray =
+        DoubleArray(values.size) { i ->
+            if (i < window - 1) Double.NaN else extreme(values.copyOfRange(i - window + 1, i + 1))
+        }
+}
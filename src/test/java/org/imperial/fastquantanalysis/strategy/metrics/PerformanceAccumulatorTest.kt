@@ -0,0 +1,65 @@
+package org.imperial.fastquantanalysis.strategy.metrics
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import kotlin.math.pow
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+class PerformanceAccumulatorTest {
+
+    @Test
+    fun testMatchesMultiPassComputation() {
+        val random = Random(7)
+        val equityCurve = mutableListOf(1.0)
+        val inPosition = BooleanArray(500) { random.nextInt(3) != 0 }
+        for (holding in inPosition) {
+            val barReturn = if (holding) random.nextDouble(-0.03, 0.035) else 0.0
+            equityCurve.add(equityCurve.last() * (1 + barReturn))
+        }
+
+        val performance = PerformanceAccumulator()
+        for (i in 1 until equityCurve.size) {
+            performance.onBar(equityCurve[i], inPosition[i - 1])
+        }
+
+        val returns = equityCurve.zipWithNext().map { (prev, curr) -> (curr - prev) / prev }
+        val meanReturn = returns.average()
+        val volatility = sqrt(returns.map { (it - meanReturn).pow(2) }.average() * 365)
+        val downsideDeviation = sqrt(returns.map { minOf(it, 0.0).pow(2) }.average() * 365)
+        val annualizedReturn = equityCurve.last().pow(365.0 / returns.size) - 1
+        var peak = equityCurve[0]
+        var maxDrawdown = 0.0
+        for (value in equityCurve) {
+            peak = maxOf(peak, value)
+            maxDrawdown = maxOf(maxDrawdown, (peak - value) / peak)
+        }
+
+        assertEquals(equityCurve.last() - 1, performance.cumulativeReturn, 1e-12)
+        assertEquals(annualizedReturn, performance.annualizedReturn, 1e-9)
+        assertEquals(volatility, performance.volatility, 1e-12)
+        assertEquals(maxDrawdown, performance.maxDrawdown, 1e-12)
+        assertEquals(annualizedReturn / volatility, performance.sharpeRatio, 1e-9)
+        assertEquals(annualizedReturn / downsideDeviation, performance.sortinoRatio, 1e-9)
+        assertEquals(annualizedReturn / maxDrawdown, performance.calmarRatio, 1e-9)
+        assertEquals(inPosition.count { it }.toDouble() / inPosition.size, performance.exposure, 1e-12)
+    }
+
+    @Test
+    fun testWinRateWithoutBars() {
+        val performance = PerformanceAccumulator()
+        performance.onTradeClosed(0.1)
+        performance.onTradeClosed(-0.05)
+        performance.onTradeClosed(0.0)
+        performance.onTradeClosed(0.2)
+
+        val quantStrategy = performance.toQuantStrategy()
+
+        assertEquals(0.5, quantStrategy.winRate, 1e-12)
+        // No bar seen, every other metric is zero rather than NaN
+        assertEquals(0.0, quantStrategy.sharpeRatio)
+        assertEquals(0.0, quantStrategy.annualizedReturn)
+        assertEquals(0.0, quantStrategy.exposure)
+        assertEquals(null, quantStrategy.strategyId)
+    }
+}
@@ -0,0 +1,74 @@
+package org.imperial.fastquantanalysis.strategy.sweep;
+
+import org.imperial.fastquantanalysis.constant.SweepMetric;
+import org.imperial.fastquantanalysis.dto.ParameterRangeDTO;
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.imperial.fastquantanalysis.exception.StrategyRunningException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParameterGridTest {
+
+    @Test
+    void testExpandsEveryCombination() {
+        List<Map<String, Double>> grid = ParameterGrid.expand(
+                List.of("emaPeriod", "atrPeriod", "atrMultiplier"),
+                Map.of("emaPeriod", range(10.0, 30.0, 10.0),
+                        "atrPeriod", values(14.0),
+                        "atrMultiplier", range(0.1, 0.3, 0.1)),
+                100);
+
+        assertEquals(9, grid.size());
+        assertEquals(Map.of("emaPeriod", 10.0, "atrPeriod", 14.0, "atrMultiplier", 0.1), grid.get(0));
+        assertEquals(30.0, grid.get(8).get("emaPeriod"));
+        assertEquals(0.3, grid.get(8).get("atrMultiplier"), 1e-12);
+    }
+
+    @Test
+    void testRejectsInvalidGrids() {
+        assertThrows(StrategyRunningException.class, () ->
+                ParameterGrid.expand(List.of("windowSize"), Map.of(), 100));
+        assertThrows(StrategyRunningException.class, () ->
+                ParameterGrid.expand(List.of("windowSize"), Map.of("windowSize", range(1.0, 1000.0, 1.0)), 100));
+        assertThrows(StrategyRunningException.class, () ->
+                ParameterGrid.expand(List.of("windowSize"), Map.of("windowSize", range(20.0, 10.0, 1.0)), 100));
+    }
+
+    @Test
+    void testMetricPutsBestFirstAndNaNLast() {
+        List<QuantStrategy> results = new ArrayList<>();
+        for (double value : new double[]{0.5, Double.NaN, 1.5, 0.1}) {
+            QuantStrategy quantStrategy = new QuantStrategy();
+            quantStrategy.setSharpeRatio(value);
+            quantStrategy.setMaxDrawdown(value);
+            results.add(quantStrategy);
+        }
+
+        results.sort(SweepMetric.SHARPE_RATIO.bestFirst());
+        assertEquals(List.of(1.5, 0.5, 0.1), results.subList(0, 3).stream().map(QuantStrategy::getSharpeRatio).toList());
+        assertTrue(results.get(3).getSharpeRatio().isNaN());
+
+        results.sort(SweepMetric.MAX_DRAWDOWN.bestFirst());
+        assertEquals(0.1, results.get(0).getMaxDrawdown());
+        assertTrue(results.get(3).getMaxDrawdown().isNaN());
+    }
+
+    private static ParameterRangeDTO range(Double from, Double to, Double step) {
+        ParameterRangeDTO range = new ParameterRangeDTO();
+        range.setFrom(from);
+        range.setTo(to);
+        range.setStep(step);
+        return range;
+    }
+
+    private static ParameterRangeDTO values(Double... values) {
+        ParameterRangeDTO range = new ParameterRangeDTO();
+        range.setValues(List.of(values));
+        return range;
+    }
+}
@@ -0,0 +1,44 @@
+package org.imperial.fastquantanalysis.strategy.sweep;
+
+import org.imperial.fastquantanalysis.constant.SweepMetric;
+import org.imperial.fastquantanalysis.dto.ParameterRangeDTO;
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.imperial.fastquantanalysis.strategy.Strategies;
+import org.imperial.fastquantanalysis.vo.WalkForwardResultVO;
+
+import java.util.Map;
+
+/**
+ * 50-fold walk-forward of the ATR stop-loss strategy on 50,000 synthetic minute bars
+ */
+public class WalkForwardBenchmark {
+
+    public static void main(String[] args) {
+        Strategies strategies = WalkForwardEngineTest.strategies();
+        ParameterSweeper parameterSweeper = new ParameterSweeper(strategies, 0, 10000);
+        WalkForwardEngine walkForwardEngine = new WalkForwardEngine(parameterSweeper);
+
+        BarSeries bars = WalkForwardEngineTest.randomWalk(50_000);
+        Map<String, ParameterRangeDTO> ranges = Map.of(
+                "emaPeriod", range(10, 100, 10),
+                "atrPeriod", range(10, 30, 5),
+                "atrMultiplier", range(1, 3, 0.5));
+
+        for (int round = 0; round < 3; round++) {
+            // A new input each round, so indicators are computed again as in a real request
+            WalkForwardResultVO result = walkForwardEngine.run(SweepableStrategy.EMA_WITH_ATR_STOP_LOSS,
+                    SweepInput.of(bars, null), ranges, 5_000, 900, 900, SweepMetric.SHARPE_RATIO);
+            System.out.printf("%d folds, %d runs: %d ms%n",
+                    result.getFolds().size(), result.getEvaluated(), result.getElapsedMillis());
+        }
+        parameterSweeper.shutdown();
+    }
+
+    private static ParameterRangeDTO range(double from, double to, double step) {
+        ParameterRangeDTO range = new ParameterRangeDTO();
+        range.setFrom(from);
+        range.setTo(to);
+        range.setStep(step);
+        return range;
+    }
+}
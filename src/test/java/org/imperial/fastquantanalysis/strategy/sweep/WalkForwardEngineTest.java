@@ -0,0 +1,109 @@
+package org.imperial.fastquantanalysis.strategy.sweep;
+
+import org.imperial.fastquantanalysis.constant.SweepMetric;
+import org.imperial.fastquantanalysis.dto.ParameterRangeDTO;
+import org.imperial.fastquantanalysis.entity.QuantStrategy;
+import org.imperial.fastquantanalysis.market.BarSeries;
+import org.imperial.fastquantanalysis.strategy.Strategies;
+import org.imperial.fastquantanalysis.util.RedisIdUtil;
+import org.imperial.fastquantanalysis.vo.WalkForwardFoldVO;
+import org.imperial.fastquantanalysis.vo.WalkForwardResultVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WalkForwardEngineTest {
+
+    private final Strategies strategies = strategies();
+    private final ParameterSweeper parameterSweeper = new ParameterSweeper(strategies, 4, 10000);
+    private final WalkForwardEngine walkForwardEngine = new WalkForwardEngine(parameterSweeper);
+
+    @AfterEach
+    void shutdown() {
+        parameterSweeper.shutdown();
+    }
+
+    @Test
+    void testFoldsUseTheirBestInSampleParameters() {
+        BarSeries bars = randomWalk(2_000);
+        SweepInput input = SweepInput.of(bars, null);
+        Map<String, ParameterRangeDTO> ranges = Map.of(
+                "emaPeriod", range(5, 30, 5),
+                "atrPeriod", range(10, 20, 5),
+                "atrMultiplier", range(1, 3, 1));
+
+        WalkForwardResultVO result = walkForwardEngine.run(SweepableStrategy.EMA_WITH_ATR_STOP_LOSS, input, ranges,
+                500, 100, 100, SweepMetric.CUMULATIVE_RETURN);
+
+        // (2000 - 600) / 100 + 1 folds
+        List<WalkForwardFoldVO> folds = result.getFolds();
+        assertEquals(15, folds.size());
+        for (WalkForwardFoldVO fold : folds) {
+            int inSampleFrom = fold.getFold() * 100;
+            double bestReturn = Double.NEGATIVE_INFINITY;
+            for (Map<String, Double> parameters : ParameterGrid.expand(
+                    SweepableStrategy.EMA_WITH_ATR_STOP_LOSS.getParameterNames(), ranges, 10000)) {
+                QuantStrategy inSample = SweepableStrategy.EMA_WITH_ATR_STOP_LOSS.run(strategies, input, parameters,
+                        inSampleFrom, inSampleFrom + 500);
+                bestReturn = Math.max(bestReturn, inSample.getCumulativeReturn());
+            }
+            assertEquals(bestReturn, fold.getInSample().getCumulativeReturn(), 1e-12);
+
+            QuantStrategy outOfSample = SweepableStrategy.EMA_WITH_ATR_STOP_LOSS.run(strategies, input,
+                    fold.getBestParameters(), inSampleFrom + 500, inSampleFrom + 600);
+            assertEquals(outOfSample.getCumulativeReturn(), fold.getOutOfSample().getCumulativeReturn(), 1e-12);
+        }
+    }
+
+    @Test
+    void testWholeRangeMatchesSingleRun() {
+        BarSeries bars = randomWalk(1_000);
+        QuantStrategy single = strategies.emaWithATRStopLoss(bars, 20, 14, 2.0);
+        QuantStrategy ranged = SweepableStrategy.EMA_WITH_ATR_STOP_LOSS.run(strategies, SweepInput.of(bars, null),
+                Map.of("emaPeriod", 20.0, "atrPeriod", 14.0, "atrMultiplier", 2.0), 0, bars.size());
+
+        assertEquals(single.getCumulativeReturn(), ranged.getCumulativeReturn());
+        assertEquals(single.getTradeCount(), ranged.getTradeCount());
+    }
+
+    static Strategies strategies() {
+        RedisIdUtil redisIdUtil = Mockito.mock(RedisIdUtil.class);
+        Mockito.when(redisIdUtil.nextId(Mockito.anyString())).thenReturn("0");
+        return new Strategies(redisIdUtil);
+    }
+
+    static BarSeries randomWalk(int n) {
+        Random random = new Random(42);
+        long[] timestamps = new long[n];
+        double[] open = new double[n];
+        double[] high = new double[n];
+        double[] low = new double[n];
+        double[] close = new double[n];
+        double[] volume = new double[n];
+        double price = 100;
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = i * 60_000L;
+            open[i] = price;
+            price *= 1 + random.nextGaussian() * 0.002;
+            close[i] = price;
+            high[i] = Math.max(open[i], close[i]) * (1 + random.nextDouble() * 0.001);
+            low[i] = Math.min(open[i], close[i]) * (1 - random.nextDouble() * 0.001);
+            volume[i] = 1;
+        }
+        return new BarSeries(timestamps, open, high, low, close, volume);
+    }
+
+    private static ParameterRangeDTO range(double from, double to, double step) {
+        ParameterRangeDTO range = new ParameterRangeDTO();
+        range.setFrom(from);
+        range.setTo(to);
+        range.setStep(step);
+        return range;
+    }
+}
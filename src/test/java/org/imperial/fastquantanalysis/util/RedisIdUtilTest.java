@@ -0,0 +1,84 @@
+package org.imperial.fastquantanalysis.util;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+public class RedisIdUtilTest {
+
+    private static final int LEASE_SIZE = 100;
+
+    private final AtomicLong counter = new AtomicLong();
+    private final AtomicInteger redisCalls = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    private RedisIdUtil redisIdUtil() {
+        StringRedisTemplate stringRedisTemplate = Mockito.mock(StringRedisTemplate.class);
+        // One counter for every key is enough: counts only have to be unique
+        Mockito.when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any()))
+                .thenAnswer(invocation -> {
+                    redisCalls.incrementAndGet();
+                    return counter.addAndGet(Long.parseLong(invocation.getArgument(2)));
+                });
+        return new RedisIdUtil(stringRedisTemplate, LEASE_SIZE, 60);
+    }
+
+    @Test
+    void testIdsAreLeasedInBlocks() {
+        RedisIdUtil redisIdUtil = redisIdUtil();
+
+        long first = Long.parseLong(redisIdUtil.nextId("test"));
+        for (int i = 1; i < LEASE_SIZE; i++) {
+            redisIdUtil.nextId("test");
+        }
+
+        // Counts start at 1 like INCR, below the timestamp in the upper 32 bits
+        assertEquals(1, first & 0xffffffffL);
+        assertTrue(first >>> 32 > 0);
+        // A new second or an exhausted block are the only reasons to call Redis again
+        assertTrue(redisCalls.get() <= 2);
+    }
+
+    @Test
+    void testConcurrentIdsAreUnique() throws Exception {
+        RedisIdUtil redisIdUtil = redisIdUtil();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = executor.invokeAll(List.of(
+                    () -> nextIds(redisIdUtil, 2500),
+                    () -> nextIds(redisIdUtil, 2500),
+                    () -> nextIds(redisIdUtil, 2500),
+                    () -> nextIds(redisIdUtil, 2500)));
+
+            Set<String> ids = new HashSet<>();
+            for (Future<List<String>> future : futures) {
+                ids.addAll(future.get());
+            }
+            assertEquals(10000, ids.size());
+            assertTrue(redisCalls.get() < 10000 / LEASE_SIZE * 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> nextIds(RedisIdUtil redisIdUtil, int n) {
+        String[] ids = new String[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = redisIdUtil.nextId("test");
+        }
+        return List.of(ids);
+    }
+}
@@ -0,0 +1,144 @@
+package org.imperial.fastquantanalysis.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final SingleFlight<String, Object> singleFlight = new SingleFlight<>("test", meterRegistry);
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @Test
+    void testConcurrentIdenticalCallsShareOneExecution() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        Object result = new Object();
+
+        List<Future<Object>> calls = IntStream.range(0, 8)
+                .mapToObj(i -> callers.submit(() -> singleFlight.execute("BTC", () -> {
+                    executions.incrementAndGet();
+                    await(release);
+                    return result;
+                })))
+                .toList();
+        // Every caller has joined the first one before it returns
+        awaitCoalesced(7);
+        release.countDown();
+
+        for (Future<Object> call : calls) {
+            assertSame(result, call.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(1, singleFlight.getExecutedCount());
+        assertEquals(7, singleFlight.getCoalescedCount());
+        assertEquals(7.0, meterRegistry.get("singleflight.calls").tag("result", "coalesced").counter().count());
+        assertEquals(0.0, meterRegistry.get("singleflight.in.flight").gauge().value());
+
+        // Nothing is cached once the call is over
+        assertNotSame(result, singleFlight.execute("BTC", Object::new));
+        callers.shutdown();
+    }
+
+    @Test
+    void testDifferentKeysAndFailuresAreNotShared() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Object> failing = callers.submit(() -> singleFlight.execute("BTC", () -> {
+            await(release);
+            throw new IllegalStateException("rate limited");
+        }));
+        awaitExecuted(1);
+        Future<Object> joining = callers.submit(() -> singleFlight.execute("BTC", () -> "own result"));
+        awaitCoalesced(1);
+
+        // Another key runs on its own while the first call is in flight
+        assertEquals("ETH", singleFlight.execute("ETH", () -> "ETH"));
+        release.countDown();
+
+        Exception e = assertThrows(Exception.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals("rate limited", e.getCause().getMessage());
+        // The caller that joined runs the call itself instead of getting the failure
+        assertEquals("own result", joining.get(5, TimeUnit.SECONDS));
+        assertEquals(3, singleFlight.getExecutedCount());
+
+        // A failure is not remembered either
+        assertEquals("retried", singleFlight.execute("BTC", () -> "retried"));
+        callers.shutdown();
+    }
+
+    @Test
+    void testJoinedCallsRunAgainWhenTheRunningOneIsInterrupted() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<Object> cancelled = callers.submit(() -> singleFlight.execute("BTC", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+                return "cancelled";
+            } catch (InterruptedException e) {
+                // What a fetch of a cancelled backtest job throws
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Job cancelled");
+            }
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        List<Future<Object>> joining = IntStream.range(0, 3)
+                .mapToObj(i -> callers.submit(() -> singleFlight.execute("BTC", () -> {
+                    executions.incrementAndGet();
+                    await(release);
+                    return "fetched";
+                })))
+                .toList();
+        awaitCoalesced(3);
+        cancelled.cancel(true);
+
+        // One of them runs the call again and the other two join it
+        awaitCoalesced(5);
+        release.countDown();
+        for (Future<Object> call : joining) {
+            assertEquals("fetched", call.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(2, singleFlight.getExecutedCount());
+        callers.shutdown();
+    }
+
+    private void awaitCoalesced(long coalesced) throws InterruptedException {
+        for (int i = 0; i < 500 && singleFlight.getCoalescedCount() < coalesced; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(coalesced, singleFlight.getCoalescedCount());
+    }
+
+    private void awaitExecuted(long executed) throws InterruptedException {
+        for (int i = 0; i < 500 && singleFlight.getExecutedCount() < executed; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(executed, singleFlight.getExecutedCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}